@@ -0,0 +1,241 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.resources;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.ejb.EJB;
+import javax.ws.rs.GET;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import com.ericsson.eniq.events.server.common.MediaTypeConstants;
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.*;
+import com.ericsson.eniq.events.server.serviceprovider.impl.batch.BatchEntryExecutor;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Base class for resources that run several services in one HTTP request, eg all the grids and charts of a dashboard
+ *
+ * Each entry of the batch is identified by a prefix on its URI parameters, and names its service with the service
+ * parameter. URI parameters without a prefix are shared by all entries, eg
+ * <pre>
+ *     ?time=30&tzOffset=+0000&rnc.service=RNC_RANKING&tac.service=TERMINAL_RANKING&tac.maxRows=10
+ * </pre>
+ * runs two entries, rnc and tac, with the same time range.
+ *
+ * The request level work (the licence look up and the time range translation) is done once for the whole batch, see
+ * {@link BatchRequestScope}. The entries are run concurrently on the {@link BatchEntryExecutor}, up to
+ * {@link #getMaxConcurrentEntries()} at a time, and the results are returned in one JSON response, keyed by entry. A
+ * batch is rejected as unavailable if the executor is saturated
+ */
+public abstract class AbstractBatchResource extends AbstractResource {
+
+    static final String BATCH_SERVICE_PARAM = "service";
+
+    static final char BATCH_ENTRY_SEPARATOR = '.';
+
+    private static final int DEFAULT_MAX_CONCURRENT_ENTRIES = 4;
+
+    private static final int DEFAULT_BATCH_TIMEOUT_IN_SECONDS = 120;
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    @EJB
+    private BatchEntryExecutor batchEntryExecutor;
+
+    /**
+     * Run all entries of the batch
+     *
+     * @return JSON encoded results of all entries, keyed by entry
+     * @throws WebApplicationException
+     *           the web application exception
+     */
+    @Override
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getData() throws WebApplicationException {
+        final MultivaluedMap<String, String> requestParameters = mapResourceLayerParameters();
+        return getBatchData(RequestContext.fromParameters(requestParameters), requestParameters);
+    }
+
+    /**
+     * CSV exports are not supported in batches - each export should be requested on its own resource
+     */
+    @Override
+    @GET
+    @Produces(MediaTypeConstants.APPLICATION_CSV)
+    public Response getDataAsCSV() throws WebApplicationException {
+        throw new WebApplicationException(Response.Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * A batch has no single service, the services are looked up per entry with {@link #getService(String)}
+     */
+    @Override
+    protected final Service getService() {
+        return null;
+    }
+
+    /**
+     * @param serviceName
+     *            value of the service parameter of a batch entry
+     * @return the service for the entry, or null if there is no such service
+     */
+    protected abstract Service getService(String serviceName);
+
+    /**
+     * @return maximum number of entries of one batch that are run at the same time
+     */
+    protected int getMaxConcurrentEntries() {
+        return DEFAULT_MAX_CONCURRENT_ENTRIES;
+    }
+
+    public void setBatchEntryExecutor(final BatchEntryExecutor batchEntryExecutor) {
+        this.batchEntryExecutor = batchEntryExecutor;
+    }
+
+    /**
+     * @return time allowed for all the entries of a batch to complete
+     */
+    protected int getBatchTimeoutInSeconds() {
+        return DEFAULT_BATCH_TIMEOUT_IN_SECONDS;
+    }
+
+    String getBatchData(final RequestContext requestContext, final MultivaluedMap<String, String> requestParameters) {
+        final Map<String, MultivaluedMap<String, String>> entries = splitIntoEntries(requestParameters);
+        final BatchRequestScope batchRequestScope = new BatchRequestScope();
+        final Semaphore concurrentEntries = new Semaphore(getMaxConcurrentEntries());
+        final Map<String, Future<String>> results = new LinkedHashMap<String, Future<String>>();
+        try {
+            for (final Map.Entry<String, MultivaluedMap<String, String>> entry : entries.entrySet()) {
+                concurrentEntries.acquire();
+                results.put(entry.getKey(), submitEntry(requestContext, entry.getValue(), batchRequestScope, concurrentEntries));
+            }
+            return buildBatchResult(results);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(e);
+        } finally {
+            for (final Future<String> result : results.values()) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    private Future<String> submitEntry(final RequestContext requestContext, final MultivaluedMap<String, String> entryParameters,
+                                       final BatchRequestScope batchRequestScope, final Semaphore concurrentEntries) {
+        try {
+            return batchEntryExecutor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    batchRequestScope.attach();
+                    try {
+                        return runEntry(requestContext, entryParameters);
+                    } finally {
+                        BatchRequestScope.detach();
+                        concurrentEntries.release();
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            concurrentEntries.release();
+            throw new WebApplicationException(e, SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private String runEntry(final RequestContext requestContext, final MultivaluedMap<String, String> entryParameters) {
+        final String serviceName = entryParameters.getFirst(BATCH_SERVICE_PARAM);
+        final Service service = serviceName == null ? null : getService(serviceName);
+        if (service == null) {
+            return buildEntryError("Unknown service " + serviceName);
+        }
+        return ServiceInvoker.getData(service, ServiceRequest.fromParameters(requestContext, entryParameters));
+    }
+
+    private String buildBatchResult(final Map<String, Future<String>> results) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(getBatchTimeoutInSeconds());
+        final StringBuilder batchResult = new StringBuilder("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":{");
+        boolean firstEntry = true;
+        for (final Map.Entry<String, Future<String>> result : results.entrySet()) {
+            if (!firstEntry) {
+                batchResult.append(',');
+            }
+            firstEntry = false;
+            batchResult.append('"');
+            GridJSONBuilder.appendEscaped(batchResult, result.getKey());
+            batchResult.append("\":");
+            batchResult.append(getEntryResult(result.getValue(), deadline));
+        }
+        return batchResult.append("}}").toString();
+    }
+
+    private String getEntryResult(final Future<String> result, final long deadline) throws InterruptedException {
+        try {
+            final String entryResult = result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return entryResult == null ? buildEntryError("No result") : entryResult;
+        } catch (final ExecutionException e) {
+            ServicesLogger.error(getClass().getName(), "getEntryResult", e.getCause());
+            return buildEntryError("Failed to run query");
+        } catch (final TimeoutException e) {
+            result.cancel(true);
+            return buildEntryError("Timed out");
+        }
+    }
+
+    private String buildEntryError(final String errorDescription) {
+        final StringBuilder entryError = new StringBuilder("{\"success\":\"false\",\"errorDescription\":\"");
+        GridJSONBuilder.appendEscaped(entryError, errorDescription);
+        return entryError.append("\"}").toString();
+    }
+
+    /**
+     * Split the request parameters into the parameters for each entry. Parameters without an entry prefix are copied
+     * to every entry, parameters with an entry prefix override these shared parameters for that entry only.
+     *
+     * @param requestParameters
+     *            parameters for the batch request
+     * @return parameters for each entry, ordered by entry name
+     */
+    Map<String, MultivaluedMap<String, String>> splitIntoEntries(final MultivaluedMap<String, String> requestParameters) {
+        final MultivaluedMap<String, String> sharedParameters = new MultivaluedMapImpl();
+        final Map<String, MultivaluedMap<String, String>> entrySpecificParameters = new TreeMap<String, MultivaluedMap<String, String>>();
+        for (final Map.Entry<String, List<String>> parameter : requestParameters.entrySet()) {
+            final int separator = parameter.getKey().indexOf(BATCH_ENTRY_SEPARATOR);
+            if (separator <= 0) {
+                sharedParameters.put(parameter.getKey(), parameter.getValue());
+                continue;
+            }
+            final String entryName = parameter.getKey().substring(0, separator);
+            MultivaluedMap<String, String> entryParameters = entrySpecificParameters.get(entryName);
+            if (entryParameters == null) {
+                entryParameters = new MultivaluedMapImpl();
+                entrySpecificParameters.put(entryName, entryParameters);
+            }
+            entryParameters.put(parameter.getKey().substring(separator + 1), parameter.getValue());
+        }
+        final Map<String, MultivaluedMap<String, String>> entries = new LinkedHashMap<String, MultivaluedMap<String, String>>();
+        for (final Map.Entry<String, MultivaluedMap<String, String>> entry : entrySpecificParameters.entrySet()) {
+            final MultivaluedMap<String, String> entryParameters = new MultivaluedMapImpl();
+            entryParameters.putAll(sharedParameters);
+            entryParameters.putAll(entry.getValue());
+            entries.put(entry.getKey(), entryParameters);
+        }
+        return entries;
+    }
+}
@@ -7,23 +7,50 @@ package com.ericsson.eniq.events.server.resources;
 
 import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.ejb.EJB;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import com.ericsson.eniq.events.server.common.MediaTypeConstants;
+import com.ericsson.eniq.events.server.serviceprovider.ConditionalRequest;
+import com.ericsson.eniq.events.server.serviceprovider.ResponseMediaType;
 import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceInvoker;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceRequest;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceResult;
+import com.ericsson.eniq.events.server.serviceprovider.impl.GenericService;
+import com.ericsson.eniq.events.server.serviceprovider.impl.export.ExportJob;
+import com.ericsson.eniq.events.server.serviceprovider.impl.export.ExportJobManager;
+import com.ericsson.eniq.events.server.serviceprovider.impl.export.ExportJobState;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONParser;
+import com.ericsson.eniq.events.server.serviceprovider.impl.live.LiveQueryScheduler;
+import com.ericsson.eniq.events.server.serviceprovider.impl.live.LiveSubscription;
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
+import com.sun.jersey.api.core.HttpContext;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
+import com.sun.jersey.spi.container.ResourceFilters;
 
 /**
  * A prototype for the rework which will be carried out as part of the WCDMA feature
@@ -40,6 +67,20 @@ import com.sun.jersey.core.util.MultivaluedMapImpl;
  */
 public abstract class AbstractResource {
 
+    static final String EXPORT_PATH = "export";
+
+    static final String LIVE_PATH = "live";
+
+    static final String SERVER_SENT_EVENTS = "text/event-stream";
+
+    private static final int LIVE_KEEPALIVE_IN_SECONDS = 30;
+
+    private static final int CONFLICT = 409;
+
+    private static final String UTF_8 = "UTF-8";
+
+    private static final String GZIP = "gzip";
+
     @Context
     protected UriInfo uriInfo;
 
@@ -50,6 +91,18 @@ public abstract class AbstractResource {
     @Context
     protected HttpServletResponse response;
 
+    @Context
+    protected SecurityContext securityContext;
+
+    @Context
+    protected HttpContext httpContext;
+
+    @EJB
+    private ExportJobManager exportJobManager;
+
+    @EJB
+    private LiveQueryScheduler liveQueryScheduler;
+
     /**
      * Map requests to data service queries and return JSON encoded result for
      * relevant data.
@@ -58,15 +111,41 @@ public abstract class AbstractResource {
      * many potential parameters and these have certain relationships processing
      * is more easily done by accessing those which are relevant.
      *
+     * Results served from the result cache are sent in the gzip form they are cached in to clients that accept gzip
+     * encoding, rather than being decompressed and compressed again, see {@link GzippedResultFilter}.
+     *
+     * Successful results are sent with the ETag the service worked out for them, see {@link ConditionalRequest}, and
+     * clients that already have the result get 304 Not Modified. Error results are not tagged, so they are never
+     * revalidated in place of the result.
+     *
      * @return JSON encoded results
      * @throws WebApplicationException
      *           the web application exception
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
+    @ResourceFilters(GzippedResultFilter.class)
     public String getData() throws WebApplicationException {
         final Service service = getService();
-        return service.getData(mapResourceLayerParameters());
+        final MultivaluedMap<String, String> serviceProviderParameters = mapResourceLayerParameters();
+        final String ifNoneMatch = getIfNoneMatchFromHttpHeader();
+        final Map<String, Object> requestProperties = httpContext == null ? null : httpContext.getProperties();
+        final boolean gzippedResultSent = GzippedResultFilter.isApplied(requestProperties);
+        final ServiceResult result = ServiceInvoker.getResult(service, ServiceRequest.fromParameters(serviceProviderParameters)
+                .withAcceptsGzip(gzippedResultSent && acceptsGzip()).withIfNoneMatch(ifNoneMatch));
+        final String eTag = result.getETag();
+        // a result available compressed is served from the result cache, which only holds success results
+        if (eTag != null && (result.getGzippedResult() != null || GridJSONParser.isSuccessResult(result.getResult()))) {
+            if (ConditionalRequest.matches(ifNoneMatch, eTag)) {
+                throw new WebApplicationException(Response.notModified(new EntityTag(eTag)).build());
+            }
+            response.setHeader(HttpHeaders.ETAG, '"' + eTag + '"');
+        }
+        if (gzippedResultSent && result.getGzippedResult() != null) {
+            GzippedResultFilter.setGzippedResult(requestProperties, result.getGzippedResult());
+            return GzippedResultFilter.GZIPPED_RESULT;
+        }
+        return result.getResult();
     }
 
     protected abstract Service getService();
@@ -88,23 +167,252 @@ public abstract class AbstractResource {
     @Produces(MediaTypeConstants.APPLICATION_CSV)
     public Response getDataAsCSV() throws WebApplicationException {
         final Service service = getService();
-        return service.getDataAsCSV(mapResourceLayerParameters(), response);
+        final MultivaluedMap<String, String> serviceProviderParameters = mapResourceLayerParameters();
+        return ServiceInvoker.getDataAsCSV(service, ServiceRequest.fromParameters(serviceProviderParameters), response);
+    }
+
+    /**
+     * Start exporting the data in CSV format in the background. The query is streamed once into a file on the server,
+     * which the client downloads when the job has completed - see {@link ExportJobManager}
+     *
+     * @return JSON encoded state of the export job, including the job id used to poll its progress and download it
+     * @throws WebApplicationException
+     *           503 if too many export jobs are already held
+     */
+    @POST
+    @Path(EXPORT_PATH)
+    @Produces(MediaType.APPLICATION_JSON)
+    public String startExport() throws WebApplicationException {
+        final Service service = getService();
+        if (service == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST.getStatusCode());
+        }
+        final MultivaluedMap<String, String> serviceProviderParameters = mapResourceLayerParameters();
+        serviceProviderParameters.putSingle(MEDIA_TYPE, MediaTypeConstants.APPLICATION_CSV);
+        final ExportJob exportJob = exportJobManager.submit(service, ServiceRequest.fromParameters(serviceProviderParameters));
+        if (exportJob == null) {
+            throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        }
+        return getExportJobAsJSON(exportJob);
+    }
+
+    /**
+     * @param jobId
+     *          id of the export job
+     * @return JSON encoded state of the export job and the number of bytes exported so far
+     * @throws WebApplicationException
+     *           404 if there is no such job
+     */
+    @GET
+    @Path(EXPORT_PATH + "/{jobId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getExportJob(@PathParam("jobId") final String jobId) throws WebApplicationException {
+        return getExportJobAsJSON(findExportJob(jobId));
+    }
+
+    /**
+     * Download the file of a completed export job. A single byte range can be requested with the Range header, so
+     * that an interrupted download can be resumed
+     *
+     * @param jobId
+     *          id of the export job
+     * @param range
+     *          value of the Range header, can be null
+     * @return the exported file, or the requested part of it
+     * @throws WebApplicationException
+     *           404 if there is no such job, 409 if the job has not completed
+     */
+    @GET
+    @Path(EXPORT_PATH + "/{jobId}/file")
+    @Produces(MediaTypeConstants.APPLICATION_CSV)
+    public Response getExportFile(@PathParam("jobId") final String jobId, @HeaderParam("Range") final String range)
+            throws WebApplicationException {
+        final ExportJob exportJob = findExportJob(jobId);
+        if (exportJob.getState() != ExportJobState.COMPLETED) {
+            throw new WebApplicationException(CONFLICT);
+        }
+        final long length = exportJob.getBytesWritten();
+        final ByteRange byteRange = ByteRange.parse(range, length);
+        if (byteRange != null && !byteRange.isSatisfiable()) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE).header("Content-Range", byteRange.getContentRange())
+                    .build();
+        }
+        final long first = byteRange == null ? 0 : byteRange.getFirst();
+        final long count = byteRange == null ? length : byteRange.getCount();
+        final Response.ResponseBuilder builder = byteRange == null ? Response.ok() : Response.status(Response.Status.PARTIAL_CONTENT)
+                .header("Content-Range", byteRange.getContentRange());
+        return builder.entity(new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                exportJob.transferTo(first, count, output);
+            }
+        }).type(MediaTypeConstants.APPLICATION_CSV).header("Accept-Ranges", "bytes").header("Content-Length", count)
+                .header("Content-disposition", "attachment; filename=export.csv").build();
+    }
+
+    /**
+     * Subscribe to live updates of the data, pushed as server-sent events. The query is run once per refresh interval
+     * for all clients subscribed with the same parameters, and each new JSON result is sent as an update event - see
+     * {@link LiveQueryScheduler}
+     *
+     * The stream holds a request thread until the client disconnects, so the number of open subscriptions is capped,
+     * and the client is answered 503 Service Unavailable when the cap is reached.
+     *
+     * @return the event stream, open until the client disconnects
+     * @throws WebApplicationException
+     *           the web application exception
+     */
+    @GET
+    @Path(LIVE_PATH)
+    @Produces(SERVER_SENT_EVENTS)
+    public Response subscribeToLiveData() throws WebApplicationException {
+        final Service service = getService();
+        if (service == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST.getStatusCode());
+        }
+        final MultivaluedMap<String, String> serviceProviderParameters = mapResourceLayerParameters();
+        final int intervalInMinutes = service instanceof GenericService ? ((GenericService) service).getInterval(serviceProviderParameters) : 1;
+        final LiveSubscription subscription = liveQueryScheduler.subscribe(service, serviceProviderParameters, intervalInMinutes);
+        if (subscription == null) {
+            throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE.getStatusCode());
+        }
+        return Response.ok(new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                try {
+                    writeLiveEvents(subscription, output);
+                } finally {
+                    liveQueryScheduler.unsubscribe(subscription);
+                }
+            }
+        }).type(SERVER_SENT_EVENTS).header("Cache-Control", "no-cache").build();
+    }
+
+    /**
+     * Write each result as an update event until the client disconnects, with a comment line as keepalive when there
+     * is no new result, so that a disconnected client is noticed
+     */
+    void writeLiveEvents(final LiveSubscription subscription, final OutputStream output) throws IOException {
+        try {
+            while (true) {
+                final String result = subscription.nextResult(LIVE_KEEPALIVE_IN_SECONDS, TimeUnit.SECONDS);
+                output.write(result == null ? ": keepalive\n\n".getBytes(UTF_8) : toServerSentEvent(result).getBytes(UTF_8));
+                output.flush();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static String toServerSentEvent(final String result) {
+        final StringBuilder event = new StringBuilder(result.length() + 32).append("event: update\n");
+        for (final String line : result.split("\r?\n")) {
+            event.append("data: ").append(line).append('\n');
+        }
+        return event.append('\n').toString();
+    }
+
+    private ExportJob findExportJob(final String jobId) {
+        final ExportJob exportJob = exportJobManager.getJob(jobId);
+        if (exportJob == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND.getStatusCode());
+        }
+        return exportJob;
+    }
+
+    private String getExportJobAsJSON(final ExportJob exportJob) {
+        return "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":{\"jobId\":\"" + exportJob.getId() + "\",\"state\":\""
+                + exportJob.getState() + "\",\"bytesWritten\":\"" + exportJob.getBytesWritten() + "\"}}";
+    }
+
+    public void setExportJobManager(final ExportJobManager exportJobManager) {
+        this.exportJobManager = exportJobManager;
+    }
+
+    public void setLiveQueryScheduler(final LiveQueryScheduler liveQueryScheduler) {
+        this.liveQueryScheduler = liveQueryScheduler;
     }
 
     protected MultivaluedMap<String, String> mapResourceLayerParameters() {
         final MultivaluedMap<String, String> serviceProviderParameters = new MultivaluedMapImpl();
         serviceProviderParameters.putAll(getDecodedURIParameters());
-        serviceProviderParameters.put(MEDIA_TYPE, getAcceptableMediaTypes());
+        serviceProviderParameters.putSingle(MEDIA_TYPE, getResponseMediaType().getMediaType());
         serviceProviderParameters.add(REQUEST_URI, getRequestURI());
         serviceProviderParameters.put(IP_ADDRESS_PARAM, getIpAddressesFromHttpHeader());
         serviceProviderParameters.add(REQUEST_ID, getRequestIdFromHttpHeader());
+        serviceProviderParameters.remove(FairQueryScheduler.AUTHENTICATED_USER_PARAM);
+        final String userName = getAuthenticatedUserName();
+        if (userName != null) {
+            serviceProviderParameters.putSingle(FairQueryScheduler.AUTHENTICATED_USER_PARAM, userName);
+        }
         return serviceProviderParameters;
     }
 
+    /**
+     * @return name of the authenticated user, null if the request is not authenticated. The queries of the request are
+     *         scheduled as this user, a user name given as a URI parameter would let clients choose whose quota their
+     *         queries are charged to
+     */
+    private String getAuthenticatedUserName() {
+        if (securityContext == null || securityContext.getUserPrincipal() == null) {
+            return null;
+        }
+        return securityContext.getUserPrincipal().getName();
+    }
+
     private MultivaluedMap<String, String> getDecodedURIParameters() {
         return uriInfo.getQueryParameters(true);
     }
 
+    private String getIfNoneMatchFromHttpHeader() {
+        final List<String> ifNoneMatch = httpHeaders.getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return null;
+        }
+        final StringBuilder eTags = new StringBuilder();
+        for (final String eTag : ifNoneMatch) {
+            if (eTags.length() > 0) {
+                eTags.append(',');
+            }
+            eTags.append(eTag);
+        }
+        return eTags.toString();
+    }
+
+    /**
+     * @return true if the Accept-Encoding header lists gzip, or any encoding, without a quality of 0
+     */
+    private boolean acceptsGzip() {
+        final List<String> acceptEncodings = httpHeaders.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncodings == null) {
+            return false;
+        }
+        for (final String acceptEncoding : acceptEncodings) {
+            for (final String encoding : acceptEncoding.split(",")) {
+                final String[] encodingAndParameters = encoding.split(";");
+                final String coding = encodingAndParameters[0].trim();
+                if ((coding.equalsIgnoreCase(GZIP) || coding.equals("*")) && !hasZeroQuality(encodingAndParameters)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasZeroQuality(final String[] encodingAndParameters) {
+        for (int i = 1; i < encodingAndParameters.length; i++) {
+            final String parameter = encodingAndParameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                } catch (final NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private String getRequestIdFromHttpHeader() {
         return httpHeaders.getRequestHeaders().getFirst(REQUEST_ID);
     }
@@ -117,13 +425,11 @@ public abstract class AbstractResource {
         return uriInfo.getRequestUri().toString();
     }
 
-    private List<String> getAcceptableMediaTypes() {
-        final List<MediaType> acceptableMediaTypes = httpHeaders.getAcceptableMediaTypes();
-        final List<String> acceptableMediaTypesStringified = new ArrayList<String>();
-        for (final MediaType mediaType : acceptableMediaTypes) {
-            acceptableMediaTypesStringified.add(mediaType.toString());
-        }
-        return acceptableMediaTypesStringified;
+    /**
+     * Resolve the response format from the acceptable media types, rather than passing each of them on as a string
+     */
+    private ResponseMediaType getResponseMediaType() {
+        return ResponseMediaType.fromAcceptableMediaTypes(httpHeaders.getAcceptableMediaTypes());
     }
 
 }
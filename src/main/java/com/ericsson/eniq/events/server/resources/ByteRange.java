@@ -0,0 +1,92 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.resources;
+
+/**
+ * A single byte range requested with the HTTP Range header, eg <code>bytes=1000-</code> to resume a download
+ */
+class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long first;
+
+    private final long last;
+
+    private final long length;
+
+    private ByteRange(final long first, final long last, final long length) {
+        this.first = first;
+        this.last = last;
+        this.length = length;
+    }
+
+    /**
+     * @param rangeHeader
+     *            value of the Range header, can be null
+     * @param length
+     *            size of the content
+     * @return the requested range, or null if the whole content should be returned (no range, a malformed range or
+     *         several ranges were requested)
+     */
+    static ByteRange parse(final String rangeHeader, final long length) {
+        if (rangeHeader == null || !rangeHeader.startsWith(BYTES_UNIT) || rangeHeader.indexOf(',') != -1) {
+            return null;
+        }
+        final String range = rangeHeader.substring(BYTES_UNIT.length()).trim();
+        final int separator = range.indexOf('-');
+        if (separator == -1) {
+            return null;
+        }
+        try {
+            final String firstByte = range.substring(0, separator).trim();
+            final String lastByte = range.substring(separator + 1).trim();
+            if (firstByte.length() == 0) {
+                final long suffixLength = Long.parseLong(lastByte);
+                return new ByteRange(Math.max(0, length - suffixLength), length - 1, length);
+            }
+            final long first = Long.parseLong(firstByte);
+            final long last = lastByte.length() == 0 ? length - 1 : Math.min(Long.parseLong(lastByte), length - 1);
+            if (last < first && lastByte.length() != 0 && first < length) {
+                return null;
+            }
+            return new ByteRange(first, last, length);
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return false if the range starts beyond the end of the content, in which case 416 is returned to the client
+     */
+    boolean isSatisfiable() {
+        return first < length && first <= last;
+    }
+
+    long getFirst() {
+        return first;
+    }
+
+    long getCount() {
+        return last - first + 1;
+    }
+
+    /**
+     * @return value of the Content-Range header for the range
+     */
+    String getContentRange() {
+        if (!isSatisfiable()) {
+            return "bytes */" + length;
+        }
+        return "bytes " + first + "-" + last + "/" + length;
+    }
+}
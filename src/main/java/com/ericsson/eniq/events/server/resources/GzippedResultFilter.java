@@ -0,0 +1,102 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.resources;
+
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ResourceFilter;
+
+/**
+ * Sends a result that is available in gzip compressed form (ie served from the result cache) as it is, rather than
+ * decompressing it for the resource method to return and compressing it again.
+ * <p/>
+ * The filter marks the requests it is applied to, see {@link #isApplied(Map)}. A resource method of such a request
+ * hands the compressed result over with {@link #setGzippedResult(Map, byte[])} and returns {@link #GZIPPED_RESULT},
+ * which the filter replaces with the compressed result. A resource method that the filter is not applied to (eg one
+ * overridden without the {@link com.sun.jersey.spi.container.ResourceFilters} annotation) returns the result as text.
+ */
+public class GzippedResultFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+
+    /**
+     * Returned by the resource method in place of the result, never compared by value
+     */
+    static final String GZIPPED_RESULT = new String();
+
+    private static final String APPLIED_PROPERTY = GzippedResultFilter.class.getName() + ".applied";
+
+    private static final String GZIPPED_RESULT_PROPERTY = GzippedResultFilter.class.getName() + ".gzippedResult";
+
+    private static final String GZIP = "gzip";
+
+    private static final int OK = 200;
+
+    @Override
+    public ContainerRequestFilter getRequestFilter() {
+        return this;
+    }
+
+    @Override
+    public ContainerResponseFilter getResponseFilter() {
+        return this;
+    }
+
+    @Override
+    public ContainerRequest filter(final ContainerRequest request) {
+        markApplied(request.getProperties());
+        return request;
+    }
+
+    @Override
+    public ContainerResponse filter(final ContainerRequest request, final ContainerResponse response) {
+        final byte[] gzippedResult = takeGzippedResult(request.getProperties(), response.getEntity());
+        if (gzippedResult != null && response.getStatus() == OK) {
+            response.setEntity(gzippedResult);
+            final MultivaluedMap<String, Object> headers = response.getHttpHeaders();
+            headers.putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        return response;
+    }
+
+    static void markApplied(final Map<String, Object> requestProperties) {
+        requestProperties.put(APPLIED_PROPERTY, Boolean.TRUE);
+    }
+
+    /**
+     * @param requestProperties
+     *            properties of the request
+     * @return true if the filter will send a compressed result handed over by the resource method
+     */
+    static boolean isApplied(final Map<String, Object> requestProperties) {
+        return requestProperties != null && requestProperties.containsKey(APPLIED_PROPERTY);
+    }
+
+    static void setGzippedResult(final Map<String, Object> requestProperties, final byte[] gzippedResult) {
+        requestProperties.put(GZIPPED_RESULT_PROPERTY, gzippedResult);
+    }
+
+    /**
+     * @return the compressed result handed over by the resource method, null if it returned anything other than
+     *         {@link #GZIPPED_RESULT}
+     */
+    static byte[] takeGzippedResult(final Map<String, Object> requestProperties, final Object entity) {
+        final Object gzippedResult = requestProperties.remove(GZIPPED_RESULT_PROPERTY);
+        return entity == GZIPPED_RESULT && gzippedResult instanceof byte[] ? (byte[]) gzippedResult : null;
+    }
+}
@@ -0,0 +1,125 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.utils.FormattedDateTimeRange;
+import com.ericsson.eniq.events.server.utils.datetime.DateTimeHelper;
+import com.ericsson.eniq.events.server.utils.techpacks.TechPackLicensingService;
+
+/**
+ * Request level work that is shared between all the entries of a batch request, so that it is only done once per batch
+ * rather than once per entry:
+ *      <li> the tech pack licence look up </li>
+ *      <li> the translation of the time range parameters </li>
+ *
+ * The scope is attached to the thread executing a batch entry for the duration of the call on the Service layer, and
+ * the service layer consults {@link #getCurrentScope()} before doing the work itself.
+ *
+ * The load balancing policy is not shared: each entry's query is balanced on its own, so that the entries of a batch
+ * are spread across the readers.
+ */
+public class BatchRequestScope {
+
+    private static final List<String> TIME_RANGE_PARAMETERS = Arrays.asList(TIME_QUERY_PARAM, DATE_FROM_QUERY_PARAM,
+            DATE_TO_QUERY_PARAM, TIME_FROM_QUERY_PARAM, TIME_TO_QUERY_PARAM, TZ_OFFSET);
+
+    private static final ThreadLocal<BatchRequestScope> CURRENT_SCOPE = new ThreadLocal<BatchRequestScope>();
+
+    private final ConcurrentMap<List<String>, List<String>> licensedTechPacks = new ConcurrentHashMap<List<String>, List<String>>();
+
+    private final ConcurrentMap<List<Object>, FormattedDateTimeRange> dateTimeRanges = new ConcurrentHashMap<List<Object>, FormattedDateTimeRange>();
+
+    /**
+     * @return the scope of the batch that the current thread is executing an entry for, null if the current thread is
+     *         not executing a batch entry
+     */
+    public static BatchRequestScope getCurrentScope() {
+        return CURRENT_SCOPE.get();
+    }
+
+    /**
+     * Attach this scope to the current thread
+     */
+    public void attach() {
+        CURRENT_SCOPE.set(this);
+    }
+
+    /**
+     * Detach any scope from the current thread
+     */
+    public static void detach() {
+        CURRENT_SCOPE.remove();
+    }
+
+    /**
+     * @param applicableTechPacks
+     *            tech packs applicable to the entry's service
+     * @param techPackLicensingService
+     *            used on the first look up for these tech packs
+     * @return the licensed tech packs
+     */
+    public List<String> getLicensedTechPacks(final List<String> applicableTechPacks, final TechPackLicensingService techPackLicensingService) {
+        final List<String> key = new ArrayList<String>(applicableTechPacks);
+        List<String> licensed = licensedTechPacks.get(key);
+        if (licensed == null) {
+            licensed = techPackLicensingService.getLicensedTechPacks(applicableTechPacks);
+            if (licensed == null) {
+                return null;
+            }
+            final List<String> existing = licensedTechPacks.putIfAbsent(key, licensed);
+            if (existing != null) {
+                licensed = existing;
+            }
+        }
+        return licensed;
+    }
+
+    /**
+     * The translation is shared between entries that have the same time range parameters and licensed tech packs
+     *
+     * @param parameters
+     *            the entry's parameters
+     * @param licensedTechPacks
+     *            licensed tech packs for the entry's service
+     * @param dateTimeHelper
+     *            used on the first translation of these time range parameters
+     * @return the translated date time range
+     */
+    public FormattedDateTimeRange translateDateTimeParameters(final MultivaluedMap<String, String> parameters,
+                                                              final List<String> licensedTechPacks, final DateTimeHelper dateTimeHelper) {
+        final List<Object> key = new ArrayList<Object>();
+        for (final String timeRangeParameter : TIME_RANGE_PARAMETERS) {
+            key.add(parameters.get(timeRangeParameter));
+        }
+        key.add(new ArrayList<String>(licensedTechPacks));
+        FormattedDateTimeRange dateTimeRange = dateTimeRanges.get(key);
+        if (dateTimeRange == null) {
+            dateTimeRange = dateTimeHelper.translateDateTimeParameters(parameters, licensedTechPacks);
+            if (dateTimeRange == null) {
+                return null;
+            }
+            final FormattedDateTimeRange existing = dateTimeRanges.putIfAbsent(key, dateTimeRange);
+            if (existing != null) {
+                dateTimeRange = existing;
+            }
+        }
+        return dateTimeRange;
+    }
+}
@@ -0,0 +1,90 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Conditional GET support shared by the resource and service layers.
+ * <p/>
+ * The resource layer passes the client's If-None-Match header to the service in the request, see
+ * {@link ServiceRequest#getIfNoneMatch()}. A service that can identify its result without running the query (from the
+ * generated query, its parameters and the load watermark of the tables it reads) returns the ETag of the result, see
+ * {@link ServiceResult#getETag()}. When it matches If-None-Match, the service skips the query, and the resource layer
+ * answers 304 Not Modified.
+ */
+public final class ConditionalRequest {
+
+    private static final String ANY = "*";
+
+    private static final String WEAK_PREFIX = "W/";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ConditionalRequest() {
+    }
+
+    /**
+     * @param resultIdentity
+     *            identifies the result, eg the generated query and its parameter values
+     * @param loadWatermark
+     *            load watermark of the tables the result is read from
+     * @return the ETag of the result (without quotes)
+     */
+    public static String createETag(final String resultIdentity, final long loadWatermark) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(resultIdentity.getBytes("UTF-8"));
+            final byte[] hash = digest.digest(Long.toString(loadWatermark).getBytes("UTF-8"));
+            final StringBuilder eTag = new StringBuilder(hash.length * 2);
+            for (final byte b : hash) {
+                eTag.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+            return eTag.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param ifNoneMatch
+     *            value of the If-None-Match header, can be null
+     * @param eTag
+     *            ETag of the result (without quotes)
+     * @return true if the header lists the ETag
+     */
+    public static boolean matches(final String ifNoneMatch, final String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals(ANY)) {
+                return true;
+            }
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.length() >= 2 && tag.charAt(0) == '"' && tag.charAt(tag.length() - 1) == '"') {
+                tag = tag.substring(1, tag.length() - 1);
+            }
+            if (tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,52 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response;
+
+/**
+ * A {@link Service} that takes the {@link ServiceRequest} explicitly, with its {@link RequestContext} and parsed
+ * parameters, rather than relying on state held by the thread that calls it.
+ * <p/>
+ * Callers should use {@link ServiceInvoker} so that services that do not implement this interface are still supported.
+ */
+public interface ContextAwareService extends Service {
+
+    /**
+     * Retrieve the data in CSV format for the given parameters
+     * 
+     * @param serviceRequest
+     *            the request, holding the map of parameters - see {@link Service}
+     * @param response
+     *            response the CSV data is streamed to
+     */
+    Response getDataAsCSV(ServiceRequest serviceRequest, HttpServletResponse response);
+
+    /**
+     * Retrieve the data (in JSON format) for the given parameters
+     * 
+     * @param serviceRequest
+     *            the request, holding the map of parameters - see {@link Service}
+     * @return the result of the SQL query, formatted as JSON
+     */
+    String getData(ServiceRequest serviceRequest);
+
+    /**
+     * Retrieve the data (in JSON format) for the given parameters, with what the resource layer needs to respond with it
+     * 
+     * @param serviceRequest
+     *            the request, holding the map of parameters - see {@link Service}
+     * @return the result of the SQL query, formatted as JSON
+     */
+    ServiceResult getResult(ServiceRequest serviceRequest);
+}
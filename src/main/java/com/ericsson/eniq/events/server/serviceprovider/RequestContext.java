@@ -0,0 +1,105 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.logging.performance.ServicesPerformanceThreadLocalHolder;
+
+/**
+ * Identity and timing of a single client request, created once by the resource layer and passed explicitly through
+ * the service layer - see {@link ContextAwareService}.
+ * <p/>
+ * The context is immutable, so it can be handed to any thread working on the request, eg the legs of a parallel
+ * query, a batch entry or a background export job. The performance trace still reads the request timing from
+ * {@link ServicesPerformanceThreadLocalHolder}, so {@link #bindToCurrentThread()} copies the context into the thread
+ * locals of the thread that produces the trace. Nothing else should read those thread locals.
+ */
+public final class RequestContext {
+
+    private final String requestId;
+
+    private final String requestUri;
+
+    private final List<String> ipAddresses;
+
+    private final long startTime;
+
+    /**
+     * @param requestId
+     *            request id from the http header, can be null
+     * @param requestUri
+     *            URI of the request, can be null
+     * @param ipAddresses
+     *            ip address(es) from the http header, can be null
+     * @param startTime
+     *            time the request was received, in milliseconds since the epoch
+     */
+    public RequestContext(final String requestId, final String requestUri, final List<String> ipAddresses, final long startTime) {
+        this.requestId = requestId;
+        this.requestUri = requestUri;
+        this.ipAddresses = ipAddresses == null ? Collections.<String> emptyList() : Collections.unmodifiableList(new ArrayList<String>(
+                ipAddresses));
+        this.startTime = startTime;
+    }
+
+    /**
+     * Create the context of a request that was started now, for callers of the service layer that do not create the
+     * context themselves
+     * 
+     * @param serviceProviderParameters
+     *            parameters mapped by the resource layer
+     * @return context holding the request id, URI and ip addresses found in the parameters
+     */
+    public static RequestContext fromParameters(final MultivaluedMap<String, String> serviceProviderParameters) {
+        return new RequestContext(serviceProviderParameters.getFirst(REQUEST_ID), serviceProviderParameters.getFirst(REQUEST_URI),
+                serviceProviderParameters.get(IP_ADDRESS_PARAM), System.currentTimeMillis());
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getRequestUri() {
+        return requestUri;
+    }
+
+    public List<String> getIpAddresses() {
+        return ipAddresses;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Compatibility bridge for the performance trace: copy the request timing and URI into the thread locals of the
+     * current thread. The thread must call {@link ServicesPerformanceThreadLocalHolder#releaseAllResources()} when it
+     * has written the trace.
+     */
+    public void bindToCurrentThread() {
+        ServicesPerformanceThreadLocalHolder.setRequestStartTime(startTime);
+        ServicesPerformanceThreadLocalHolder.setUriInfo(requestUri);
+    }
+
+    @Override
+    public String toString() {
+        return "RequestContext[requestId=" + requestId + ", requestUri=" + requestUri + ", ipAddresses=" + ipAddresses + ", startTime="
+                + startTime + "]";
+    }
+}
@@ -0,0 +1,78 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import com.ericsson.eniq.events.server.common.MediaTypeConstants;
+
+/**
+ * Format of the response to a request, resolved once from the media types the client accepts
+ */
+public enum ResponseMediaType {
+
+    JSON(MediaType.APPLICATION_JSON), CSV(MediaTypeConstants.APPLICATION_CSV);
+
+    private static final String CSV_TYPE = "application";
+
+    private static final String CSV_SUBTYPE = "csv";
+
+    private final String mediaType;
+
+    private ResponseMediaType(final String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return the media type as held in the {@link com.ericsson.eniq.events.server.common.ApplicationConstants#MEDIA_TYPE}
+     *         parameter
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param acceptableMediaTypes
+     *            media types accepted by the client, can be null
+     * @return CSV if the client accepts CSV, otherwise JSON
+     */
+    public static ResponseMediaType fromAcceptableMediaTypes(final List<MediaType> acceptableMediaTypes) {
+        if (acceptableMediaTypes != null) {
+            for (final MediaType acceptableMediaType : acceptableMediaTypes) {
+                if (CSV_TYPE.equalsIgnoreCase(acceptableMediaType.getType()) && CSV_SUBTYPE.equalsIgnoreCase(acceptableMediaType.getSubtype())) {
+                    return CSV;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * @param mediaTypes
+     *            values of the {@link com.ericsson.eniq.events.server.common.ApplicationConstants#MEDIA_TYPE} parameter,
+     *            can be null
+     * @return CSV if one of the values is CSV, otherwise JSON
+     */
+    public static ResponseMediaType fromParameterValues(final List<String> mediaTypes) {
+        if (mediaTypes != null) {
+            for (final String mediaType : mediaTypes) {
+                if (mediaType != null && mediaType.regionMatches(true, 0, MediaTypeConstants.APPLICATION_CSV, 0,
+                        MediaTypeConstants.APPLICATION_CSV.length())) {
+                    return CSV;
+                }
+            }
+        }
+        return JSON;
+    }
+}
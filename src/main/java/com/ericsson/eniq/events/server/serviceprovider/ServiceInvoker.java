@@ -0,0 +1,45 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response;
+
+/**
+ * Calls a {@link Service} with the {@link ServiceRequest}, if the service accepts one, otherwise with its parameter map
+ */
+public final class ServiceInvoker {
+
+    private ServiceInvoker() {
+    }
+
+    public static String getData(final Service service, final ServiceRequest serviceRequest) {
+        if (service instanceof ContextAwareService) {
+            return ((ContextAwareService) service).getData(serviceRequest);
+        }
+        return service.getData(serviceRequest.getParameters());
+    }
+
+    public static ServiceResult getResult(final Service service, final ServiceRequest serviceRequest) {
+        if (service instanceof ContextAwareService) {
+            return ((ContextAwareService) service).getResult(serviceRequest);
+        }
+        return new ServiceResult(service.getData(serviceRequest.getParameters()));
+    }
+
+    public static Response getDataAsCSV(final Service service, final ServiceRequest serviceRequest, final HttpServletResponse response) {
+        if (service instanceof ContextAwareService) {
+            return ((ContextAwareService) service).getDataAsCSV(serviceRequest, response);
+        }
+        return service.getDataAsCSV(serviceRequest.getParameters(), response);
+    }
+}
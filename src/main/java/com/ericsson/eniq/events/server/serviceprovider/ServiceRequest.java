@@ -0,0 +1,207 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * A request to the service layer, with the parameters every request carries parsed once up front.
+ * <p/>
+ * The service base classes read the response media type, tz offset and request identity from here rather than looking
+ * them up and parsing them from the parameter map at each step of the pipeline. The parameter map remains available
+ * through {@link #getParameters()} for the service specific hooks, which take the map. The parsed values are fixed
+ * when the request is created - later changes to the map do not change them.
+ * <p/>
+ * A request never changes once created. What the resource layer knows about the client beyond the parameters (the
+ * encodings it accepts, the ETags it already has) are fields of the request, set with the with... methods, which
+ * return a copy; what the service works out about its result is returned in the {@link ServiceResult}. Neither is
+ * passed through the parameter map.
+ */
+public final class ServiceRequest {
+
+    private final RequestContext context;
+
+    private final MultivaluedMap<String, String> parameters;
+
+    private final ResponseMediaType mediaType;
+
+    private final String tzOffset;
+
+    private final Integer tzOffsetInMinutes;
+
+    private final boolean acceptsGzip;
+
+    private final String ifNoneMatch;
+
+    /**
+     * @param context
+     *            identity and timing of the request
+     * @param parameters
+     *            parameters mapped by the resource layer
+     * @param mediaType
+     *            format of the response
+     */
+    public ServiceRequest(final RequestContext context, final MultivaluedMap<String, String> parameters, final ResponseMediaType mediaType) {
+        this(context, parameters, mediaType, false);
+    }
+
+    /**
+     * @param context
+     *            identity and timing of the request
+     * @param parameters
+     *            parameters mapped by the resource layer
+     * @param mediaType
+     *            format of the response
+     * @param acceptsGzip
+     *            true if the client accepts a gzip encoded response
+     */
+    public ServiceRequest(final RequestContext context, final MultivaluedMap<String, String> parameters, final ResponseMediaType mediaType,
+                          final boolean acceptsGzip) {
+        this(context, parameters, mediaType, acceptsGzip, null);
+    }
+
+    private ServiceRequest(final RequestContext context, final MultivaluedMap<String, String> parameters, final ResponseMediaType mediaType,
+                           final boolean acceptsGzip, final String ifNoneMatch) {
+        this.context = context;
+        this.parameters = parameters;
+        this.mediaType = mediaType;
+        this.tzOffset = parameters.getFirst(TZ_OFFSET);
+        this.tzOffsetInMinutes = parseTzOffset(tzOffset);
+        this.acceptsGzip = acceptsGzip;
+        this.ifNoneMatch = ifNoneMatch;
+    }
+
+    /**
+     * @param acceptsGzip
+     *            true if the client accepts a gzip encoded response
+     * @return a copy of this request with the given encoding preference
+     */
+    public ServiceRequest withAcceptsGzip(final boolean acceptsGzip) {
+        return new ServiceRequest(context, parameters, mediaType, acceptsGzip, ifNoneMatch);
+    }
+
+    /**
+     * @param ifNoneMatch
+     *            value of the client's If-None-Match header, null if it has none
+     * @return a copy of this request with the given ETags, see {@link ConditionalRequest}
+     */
+    public ServiceRequest withIfNoneMatch(final String ifNoneMatch) {
+        return new ServiceRequest(context, parameters, mediaType, acceptsGzip, ifNoneMatch);
+    }
+
+    /**
+     * Parse a request from the parameters mapped by the resource layer, for callers of the service layer that only have
+     * the parameter map
+     *
+     * @param parameters
+     *            parameters mapped by the resource layer
+     * @return the request, started now
+     */
+    public static ServiceRequest fromParameters(final MultivaluedMap<String, String> parameters) {
+        return fromParameters(RequestContext.fromParameters(parameters), parameters);
+    }
+
+    /**
+     * @param context
+     *            identity and timing of the request
+     * @param parameters
+     *            parameters mapped by the resource layer
+     * @return the request, with the media type resolved from the media type parameter
+     */
+    public static ServiceRequest fromParameters(final RequestContext context, final MultivaluedMap<String, String> parameters) {
+        return new ServiceRequest(context, parameters, ResponseMediaType.fromParameterValues(parameters.get(MEDIA_TYPE)));
+    }
+
+    /**
+     * Parse a tz offset of the form +hhmm or -hhmm
+     *
+     * @return the offset in minutes, null if the offset is null or not of that form
+     */
+    public static Integer parseTzOffset(final String tzOffset) {
+        if (tzOffset == null || tzOffset.length() != 5) {
+            return null;
+        }
+        final char sign = tzOffset.charAt(0);
+        if (sign != '+' && sign != '-') {
+            return null;
+        }
+        int digits = 0;
+        for (int i = 1; i < 5; i++) {
+            final char digit = tzOffset.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return null;
+            }
+            digits = digits * 10 + digit - '0';
+        }
+        final int minutes = digits / 100 * 60 + digits % 100;
+        return sign == '-' ? -minutes : minutes;
+    }
+
+    public RequestContext getContext() {
+        return context;
+    }
+
+    public String getRequestId() {
+        return context.getRequestId();
+    }
+
+    /**
+     * @return the parameter map of the request, for the service specific hooks
+     */
+    public MultivaluedMap<String, String> getParameters() {
+        return parameters;
+    }
+
+    public ResponseMediaType getMediaType() {
+        return mediaType;
+    }
+
+    public boolean isCSV() {
+        return mediaType == ResponseMediaType.CSV;
+    }
+
+    /**
+     * @return true if the client accepts a gzip encoded response
+     */
+    public boolean acceptsGzip() {
+        return acceptsGzip;
+    }
+
+    /**
+     * @return the ETags the client already has results for, as sent in the If-None-Match header, null if it has none
+     */
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    /**
+     * @return the tz offset as sent by the client (+hhmm or -hhmm), can be null
+     */
+    public String getTzOffset() {
+        return tzOffset;
+    }
+
+    /**
+     * @return the tz offset in minutes, null if the request has no valid tz offset
+     */
+    public Integer getTzOffsetInMinutes() {
+        return tzOffsetInMinutes;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceRequest[context=" + context + ", mediaType=" + mediaType + ", tzOffset=" + tzOffset + ", acceptsGzip=" + acceptsGzip + ", ifNoneMatch="
+                + ifNoneMatch + "]";
+    }
+}
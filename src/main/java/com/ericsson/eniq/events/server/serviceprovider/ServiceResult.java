@@ -0,0 +1,165 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+
+/**
+ * The JSON result of a {@link ContextAwareService}, with what the resource layer needs to respond with it.
+ * <p/>
+ * When the request accepts gzip encoding and the result was served from the result cache, the result is also available
+ * in the gzip compressed form it is cached in, so that the resource layer can send it without compressing it again.
+ * Such a result is only decompressed if its text is asked for. The result cache only holds success results, so a result
+ * available compressed is always a success result.
+ * <p/>
+ * A service that can identify its result without running the query returns its ETag, see {@link ConditionalRequest}.
+ */
+public final class ServiceResult {
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private String result;
+
+    private final byte[] gzippedResult;
+
+    private final String eTag;
+
+    /**
+     * @param result
+     *            the JSON result
+     */
+    public ServiceResult(final String result) {
+        this(result, null, null);
+    }
+
+    /**
+     * @param result
+     *            the JSON result, null if it is only available compressed
+     * @param gzippedResult
+     *            the result as a gzip stream, null if not available
+     * @param eTag
+     *            ETag of the result (without quotes), null if not known
+     */
+    public ServiceResult(final String result, final byte[] gzippedResult, final String eTag) {
+        this.result = result;
+        this.gzippedResult = gzippedResult;
+        this.eTag = eTag;
+    }
+
+    /**
+     * @return the JSON result, decompressed from the gzip stream if the service only has it compressed
+     */
+    public String getResult() {
+        if (result == null && gzippedResult != null) {
+            result = decompress(gzippedResult);
+        }
+        return result;
+    }
+
+    /**
+     * @return the result as a gzip stream, null if it is not available compressed
+     */
+    public byte[] getGzippedResult() {
+        return gzippedResult;
+    }
+
+    /**
+     * @return the ETag of the result (without quotes), null if the service does not know it
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    private static String decompress(final byte[] gzipped) {
+        try {
+            final InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped), BUFFER_SIZE);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(gzipped.length * 8);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString(ENCODING);
+        } catch (final IOException e) {
+            throw new ServiceException("Could not decompress result: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Collects the parts of the result as the service produces it
+     */
+    public static final class Builder {
+
+        private String gzippedSource;
+
+        private byte[] gzippedResult;
+
+        private String eTag;
+
+        private boolean compressedOnly;
+
+        /**
+         * @param source
+         *            the result the gzip stream holds
+         * @param gzipped
+         *            the gzip stream
+         */
+        public void setGzippedResult(final String source, final byte[] gzipped) {
+            gzippedSource = source;
+            gzippedResult = gzipped;
+            compressedOnly = false;
+        }
+
+        /**
+         * Set a result the service only has compressed. The service passes the returned placeholder on in place of the
+         * result, and must not read or change it
+         *
+         * @param gzipped
+         *            the gzip stream
+         * @return placeholder of the result, for {@link #build(String)}
+         */
+        public String setGzippedResult(final byte[] gzipped) {
+            setGzippedResult(new String(), gzipped);
+            compressedOnly = true;
+            return gzippedSource;
+        }
+
+        /**
+         * @param eTag
+         *            ETag of the result (without quotes)
+         */
+        public void setETag(final String eTag) {
+            this.eTag = eTag;
+        }
+
+        /**
+         * @param result
+         *            the final JSON result
+         * @return the service result. The gzip stream is only kept if the final result is the one it holds, ie the
+         *         result was not changed after it was read from the cache
+         */
+        public ServiceResult build(final String result) {
+            if (result != null && result == gzippedSource) {
+                return new ServiceResult(compressedOnly ? null : result, gzippedResult, eTag);
+            }
+            return new ServiceResult(result, null, eTag);
+        }
+    }
+}
@@ -16,6 +16,7 @@ import static com.ericsson.eniq.events.server.logging.performance.ServicesPerfor
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 
 import javax.ejb.EJB;
@@ -30,9 +31,35 @@ import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPol
 import com.ericsson.eniq.events.server.kpi.KPI;
 import com.ericsson.eniq.events.server.logging.ServicesLogger;
 import com.ericsson.eniq.events.server.logging.performance.ServicePerformanceTraceLogger;
-import com.ericsson.eniq.events.server.logging.performance.ServicesPerformanceThreadLocalHolder;
 import com.ericsson.eniq.events.server.query.*;
-import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.*;
+import com.ericsson.eniq.events.server.serviceprovider.impl.aggregation.AggregationCostModel;
+import com.ericsson.eniq.events.server.serviceprovider.impl.aggregation.AggregationLevelDecision;
+import com.ericsson.eniq.events.server.serviceprovider.impl.binding.BindParameterType;
+import com.ericsson.eniq.events.server.serviceprovider.impl.binding.RequestParameterBinder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.cache.ResultCache;
+import com.ericsson.eniq.events.server.serviceprovider.impl.datatiering.DataTieredColumnMerge;
+import com.ericsson.eniq.events.server.serviceprovider.impl.datatiering.DataTieredLeg;
+import com.ericsson.eniq.events.server.serviceprovider.impl.datatiering.DataTieredResultMerger;
+import com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs.ExclusiveTACFilter;
+import com.ericsson.eniq.events.server.serviceprovider.impl.hedging.HedgedQuery;
+import com.ericsson.eniq.events.server.serviceprovider.impl.hedging.HedgedQueryExecutor;
+import com.ericsson.eniq.events.server.serviceprovider.impl.imsifilter.IMSIExistenceIndex;
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.*;
+import com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.AdaptiveLoadBalancingPolicyService;
+import com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.AlternativeReaderSelector;
+import com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.QueryExecutionListener;
+import com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.WorkloadReaderSelector;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONParser;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.*;
+import com.ericsson.eniq.events.server.serviceprovider.impl.prefetch.DrillDownPrefetch;
+import com.ericsson.eniq.events.server.serviceprovider.impl.prefetch.DrillDownPrefetcher;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawTableAvailabilityIndex;
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.*;
+import com.ericsson.eniq.events.server.serviceprovider.impl.watermark.LoadWatermarkService;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadIsolation;
 import com.ericsson.eniq.events.server.services.DataService;
 import com.ericsson.eniq.events.server.services.StreamingDataService;
 import com.ericsson.eniq.events.server.services.datatiering.DataTieringHandler;
@@ -57,7 +84,16 @@ import com.ericsson.eniq.events.server.utils.techpacks.*;
  * 
  * @author EEMECOY
  */
-public abstract class GenericService implements Service, GenericServiceInterface {
+public abstract class GenericService implements ContextAwareService, GenericServiceInterface {
+
+    static final String REDUCED_RESOLUTION = "reducedResolution";
+
+    static final String AGGREGATION_LEVEL = "aggregationLevel";
+
+    /**
+     * Request parameter limiting a ranking to its top rows
+     */
+    static final String MAX_ROWS_PARAMETER = "maxRows";
 
     @EJB
     private ServicePerformanceTraceLogger performanceTrace;
@@ -74,7 +110,7 @@ public abstract class GenericService implements Service, GenericServiceInterface
     @EJB
     private DataService dataService;
 
-    @EJB
+    @EJB(beanInterface = AdaptiveLoadBalancingPolicyService.class)
     private LoadBalancingPolicyService loadBalancingPolicyService;
 
     @EJB
@@ -92,9 +128,6 @@ public abstract class GenericService implements Service, GenericServiceInterface
     @EJB
     protected TechPackListFactory techPackListFactory;
 
-    @EJB
-    private MediaTypeHandler mediaTypeHandler;
-
     @EJB
     private TechPackDescriptionMappingsService techPackDescriptionMappingsService;
 
@@ -110,17 +143,91 @@ public abstract class GenericService implements Service, GenericServiceInterface
     @EJB
     private DataTieringHandler dataTieringHandler;
 
+    @EJB
+    private FairQueryScheduler fairQueryScheduler;
+
+    @EJB
+    private ResultCache resultCache;
+
+    @EJB
+    private LoadWatermarkService loadWatermarkService;
+
+    @EJB
+    private QueryStatisticsRegistry queryStatisticsRegistry;
+
+    @EJB
+    private PipelineFlightRecorder pipelineFlightRecorder;
+
+    @EJB
+    private RawTableAvailabilityIndex rawTableAvailabilityIndex;
+
+    @EJB
+    private WorkloadIsolation workloadIsolation;
+
+    @EJB
+    private DrillDownPrefetcher drillDownPrefetcher;
+
+    @EJB
+    private HedgedQueryExecutor hedgedQueryExecutor;
+
+    @EJB
+    private ParallelQueryExecutor parallelQueryExecutor;
+
+    @EJB
+    private ExclusiveTACFilter exclusiveTACFilter;
+
+    @EJB
+    private IMSIExistenceIndex imsiExistenceIndex;
+
+    private KPIEvaluationEngine kpiEvaluationEngine = new KPIEvaluationEngine();
+
+    private AggregationCostModel aggregationCostModel = new AggregationCostModel();
+
+    private DataTieredResultMerger dataTieredResultMerger = new DataTieredResultMerger();
+
     @Override
     public String getData(final MultivaluedMap<String, String> parameters) {
-        return getAndRunQuery(parameters, null);
+        return getData(ServiceRequest.fromParameters(parameters));
     }
 
     @Override
     public Response getDataAsCSV(final MultivaluedMap<String, String> parameters, final HttpServletResponse response) {
-        getAndRunQuery(parameters, response);
+        return getDataAsCSV(ServiceRequest.fromParameters(parameters), response);
+    }
+
+    @Override
+    public String getData(final ServiceRequest serviceRequest) {
+        // the ETag and the gzip stream are not returned to callers of getData, so they cannot be answered with not modified or a gzipped result
+        return getAndRunQuery(serviceRequest.withIfNoneMatch(null).withAcceptsGzip(false), null, new ServiceResult.Builder(), false);
+    }
+
+    @Override
+    public ServiceResult getResult(final ServiceRequest serviceRequest) {
+        final ServiceResult.Builder resultBuilder = new ServiceResult.Builder();
+        return resultBuilder.build(getAndRunQuery(serviceRequest, null, resultBuilder, false));
+    }
+
+    @Override
+    public Response getDataAsCSV(final ServiceRequest serviceRequest, final HttpServletResponse response) {
+        final String result = getAndRunQuery(serviceRequest, response, new ServiceResult.Builder(), false);
+        if (result != null && !GridJSONParser.isSuccessResult(result)) {
+            sendCSVError(response, result);
+        }
         return csvResponseBuilder.buildHttpResponseForCSVData();
     }
 
+    /**
+     * Requests that fail before their query is streamed (eg validation or licensing) are reported through the response, so that clients and export
+     * jobs do not take the empty CSV for a complete result
+     */
+    private void sendCSVError(final HttpServletResponse response, final String jsonError) {
+        try {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, jsonError);
+        } catch (final IOException e) {
+            ServicesLogger.error(getClass().getName(), "sendCSVError", e);
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -135,34 +242,78 @@ public abstract class GenericService implements Service, GenericServiceInterface
     }
 
     /**
-     * @param parameters
-     *            parameters from the resource layer
+     * @param serviceRequest
+     *            the request, holding the parameters from the resource layer
      * @param httpServletResponse
      *            response object (can be null, used when streaming csv response)
+     * @param resultBuilder
+     *            collects what the resource layer needs to respond with the json response
+     * @param prefetch
+     *            true if the request is a drill down run by the {@link DrillDownPrefetcher}
      * @return json response, null if request is for csv data as this is streamed to the response
      */
-    private String getAndRunQuery(final MultivaluedMap<String, String> parameters, final HttpServletResponse httpServletResponse) {
+    private String getAndRunQuery(final ServiceRequest serviceRequest, final HttpServletResponse httpServletResponse,
+                                  final ServiceResult.Builder resultBuilder, final boolean prefetch) {
+        final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+        serviceRequest.getContext().bindToCurrentThread();
+        // the running stage is stopped in the finally block when the request returns early or fails
+        PipelineStageTimer stageTimer = null;
         try {
+            stageTimer = startStage(PipelineStage.VALIDATION, serviceRequest);
             final String errorMessage = getAndCheckRequiredParameters(parameters);
             if (StringUtils.isNotEmpty(errorMessage)) {
                 return errorMessage;
             }
-            final List<String> licensedTechPacks = techPackLicensingService.getLicensedTechPacks(getApplicableTechPacks(parameters));
+            stageTimer = nextStage(stageTimer, PipelineStage.LICENSING, serviceRequest);
+            final List<String> licensedTechPacks = getLicensedTechPacks(parameters);
             if (licensedTechPacks.isEmpty()) {
                 return getJSONErrorForNoLicensedTechPacksPresent(parameters);
             }
+            stageTimer = nextStage(stageTimer, PipelineStage.TIME_TRANSLATION, serviceRequest);
             final FormattedDateTimeRange formattedDateTimeRange = translateDateTimeParameters(parameters, licensedTechPacks);
-            final TechPackList techPackList = createTechPackList(formattedDateTimeRange, parameters);
+            stageTimer = nextStage(stageTimer, PipelineStage.TECH_PACK_RESOLUTION, serviceRequest);
+            final AggregationLevelDecision aggregationLevelDecision = selectAggregationLevel(formattedDateTimeRange, parameters, licensedTechPacks);
+            if (isRawDataKnownToBeMissing(parameters, formattedDateTimeRange, aggregationLevelDecision)
+                    || isIMSIKnownToBeAbsent(parameters, formattedDateTimeRange)) {
+                return JSONUtils.JSONEmptySuccessResult();
+            }
+            final TechPackList techPackList = aggregationLevelDecision == null ? createTechPackList(formattedDateTimeRange, parameters)
+                    : createTechPackListWithAggregation(formattedDateTimeRange, parameters, aggregationLevelDecision.getAggregation());
+            stageTimer = nextStage(stageTimer, null, serviceRequest);
             if (shouldReportErrorAboutRawTables(techPackList)) {
                 return JSONUtils.JSONEmptySuccessResult();
             }
 
+            final EventDataSourceType aggregation = getAggregation(formattedDateTimeRange, aggregationLevelDecision);
+            final QueryFingerprint queryFingerprint = new QueryFingerprint(getTemplatePath(), getDrillDownTypeForService(parameters),
+                    String.valueOf(aggregation));
+            final WorkloadClass workloadClass = prefetch ? WorkloadClass.PREFETCH : WorkloadClass.classify(aggregation, serviceRequest.isCSV());
+            if (shouldSplitDataTieredQuery(serviceRequest, formattedDateTimeRange, techPackList)) {
+                final String result = filterExclusiveTACs(serviceRequest,
+                        logAndRunDataTieredLegs(serviceRequest, formattedDateTimeRange, techPackList, queryFingerprint, workloadClass));
+                recordRowsForCostModel(result, serviceRequest, formattedDateTimeRange, licensedTechPacks, aggregationLevelDecision);
+                scheduleDrillDownPrefetch(serviceRequest, workloadClass, result);
+                return markReducedResolution(result, aggregationLevelDecision);
+            }
+
+            stageTimer = startStage(PipelineStage.SQL_GENERATION, serviceRequest);
             final String query = getQuery(parameters, formattedDateTimeRange, techPackList);
             if (StringUtils.isBlank(query)) {
                 return JSONUtils.JSONBuildFailureError();
             }
-            return logAndRunQuery(httpServletResponse, parameters, formattedDateTimeRange, query);
+            final Map<String, QueryParameter> queryParameters = getQueryParameters(parameters, formattedDateTimeRange);
+            stageTimer = nextStage(stageTimer, null, serviceRequest);
+            if (isNotModified(serviceRequest, query, queryParameters, techPackList, aggregation, resultBuilder)) {
+                return JSONUtils.JSONEmptySuccessResult();
+            }
+            final String result = filterExclusiveTACs(serviceRequest,
+                    logAndRunQuery(serviceRequest, httpServletResponse, queryParameters, query, queryFingerprint, workloadClass, resultBuilder,
+                            isResultReadAfterQuery(serviceRequest, workloadClass, aggregationLevelDecision)));
+            recordRowsForCostModel(result, serviceRequest, formattedDateTimeRange, licensedTechPacks, aggregationLevelDecision);
+            scheduleDrillDownPrefetch(serviceRequest, workloadClass, result);
+            return markReducedResolution(result, aggregationLevelDecision);
         } finally {
+            stopStage(stageTimer, 0, 0);
             postQueryTracing();
             releaseAllResources();
         }
@@ -178,29 +329,563 @@ public abstract class GenericService implements Service, GenericServiceInterface
         return parameterChecker.performValidityChecking(requiredParameters, parameters, getApplicableTechPacks(parameters));
     }
 
+    private List<String> getLicensedTechPacks(final MultivaluedMap<String, String> parameters) {
+        final BatchRequestScope batchRequestScope = BatchRequestScope.getCurrentScope();
+        if (batchRequestScope != null) {
+            return batchRequestScope.getLicensedTechPacks(getApplicableTechPacks(parameters), techPackLicensingService);
+        }
+        return techPackLicensingService.getLicensedTechPacks(getApplicableTechPacks(parameters));
+    }
+
     private String getJSONErrorForNoLicensedTechPacksPresent(final MultivaluedMap<String, String> requestParameters) {
         final List<String> featureDescriptions = techPackDescriptionMappingsService
                 .getFeatureDescriptionsForTechPacks(getApplicableTechPacks(requestParameters));
         return JSONUtils.JSONNoLicensedFeaturesError(featureDescriptions);
     }
 
-    private String logAndRunQuery(final HttpServletResponse httpServletResponse, final MultivaluedMap<String, String> parameters,
-                                  final FormattedDateTimeRange formattedDateTimeRange, final String query) {
-        final Map<String, QueryParameter> queryParameters = getQueryParameters(parameters, formattedDateTimeRange);
+    /**
+     * Work out the ETag of the result from the query, its parameters and the load watermark of the tables it reads, see {@link ConditionalRequest}.
+     * The ETag is passed to the resource layer in the result
+     * 
+     * @return true if the client already has the result, in which case the query is not run
+     */
+    private boolean isNotModified(final ServiceRequest serviceRequest, final String query, final Map<String, QueryParameter> queryParameters,
+                                  final TechPackList techPackList, final EventDataSourceType aggregation, final ServiceResult.Builder resultBuilder) {
+        if (loadWatermarkService == null || serviceRequest.isCSV()) {
+            return false;
+        }
+        final long loadWatermark = loadWatermarkService.getLoadWatermark(techPackList, aggregation);
+        if (loadWatermark == LoadWatermarkService.UNKNOWN) {
+            return false;
+        }
+        final String resultIdentity = ResultCache.createKey(getResultIdentityName(serviceRequest), query, queryParameters,
+                serviceRequest.getTzOffset());
+        final String eTag = ConditionalRequest.createETag(resultIdentity, loadWatermark);
+        resultBuilder.setETag(eTag);
+        return ConditionalRequest.matches(serviceRequest.getIfNoneMatch(), eTag);
+    }
+
+    /**
+     * Requests that share a query but have exclusive TACs filtered from their result in memory have a different result, which changes when the
+     * exclusive TACs change
+     */
+    private String getResultIdentityName(final ServiceRequest serviceRequest) {
+        if (shouldFilterExclusiveTACsInMemory(serviceRequest.getParameters())) {
+            return getClass().getName() + "#exclusiveTACsFiltered" + exclusiveTACFilter.getVersion();
+        }
+        return getClass().getName();
+    }
+
+    /**
+     * @return the aggregation level the query will run against
+     */
+    private EventDataSourceType getAggregation(final FormattedDateTimeRange formattedDateTimeRange,
+                                               final AggregationLevelDecision aggregationLevelDecision) {
+        return aggregationLevelDecision == null ? dateTimeHelper.getEventDataSourceType(formattedDateTimeRange) : aggregationLevelDecision
+                .getAggregation();
+    }
+
+    private String logAndRunQuery(final ServiceRequest serviceRequest, final HttpServletResponse httpServletResponse,
+                                  final Map<String, QueryParameter> queryParameters, final String query, final QueryFingerprint queryFingerprint,
+                                  final WorkloadClass workloadClass, final ServiceResult.Builder resultBuilder, final boolean resultReadAfterQuery) {
+        final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
         auditService.logAuditEntryForQuery(parameters, query, queryParameters);
-        if (mediaTypeHandler.isMediaTypeApplicationCSV(parameters.get(MEDIA_TYPE))) {
-            streamDataAsCSV(parameters, parameters.getFirst(TZ_OFFSET), getTimeColumnIndices(), query, httpServletResponse, queryParameters);
+        final String resultCacheKey = getResultCacheKey(serviceRequest, query, queryParameters, workloadClass);
+        if (resultCacheKey != null) {
+            final String cachedResult = getCachedResult(serviceRequest, resultCacheKey, resultBuilder, resultReadAfterQuery);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+        }
+        String result;
+        acquireQuerySlot(parameters, workloadClass);
+        try {
+            result = runQueryOnLoadBalancedReader(serviceRequest, httpServletResponse, query, queryParameters, queryFingerprint, workloadClass,
+                    getLoadBalancingPolicy(parameters, workloadClass));
+        } finally {
+            releaseQuerySlot(workloadClass);
+        }
+        if (isInMemoryKPIService() && !serviceRequest.isCSV()) {
+            result = evaluateInMemoryKPIs(result);
+        }
+        if (resultCacheKey != null) {
+            final boolean prefetch = workloadClass == WorkloadClass.PREFETCH;
+            final int timeToLiveInSeconds = prefetch ? drillDownPrefetcher.getTimeToLiveInSeconds() : getResultCacheTimeToLiveInSeconds(parameters);
+            if (timeToLiveInSeconds > 0) {
+                resultCache.put(resultCacheKey, result, timeToLiveInSeconds);
+                if (prefetch) {
+                    drillDownPrefetcher.recordPrefetch(getClass().getName(), timeToLiveInSeconds);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clients that accept gzip encoding are given the cached result in the gzip form it is cached in, see {@link ServiceResult}. The result is only
+     * decompressed if it is read or changed once the query has run, otherwise the placeholder of the compressed result is returned
+     * 
+     * @return the cached result, null if not cached
+     */
+    private String getCachedResult(final ServiceRequest serviceRequest, final String resultCacheKey, final ServiceResult.Builder resultBuilder,
+                                   final boolean resultReadAfterQuery) {
+        if (!serviceRequest.acceptsGzip()) {
+            return resultCache.get(resultCacheKey);
+        }
+        final byte[] gzippedResult = resultCache.getGzipped(resultCacheKey);
+        if (gzippedResult == null) {
             return null;
         }
-        return runQuery(query, getRequestId(parameters), queryParameters, getLoadBalancingPolicy(parameters),
-                getServiceSpecificDataServiceParameters(parameters));
+        if (!resultReadAfterQuery) {
+            return resultBuilder.setGzippedResult(gzippedResult);
+        }
+        final String cachedResult = ResultCache.decompress(gzippedResult);
+        resultBuilder.setGzippedResult(cachedResult, gzippedResult);
+        return cachedResult;
     }
 
     /**
-     * This method sets up the appropriate headers etc for and executes streaming the csv data into the response.
+     * @return the key of the query's result in the result cache, or null if the result should not be cached. Results of services that are not
+     *         cached are only looked up while a drill down of the service that was prefetched may still be in the cache
+     */
+    private String getResultCacheKey(final ServiceRequest serviceRequest, final String query, final Map<String, QueryParameter> queryParameters,
+                                     final WorkloadClass workloadClass) {
+        if (resultCache == null || serviceRequest.isCSV()) {
+            return null;
+        }
+        if (workloadClass != WorkloadClass.PREFETCH && getResultCacheTimeToLiveInSeconds(serviceRequest.getParameters()) <= 0
+                && !(drillDownPrefetcher != null && drillDownPrefetcher.mayHavePrefetched(getClass().getName()))) {
+            return null;
+        }
+        return ResultCache.createKey(getClass().getName(), query, queryParameters, serviceRequest.getTzOffset());
+    }
+
+    private boolean isDrillDownPrefetchEnabled() {
+        return drillDownPrefetcher != null && drillDownPrefetcher.isEnabled();
+    }
+
+    /**
+     * Summary services (eg rankings) can override this method to have the drill downs of the top rows of their results run in the background,
+     * while the readers have spare capacity, and kept in the result cache for a short time. See {@link DrillDownPrefetcher}
+     * 
+     * @param parameters
+     *            parameters provided by resource layer
+     * @return the drill downs to prefetch, null (the default) to not prefetch
+     */
+    protected DrillDownPrefetch getDrillDownPrefetch(final MultivaluedMap<String, String> parameters) {
+        return null;
+    }
+
+    /**
+     * @return the drill downs to prefetch from the result of the request, null if none are prefetched
+     */
+    private DrillDownPrefetch getDrillDownPrefetchToSchedule(final ServiceRequest serviceRequest, final WorkloadClass workloadClass) {
+        if (!isDrillDownPrefetchEnabled() || serviceRequest.isCSV() || workloadClass == WorkloadClass.PREFETCH) {
+            return null;
+        }
+        return getDrillDownPrefetch(serviceRequest.getParameters());
+    }
+
+    /**
+     * @return true if the result is read or changed once the query has run, to filter exclusive TACs, record its rows for the cost model, mark its
+     *         resolution or prefetch its drill downs
+     */
+    private boolean isResultReadAfterQuery(final ServiceRequest serviceRequest, final WorkloadClass workloadClass,
+                                           final AggregationLevelDecision aggregationLevelDecision) {
+        return aggregationLevelDecision != null || shouldFilterExclusiveTACsInMemory(serviceRequest.getParameters())
+                || getDrillDownPrefetchToSchedule(serviceRequest, workloadClass) != null;
+    }
+
+    private void scheduleDrillDownPrefetch(final ServiceRequest serviceRequest, final WorkloadClass workloadClass, final String result) {
+        final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+        final DrillDownPrefetch drillDownPrefetch = getDrillDownPrefetchToSchedule(serviceRequest, workloadClass);
+        if (drillDownPrefetch == null || !GridJSONParser.isSuccessResult(result)) {
+            return;
+        }
+        final List<String[]> rows = GridJSONParser.parseRows(result);
+        for (int i = 0; i < rows.size() && i < drillDownPrefetch.getNumberOfRows(); i++) {
+            final MultivaluedMap<String, String> drillDownParameters = drillDownPrefetch.createDrillDownParameters(parameters, rows.get(i));
+            final boolean scheduled = drillDownPrefetcher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    getAndRunQuery(ServiceRequest.fromParameters(drillDownParameters), null, new ServiceResult.Builder(), true);
+                }
+            });
+            if (!scheduled) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Services whose results can be served slightly stale (eg aggregated views polled by dashboards) can override this method to have their JSON
+     * results cached in the shared {@link ResultCache}. Results are cached by query and query parameters, so requests for different nodes or time
+     * ranges never share a result.
+     * 
+     * @param parameters
+     *            parameters provided by resource layer
+     * @return how long results of this service may be served from the result cache, 0 (the default) to not cache them
+     */
+    protected int getResultCacheTimeToLiveInSeconds(final MultivaluedMap<String, String> parameters) {
+        return 0;
+    }
+
+    private String runQueryOnLoadBalancedReader(final ServiceRequest serviceRequest, final HttpServletResponse httpServletResponse,
+                                                final String query, final Map<String, QueryParameter> queryParameters,
+                                                final QueryFingerprint queryFingerprint, final WorkloadClass workloadClass,
+                                                final LoadBalancingPolicy loadBalancingPolicy) {
+        final boolean isCSV = serviceRequest.isCSV();
+        final PipelineStageTimer stageTimer = startStage(isCSV ? PipelineStage.STREAMING : PipelineStage.EXECUTION, serviceRequest);
+        final long slowQueryDuration = getSlowQueryDurationInNanos(queryFingerprint);
+        final long queryStartTime = System.nanoTime();
+        notifyQueryStarted(loadBalancingPolicy);
+        boolean queryFailed = true;
+        long rows = 0;
+        long bytes = 0;
+        CountingOutputStream csvOutput = null;
+        try {
+            String result = null;
+            if (isCSV) {
+                csvOutput = streamDataAsCSV(serviceRequest.getTzOffset(), getTimeColumnIndices(), query,
+                        httpServletResponse, queryParameters, loadBalancingPolicy);
+                if (csvOutput != null) {
+                    rows = Math.max(0, csvOutput.getLineCount() - 1);
+                    bytes = csvOutput.getByteCount();
+                }
+            } else {
+                result = runHedgedQuery(serviceRequest, query, queryParameters, workloadClass, loadBalancingPolicy, queryFingerprint,
+                        slowQueryDuration);
+                rows = GridJSONRowCounter.countRows(result);
+                bytes = result == null ? 0 : result.length();
+            }
+            queryFailed = false;
+            return result;
+        } finally {
+            // the time the client takes to read a CSV export is not the reader's
+            final long queryDuration = csvOutput == null ? System.nanoTime() - queryStartTime : csvOutput.getTimeToFirstWriteInNanos(queryStartTime);
+            notifyQueryFinished(loadBalancingPolicy, queryDuration, slowQueryDuration, queryFailed);
+            if (queryStatisticsRegistry != null) {
+                queryStatisticsRegistry.record(queryFingerprint, queryDuration, rows, bytes, queryFailed);
+            }
+            stopStage(stageTimer, rows, bytes);
+        }
+    }
+
+    /**
+     * Run the query on the selected reader, hedging it on a second reader if it is slow and the hedged query executor is deployed, see
+     * {@link HedgedQueryExecutor}
+     */
+    private String runHedgedQuery(final ServiceRequest serviceRequest, final String query, final Map<String, QueryParameter> queryParameters,
+                                  final WorkloadClass workloadClass, final LoadBalancingPolicy loadBalancingPolicy,
+                                  final QueryFingerprint queryFingerprint, final long slowQueryDuration) {
+        final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+        final Map<String, Object> serviceSpecificDataServiceParameters = getServiceSpecificDataServiceParameters(parameters);
+        if (hedgedQueryExecutor == null || !(loadBalancingPolicyService instanceof AlternativeReaderSelector)) {
+            return runQuery(query, serviceRequest.getRequestId(), queryParameters, loadBalancingPolicy, serviceSpecificDataServiceParameters);
+        }
+        final LoadBalancingPolicy alternativeReader = ((AlternativeReaderSelector) loadBalancingPolicyService).getAlternativeLoadBalancingPolicy(
+                parameters, workloadClass, loadBalancingPolicy);
+        return hedgedQueryExecutor.execute(queryFingerprint, loadBalancingPolicy, alternativeReader, new HedgedQuery() {
+            @Override
+            public String run(final LoadBalancingPolicy reader) {
+                if (reader == loadBalancingPolicy) {
+                    return runQuery(query, serviceRequest.getRequestId(), queryParameters, reader, serviceSpecificDataServiceParameters);
+                }
+                final long hedgeStartTime = System.nanoTime();
+                notifyQueryStarted(reader);
+                boolean hedgeFailed = true;
+                try {
+                    final String result = runQuery(query, serviceRequest.getRequestId(), queryParameters, reader,
+                            serviceSpecificDataServiceParameters);
+                    hedgeFailed = false;
+                    return result;
+                } finally {
+                    notifyQueryFinished(reader, System.nanoTime() - hedgeStartTime, slowQueryDuration, hedgeFailed);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return timer for the stage, null if the flight recorder is not deployed or is disabled
+     */
+    private PipelineStageTimer startStage(final PipelineStage stage, final ServiceRequest serviceRequest) {
+        return pipelineFlightRecorder == null ? null : pipelineFlightRecorder.start(stage, getTemplatePath(), serviceRequest.getRequestId());
+    }
+
+    private void stopStage(final PipelineStageTimer stageTimer, final long rows, final long bytes) {
+        if (pipelineFlightRecorder != null) {
+            pipelineFlightRecorder.stop(stageTimer, rows, bytes);
+        }
+    }
+
+    /**
+     * Stop the running stage, if any, and start the next one
+     * 
+     * @return timer of the next stage, null if nextStage is null or the stage is not recorded
+     */
+    private PipelineStageTimer nextStage(final PipelineStageTimer stageTimer, final PipelineStage nextStage, final ServiceRequest serviceRequest) {
+        stopStage(stageTimer, 0, 0);
+        return nextStage == null ? null : startStage(nextStage, serviceRequest);
+    }
+
+    /**
+     * Wait for a slot in the pool of the query's workload class, then for the fair query scheduler to admit this request's tenant within the
+     * slots left to the class (each if deployed). The workload slot is taken first so that a query waiting behind other queries of its class
+     * does not hold a scheduler slot. Prefetched drill downs are scheduled as the prefetcher's own tenant, not as the user they are run for
+     */
+    private void acquireQuerySlot(final MultivaluedMap<String, String> parameters, final WorkloadClass workloadClass) {
+        try {
+            if (workloadIsolation != null) {
+                workloadIsolation.acquire(workloadClass);
+            }
+            if (fairQueryScheduler != null) {
+                boolean admitted = false;
+                try {
+                    fairQueryScheduler.acquire(workloadClass == WorkloadClass.PREFETCH ? DrillDownPrefetcher.TENANT : FairQueryScheduler.getTenant(parameters),
+                            workloadClass);
+                    admitted = true;
+                } finally {
+                    if (!admitted && workloadIsolation != null) {
+                        workloadIsolation.release(workloadClass);
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while waiting to execute query");
+        }
+    }
+
+    private void releaseQuerySlot(final WorkloadClass workloadClass) {
+        if (fairQueryScheduler != null) {
+            fairQueryScheduler.release(workloadClass);
+        }
+        if (workloadIsolation != null) {
+            workloadIsolation.release(workloadClass);
+        }
+    }
+
+    private boolean shouldSplitDataTieredQuery(final ServiceRequest serviceRequest, final FormattedDateTimeRange formattedDateTimeRange,
+                                               final TechPackList techPackList) {
+        final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+        return !serviceRequest.isCSV() && splitDataTieredQuery(parameters) && isDataTieredService(parameters)
+                && dataTieringHandler.useDataTieringView(formattedDateTimeRange, true, techPackList.getTechPacks());
+    }
+
+    /**
+     * Generate the success and error legs of a data tiered query separately, run them concurrently and merge their results by key. Each leg
+     * takes its own query slot, as each runs its own statement. The error leg runs on the {@link ParallelQueryExecutor}, or after the
+     * success leg on the request thread if the executor has no thread free
+     * 
+     * @return merged json response
+     */
+    private String logAndRunDataTieredLegs(final ServiceRequest serviceRequest, final FormattedDateTimeRange formattedDateTimeRange,
+                                           final TechPackList techPackList, final QueryFingerprint queryFingerprint,
+                                           final WorkloadClass workloadClass) {
+        final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+        auditService.logAuditEntryForURI(parameters);
+        final String successQuery = getDataTieredLegQuery(parameters, formattedDateTimeRange, techPackList, DataTieredLeg.SUCCESS);
+        final String errorQuery = getDataTieredLegQuery(parameters, formattedDateTimeRange, techPackList, DataTieredLeg.ERROR);
+        if (StringUtils.isBlank(successQuery) || StringUtils.isBlank(errorQuery)) {
+            return JSONUtils.JSONBuildFailureError();
+        }
+        final Map<String, QueryParameter> queryParameters = getQueryParameters(parameters, formattedDateTimeRange);
+        auditService.logAuditEntryForQuery(parameters, successQuery, queryParameters);
+        auditService.logAuditEntryForQuery(parameters, errorQuery, queryParameters);
+        final LoadBalancingPolicy successLegReader = getLoadBalancingPolicy(parameters, workloadClass);
+        final LoadBalancingPolicy errorLegReader = getDataTieredErrorLegReader(parameters, workloadClass, successLegReader);
+        final Callable<String> errorLeg = new Callable<String>() {
+            @Override
+            public String call() {
+                return runDataTieredLeg(serviceRequest, errorQuery, queryParameters, getDataTieredLegFingerprint(queryFingerprint, DataTieredLeg.ERROR),
+                        workloadClass, errorLegReader);
+            }
+        };
+        final Future<String> errorResult = submitParallelQuery(errorLeg);
+        final String successResult;
+        try {
+            successResult = runDataTieredLeg(serviceRequest, successQuery, queryParameters,
+                    getDataTieredLegFingerprint(queryFingerprint, DataTieredLeg.SUCCESS), workloadClass, successLegReader);
+        } catch (final RuntimeException e) {
+            if (errorResult != null) {
+                errorResult.cancel(true);
+            }
+            throw e;
+        }
+        final String errorLegResult = errorResult == null ? runDataTieredLeg(serviceRequest, errorQuery, queryParameters,
+                getDataTieredLegFingerprint(queryFingerprint, DataTieredLeg.ERROR), workloadClass, errorLegReader) : getLegResult(errorResult);
+        return dataTieredResultMerger.merge(successResult, errorLegResult, getNumberOfGroupingColumns(), getDataTieredColumnMerges(parameters));
+    }
+
+    private String runDataTieredLeg(final ServiceRequest serviceRequest, final String query, final Map<String, QueryParameter> queryParameters,
+                                    final QueryFingerprint legFingerprint, final WorkloadClass workloadClass, final LoadBalancingPolicy reader) {
+        acquireQuerySlot(serviceRequest.getParameters(), workloadClass);
+        try {
+            return runQueryOnLoadBalancedReader(serviceRequest, null, query, queryParameters, legFingerprint, workloadClass, reader);
+        } finally {
+            releaseQuerySlot(workloadClass);
+        }
+    }
+
+    /**
+     * @return the result of the query run on the {@link ParallelQueryExecutor}, null if it is not deployed or has no thread free
+     */
+    private Future<String> submitParallelQuery(final Callable<String> query) {
+        if (parallelQueryExecutor == null) {
+            return null;
+        }
+        try {
+            return parallelQueryExecutor.submit(query);
+        } catch (final RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run the error leg on a different reader than the success leg where the load balancing policy service can select one, so that the legs do
+     * not compete for the same reader
+     */
+    private LoadBalancingPolicy getDataTieredErrorLegReader(final MultivaluedMap<String, String> parameters, final WorkloadClass workloadClass,
+                                                            final LoadBalancingPolicy successLegReader) {
+        if (!(loadBalancingPolicyService instanceof AlternativeReaderSelector)) {
+            return successLegReader;
+        }
+        final LoadBalancingPolicy alternativeReader = ((AlternativeReaderSelector) loadBalancingPolicyService).getAlternativeLoadBalancingPolicy(
+                parameters, workloadClass, successLegReader);
+        return alternativeReader == null ? successLegReader : alternativeReader;
+    }
+
+    /**
+     * The legs of a data tiered query are generated from the same template but are different queries, so are tracked separately
+     */
+    private QueryFingerprint getDataTieredLegFingerprint(final QueryFingerprint queryFingerprint, final DataTieredLeg leg) {
+        return new QueryFingerprint(queryFingerprint.getTemplatePath() + '#' + leg, queryFingerprint.getDrillDownType(),
+                queryFingerprint.getAggregationLevel());
+    }
+
+    private String getLegResult(final Future<String> legResult) {
+        try {
+            return legResult.get();
+        } catch (final InterruptedException e) {
+            legResult.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while waiting for data tiered query");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServiceException(e.getCause().getMessage());
+        }
+    }
+
+    private String getDataTieredLegQuery(final MultivaluedMap<String, String> parameters, final FormattedDateTimeRange formattedDateTimeRange,
+                                         final TechPackList techPackList, final DataTieredLeg leg) {
+        final MultivaluedMap<String, String> queryGenerationParameters = getQueryGenerationParameters(parameters);
+        final Map<String, Object> templateParameters = getServiceSpecificTemplateParameters(queryGenerationParameters, formattedDateTimeRange,
+                techPackList);
+        templateParameters.put(DataTieredLeg.TEMPLATE_PARAMETER, leg.name());
+        return queryGenerator.getQuery(new QueryGeneratorParameters(getTemplatePath(), queryGenerationParameters, templateParameters,
+                formattedDateTimeRange, getDrillDownTypeForService(parameters), getMaxAllowableSize(), techPackList,
+                getKPIListForQueryGeneration(), isExclusiveTacRelatedForQueryGeneration(parameters), true));
+    }
+
+    /**
+     * Services can override this method to have request parameter values passed to the database as bind parameters rather than inlined into
+     * the SQL, so that the same SQL is generated for every value and the driver's statement cache and the database's query plans are reused.
+     * <p/>
+     * Both the template and getServiceSpecificTemplateParameters() see each bound parameter with its value replaced by a placeholder, see
+     * {@link RequestParameterBinder}, so the template must use bound parameters unquoted.
+     * 
+     * @param parameters
+     *            parameters provided by resource layer
+     * @return the request parameters to bind, with the type each is bound as, empty (the default) to inline all values
+     */
+    protected Map<String, BindParameterType> getBoundRequestParameters(final MultivaluedMap<String, String> parameters) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @return the request parameters as seen by query generation, with the values of bound parameters replaced by placeholders
+     */
+    private MultivaluedMap<String, String> getQueryGenerationParameters(final MultivaluedMap<String, String> parameters) {
+        final Map<String, BindParameterType> boundRequestParameters = getBoundRequestParameters(parameters);
+        if (boundRequestParameters.isEmpty()) {
+            return parameters;
+        }
+        return new RequestParameterBinder(boundRequestParameters).getTemplateParameters(parameters);
+    }
+
+    /**
+     * Data tiered services (see isDataTieredService()) can override this method to have the success aggregate leg and the raw error leg of their
+     * data tiered queries generated and run as two separate queries, concurrently, instead of as a single combined statement. The legs are merged by
+     * key in the service layer, see {@link DataTieredResultMerger}.
+     * <p/>
+     * The template is generated once per leg, with the leg in the {@link DataTieredLeg#TEMPLATE_PARAMETER} template parameter, and each leg must
+     * return the same columns. Services that split their queries must also declare how each column is merged, see getDataTieredColumnMerges().
      * 
      * @param parameters
-     *            the parameters from resource layer
+     *            parameters provided by resource layer
+     * @return true to split data tiered queries, false (the default) to run them as a single statement
+     */
+    protected boolean splitDataTieredQuery(final MultivaluedMap<String, String> parameters) {
+        return false;
+    }
+
+    /**
+     * Services that split their data tiered queries (see splitDataTieredQuery()) override this method to declare how the values of the success and
+     * error legs are merged for each column after the grouping columns, eg {@link DataTieredColumnMerge#SUM} for event counts and
+     * {@link DataTieredColumnMerge#SUCCESS_LEG} for ratios only the success leg provides.
+     * 
+     * @param parameters
+     *            parameters provided by resource layer
+     * @return how each column is merged, keyed by the index of the column in the result rows. Columns that are not declared keep the first non
+     *         empty value
+     */
+    protected Map<Integer, DataTieredColumnMerge> getDataTieredColumnMerges(final MultivaluedMap<String, String> parameters) {
+        return Collections.emptyMap();
+    }
+
+    private void notifyQueryStarted(final LoadBalancingPolicy loadBalancingPolicy) {
+        if (loadBalancingPolicyService instanceof QueryExecutionListener) {
+            ((QueryExecutionListener) loadBalancingPolicyService).queryStarted(loadBalancingPolicy);
+        }
+    }
+
+    private void notifyQueryFinished(final LoadBalancingPolicy loadBalancingPolicy, final long durationInNanos, final long slowQueryDurationInNanos,
+                                     final boolean failed) {
+        if (loadBalancingPolicyService instanceof QueryExecutionListener) {
+            ((QueryExecutionListener) loadBalancingPolicyService).queryFinished(loadBalancingPolicy, durationInNanos, slowQueryDurationInNanos, failed);
+        }
+    }
+
+    /**
+     * @return the p99 of the query's earlier executions, which the reader's circuit breaker judges the query slow against, -1 if not known
+     */
+    private long getSlowQueryDurationInNanos(final QueryFingerprint queryFingerprint) {
+        return queryStatisticsRegistry == null ? -1 : queryStatisticsRegistry.getSlowQueryDurationInNanos(queryFingerprint);
+    }
+
+    /**
+     * Evaluate all in memory KPIs for this service in a single pass over the result of the base aggregate query. The base aggregate query is run
+     * like any other query (on the load balanced reader, hedged if slow), error results are returned unchanged
+     * 
+     * @param baseAggregateResult
+     *            json result of the base aggregate query
+     * @return json response
+     */
+    private String evaluateInMemoryKPIs(final String baseAggregateResult) {
+        if (!GridJSONParser.isSuccessResult(baseAggregateResult)) {
+            return baseAggregateResult;
+        }
+        return kpiEvaluationEngine.evaluateAsJSON(
+                BaseAggregateResult.fromGridRows(getNumberOfGroupingColumns(), getBaseAggregateMeasureColumns(),
+                        GridJSONParser.parseRows(baseAggregateResult)), getInMemoryKPIList());
+    }
+
+    /**
+     * This method sets up the appropriate headers etc for and executes streaming the csv data into the response.
+     * 
      * @param tzOffset
      *            the tz offset
      * @param timeColumn
@@ -209,16 +894,22 @@ public abstract class GenericService implements Service, GenericServiceInterface
      *            the query
      * @param response
      * @param queryParameters
+     * @param loadBalancingPolicy
+     *            load balancing policy selected for the request
+     * @return the stream the csv data was written to, or null if the response could not be written
      */
-    private void streamDataAsCSV(final MultivaluedMap<String, String> parameters, final String tzOffset, final List<Integer> timeColumnIndexes,
-                                 final String query, final HttpServletResponse response, final Map<String, QueryParameter> queryParameters) {
+    private CountingOutputStream streamDataAsCSV(final String tzOffset, final List<Integer> timeColumnIndexes, final String query,
+                                                 final HttpServletResponse response, final Map<String, QueryParameter> queryParameters,
+                                                 final LoadBalancingPolicy loadBalancingPolicy) {
         response.setContentType("application/csv");
         response.setHeader("Content-disposition", "attachment; filename=export.csv");
         try {
-            this.streamingDataService.streamDataAsCsv(query, queryParameters, timeColumnIndexes, tzOffset, getLoadBalancingPolicy(parameters),
-                    response.getOutputStream());
+            final CountingOutputStream csvOutput = new CountingOutputStream(response.getOutputStream());
+            this.streamingDataService.streamDataAsCsv(query, queryParameters, timeColumnIndexes, tzOffset, loadBalancingPolicy, csvOutput);
+            return csvOutput;
         } catch (final IOException e) {
             ServicesLogger.error(getClass().getName(), "streamDataAsCSV", e);
+            return null;
         }
     }
 
@@ -243,11 +934,52 @@ public abstract class GenericService implements Service, GenericServiceInterface
         return false;
     }
 
+    /**
+     * Answer the no raw tables case of shouldReportErrorAboutRawTables() from the {@link RawTableAvailabilityIndex} (if deployed), before the tech
+     * pack tables are discovered. Services that query by measurement type read other tables, so are always left to table discovery.
+     * 
+     * @return true if the query needs raw tables and it is known that there are none for its time range
+     */
+    private boolean isRawDataKnownToBeMissing(final MultivaluedMap<String, String> parameters, final FormattedDateTimeRange formattedDateTimeRange,
+                                              final AggregationLevelDecision aggregationLevelDecision) {
+        if (rawTableAvailabilityIndex == null || getMeasurementTypes() != null) {
+            return false;
+        }
+        final EventDataSourceType aggregation = forceAggregationType() == null ? getAggregation(formattedDateTimeRange, aggregationLevelDecision)
+                : forceAggregationType();
+        if (aggregation != EventDataSourceType.RAW && !areRawTablesRequiredForAggregationQueries()) {
+            return false;
+        }
+        return rawTableAvailabilityIndex.isRawDataKnownToBeMissing(getApplicableTechPacks(parameters), formattedDateTimeRange);
+    }
+
+    /**
+     * @return true if the request is for a single IMSI that the {@link IMSIExistenceIndex} (if deployed) knows has no events in the window
+     */
+    private boolean isIMSIKnownToBeAbsent(final MultivaluedMap<String, String> parameters, final FormattedDateTimeRange formattedDateTimeRange) {
+        if (imsiExistenceIndex == null || getMeasurementTypes() != null || !ServiceQueryType.IMSI.name().equals(parameters.getFirst(TYPE_PARAM))) {
+            return false;
+        }
+        final String imsi = parameters.getFirst(IMSI_PARAM);
+        if (imsi == null) {
+            return false;
+        }
+        try {
+            return imsiExistenceIndex.isIMSIKnownToBeAbsent(getApplicableTechPacks(parameters), Long.parseLong(imsi.trim()), formattedDateTimeRange);
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
     private Map<String, QueryParameter> getQueryParameters(final MultivaluedMap<String, String> requestParameters,
                                                            final FormattedDateTimeRange formattedDateTimeRange) {
         final Map<String, QueryParameter> queryParameters = new HashMap<String, QueryParameter>();
         queryParameters.putAll(getServiceSpecificQueryParameters(requestParameters));
         queryParameters.putAll(this.queryUtils.getQueryParameters(requestParameters, formattedDateTimeRange, getTemplatePath()));
+        final Map<String, BindParameterType> boundRequestParameters = getBoundRequestParameters(requestParameters);
+        if (!boundRequestParameters.isEmpty()) {
+            queryParameters.putAll(new RequestParameterBinder(boundRequestParameters).getQueryParameters(requestParameters));
+        }
         return queryParameters;
     }
 
@@ -258,8 +990,9 @@ public abstract class GenericService implements Service, GenericServiceInterface
 
     protected String getQuery(final MultivaluedMap<String, String> parameters, final FormattedDateTimeRange formattedDateTimeRange,
                               final TechPackList techPackList) {
-        preQueryTracing(parameters);
-        final QueryGeneratorParameters queryGeneratorParameters = constructQueryGeneratorParameters(formattedDateTimeRange, parameters, techPackList);
+        auditService.logAuditEntryForURI(parameters);
+        final QueryGeneratorParameters queryGeneratorParameters = constructQueryGeneratorParameters(formattedDateTimeRange,
+                getQueryGenerationParameters(parameters), techPackList);
         return queryGenerator.getQuery(queryGeneratorParameters);
     }
 
@@ -286,26 +1019,84 @@ public abstract class GenericService implements Service, GenericServiceInterface
         return tpList;
     }
 
+    private TechPackList createTechPackListWithAggregation(final FormattedDateTimeRange formattedDateTimeRange,
+                                                          final MultivaluedMap<String, String> requestParameters,
+                                                          final EventDataSourceType aggregation) {
+        final String type = new RequestParametersWrapper(requestParameters).getType();
+        return techPackListFactory.createTechPackListWithSpecifiedAggregation(getApplicableTechPacks(requestParameters), formattedDateTimeRange,
+                getAggregationView(type), aggregation);
+    }
+
+    /**
+     * Select the aggregation level with the cost model, for services that accept a coarser level than the time range rules would use
+     * 
+     * @return the selected aggregation level, or null if the time range rules apply
+     */
+    private AggregationLevelDecision selectAggregationLevel(final FormattedDateTimeRange formattedDateTimeRange,
+                                                           final MultivaluedMap<String, String> requestParameters, final List<String> licensedTechPacks) {
+        final EventDataSourceType coarsestAcceptableAggregation = getCoarsestAcceptableAggregation(requestParameters);
+        if (coarsestAcceptableAggregation == null || forceAggregationType() != null || getRawTableKeys() != null || getMeasurementTypes() != null) {
+            return null;
+        }
+        return aggregationCostModel.selectAggregation(dateTimeHelper.getEventDataSourceType(formattedDateTimeRange), coarsestAcceptableAggregation,
+                formattedDateTimeRange.getRangeInMinutes(), licensedTechPacks, areReadersSaturated(),
+                queryStatisticsRegistry == null ? null : queryStatisticsRegistry.getRowStatistics(getTemplatePath()));
+    }
+
+    private boolean areReadersSaturated() {
+        return fairQueryScheduler != null && fairQueryScheduler.isSaturated();
+    }
+
+    /**
+     * Record the rows returned at the selected aggregation level, so that the cost model estimates from real row counts
+     */
+    private void recordRowsForCostModel(final String result, final ServiceRequest serviceRequest, final FormattedDateTimeRange formattedDateTimeRange,
+                                        final List<String> licensedTechPacks, final AggregationLevelDecision aggregationLevelDecision) {
+        if (queryStatisticsRegistry == null || aggregationLevelDecision == null || serviceRequest.isCSV() || !GridJSONParser.isSuccessResult(result)) {
+            return;
+        }
+        queryStatisticsRegistry.recordRows(getTemplatePath(), licensedTechPacks, aggregationLevelDecision.getAggregation(),
+                formattedDateTimeRange.getRangeInMinutes(), GridJSONRowCounter.countRows(result));
+    }
+
+    /**
+     * Flag a JSON result that was queried at a lower resolution than the time range rules would have given, so that the client can indicate this
+     */
+    private String markReducedResolution(final String result, final AggregationLevelDecision aggregationLevelDecision) {
+        if (result == null || aggregationLevelDecision == null || !aggregationLevelDecision.isCoarserThanDefault() || !result.startsWith("{")) {
+            return result;
+        }
+        return "{\"" + REDUCED_RESOLUTION + "\":\"true\",\"" + AGGREGATION_LEVEL + "\":\"" + aggregationLevelDecision.getAggregation() + "\","
+                + result.substring(1);
+    }
+
+    /**
+     * Services whose results are still meaningful at a coarser aggregation level than the time range rules select (eg a ranking over the time
+     * range) can override this method to let the cost model choose the aggregation level, see {@link AggregationCostModel}. Services that depend on
+     * getInterval() for their template parameters should not override this method.
+     * 
+     * @param requestParameters
+     *            parameters provided by resource layer
+     * @return the coarsest acceptable aggregation level, null (the default) if the time range rules should always apply
+     */
+    protected EventDataSourceType getCoarsestAcceptableAggregation(final MultivaluedMap<String, String> requestParameters) {
+        return null;
+    }
+
     private QueryGeneratorParameters constructQueryGeneratorParameters(final FormattedDateTimeRange formattedDateTimeRange,
                                                                        final MultivaluedMap<String, String> requestParameters,
                                                                        final TechPackList techPackList) {
         final Map<String, Object> templateParam = getServiceSpecificTemplateParameters(requestParameters, formattedDateTimeRange, techPackList);
-        if (StringUtils.isNotBlank(requestParameters.getFirst(MEDIA_TYPE))
-                && mediaTypeHandler.isMediaTypeApplicationCSV(requestParameters.get(MEDIA_TYPE))) {
-            final String tzOffset = requestParameters.getFirst(TZ_OFFSET);
-            final char sign = tzOffset.charAt(0);
-            final String first = tzOffset.substring(1, 3);
-            final String last = tzOffset.substring(3, 5);
-            final Integer total = (Integer.parseInt(first) * 60 + Integer.parseInt(last));
-            final String tzOffsetQuery = sign + total.toString();
-
-            templateParam.put(CSV_PARAM, new Boolean(true));
-            templateParam.put(TZ_OFFSET, tzOffsetQuery);
+        if (ResponseMediaType.fromParameterValues(requestParameters.get(MEDIA_TYPE)) == ResponseMediaType.CSV) {
+            final Integer tzOffsetInMinutes = ServiceRequest.parseTzOffset(requestParameters.getFirst(TZ_OFFSET));
+            final int minutes = tzOffsetInMinutes == null ? 0 : tzOffsetInMinutes;
+            templateParam.put(CSV_PARAM, Boolean.TRUE);
+            templateParam.put(TZ_OFFSET, (minutes < 0 ? "-" : "+") + Math.abs(minutes));
         }
 
         return new QueryGeneratorParameters(getTemplatePath(), requestParameters, templateParam, formattedDateTimeRange,
-                getDrillDownTypeForService(requestParameters), getMaxAllowableSize(), techPackList, getKPIList(),
-                isExclusiveTacRelated(requestParameters), dataTieringHandler.useDataTieringView(formattedDateTimeRange,
+                getDrillDownTypeForService(requestParameters), getMaxAllowableSize(), techPackList, getKPIListForQueryGeneration(),
+                isExclusiveTacRelatedForQueryGeneration(requestParameters), dataTieringHandler.useDataTieringView(formattedDateTimeRange,
                         isDataTieredService(requestParameters), techPackList.getTechPacks()));
     }
 
@@ -313,6 +1104,45 @@ public abstract class GenericService implements Service, GenericServiceInterface
         return exclusiveTACHandler.queryIsExclusiveTacRelated(requestParameters);
     }
 
+    /**
+     * Services whose results have one row per TAC (or per TAC and other key columns) can override this method to have the rows of exclusive TACs
+     * removed from JSON results in memory, see {@link ExclusiveTACFilter}, rather than excluded in the generated SQL. The query is then generated
+     * as for an exclusive TAC related request, so the same query and cached result serve both kinds of request.
+     * <p/>
+     * CSV exports are streamed directly from the database and continue to exclude exclusive TACs in SQL. So do results limited to their top rows
+     * (by {@link #getMaxAllowableSize()} or the maxRows parameter), as removing rows after the limit would leave ranked views short
+     * 
+     * @param requestParameters
+     *            parameters provided by resource layer
+     * @return column of the result holding the TAC, numbered from 1 as in the grid JSON, 0 (the default) to exclude exclusive TACs in SQL
+     */
+    protected int getExclusiveTACColumn(final MultivaluedMap<String, String> requestParameters) {
+        return 0;
+    }
+
+    private boolean isExclusiveTacRelatedForQueryGeneration(final MultivaluedMap<String, String> requestParameters) {
+        return isExclusiveTacRelated(requestParameters) || shouldFilterExclusiveTACsInMemory(requestParameters);
+    }
+
+    private boolean shouldFilterExclusiveTACsInMemory(final MultivaluedMap<String, String> requestParameters) {
+        if (exclusiveTACFilter == null || !exclusiveTACFilter.isLoaded() || getExclusiveTACColumn(requestParameters) <= 0) {
+            return false;
+        }
+        if (getMaxAllowableSize() > 0 || requestParameters.containsKey(MAX_ROWS_PARAMETER)) {
+            return false;
+        }
+        return ResponseMediaType.fromParameterValues(requestParameters.get(MEDIA_TYPE)) != ResponseMediaType.CSV
+                && !isExclusiveTacRelated(requestParameters);
+    }
+
+    private String filterExclusiveTACs(final ServiceRequest serviceRequest, final String result) {
+        final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+        if (!shouldFilterExclusiveTACsInMemory(parameters)) {
+            return result;
+        }
+        return exclusiveTACFilter.filter(result, getExclusiveTACColumn(parameters));
+    }
+
     /**
      * Default implementation of getKPIList() to reduce impact on existing services. This parameter
      * 
@@ -322,12 +1152,67 @@ public abstract class GenericService implements Service, GenericServiceInterface
         return new ArrayList<KPI>();
     }
 
-    private LoadBalancingPolicy getLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters) {
+    /**
+     * KPIs that should be calculated in the services layer from a single base aggregate result instead of in the generated SQL. Services overriding
+     * this method should use a template that returns the grouping key column(s) followed by the counts and sums that these KPIs are calculated from,
+     * and list those in getBaseAggregateMeasureColumns().
+     * <p/>
+     * Only applies to JSON requests - CSV exports are streamed directly from the database and continue to use getKPIList()
+     * 
+     * @return list of in memory KPIs, empty by default
+     */
+    public List<InMemoryKPI> getInMemoryKPIList() {
+        return new ArrayList<InMemoryKPI>();
+    }
+
+    /**
+     * Labels of the counts and sums returned by the base aggregate query of a service with in memory KPIs, in the order the template returns
+     * them after the grouping key column(s). The KPIs look their columns up by these labels
+     * 
+     * @return measure column labels, empty by default
+     */
+    protected List<String> getBaseAggregateMeasureColumns() {
+        return new ArrayList<String>();
+    }
+
+    /**
+     * Number of leading columns in the result that make up the grouping key (eg the node), used when evaluating in memory KPIs and when merging
+     * the legs of a split data tiered query
+     * 
+     * @return number of grouping columns, 1 by default
+     */
+    protected int getNumberOfGroupingColumns() {
+        return 1;
+    }
+
+    private boolean isInMemoryKPIService() {
+        return !getInMemoryKPIList().isEmpty();
+    }
+
+    /**
+     * The KPIs in the SQL are redundant when the KPIs are evaluated in memory, the base aggregate query only needs the counts and sums
+     */
+    private List<KPI> getKPIListForQueryGeneration() {
+        if (isInMemoryKPIService()) {
+            return new ArrayList<KPI>();
+        }
+        return getKPIList();
+    }
+
+    /**
+     * Readers dedicated to the query's workload class are used where the load balancing policy service supports them
+     */
+    private LoadBalancingPolicy getLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters, final WorkloadClass workloadClass) {
+        if (loadBalancingPolicyService instanceof WorkloadReaderSelector) {
+            return ((WorkloadReaderSelector) loadBalancingPolicyService).getLoadBalancingPolicy(requestParameters, workloadClass);
+        }
         return loadBalancingPolicyService.getLoadBalancingPolicy(requestParameters);
     }
 
     protected FormattedDateTimeRange translateDateTimeParameters(final MultivaluedMap<String, String> parameters, final List<String> licensedTechPacks) {
-        final FormattedDateTimeRange timeRange = dateTimeHelper.translateDateTimeParameters(parameters, licensedTechPacks);
+        final BatchRequestScope batchRequestScope = BatchRequestScope.getCurrentScope();
+        final FormattedDateTimeRange timeRange = batchRequestScope == null ? dateTimeHelper.translateDateTimeParameters(parameters,
+                licensedTechPacks) : batchRequestScope.translateDateTimeParameters(parameters, licensedTechPacks, dateTimeHelper);
 
         if (dataTieringHandler.appplyLatencyForDataTiering(timeRange, isDataTieredService(parameters), licensedTechPacks, parameters)) {
             return dateTimeHelper.getDataTieredDateTimeRange(timeRange);
@@ -341,12 +1226,6 @@ public abstract class GenericService implements Service, GenericServiceInterface
         performanceTrace.detailed(Level.INFO, getContextInfo());
     }
 
-    private void preQueryTracing(final MultivaluedMap<String, String> parameters) {
-        setRequestStartTime(Calendar.getInstance().getTimeInMillis());
-        ServicesPerformanceThreadLocalHolder.setUriInfo(parameters.getFirst(REQUEST_URI));
-        auditService.logAuditEntryForURI(parameters);
-    }
-
     /**
      * Given a list of request parameters that should be injected directly into the query, construct a QueryParameter object for each of these request
      * parameters.
@@ -381,10 +1260,6 @@ public abstract class GenericService implements Service, GenericServiceInterface
         return dataService;
     }
 
-    String getRequestId(final MultivaluedMap<String, String> parameters) {
-        return parameters.getFirst(REQUEST_ID);
-    }
-
     /**
      * Update templateParameters with group definition.
      * 
@@ -447,6 +1322,18 @@ public abstract class GenericService implements Service, GenericServiceInterface
         return 1;
     }
 
+    /**
+     * Interval for the time range of the request, see {@link #getInterval(FormattedDateTimeRange)}. Used as the refresh period of live
+     * subscriptions to this service.
+     * 
+     * @param parameters
+     *            parameters from the resource layer
+     * @return interval in minutes
+     */
+    public int getInterval(final MultivaluedMap<String, String> parameters) {
+        return getInterval(translateDateTimeParameters(parameters, getLicensedTechPacks(parameters)));
+    }
+
     /**
      * @param streamingDataService
      *            the streamingDataService to set
@@ -513,8 +1400,12 @@ public abstract class GenericService implements Service, GenericServiceInterface
         this.techPackListFactory = techPackListFactory;
     }
 
+    /**
+     * @deprecated the media type of the response is resolved by the resource layer, see {@link ServiceRequest#getMediaType()}. The handler is
+     *             ignored
+     */
+    @Deprecated
     public void setMediaTypeHandler(final MediaTypeHandler mediaTypeHandler) {
-        this.mediaTypeHandler = mediaTypeHandler;
     }
 
     /**
@@ -581,4 +1472,64 @@ public abstract class GenericService implements Service, GenericServiceInterface
     public void setDataTieringHandler(final DataTieringHandler dataTieringHandler) {
         this.dataTieringHandler = dataTieringHandler;
     }
+
+    public void setFairQueryScheduler(final FairQueryScheduler fairQueryScheduler) {
+        this.fairQueryScheduler = fairQueryScheduler;
+    }
+
+    public void setKpiEvaluationEngine(final KPIEvaluationEngine kpiEvaluationEngine) {
+        this.kpiEvaluationEngine = kpiEvaluationEngine;
+    }
+
+    public void setAggregationCostModel(final AggregationCostModel aggregationCostModel) {
+        this.aggregationCostModel = aggregationCostModel;
+    }
+
+    public void setResultCache(final ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    public void setLoadWatermarkService(final LoadWatermarkService loadWatermarkService) {
+        this.loadWatermarkService = loadWatermarkService;
+    }
+
+    public void setQueryStatisticsRegistry(final QueryStatisticsRegistry queryStatisticsRegistry) {
+        this.queryStatisticsRegistry = queryStatisticsRegistry;
+    }
+
+    public void setPipelineFlightRecorder(final PipelineFlightRecorder pipelineFlightRecorder) {
+        this.pipelineFlightRecorder = pipelineFlightRecorder;
+    }
+
+    public void setRawTableAvailabilityIndex(final RawTableAvailabilityIndex rawTableAvailabilityIndex) {
+        this.rawTableAvailabilityIndex = rawTableAvailabilityIndex;
+    }
+
+    public void setIMSIExistenceIndex(final IMSIExistenceIndex imsiExistenceIndex) {
+        this.imsiExistenceIndex = imsiExistenceIndex;
+    }
+
+    public void setWorkloadIsolation(final WorkloadIsolation workloadIsolation) {
+        this.workloadIsolation = workloadIsolation;
+    }
+
+    public void setDrillDownPrefetcher(final DrillDownPrefetcher drillDownPrefetcher) {
+        this.drillDownPrefetcher = drillDownPrefetcher;
+    }
+
+    public void setExclusiveTACFilter(final ExclusiveTACFilter exclusiveTACFilter) {
+        this.exclusiveTACFilter = exclusiveTACFilter;
+    }
+
+    public void setHedgedQueryExecutor(final HedgedQueryExecutor hedgedQueryExecutor) {
+        this.hedgedQueryExecutor = hedgedQueryExecutor;
+    }
+
+    public void setParallelQueryExecutor(final ParallelQueryExecutor parallelQueryExecutor) {
+        this.parallelQueryExecutor = parallelQueryExecutor;
+    }
+
+    public void setDataTieredResultMerger(final DataTieredResultMerger dataTieredResultMerger) {
+        this.dataTieredResultMerger = dataTieredResultMerger;
+    }
 }
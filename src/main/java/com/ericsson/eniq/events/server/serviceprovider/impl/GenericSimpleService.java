@@ -6,6 +6,7 @@
 package com.ericsson.eniq.events.server.serviceprovider.impl;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import javax.ejb.EJB;
@@ -13,11 +14,33 @@ import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
 import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
 import com.ericsson.eniq.events.server.logging.ServicesLogger;
 import com.ericsson.eniq.events.server.query.QueryParameter;
 import com.ericsson.eniq.events.server.query.resultsettransformers.ResultSetTransformer;
-import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.ContextAwareService;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceRequest;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceResult;
+import com.ericsson.eniq.events.server.serviceprovider.impl.binding.BindParameterType;
+import com.ericsson.eniq.events.server.serviceprovider.impl.binding.RequestParameterBinder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.cache.ResultCache;
+import com.ericsson.eniq.events.server.serviceprovider.impl.hedging.HedgedQuery;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONParser;
+import com.ericsson.eniq.events.server.serviceprovider.impl.hedging.HedgedQueryExecutor;
+import com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.AdaptiveLoadBalancingPolicyService;
+import com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.AlternativeReaderSelector;
+import com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.QueryExecutionListener;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.PipelineFlightRecorder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.PipelineStage;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.PipelineStageTimer;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rows.RowCallback;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rows.RowCallbackTransformer;
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.CountingOutputStream;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.GridJSONRowCounter;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryFingerprint;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryStatisticsRegistry;
 import com.ericsson.eniq.events.server.services.DataService;
 import com.ericsson.eniq.events.server.services.StreamingDataService;
 import com.ericsson.eniq.events.server.templates.mappingengine.TemplateMappingEngine;
@@ -29,8 +52,6 @@ import com.ericsson.eniq.events.server.utils.MediaTypeHandler;
 import com.ericsson.eniq.events.server.utils.json.JSONUtils;
 import org.apache.commons.lang.StringUtils;
 
-import static com.ericsson.eniq.events.server.common.ApplicationConstants.MEDIA_TYPE;
-import static com.ericsson.eniq.events.server.common.ApplicationConstants.REQUEST_ID;
 import static com.ericsson.eniq.events.server.logging.performance.ServicesPerformanceThreadLocalHolder.releaseAllResources;
 
 /**
@@ -43,7 +64,7 @@ import static com.ericsson.eniq.events.server.logging.performance.ServicesPerfor
  * @author epesmit
  * @since 2011
  */
-public abstract class GenericSimpleService implements Service, GenericSimpleServiceInterface {
+public abstract class GenericSimpleService implements ContextAwareService, GenericSimpleServiceInterface {
 
    @EJB
    private CSVResponseBuilder csvResponseBuilder;
@@ -57,7 +78,7 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
    @EJB
    private TemplateMappingEngine templateMappingEngine;
 
-   @EJB
+   @EJB(beanInterface = AdaptiveLoadBalancingPolicyService.class)
    private LoadBalancingPolicyService loadBalancingPolicyService;
 
    @EJB
@@ -67,24 +88,82 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
    private StreamingDataService streamingDataService;
 
    @EJB
-   private MediaTypeHandler mediaTypeHandler;
+   private FairQueryScheduler fairQueryScheduler;
+
+   @EJB
+   private ResultCache resultCache;
+
+   @EJB
+   private QueryStatisticsRegistry queryStatisticsRegistry;
+
+   @EJB
+   private PipelineFlightRecorder pipelineFlightRecorder;
+
+   @EJB
+   private HedgedQueryExecutor hedgedQueryExecutor;
 
    @Override
    public String getData(final MultivaluedMap<String, String> parameters) {
-      return getAndRunSimpleQuery(parameters, null);
+      return getData(ServiceRequest.fromParameters(parameters));
+   }
+
+   @Override
+   public String getData(final ServiceRequest serviceRequest) {
+      return getAndRunSimpleQuery(serviceRequest, null);
+   }
+
+   @Override
+   public ServiceResult getResult(final ServiceRequest serviceRequest) {
+      return new ServiceResult(getData(serviceRequest));
    }
 
    public String getData(final MultivaluedMap<String, String> parameters,
                          final ResultSetTransformer<String> resultSetTransformerFactory) {
-      return getAndRunQuery(parameters, resultSetTransformerFactory);
+      return getAndRunQuery(ServiceRequest.fromParameters(parameters), resultSetTransformerFactory);
+   }
+
+   /**
+    * Run the query, pushing each row of the result to the callback as it is
+    * read rather than building the result as a string, eg to stream a large
+    * result to an output stream (see GridJSONRowWriter) or to build typed
+    * objects (see RowCollector)
+    *
+    * @param parameters  the parameters from resource layer
+    * @param rowCallback receives the rows of the result
+    *
+    * @return the value produced by the callback, null if the query could not
+    *         be built
+    */
+   public <T> T getData(final MultivaluedMap<String, String> parameters, final RowCallback<T> rowCallback) {
+      return getAndRunQuery(ServiceRequest.fromParameters(parameters), new RowCallbackTransformer<T>(rowCallback));
    }
 
    @Override
    public Response getDataAsCSV(final MultivaluedMap<String, String> parameters, final HttpServletResponse response) {
-      getAndRunSimpleQuery(parameters, response);
+      return getDataAsCSV(ServiceRequest.fromParameters(parameters), response);
+   }
+
+   @Override
+   public Response getDataAsCSV(final ServiceRequest serviceRequest, final HttpServletResponse response) {
+      final String result = getAndRunSimpleQuery(serviceRequest, response);
+      if (result != null && !GridJSONParser.isSuccessResult(result)) {
+         sendCSVError(response, result);
+      }
       return csvResponseBuilder.buildHttpResponseForCSVData();
    }
 
+   /**
+    * Requests that fail before their query is streamed are reported through the response, so that clients and export
+    * jobs do not take the empty CSV for a complete result
+    */
+   private void sendCSVError(final HttpServletResponse response, final String jsonError) {
+      try {
+         response.sendError(HttpServletResponse.SC_BAD_REQUEST, jsonError);
+      } catch (final IOException e) {
+         ServicesLogger.error(getClass().getName(), "sendCSVError", e);
+      }
+   }
+
    /**
     * Execute the SQL query against the database. Logic common to all services.
     *
@@ -106,22 +185,30 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
    /**
     * Retrieve and run the query. Logic common to all services.
     *
-    * @param parameters          parameters from the resource layer
+    * @param serviceRequest      the request, holding the parameters from the resource layer
     * @param httpServletResponse response object (can be null, used when streaming csv
     *                            response)
     *
     * @return json response, null if request is for csv data as this is
     *         streamed to the response
     */
-   private String getAndRunSimpleQuery(final MultivaluedMap<String, String> parameters,
-                                       final HttpServletResponse httpServletResponse) {
+   private String getAndRunSimpleQuery(final ServiceRequest serviceRequest, final HttpServletResponse httpServletResponse) {
       try {
-         final String templateFile = templateMappingEngine.getTemplate(getTemplatePath(), parameters, null);
-         final String query = templateUtils.getQueryFromTemplate(templateFile);
+         final PipelineStageTimer stageTimer = startStage(PipelineStage.SQL_GENERATION, serviceRequest);
+         final String query;
+         try {
+            final String templateFile = templateMappingEngine.getTemplate(getTemplatePath(), serviceRequest.getParameters(), null);
+            final Map<String, BindParameterType> boundRequestParameters = getBoundRequestParameters(serviceRequest.getParameters());
+            query = boundRequestParameters.isEmpty() ? templateUtils.getQueryFromTemplate(templateFile)
+                  : templateUtils.getQueryFromTemplate(templateFile,
+                        new RequestParameterBinder(boundRequestParameters).getTemplateParameters(serviceRequest.getParameters()));
+         } finally {
+            stopStage(stageTimer, 0, 0);
+         }
          if (StringUtils.isBlank(query)) {
             return JSONUtils.JSONBuildFailureError();
          }
-         return logAndRunQuery(httpServletResponse, parameters, query);
+         return logAndRunQuery(serviceRequest, httpServletResponse, query);
       } finally {
          releaseAllResources();
       }
@@ -130,22 +217,31 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
    /**
     * Retrieve and run the query. Logic common to all services.
     *
-    * @param parameters parameters from the resource layer
+    * @param serviceRequest the request, holding the parameters from the resource layer
     *
     * @return json response, null if request is for csv data as this is
     *         streamed to the response
     */
-   private String getAndRunQuery(final MultivaluedMap<String, String> parameters,
-                                 final ResultSetTransformer<String> resultSetTransformerFactory
+   private <T> T getAndRunQuery(final ServiceRequest serviceRequest,
+                                final ResultSetTransformer<T> resultSetTransformerFactory
    ) {
+      final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
       try {
-         final String templateFile = templateMappingEngine.getTemplate(getTemplatePath(), parameters, null);
-         final String query = templateUtils.getQueryFromTemplate(templateFile, parameters);
+         final PipelineStageTimer stageTimer = startStage(PipelineStage.SQL_GENERATION, serviceRequest);
+         final String query;
+         try {
+            final String templateFile = templateMappingEngine.getTemplate(getTemplatePath(), parameters, null);
+            final Map<String, BindParameterType> boundRequestParameters = getBoundRequestParameters(parameters);
+            query = templateUtils.getQueryFromTemplate(templateFile, boundRequestParameters.isEmpty() ? parameters
+                  : new RequestParameterBinder(boundRequestParameters).getTemplateParameters(parameters));
+         } finally {
+            stopStage(stageTimer, 0, 0);
+         }
 
          if (StringUtils.isBlank(query)) {
-            return JSONUtils.JSONBuildFailureError();
+            return getQueryBuildFailure(resultSetTransformerFactory);
          }
-         return logAndRunQuery(parameters, query, resultSetTransformerFactory);
+         return logAndRunQuery(serviceRequest, query, resultSetTransformerFactory);
       } finally {
          releaseAllResources();
       }
@@ -154,19 +250,41 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
    /**
     * Log and run the query. Logic common to all services.
     *
-    * @param parameters parameters from the resource layer
+    * @param serviceRequest the request, holding the parameters from the resource layer
     * @param query
     *
     * @return json response, null if request is for csv data as this is
     *         streamed to the response
     */
-   private String logAndRunQuery(
-           final MultivaluedMap<String, String> parameters, final String query,
-           final ResultSetTransformer<String> resultSetTransformerFactory) {
-      final Map<String, QueryParameter> queryParameters = new HashMap<String, QueryParameter>();
+   private <T> T logAndRunQuery(final ServiceRequest serviceRequest, final String query,
+           final ResultSetTransformer<T> resultSetTransformerFactory) {
+      final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+      final Map<String, QueryParameter> queryParameters = getQueryParameters(parameters);
       auditService.logAuditEntryForQuery(parameters, query, queryParameters);
+      acquireQuerySlot(parameters);
+      final PipelineStageTimer stageTimer = startStage(PipelineStage.EXECUTION, serviceRequest);
+      T result = null;
+      try {
+         result = dataService.getData(query, queryParameters, resultSetTransformerFactory);
+         return result;
+      } finally {
+         final long rows = resultSetTransformerFactory instanceof RowCallbackTransformer
+               ? ((RowCallbackTransformer<?>) resultSetTransformerFactory).getRowCount() : 0;
+         stopStage(stageTimer, rows, result instanceof String ? ((String) result).length() : 0);
+         releaseQuerySlot();
+      }
+   }
 
-      return dataService.getData(query, queryParameters, resultSetTransformerFactory);
+   /**
+    * The JSON build failure error is only returned to transformers that
+    * produce a string, row callbacks get null
+    */
+   @SuppressWarnings("unchecked")
+   private <T> T getQueryBuildFailure(final ResultSetTransformer<T> resultSetTransformerFactory) {
+      if (resultSetTransformerFactory instanceof RowCallbackTransformer) {
+         return null;
+      }
+      return (T) JSONUtils.JSONBuildFailureError();
    }
 
    /**
@@ -174,41 +292,251 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
     *
     * @param httpServletResponse response object (can be null, used when streaming csv
     *                            response)
-    * @param parameters          parameters from the resource layer
+    * @param serviceRequest      the request, holding the parameters from the resource layer
     * @param query
     *
     * @return json response, null if request is for csv data as this is
     *         streamed to the response
     */
-   private String logAndRunQuery(final HttpServletResponse httpServletResponse,
-                                 final MultivaluedMap<String, String> parameters, final String query) {
-      final Map<String, QueryParameter> queryParameters = new HashMap<String, QueryParameter>();
+   private String logAndRunQuery(final ServiceRequest serviceRequest, final HttpServletResponse httpServletResponse,
+                                 final String query) {
+      final MultivaluedMap<String, String> parameters = serviceRequest.getParameters();
+      final Map<String, QueryParameter> queryParameters = getQueryParameters(parameters);
       auditService.logAuditEntryForQuery(parameters, query, queryParameters);
-      if (mediaTypeHandler.isMediaTypeApplicationCSV(parameters.get(MEDIA_TYPE))) {
-         streamDataAsCSV(parameters, query, httpServletResponse, queryParameters);
+      final String resultCacheKey = getResultCacheKey(serviceRequest, query, queryParameters);
+      if (resultCacheKey != null) {
+         final String cachedResult = resultCache.get(resultCacheKey);
+         if (cachedResult != null) {
+            return cachedResult;
+         }
+      }
+      final String result;
+      acquireQuerySlot(parameters);
+      try {
+         result = runQueryOnLoadBalancedReader(serviceRequest, httpServletResponse, query, queryParameters);
+      } finally {
+         releaseQuerySlot();
+      }
+      if (resultCacheKey != null) {
+         resultCache.put(resultCacheKey, result, getResultCacheTimeToLiveInSeconds(parameters));
+      }
+      return result;
+   }
+
+   /**
+    * @return values of the bound request parameters, empty if all values are
+    *         inlined into the SQL
+    */
+   private Map<String, QueryParameter> getQueryParameters(final MultivaluedMap<String, String> parameters) {
+      final Map<String, BindParameterType> boundRequestParameters = getBoundRequestParameters(parameters);
+      if (boundRequestParameters.isEmpty()) {
+         return new HashMap<String, QueryParameter>();
+      }
+      return new RequestParameterBinder(boundRequestParameters).getQueryParameters(parameters);
+   }
+
+   /**
+    * Services can override this method to have request parameter values
+    * passed to the database as bind parameters rather than inlined into the
+    * SQL by the template, so that the same SQL is generated for every value
+    * and prepared statements and query plans are reused. The template sees
+    * each bound parameter as a placeholder (see {@link RequestParameterBinder})
+    * and must use it unquoted.
+    *
+    * @param parameters parameters from the resource layer
+    *
+    * @return the request parameters to bind, with the type each is bound as,
+    *         empty (the default) to inline all values
+    */
+   protected Map<String, BindParameterType> getBoundRequestParameters(final MultivaluedMap<String, String> parameters) {
+      return Collections.emptyMap();
+   }
+
+   /**
+    * @return the key of the query's result in the result cache, or null if the
+    *         result should not be cached
+    */
+   private String getResultCacheKey(final ServiceRequest serviceRequest, final String query,
+                                    final Map<String, QueryParameter> queryParameters) {
+      if (resultCache == null || serviceRequest.isCSV()
+            || getResultCacheTimeToLiveInSeconds(serviceRequest.getParameters()) <= 0) {
          return null;
       }
-      return runSimpleQuery(query, getRequestId(parameters), queryParameters, getLoadBalancingPolicy(parameters));
+      return ResultCache.createKey(getClass().getName(), query, queryParameters, "0");
+   }
+
+   /**
+    * Services whose results change rarely (eg lists of configured nodes) can
+    * override this method to have their JSON results cached in the shared
+    * {@link ResultCache}
+    *
+    * @param parameters parameters from the resource layer
+    *
+    * @return how long results of this service may be served from the result
+    *         cache, 0 (the default) to not cache them
+    */
+   protected int getResultCacheTimeToLiveInSeconds(final MultivaluedMap<String, String> parameters) {
+      return 0;
+   }
+
+   private String runQueryOnLoadBalancedReader(final ServiceRequest serviceRequest,
+                                               final HttpServletResponse httpServletResponse, final String query,
+                                               final Map<String, QueryParameter> queryParameters) {
+      final LoadBalancingPolicy loadBalancingPolicy = getLoadBalancingPolicy(serviceRequest.getParameters());
+      final QueryFingerprint queryFingerprint = new QueryFingerprint(getTemplatePath(), null, null);
+      final boolean isCSV = serviceRequest.isCSV();
+      final PipelineStageTimer stageTimer = startStage(isCSV ? PipelineStage.STREAMING : PipelineStage.EXECUTION,
+              serviceRequest);
+      final long slowQueryDuration = getSlowQueryDurationInNanos(queryFingerprint);
+      final long queryStartTime = System.nanoTime();
+      notifyQueryStarted(loadBalancingPolicy);
+      boolean queryFailed = true;
+      long rows = 0;
+      long bytes = 0;
+      CountingOutputStream csvOutput = null;
+      try {
+         String result = null;
+         if (isCSV) {
+            csvOutput = streamDataAsCSV(query, httpServletResponse, queryParameters,
+                    loadBalancingPolicy);
+            if (csvOutput != null) {
+               rows = Math.max(0, csvOutput.getLineCount() - 1);
+               bytes = csvOutput.getByteCount();
+            }
+         } else {
+            result = runHedgedSimpleQuery(serviceRequest, query, queryParameters, loadBalancingPolicy, queryFingerprint,
+                    slowQueryDuration);
+            rows = GridJSONRowCounter.countRows(result);
+            bytes = result == null ? 0 : result.length();
+         }
+         queryFailed = false;
+         return result;
+      } finally {
+         // the time the client takes to read a CSV export is not the reader's
+         final long queryDuration = csvOutput == null ? System.nanoTime() - queryStartTime
+                 : csvOutput.getTimeToFirstWriteInNanos(queryStartTime);
+         notifyQueryFinished(loadBalancingPolicy, queryDuration, slowQueryDuration, queryFailed);
+         if (queryStatisticsRegistry != null) {
+            queryStatisticsRegistry.record(queryFingerprint, queryDuration, rows, bytes, queryFailed);
+         }
+         stopStage(stageTimer, rows, bytes);
+      }
+   }
+
+   /**
+    * Run the query on the selected reader, hedging it on a second reader if
+    * it is slow and the hedged query executor is deployed, see
+    * {@link HedgedQueryExecutor}
+    */
+   private String runHedgedSimpleQuery(final ServiceRequest serviceRequest, final String query,
+                                       final Map<String, QueryParameter> queryParameters,
+                                       final LoadBalancingPolicy loadBalancingPolicy, final QueryFingerprint queryFingerprint,
+                                       final long slowQueryDuration) {
+      if (hedgedQueryExecutor == null || !(loadBalancingPolicyService instanceof AlternativeReaderSelector)) {
+         return runSimpleQuery(query, serviceRequest.getRequestId(), queryParameters, loadBalancingPolicy);
+      }
+      final LoadBalancingPolicy alternativeReader = ((AlternativeReaderSelector) loadBalancingPolicyService)
+            .getAlternativeLoadBalancingPolicy(serviceRequest.getParameters(), null, loadBalancingPolicy);
+      return hedgedQueryExecutor.execute(queryFingerprint, loadBalancingPolicy, alternativeReader, new HedgedQuery() {
+         @Override
+         public String run(final LoadBalancingPolicy reader) {
+            if (reader == loadBalancingPolicy) {
+               return runSimpleQuery(query, serviceRequest.getRequestId(), queryParameters, reader);
+            }
+            final long hedgeStartTime = System.nanoTime();
+            notifyQueryStarted(reader);
+            boolean hedgeFailed = true;
+            try {
+               final String result = runSimpleQuery(query, serviceRequest.getRequestId(), queryParameters, reader);
+               hedgeFailed = false;
+               return result;
+            } finally {
+               notifyQueryFinished(reader, System.nanoTime() - hedgeStartTime, slowQueryDuration, hedgeFailed);
+            }
+         }
+      });
+   }
+
+   /**
+    * @return timer for the stage, null if the flight recorder is not deployed or is disabled
+    */
+   private PipelineStageTimer startStage(final PipelineStage stage, final ServiceRequest serviceRequest) {
+      return pipelineFlightRecorder == null ? null
+              : pipelineFlightRecorder.start(stage, getTemplatePath(), serviceRequest.getRequestId());
+   }
+
+   private void stopStage(final PipelineStageTimer stageTimer, final long rows, final long bytes) {
+      if (pipelineFlightRecorder != null) {
+         pipelineFlightRecorder.stop(stageTimer, rows, bytes);
+      }
+   }
+
+   /**
+    * Wait for the fair query scheduler (if deployed) to admit this request's tenant
+    */
+   private void acquireQuerySlot(final MultivaluedMap<String, String> parameters) {
+      if (fairQueryScheduler == null) {
+         return;
+      }
+      try {
+         fairQueryScheduler.acquire(FairQueryScheduler.getTenant(parameters));
+      } catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new ServiceException("Interrupted while waiting to execute query");
+      }
+   }
+
+   private void releaseQuerySlot() {
+      if (fairQueryScheduler != null) {
+         fairQueryScheduler.release();
+      }
+   }
+
+   private void notifyQueryStarted(final LoadBalancingPolicy loadBalancingPolicy) {
+      if (loadBalancingPolicyService instanceof QueryExecutionListener) {
+         ((QueryExecutionListener) loadBalancingPolicyService).queryStarted(loadBalancingPolicy);
+      }
+   }
+
+   private void notifyQueryFinished(final LoadBalancingPolicy loadBalancingPolicy, final long durationInNanos,
+                                    final long slowQueryDurationInNanos, final boolean failed) {
+      if (loadBalancingPolicyService instanceof QueryExecutionListener) {
+         ((QueryExecutionListener) loadBalancingPolicyService).queryFinished(loadBalancingPolicy, durationInNanos,
+                 slowQueryDurationInNanos, failed);
+      }
+   }
+
+   /**
+    * @return the p99 of the query's earlier executions, which the reader's circuit breaker judges the query slow
+    *         against, -1 if not known
+    */
+   private long getSlowQueryDurationInNanos(final QueryFingerprint queryFingerprint) {
+      return queryStatisticsRegistry == null ? -1 : queryStatisticsRegistry.getSlowQueryDurationInNanos(queryFingerprint);
    }
 
    /**
     * This method sets up the appropriate headers etc for and executes
     * streaming the csv data into the response.
     *
-    * @param parameters      the parameters from resource layer
-    * @param query           the query
+    * @param query               the query
     * @param response
     * @param queryParameters
+    * @param loadBalancingPolicy load balancing policy selected for the request
+    * @return the stream the csv data was written to, or null if the response could not be written
     */
-   private void streamDataAsCSV(final MultivaluedMap<String, String> parameters, final String query,
-                                final HttpServletResponse response, final Map<String, QueryParameter> queryParameters) {
+   private CountingOutputStream streamDataAsCSV(final String query, final HttpServletResponse response,
+                                                final Map<String, QueryParameter> queryParameters,
+                                                final LoadBalancingPolicy loadBalancingPolicy) {
       response.setContentType("application/csv");
       response.setHeader("Content-disposition", "attachment; filename=export.csv");
       try {
+         final CountingOutputStream csvOutput = new CountingOutputStream(response.getOutputStream());
          this.streamingDataService.streamDataAsCsv(query, queryParameters, "0", "0",
-                 getLoadBalancingPolicy(parameters), response.getOutputStream());
+                 loadBalancingPolicy, csvOutput);
+         return csvOutput;
       } catch (final IOException e) {
          ServicesLogger.error(getClass().getName(), "streamDataAsCSV", e);
+         return null;
       }
    }
 
@@ -221,15 +549,6 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
       return loadBalancingPolicyService.getLoadBalancingPolicy(parameters);
    }
 
-   /**
-    * @param parameters the parameters from resource layer
-    *
-    * @return
-    */
-   private String getRequestId(final MultivaluedMap<String, String> parameters) {
-      return parameters.getFirst(REQUEST_ID);
-   }
-
    /** @param auditService the auditService to set */
    public void setAuditService(final AuditService auditService) {
       this.auditService = auditService;
@@ -255,9 +574,38 @@ public abstract class GenericSimpleService implements Service, GenericSimpleServ
       this.loadBalancingPolicyService = loadBalancingPolicyService;
    }
 
-   /** @param mediaTypeHandler the mediaTypeHandler to set */
+   /**
+    * @deprecated the media type of the response is resolved by the resource
+    *             layer, see {@link ServiceRequest#getMediaType()}. The handler
+    *             is ignored
+    */
+   @Deprecated
    public void setMediaTypeHandler(final MediaTypeHandler mediaTypeHandler) {
-      this.mediaTypeHandler = mediaTypeHandler;
+   }
+
+   /** @param fairQueryScheduler the fairQueryScheduler to set */
+   public void setFairQueryScheduler(final FairQueryScheduler fairQueryScheduler) {
+      this.fairQueryScheduler = fairQueryScheduler;
+   }
+
+   /** @param resultCache the resultCache to set */
+   public void setResultCache(final ResultCache resultCache) {
+      this.resultCache = resultCache;
+   }
+
+   /** @param queryStatisticsRegistry the queryStatisticsRegistry to set */
+   public void setQueryStatisticsRegistry(final QueryStatisticsRegistry queryStatisticsRegistry) {
+      this.queryStatisticsRegistry = queryStatisticsRegistry;
+   }
+
+   /** @param pipelineFlightRecorder the pipelineFlightRecorder to set */
+   public void setPipelineFlightRecorder(final PipelineFlightRecorder pipelineFlightRecorder) {
+      this.pipelineFlightRecorder = pipelineFlightRecorder;
+   }
+
+   /** @param hedgedQueryExecutor the hedgedQueryExecutor to set */
+   public void setHedgedQueryExecutor(final HedgedQueryExecutor hedgedQueryExecutor) {
+      this.hedgedQueryExecutor = hedgedQueryExecutor;
    }
 
    /** @param templateMappingEngine the templateMappingEngine to set */
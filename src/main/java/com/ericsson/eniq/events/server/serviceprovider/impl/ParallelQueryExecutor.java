@@ -0,0 +1,79 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl;
+
+import java.util.concurrent.*;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+
+/**
+ * Runs queries in parallel with the query on the request thread, eg the error leg of a split data tiered query or the
+ * executions of a hedged query.
+ * <p/>
+ * The pool is shared by all services and is bounded: at most {@link #DEFAULT_MAX_THREADS} queries run on it at a time.
+ * Queries are not queued, as a parallel query that waits for a thread no longer saves any time, so a query submitted
+ * while the pool is saturated is rejected and the caller runs it on its own thread instead. A query whose JDBC
+ * statement ignores cancellation keeps its thread until the statement returns, which the bound keeps from piling up.
+ * The threads are stopped when the application is undeployed.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ParallelQueryExecutor {
+
+    static final int DEFAULT_MAX_THREADS = 32;
+
+    private static final long KEEP_ALIVE_IN_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+
+    public ParallelQueryExecutor() {
+        this(DEFAULT_MAX_THREADS);
+    }
+
+    public ParallelQueryExecutor(final int maxThreads) {
+        executor = new ThreadPoolExecutor(0, maxThreads, KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                ServiceExecutors.newThreadFactory("services-parallel-query-", Thread.NORM_PRIORITY));
+    }
+
+    /**
+     * @param query
+     *            the query to run
+     * @return the result of the query
+     * @throws RejectedExecutionException
+     *             if the maximum number of queries are already running, or the executor has been shut down
+     */
+    public <T> Future<T> submit(final Callable<T> query) {
+        return executor.submit(query);
+    }
+
+    /**
+     * @throws RejectedExecutionException
+     *             if the maximum number of queries are already running, or the executor has been shut down
+     */
+    public void execute(final Runnable query) {
+        executor.execute(query);
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
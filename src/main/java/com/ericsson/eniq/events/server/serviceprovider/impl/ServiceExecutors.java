@@ -0,0 +1,60 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads of the pools owned by the services singletons, eg the {@link ParallelQueryExecutor}
+ */
+public final class ServiceExecutors {
+
+    private ServiceExecutors() {
+    }
+
+    /**
+     * @param namePrefix
+     *            prefix of the thread names, the threads are numbered
+     * @param priority
+     *            priority of the threads
+     * @return factory for the threads of a pool owned by the services layer
+     */
+    public static ThreadFactory newThreadFactory(final String namePrefix, final int priority) {
+        return new ServiceThreadFactory(namePrefix, priority);
+    }
+
+    /**
+     * Creates named daemon threads, so that the pools never prevent the application server from shutting down
+     */
+    private static class ServiceThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+
+        private final int priority;
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        ServiceThreadFactory(final String namePrefix, final int priority) {
+            this.namePrefix = namePrefix;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.aggregation;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+
+/**
+ * Chooses the aggregation level (raw, 1 minute, 15 minute or day tables) for a query from an estimate of the number
+ * of rows each level would scan, rather than from the time range alone.
+ * <p/>
+ * The estimate for a level is the number of intervals of that level in the time range, multiplied by the number of
+ * rows per interval in the tables of each tech pack. The rows per interval set with
+ * {@link #setRowsPerInterval(String, EventDataSourceType, long)} are used first, then those observed from previous
+ * executions of the service's queries (see {@link RowStatistics}), and a default estimate if neither is known.
+ * <p/>
+ * Starting from the level the time range rules would use, the finest level whose estimate is within the row budget is
+ * chosen, but never a level coarser than the service accepts. When the readers are saturated the choice is moved one
+ * level coarser again, so that under overload the resolution of the result is reduced instead of queries timing out.
+ */
+public class AggregationCostModel {
+
+    static final long DEFAULT_MAX_ROWS_TO_SCAN = 50L * 1000 * 1000;
+
+    static final long DEFAULT_ROWS_PER_INTERVAL = 20000;
+
+    private static final int RAW_GRANULARITY_IN_MINUTES = 0;
+
+    private static final int ONE_MINUTE_GRANULARITY_IN_MINUTES = 1;
+
+    private static final int FIFTEEN_MINUTE_GRANULARITY_IN_MINUTES = 15;
+
+    private static final int DAY_GRANULARITY_IN_MINUTES = 1440;
+
+    private static final String RAW = "RAW";
+
+    private final Map<String, Long> rowsPerInterval = new ConcurrentHashMap<String, Long>();
+
+    private volatile long maxRowsToScan = DEFAULT_MAX_ROWS_TO_SCAN;
+
+    /**
+     * @param defaultAggregation
+     *            the aggregation level selected by the time range rules
+     * @param coarsestAcceptableAggregation
+     *            the coarsest aggregation level that still meets the service's granularity needs
+     * @param rangeInMinutes
+     *            length of the time range of the query
+     * @param techPacks
+     *            tech packs the query will run against
+     * @param readersSaturated
+     *            true if the readers are currently saturated
+     * @return the selected aggregation level
+     */
+    public AggregationLevelDecision selectAggregation(final EventDataSourceType defaultAggregation,
+                                                      final EventDataSourceType coarsestAcceptableAggregation, final long rangeInMinutes,
+                                                      final List<String> techPacks, final boolean readersSaturated) {
+        return selectAggregation(defaultAggregation, coarsestAcceptableAggregation, rangeInMinutes, techPacks, readersSaturated, null);
+    }
+
+    /**
+     * @param rowStatistics
+     *            rows per interval observed for the query, can be null
+     * @see #selectAggregation(EventDataSourceType, EventDataSourceType, long, List, boolean)
+     */
+    public AggregationLevelDecision selectAggregation(final EventDataSourceType defaultAggregation,
+                                                      final EventDataSourceType coarsestAcceptableAggregation, final long rangeInMinutes,
+                                                      final List<String> techPacks, final boolean readersSaturated,
+                                                      final RowStatistics rowStatistics) {
+        final List<EventDataSourceType> candidates = getCandidates(defaultAggregation, coarsestAcceptableAggregation);
+        int selected = candidates.size() - 1;
+        for (int i = 0; i < candidates.size(); i++) {
+            if (estimateRowsScanned(candidates.get(i), rangeInMinutes, techPacks, rowStatistics) <= maxRowsToScan) {
+                selected = i;
+                break;
+            }
+        }
+        if (readersSaturated && selected < candidates.size() - 1) {
+            selected++;
+        }
+        final EventDataSourceType aggregation = candidates.get(selected);
+        return new AggregationLevelDecision(aggregation, aggregation != defaultAggregation, estimateRowsScanned(aggregation,
+                rangeInMinutes, techPacks, rowStatistics));
+    }
+
+    /**
+     * @return the aggregation levels from the default level to the coarsest acceptable level, finest first
+     */
+    private List<EventDataSourceType> getCandidates(final EventDataSourceType defaultAggregation,
+                                                    final EventDataSourceType coarsestAcceptableAggregation) {
+        final int finest = getGranularityInMinutes(defaultAggregation);
+        final int coarsest = getGranularityInMinutes(coarsestAcceptableAggregation);
+        final Map<Integer, EventDataSourceType> candidatesByGranularity = new HashMap<Integer, EventDataSourceType>();
+        candidatesByGranularity.put(finest, defaultAggregation);
+        for (final EventDataSourceType aggregation : EventDataSourceType.values()) {
+            final int granularity = getGranularityInMinutes(aggregation);
+            if (granularity > finest && granularity <= coarsest && !candidatesByGranularity.containsKey(granularity)) {
+                candidatesByGranularity.put(granularity, aggregation);
+            }
+        }
+        final List<EventDataSourceType> candidates = new ArrayList<EventDataSourceType>(candidatesByGranularity.values());
+        Collections.sort(candidates, new Comparator<EventDataSourceType>() {
+            @Override
+            public int compare(final EventDataSourceType first, final EventDataSourceType second) {
+                return getGranularityInMinutes(first) - getGranularityInMinutes(second);
+            }
+        });
+        return candidates;
+    }
+
+    /**
+     * @param aggregation
+     *            aggregation level
+     * @param rangeInMinutes
+     *            length of the time range
+     * @param techPacks
+     *            tech packs the query will run against
+     * @return estimate of the number of rows a query at this aggregation level would scan
+     */
+    public long estimateRowsScanned(final EventDataSourceType aggregation, final long rangeInMinutes, final List<String> techPacks) {
+        return estimateRowsScanned(aggregation, rangeInMinutes, techPacks, null);
+    }
+
+    private long estimateRowsScanned(final EventDataSourceType aggregation, final long rangeInMinutes, final List<String> techPacks,
+                                     final RowStatistics rowStatistics) {
+        final long intervals = getIntervals(aggregation, rangeInMinutes);
+        long rows = 0;
+        for (final String techPack : techPacks) {
+            rows += intervals * getRowsPerInterval(techPack, aggregation, rowStatistics);
+        }
+        return rows;
+    }
+
+    private long getRowsPerInterval(final String techPack, final EventDataSourceType aggregation, final RowStatistics rowStatistics) {
+        final Long techPackRowsPerInterval = rowsPerInterval.get(getKey(techPack, aggregation));
+        if (techPackRowsPerInterval != null) {
+            return techPackRowsPerInterval;
+        }
+        final long observedRowsPerInterval = rowStatistics == null ? -1 : rowStatistics.getRowsPerInterval(techPack, aggregation);
+        return observedRowsPerInterval < 0 ? DEFAULT_ROWS_PER_INTERVAL : observedRowsPerInterval;
+    }
+
+    /**
+     * @return number of intervals of the aggregation level in the time range, at least 1
+     */
+    public static long getIntervals(final EventDataSourceType aggregation, final long rangeInMinutes) {
+        return Math.max(1, rangeInMinutes / Math.max(1, getGranularityInMinutes(aggregation)));
+    }
+
+    /**
+     * Granularity of the aggregation level, as used by the time range rules. Raw tables have a granularity of 0 and
+     * are scanned per minute
+     */
+    public static int getGranularityInMinutes(final EventDataSourceType aggregation) {
+        final String value = aggregation.toString();
+        if (value.equalsIgnoreCase(DAY)) {
+            return DAY_GRANULARITY_IN_MINUTES;
+        } else if (value.equalsIgnoreCase(FIFTEEN_MINUTES)) {
+            return FIFTEEN_MINUTE_GRANULARITY_IN_MINUTES;
+        } else if (value.equalsIgnoreCase(RAW)) {
+            return RAW_GRANULARITY_IN_MINUTES;
+        }
+        return ONE_MINUTE_GRANULARITY_IN_MINUTES;
+    }
+
+    /**
+     * @param techPack
+     *            tech pack
+     * @param aggregation
+     *            aggregation level
+     * @param rows
+     *            average number of rows per interval in the tech pack's tables at this aggregation level, per minute
+     *            for raw tables
+     */
+    public void setRowsPerInterval(final String techPack, final EventDataSourceType aggregation, final long rows) {
+        rowsPerInterval.put(getKey(techPack, aggregation), rows);
+    }
+
+    private String getKey(final String techPack, final EventDataSourceType aggregation) {
+        return techPack + ':' + getGranularityInMinutes(aggregation);
+    }
+
+    /**
+     * @param maxRowsToScan
+     *            the row budget a query should stay within
+     */
+    public void setMaxRowsToScan(final long maxRowsToScan) {
+        this.maxRowsToScan = maxRowsToScan;
+    }
+}
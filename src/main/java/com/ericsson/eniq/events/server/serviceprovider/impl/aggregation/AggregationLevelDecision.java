@@ -0,0 +1,47 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.aggregation;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+
+/**
+ * Aggregation level selected by the {@link AggregationCostModel} for a query
+ */
+public class AggregationLevelDecision {
+
+    private final EventDataSourceType aggregation;
+
+    private final boolean coarserThanDefault;
+
+    private final long estimatedRowsScanned;
+
+    public AggregationLevelDecision(final EventDataSourceType aggregation, final boolean coarserThanDefault, final long estimatedRowsScanned) {
+        this.aggregation = aggregation;
+        this.coarserThanDefault = coarserThanDefault;
+        this.estimatedRowsScanned = estimatedRowsScanned;
+    }
+
+    public EventDataSourceType getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return true if the resolution of the result is lower than the time range rules would have given
+     */
+    public boolean isCoarserThanDefault() {
+        return coarserThanDefault;
+    }
+
+    public long getEstimatedRowsScanned() {
+        return estimatedRowsScanned;
+    }
+}
@@ -0,0 +1,31 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.aggregation;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+
+/**
+ * Observed number of rows per interval, used by the {@link AggregationCostModel} where no rows per interval have been
+ * set explicitly
+ */
+public interface RowStatistics {
+
+    /**
+     * @param techPack
+     *            tech pack
+     * @param aggregation
+     *            aggregation level
+     * @return average number of rows per interval of the tech pack's tables at this aggregation level, -1 if none have
+     *         been observed
+     */
+    long getRowsPerInterval(String techPack, EventDataSourceType aggregation);
+}
@@ -0,0 +1,69 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.batch;
+
+import java.util.concurrent.*;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+
+/**
+ * Runs the entries of batch requests, see {@link com.ericsson.eniq.events.server.resources.AbstractBatchResource}
+ * <p/>
+ * The pool is shared by all batch requests and is bounded: at most {@link #DEFAULT_MAX_THREADS} entries run at a time
+ * and at most {@link #DEFAULT_MAX_QUEUED_ENTRIES} wait for a thread, further entries are rejected. The threads are
+ * stopped when the application is undeployed.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class BatchEntryExecutor {
+
+    static final int DEFAULT_MAX_THREADS = 32;
+
+    static final int DEFAULT_MAX_QUEUED_ENTRIES = 128;
+
+    private static final long KEEP_ALIVE_IN_SECONDS = 60;
+
+    private final ThreadPoolExecutor executor;
+
+    public BatchEntryExecutor() {
+        this(DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED_ENTRIES);
+    }
+
+    BatchEntryExecutor(final int maxThreads, final int maxQueuedEntries) {
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+                maxQueuedEntries), ServiceExecutors.newThreadFactory("services-batch-", Thread.NORM_PRIORITY));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param entry
+     *            the batch entry to run
+     * @return the result of the entry
+     * @throws RejectedExecutionException
+     *             if the maximum number of entries are already running or queued, or the executor has been shut down
+     */
+    public <T> Future<T> submit(final Callable<T> entry) {
+        return executor.submit(entry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
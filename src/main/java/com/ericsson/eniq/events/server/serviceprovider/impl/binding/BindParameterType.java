@@ -0,0 +1,50 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.binding;
+
+import com.ericsson.eniq.events.server.query.QueryParameter;
+
+/**
+ * SQL type a request parameter is bound as, see {@link RequestParameterBinder}
+ */
+public enum BindParameterType {
+
+    STRING {
+        @Override
+        QueryParameter createQueryParameter(final String value) {
+            return QueryParameter.createStringParameter(value);
+        }
+    },
+
+    INTEGER {
+        @Override
+        QueryParameter createQueryParameter(final String value) {
+            return QueryParameter.createIntParameter(Integer.parseInt(value.trim()));
+        }
+    },
+
+    LONG {
+        @Override
+        QueryParameter createQueryParameter(final String value) {
+            return QueryParameter.createLongParameter(Long.parseLong(value.trim()));
+        }
+    };
+
+    /**
+     * @param value
+     *            request parameter value, already validated by the parameter checker
+     * @return the value as a query parameter of this type
+     * @throws NumberFormatException
+     *             if the value is not a number and this type is numeric
+     */
+    abstract QueryParameter createQueryParameter(String value);
+}
@@ -0,0 +1,99 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.binding;
+
+import java.util.*;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+import com.ericsson.eniq.events.server.query.QueryParameter;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Turns request parameter values into bind parameters, so that the SQL generated from a template is the same for every
+ * value of those parameters (eg for every IMSI or node) and the prepared statement and query plan can be reused.
+ * <p/>
+ * The template sees the bound parameters with each value replaced by a named placeholder, <code>:name</code> for a
+ * single value, or <code>:name_0</code>, <code>:name_1</code> ... for a multi valued parameter, and the values are
+ * passed to the data service as query parameters under the same names. The template must therefore use the bound
+ * parameters unquoted, eg <code>IMSI = $imsi</code> rather than <code>IMSI = '$imsi'</code>.
+ */
+public class RequestParameterBinder {
+
+    static final String PLACEHOLDER_PREFIX = ":";
+
+    private final Map<String, BindParameterType> boundParameters;
+
+    /**
+     * @param boundParameters
+     *            the request parameters to bind, with the type each is bound as
+     */
+    public RequestParameterBinder(final Map<String, BindParameterType> boundParameters) {
+        this.boundParameters = boundParameters;
+    }
+
+    /**
+     * @param requestParameters
+     *            parameters provided by the resource layer
+     * @return copy of the request parameters with the values of the bound parameters replaced by their placeholders,
+     *         for query generation
+     */
+    public MultivaluedMap<String, String> getTemplateParameters(final MultivaluedMap<String, String> requestParameters) {
+        final MultivaluedMap<String, String> templateParameters = new MultivaluedMapImpl();
+        for (final Map.Entry<String, List<String>> requestParameter : requestParameters.entrySet()) {
+            final String name = requestParameter.getKey();
+            final List<String> values = requestParameter.getValue();
+            if (!boundParameters.containsKey(name) || values == null || values.isEmpty()) {
+                templateParameters.put(name, values);
+                continue;
+            }
+            final List<String> placeholders = new ArrayList<String>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                placeholders.add(PLACEHOLDER_PREFIX + getBindParameterName(name, i, values.size()));
+            }
+            templateParameters.put(name, placeholders);
+        }
+        return templateParameters;
+    }
+
+    /**
+     * @param requestParameters
+     *            parameters provided by the resource layer
+     * @return values of the bound parameters, keyed by the names used in their placeholders
+     * @throws ServiceException
+     *             if the value of a numeric bound parameter is not a number
+     */
+    public Map<String, QueryParameter> getQueryParameters(final MultivaluedMap<String, String> requestParameters) {
+        final Map<String, QueryParameter> queryParameters = new HashMap<String, QueryParameter>();
+        for (final Map.Entry<String, BindParameterType> boundParameter : boundParameters.entrySet()) {
+            final String name = boundParameter.getKey();
+            final List<String> values = requestParameters.get(name);
+            if (values == null) {
+                continue;
+            }
+            for (int i = 0; i < values.size(); i++) {
+                try {
+                    queryParameters.put(getBindParameterName(name, i, values.size()),
+                            boundParameter.getValue().createQueryParameter(values.get(i)));
+                } catch (final NumberFormatException e) {
+                    throw new ServiceException("Invalid value for parameter " + name + ": " + values.get(i));
+                }
+            }
+        }
+        return queryParameters;
+    }
+
+    private static String getBindParameterName(final String name, final int index, final int numberOfValues) {
+        return numberOfValues == 1 ? name : name + "_" + index;
+    }
+}
@@ -0,0 +1,123 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+/**
+ * Approximate count of how often each key has been requested recently (a count-min sketch with 4 bit counters), used
+ * as the TinyLFU admission filter of the {@link OffHeapResultStore}.
+ * <p/>
+ * The counters are packed 16 to a long, so the sketch takes half a byte per counter. Counters saturate at 15 and are
+ * all halved once the number of increments reaches ten times the width of the sketch, so that keys that were popular
+ * a long time ago age out. Not thread safe, callers synchronize.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int COUNTERS_PER_WORD = 16;
+
+    private static final long HALF_COUNTER_MASK = 0x7777777777777777L;
+
+    private static final int[] SEEDS = { 0x97cb3127, 0xb3a9e1c5, 0x5c0f1d8b, 0x2d6e83f1 };
+
+    private final long[] counters;
+
+    private final int width;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * @param expectedKeys
+     *            number of distinct keys expected to be held, the sketch width is the next power of two
+     */
+    FrequencySketch(final int expectedKeys) {
+        int sketchWidth = COUNTERS_PER_WORD;
+        while (sketchWidth < expectedKeys && sketchWidth < (1 << 24)) {
+            sketchWidth <<= 1;
+        }
+        width = sketchWidth;
+        counters = new long[DEPTH * width / COUNTERS_PER_WORD];
+        mask = width - 1;
+        sampleSize = width * 10;
+    }
+
+    void increment(final String key) {
+        final int hash = spread(key.hashCode());
+        boolean incremented = false;
+        for (int row = 0; row < DEPTH; row++) {
+            final int counter = counterOf(hash, row);
+            if (getCount(counter) < MAX_COUNT) {
+                counters[counter / COUNTERS_PER_WORD] += 1L << shiftOf(counter);
+                incremented = true;
+            }
+        }
+        if (incremented && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(final String key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, getCount(counterOf(hash, row)));
+        }
+        return frequency;
+    }
+
+    /**
+     * @return the size of the sketch in bytes
+     */
+    int getSizeInBytes() {
+        return counters.length * 8;
+    }
+
+    private int getCount(final int counter) {
+        return (int) (counters[counter / COUNTERS_PER_WORD] >>> shiftOf(counter)) & MAX_COUNT;
+    }
+
+    /**
+     * Halve every counter, shifting each word right by one and clearing the bit carried into each counter from its
+     * neighbour
+     */
+    private void reset() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (counters[i] >>> 1) & HALF_COUNTER_MASK;
+        }
+        additions /= 2;
+    }
+
+    /**
+     * @return index of the key's counter in the row, across all rows
+     */
+    private int counterOf(final int hash, final int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9e3779b1;
+        h ^= h >>> 16;
+        return row * width + (h & mask);
+    }
+
+    private static int shiftOf(final int counter) {
+        return (counter % COUNTERS_PER_WORD) * 4;
+    }
+
+    private static int spread(final int hash) {
+        int h = hash * 0x85ebca6b;
+        h ^= h >>> 13;
+        return h * 0xc2b2ae35;
+    }
+}
@@ -0,0 +1,369 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+
+/**
+ * Size bounded store for query results, held gzip compressed outside of the Java heap.
+ * <p/>
+ * Direct memory is reserved lazily in slabs of {@link #SLAB_SIZE} bytes, up to the byte budget, and handed out in fixed
+ * size blocks which are recycled when entries are removed. The stored memory is therefore never released back to the
+ * garbage collector and cached results add no GC pressure, no matter how many are held. The JVM must be started with
+ * -XX:MaxDirectMemorySize of at least the byte budget.
+ * <p/>
+ * Entries are evicted in least recently used order. When the store is full, a new result is only admitted if it has
+ * been requested more often recently than the entry it would evict (TinyLFU admission), so that one off queries do not
+ * flush out the popular dashboard results.
+ * <p/>
+ * The compressed form is a complete gzip stream, so it can be written to clients that accept gzip encoding without
+ * being decompressed, see {@link #getGzipped(String)}
+ */
+public class OffHeapResultStore {
+
+    static final int BLOCK_SIZE = 4096;
+
+    static final int SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final int BLOCKS_PER_SLAB = SLAB_SIZE / BLOCK_SIZE;
+
+    private static final String ENCODING = "UTF-8";
+
+    private final int maxBlocks;
+
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+    private final int[] freeBlocks;
+
+    private int freeBlockCount;
+
+    private int allocatedBlocks;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final FrequencySketch frequencySketch;
+
+    private long compressedBytes;
+
+    private long uncompressedLength;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private long rejectionCount;
+
+    /**
+     * @param maxBytes
+     *            the byte budget, the direct memory held by the store never exceeds this
+     */
+    public OffHeapResultStore(final long maxBytes) {
+        final long blocks = maxBytes / BLOCK_SIZE;
+        if (blocks < 1 || blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid result cache size " + maxBytes);
+        }
+        maxBlocks = (int) blocks;
+        freeBlocks = new int[maxBlocks];
+        frequencySketch = new FrequencySketch(maxBlocks);
+    }
+
+    /**
+     * @param key
+     *            the cache key
+     * @return the result, or null if it is not cached or has expired
+     */
+    public String get(final String key) {
+        final byte[] gzipped = getGzipped(key);
+        return gzipped == null ? null : decompress(gzipped);
+    }
+
+    /**
+     * @param key
+     *            the cache key
+     * @return the result as a gzip stream, or null if it is not cached or has expired
+     */
+    public byte[] getGzipped(final String key) {
+        synchronized (this) {
+            frequencySketch.increment(key);
+            final Entry entry = entries.get(key);
+            if (entry == null || entry.hasExpired(System.currentTimeMillis())) {
+                if (entry != null) {
+                    remove(key);
+                }
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return read(entry);
+        }
+    }
+
+    /**
+     * Store a result. The result is compressed before the lock on the store is taken
+     *
+     * @param key
+     *            the cache key
+     * @param result
+     *            the result to store
+     * @param timeToLiveInMillis
+     *            how long the result may be served from the store
+     * @return true if the result was stored, false if it was not admitted
+     */
+    public boolean put(final String key, final String result, final long timeToLiveInMillis) {
+        final byte[] gzipped = compress(result);
+        final int blocksRequired = (gzipped.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        synchronized (this) {
+            remove(key);
+            if (blocksRequired > maxBlocks / 2 || !makeRoom(key, blocksRequired)) {
+                rejectionCount++;
+                return false;
+            }
+            final int[] blocks = new int[blocksRequired];
+            for (int i = 0; i < blocksRequired; i++) {
+                blocks[i] = allocateBlock();
+            }
+            write(blocks, gzipped);
+            entries.put(key, new Entry(blocks, gzipped.length, result.length(), System.currentTimeMillis() + timeToLiveInMillis));
+            compressedBytes += gzipped.length;
+            uncompressedLength += result.length();
+            return true;
+        }
+    }
+
+    /**
+     * @param key
+     *            the cache key
+     * @return how much longer the result may be served from the store, 0 if it is not cached or has expired
+     */
+    public synchronized long getRemainingTimeToLiveInMillis(final String key) {
+        final Entry entry = entries.get(key);
+        return entry == null ? 0 : Math.max(0, entry.expiryTime - System.currentTimeMillis());
+    }
+
+    /**
+     * @param key
+     *            the cache key of the result to remove
+     */
+    public synchronized void invalidate(final String key) {
+        remove(key);
+    }
+
+    /**
+     * Remove all results, the direct memory is kept for reuse
+     */
+    public synchronized void invalidateAll() {
+        for (final String key : new ArrayList<String>(entries.keySet())) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Select the least recently used entries that would have to be evicted for the candidate to fit, and only evict
+     * them if the candidate is requested more often than every one of them that has not expired, so that a rejected
+     * candidate never costs an entry
+     */
+    private boolean makeRoom(final String candidate, final int blocksRequired) {
+        final int candidateFrequency = frequencySketch.frequency(candidate);
+        final long now = System.currentTimeMillis();
+        final List<String> victims = new ArrayList<String>();
+        int availableBlocks = getAvailableBlocks();
+        final Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (availableBlocks < blocksRequired) {
+            final Map.Entry<String, Entry> victim = leastRecentlyUsed.next();
+            if (!victim.getValue().hasExpired(now) && candidateFrequency <= frequencySketch.frequency(victim.getKey())) {
+                return false;
+            }
+            victims.add(victim.getKey());
+            availableBlocks += victim.getValue().blocks.length;
+        }
+        for (final String victim : victims) {
+            remove(victim);
+            evictionCount++;
+        }
+        return true;
+    }
+
+    private void remove(final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    private void release(final Entry entry) {
+        for (final int block : entry.blocks) {
+            freeBlocks[freeBlockCount++] = block;
+        }
+        compressedBytes -= entry.compressedLength;
+        uncompressedLength -= entry.uncompressedLength;
+    }
+
+    private int getAvailableBlocks() {
+        return freeBlockCount + maxBlocks - allocatedBlocks;
+    }
+
+    private int allocateBlock() {
+        if (freeBlockCount > 0) {
+            return freeBlocks[--freeBlockCount];
+        }
+        if (allocatedBlocks % BLOCKS_PER_SLAB == 0) {
+            final int slabBlocks = Math.min(BLOCKS_PER_SLAB, maxBlocks - allocatedBlocks);
+            slabs.add(ByteBuffer.allocateDirect(slabBlocks * BLOCK_SIZE));
+        }
+        return allocatedBlocks++;
+    }
+
+    private void write(final int[] blocks, final byte[] data) {
+        for (int i = 0; i < blocks.length; i++) {
+            final int offset = i * BLOCK_SIZE;
+            blockBuffer(blocks[i]).put(data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+        }
+    }
+
+    private byte[] read(final Entry entry) {
+        final byte[] data = new byte[entry.compressedLength];
+        for (int i = 0; i < entry.blocks.length; i++) {
+            final int offset = i * BLOCK_SIZE;
+            blockBuffer(entry.blocks[i]).get(data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+        }
+        return data;
+    }
+
+    private ByteBuffer blockBuffer(final int block) {
+        final ByteBuffer buffer = slabs.get(block / BLOCKS_PER_SLAB).duplicate();
+        buffer.position((block % BLOCKS_PER_SLAB) * BLOCK_SIZE);
+        return buffer;
+    }
+
+    private static byte[] compress(final String result) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, result.length() / 8));
+            final OutputStream gzip = new FastGZIPOutputStream(bytes);
+            gzip.write(result.getBytes(ENCODING));
+            gzip.close();
+            return bytes.toByteArray();
+        } catch (final IOException e) {
+            throw new ServiceException("Could not compress result: " + e.getMessage());
+        }
+    }
+
+    static String decompress(final byte[] gzipped) {
+        try {
+            final InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped), BLOCK_SIZE);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(gzipped.length * 8);
+            final byte[] buffer = new byte[BLOCK_SIZE];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString(ENCODING);
+        } catch (final IOException e) {
+            throw new ServiceException("Could not decompress cached result: " + e.getMessage());
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the direct memory reserved by the store
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) allocatedBlocks * BLOCK_SIZE;
+    }
+
+    /**
+     * @return the direct memory in use by cached results, including the unused tail of their last block
+     */
+    public synchronized long getUsedBytes() {
+        return (long) (allocatedBlocks - freeBlockCount) * BLOCK_SIZE;
+    }
+
+    public long getMaxBytes() {
+        return (long) maxBlocks * BLOCK_SIZE;
+    }
+
+    public synchronized long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return the number of characters of the cached results before compression
+     */
+    public synchronized long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized double getHitRatio() {
+        final long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    private static class Entry {
+
+        private final int[] blocks;
+
+        private final int compressedLength;
+
+        private final int uncompressedLength;
+
+        private final long expiryTime;
+
+        Entry(final int[] blocks, final int compressedLength, final int uncompressedLength, final long expiryTime) {
+            this.blocks = blocks;
+            this.compressedLength = compressedLength;
+            this.uncompressedLength = uncompressedLength;
+            this.expiryTime = expiryTime;
+        }
+
+        boolean hasExpired(final long now) {
+            return now >= expiryTime;
+        }
+    }
+
+    /**
+     * Results are compressed on the request thread, so favour speed over ratio
+     */
+    private static class FastGZIPOutputStream extends GZIPOutputStream {
+
+        FastGZIPOutputStream(final OutputStream out) throws IOException {
+            super(out, BLOCK_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
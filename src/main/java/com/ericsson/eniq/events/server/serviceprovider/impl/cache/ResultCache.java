@@ -0,0 +1,334 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.query.QueryParameter;
+
+/**
+ * Cache of the JSON results of the services, shared by all services and held in an {@link OffHeapResultStore}.
+ * <p/>
+ * Results are cached by service, query and query parameter values, so two requests only share a result when they
+ * would have run the same statement. Services opt in by returning a time to live for their results, see
+ * GenericService.getResultCacheTimeToLiveInSeconds()
+ * <p/>
+ * When the services instances are clustered (see {@link ResultCacheCluster}) a local miss is looked up on the member
+ * that owns the key, results are also stored on their owner, and invalidations are broadcast.
+ * <p/>
+ * The hit ratio, bytes held and evictions are exposed through JMX, see {@link ResultCacheMXBean}
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ResultCache implements ResultCacheMXBean {
+
+    static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=ResultCache";
+
+    private static final char SEPARATOR = '\n';
+
+    private static final String SUCCESS_RESULT_PREFIX = "{\"success\":\"true\"";
+
+    private volatile OffHeapResultStore store = new OffHeapResultStore(DEFAULT_MAX_BYTES);
+
+    private volatile ResultCacheCluster cluster;
+
+    /**
+     * @param serviceName
+     *            the service running the query
+     * @param query
+     *            the generated query
+     * @param queryParameters
+     *            the parameters bound to the query
+     * @param tzOffset
+     *            the time zone offset the result is formatted in
+     * @return the key of the result of the query
+     */
+    public static String createKey(final String serviceName, final String query, final Map<String, QueryParameter> queryParameters,
+                                   final String tzOffset) {
+        final StringBuilder key = new StringBuilder(query.length() + 128);
+        key.append(serviceName).append(SEPARATOR).append(tzOffset).append(SEPARATOR);
+        for (final Map.Entry<String, QueryParameter> queryParameter : new TreeMap<String, QueryParameter>(queryParameters).entrySet()) {
+            key.append(queryParameter.getKey()).append('=');
+            key.append(queryParameter.getValue() == null ? null : queryParameter.getValue().getValue()).append(SEPARATOR);
+        }
+        return key.append(query).toString();
+    }
+
+    /**
+     * @param key
+     *            key from {@link #createKey(String, String, Map, String)}
+     * @return the cached result, or null if not cached
+     */
+    public String get(final String key) {
+        final String result = store.get(key);
+        final ResultCacheCluster currentCluster = cluster;
+        if (result != null || currentCluster == null) {
+            return result;
+        }
+        return currentCluster.fetch(key);
+    }
+
+    /**
+     * @param key
+     *            key from {@link #createKey(String, String, Map, String)}
+     * @return the cached result as a gzip stream, or null if not cached
+     */
+    public byte[] getGzipped(final String key) {
+        final byte[] gzipped = store.getGzipped(key);
+        final ResultCacheCluster currentCluster = cluster;
+        if (gzipped != null || currentCluster == null || currentCluster.fetch(key) == null) {
+            return gzipped;
+        }
+        return store.getGzipped(key);
+    }
+
+    /**
+     * @param gzipped
+     *            result from {@link #getGzipped(String)}
+     * @return the result
+     */
+    public static String decompress(final byte[] gzipped) {
+        return OffHeapResultStore.decompress(gzipped);
+    }
+
+    /**
+     * Cache a result. Failed results are not cached
+     *
+     * @param key
+     *            key from {@link #createKey(String, String, Map, String)}
+     * @param result
+     *            the JSON result
+     * @param timeToLiveInSeconds
+     *            how long the result may be served from the cache
+     */
+    public void put(final String key, final String result, final int timeToLiveInSeconds) {
+        if (result != null && result.startsWith(SUCCESS_RESULT_PREFIX)) {
+            store.put(key, result, timeToLiveInSeconds * 1000L);
+            final ResultCacheCluster currentCluster = cluster;
+            if (currentCluster != null) {
+                currentCluster.replicate(key, result, timeToLiveInSeconds * 1000L);
+            }
+        }
+    }
+
+    /**
+     * Remove a cached result, on every member of the cluster
+     *
+     * @param key
+     *            key from {@link #createKey(String, String, Map, String)}
+     */
+    public void invalidate(final String key) {
+        store.invalidate(key);
+        final ResultCacheCluster currentCluster = cluster;
+        if (currentCluster != null) {
+            currentCluster.broadcastInvalidate(key);
+        }
+    }
+
+    void putLocally(final String key, final String result, final long timeToLiveInMillis) {
+        store.put(key, result, timeToLiveInMillis);
+    }
+
+    byte[] getGzippedLocally(final String key) {
+        return store.getGzipped(key);
+    }
+
+    long getRemainingTimeToLiveInMillis(final String key) {
+        return store.getRemainingTimeToLiveInMillis(key);
+    }
+
+    void invalidateLocally(final String key) {
+        store.invalidate(key);
+    }
+
+    void invalidateAllLocally() {
+        store.invalidateAll();
+    }
+
+    /**
+     * Join the cache cluster. Any previous cluster is left
+     *
+     * @param localMember
+     *            address this instance listens on for the other members
+     * @param members
+     *            every member of the cluster
+     * @param secret
+     *            secret shared by the members
+     * @throws IOException
+     *             if the local member address is the wildcard address or cannot be bound
+     */
+    public synchronized void startCluster(final InetSocketAddress localMember, final List<InetSocketAddress> members, final byte[] secret)
+            throws IOException {
+        stopCluster();
+        final ResultCacheCluster newCluster = new ResultCacheCluster(this, localMember, members, secret);
+        newCluster.start();
+        cluster = newCluster;
+    }
+
+    ResultCacheCluster getCluster() {
+        return cluster;
+    }
+
+    public synchronized void stopCluster() {
+        final ResultCacheCluster currentCluster = cluster;
+        cluster = null;
+        if (currentCluster != null) {
+            currentCluster.stop();
+        }
+    }
+
+    /**
+     * Change the byte budget of the cache. The cached results are dropped
+     *
+     * @param maxBytes
+     *            the new byte budget
+     */
+    public void setMaxBytes(final long maxBytes) {
+        store = new OffHeapResultStore(maxBytes);
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return store.getMaxBytes();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return store.getAllocatedBytes();
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return store.getUsedBytes();
+    }
+
+    @Override
+    public long getCompressedBytes() {
+        return store.getCompressedBytes();
+    }
+
+    @Override
+    public int getEntryCount() {
+        return store.getEntryCount();
+    }
+
+    @Override
+    public long getHitCount() {
+        return store.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return store.getMissCount();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return store.getHitRatio();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return store.getEvictionCount();
+    }
+
+    @Override
+    public long getRejectionCount() {
+        return store.getRejectionCount();
+    }
+
+    @Override
+    public long getRemoteHitCount() {
+        final ResultCacheCluster currentCluster = cluster;
+        return currentCluster == null ? 0 : currentCluster.getRemoteHitCount();
+    }
+
+    @Override
+    public String getClusterMembers() {
+        final ResultCacheCluster currentCluster = cluster;
+        return currentCluster == null ? "" : currentCluster.getMembers().toString();
+    }
+
+    @Override
+    public void invalidateAll() {
+        store.invalidateAll();
+        final ResultCacheCluster currentCluster = cluster;
+        if (currentCluster != null) {
+            currentCluster.broadcastInvalidateAll();
+        }
+    }
+
+    /**
+     * Register the MBean, and join the cache cluster if one is configured through the
+     * {@link ResultCacheCluster#LOCAL_MEMBER_PROPERTY}, {@link ResultCacheCluster#MEMBERS_PROPERTY} and
+     * {@link ResultCacheCluster#SECRET_PROPERTY} system properties
+     */
+    @PostConstruct
+    public void start() {
+        registerMBean();
+        final String localMember = System.getProperty(ResultCacheCluster.LOCAL_MEMBER_PROPERTY);
+        final String members = System.getProperty(ResultCacheCluster.MEMBERS_PROPERTY);
+        if (localMember == null || members == null) {
+            return;
+        }
+        final String secret = System.getProperty(ResultCacheCluster.SECRET_PROPERTY);
+        if (secret == null || secret.length() == 0) {
+            ServicesLogger.warn(getClass().getName(), "start", "Result cache cluster not joined, as no shared secret is configured");
+            return;
+        }
+        try {
+            startCluster(ResultCacheCluster.parseMembers(localMember).get(0), ResultCacheCluster.parseMembers(members), secret.getBytes("UTF-8"));
+        } catch (final IOException e) {
+            ServicesLogger.error(getClass().getName(), "start", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopCluster();
+        unregisterMBean();
+    }
+
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+}
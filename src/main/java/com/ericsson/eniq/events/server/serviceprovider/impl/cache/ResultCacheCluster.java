@@ -0,0 +1,714 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+import java.io.*;
+import java.net.*;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+
+/**
+ * Makes the {@link ResultCache}s of the services instances behind a load balancer behave like a single cache.
+ * <p/>
+ * Every key has an owner among the members, chosen by rendezvous hashing so that all members agree on it without
+ * coordination. A result computed on any member is also stored on its owner, and a member that misses locally asks the
+ * owner before running the query, keeping a copy for the rest of the result's time to live. A dashboard refresh that
+ * lands on a different instance is therefore still a hit, and each result is computed once for the whole cluster.
+ * Invalidations are broadcast to every member.
+ * <p/>
+ * Members talk over TCP with a small framed protocol, on connections that are kept open and reused for later messages.
+ * Each connection is authenticated both ways with a challenge and response on the secret shared by the members (see
+ * {@link #SECRET_PROPERTY}), connections from addresses that are not members are refused, and frames larger than
+ * {@link #MAX_RESULT_BYTES} are rejected before they are read. The local member must be a specific address, so that
+ * the port is only bound on the cluster interface.
+ * <p/>
+ * The cluster is best effort: a member that does not answer within {@link #READ_TIMEOUT_IN_MILLIS} is treated as a
+ * miss and skipped for {@link #MEMBER_BACKOFF_IN_MILLIS}, and a lost invalidation is bounded by the results' time to
+ * live.
+ */
+public class ResultCacheCluster {
+
+    /**
+     * System property holding the host:port this instance listens on for the other members
+     */
+    public static final String LOCAL_MEMBER_PROPERTY = "eniq.events.resultcache.cluster.local";
+
+    /**
+     * System property holding the comma separated host:port of every member, including this instance
+     */
+    public static final String MEMBERS_PROPERTY = "eniq.events.resultcache.cluster.members";
+
+    /**
+     * System property holding the secret shared by the members, which they authenticate each other with
+     */
+    public static final String SECRET_PROPERTY = "eniq.events.resultcache.cluster.secret";
+
+    static final int CONNECT_TIMEOUT_IN_MILLIS = 100;
+
+    static final int READ_TIMEOUT_IN_MILLIS = 500;
+
+    static final long MEMBER_BACKOFF_IN_MILLIS = 5000;
+
+    static final int CONNECTION_IDLE_TIMEOUT_IN_MILLIS = 60000;
+
+    static final int MAX_IDLE_CONNECTIONS_PER_MEMBER = 4;
+
+    static final int MAX_KEY_BYTES = 1024 * 1024;
+
+    static final int MAX_RESULT_BYTES = 64 * 1024 * 1024;
+
+    private static final byte GET = 1;
+
+    private static final byte PUT = 2;
+
+    private static final byte INVALIDATE = 3;
+
+    private static final byte INVALIDATE_ALL = 4;
+
+    private static final byte ACK = 0;
+
+    private static final byte CLIENT = 1;
+
+    private static final byte SERVER = 2;
+
+    private static final int NONCE_BYTES = 16;
+
+    private static final int MAC_BYTES = 32;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final int MAX_QUEUED_MESSAGES = 1000;
+
+    private final ResultCache localCache;
+
+    private final InetSocketAddress localMember;
+
+    private final List<InetSocketAddress> members;
+
+    private final Set<InetAddress> memberAddresses = new HashSet<InetAddress>();
+
+    private final byte[] secret;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ConcurrentMap<InetSocketAddress, Long> unavailableUntil = new ConcurrentHashMap<InetSocketAddress, Long>();
+
+    private final ConcurrentMap<InetSocketAddress, BlockingQueue<Connection>> idleConnections = new ConcurrentHashMap<InetSocketAddress, BlockingQueue<Connection>>();
+
+    private final Set<Socket> acceptedConnections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private final ExecutorService sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
+            MAX_QUEUED_MESSAGES), ServiceExecutors.newThreadFactory("services-resultcache-sender-", Thread.NORM_PRIORITY),
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    private final ExecutorService receivers = Executors.newCachedThreadPool(ServiceExecutors.newThreadFactory("services-resultcache-receiver-",
+            Thread.NORM_PRIORITY));
+
+    private final AtomicLong remoteHits = new AtomicLong();
+
+    private final AtomicLong remoteMisses = new AtomicLong();
+
+    private final AtomicLong openedConnections = new AtomicLong();
+
+    private volatile ServerSocket serverSocket;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param localCache
+     *            the cache of this instance
+     * @param localMember
+     *            address this instance listens on, must be one of the members
+     * @param members
+     *            every member of the cluster, in the same order on every member
+     * @param secret
+     *            secret shared by the members
+     */
+    public ResultCacheCluster(final ResultCache localCache, final InetSocketAddress localMember, final List<InetSocketAddress> members,
+                              final byte[] secret) {
+        if (secret == null || secret.length == 0) {
+            throw new IllegalArgumentException("The result cache cluster members need a shared secret");
+        }
+        this.localCache = localCache;
+        this.localMember = localMember;
+        this.members = new ArrayList<InetSocketAddress>(members);
+        if (!this.members.contains(localMember)) {
+            this.members.add(localMember);
+        }
+        for (final InetSocketAddress member : this.members) {
+            if (member.getAddress() != null) {
+                memberAddresses.add(member.getAddress());
+            }
+        }
+        this.secret = secret.clone();
+    }
+
+    /**
+     * @param addresses
+     *            comma separated host:port
+     * @return the addresses
+     */
+    public static List<InetSocketAddress> parseMembers(final String addresses) {
+        final List<InetSocketAddress> members = new ArrayList<InetSocketAddress>();
+        for (final String address : addresses.split(",")) {
+            final String trimmed = address.trim();
+            if (trimmed.length() > 0) {
+                final int separator = trimmed.lastIndexOf(':');
+                members.add(new InetSocketAddress(trimmed.substring(0, separator), Integer.parseInt(trimmed.substring(separator + 1))));
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Start listening for the other members
+     *
+     * @throws IOException
+     *             if the local member address is the wildcard address or cannot be bound
+     */
+    public void start() throws IOException {
+        if (localMember.isUnresolved() || localMember.getAddress().isAnyLocalAddress()) {
+            throw new IOException("The result cache cluster must listen on the cluster interface, not on " + localMember);
+        }
+        final ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(localMember);
+        serverSocket = socket;
+        receivers.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(socket);
+            }
+        });
+    }
+
+    public void stop() {
+        stopped = true;
+        final ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                ServicesLogger.warn(getClass().getName(), "stop", "Could not close result cache cluster socket: " + e.getMessage());
+            }
+        }
+        for (final BlockingQueue<Connection> idle : idleConnections.values()) {
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                connection.close();
+            }
+        }
+        for (final Socket connection : acceptedConnections) {
+            closeQuietly(connection);
+        }
+        sender.shutdownNow();
+        receivers.shutdownNow();
+    }
+
+    /**
+     * @param key
+     *            a cache key
+     * @return the member the key's result is kept on
+     */
+    InetSocketAddress getOwner(final String key) {
+        InetSocketAddress owner = null;
+        long highestScore = Long.MIN_VALUE;
+        for (final InetSocketAddress member : members) {
+            final long score = mix(member.hashCode() * 31L + key.hashCode());
+            if (owner == null || score > highestScore) {
+                owner = member;
+                highestScore = score;
+            }
+        }
+        return owner;
+    }
+
+    private static long mix(final long value) {
+        long mixed = value * 0x9E3779B97F4A7C15L;
+        mixed ^= mixed >>> 32;
+        mixed *= 0xD6E8FEB86659FD93L;
+        return mixed ^ (mixed >>> 32);
+    }
+
+    /**
+     * Fetch a result from its owner, after a local miss. The result is also stored locally
+     *
+     * @param key
+     *            the cache key
+     * @return the result, or null if the owner does not have it, is this instance or is unavailable
+     */
+    public String fetch(final String key) {
+        final InetSocketAddress owner = getOwner(key);
+        if (owner.equals(localMember) || !isAvailable(owner)) {
+            return null;
+        }
+        try {
+            final String result = exchange(owner, new Exchange<String>() {
+                @Override
+                public String exchange(final DataInputStream in, final DataOutputStream out) throws IOException {
+                    out.writeByte(GET);
+                    writeBytes(out, key.getBytes(ENCODING));
+                    out.flush();
+                    final long timeToLiveInMillis = in.readLong();
+                    if (timeToLiveInMillis <= 0) {
+                        return null;
+                    }
+                    final String result = decompress(readBytes(in, MAX_RESULT_BYTES));
+                    localCache.putLocally(key, result, timeToLiveInMillis);
+                    return result;
+                }
+            });
+            if (result == null) {
+                remoteMisses.incrementAndGet();
+            } else {
+                remoteHits.incrementAndGet();
+            }
+            return result;
+        } catch (final IOException e) {
+            markUnavailable(owner, e);
+            return null;
+        }
+    }
+
+    /**
+     * Store a result computed on this instance on its owner too, in the background. A result too large to be sent is
+     * invalidated on the owner instead, so that the owner does not keep serving an older result
+     */
+    public void replicate(final String key, final String result, final long timeToLiveInMillis) {
+        final InetSocketAddress owner = getOwner(key);
+        if (owner.equals(localMember)) {
+            return;
+        }
+        send(owner, new Message() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                final byte[] resultBytes = result.getBytes(ENCODING);
+                if (resultBytes.length > MAX_RESULT_BYTES) {
+                    out.writeByte(INVALIDATE);
+                    writeBytes(out, key.getBytes(ENCODING));
+                    return;
+                }
+                out.writeByte(PUT);
+                writeBytes(out, key.getBytes(ENCODING));
+                out.writeLong(timeToLiveInMillis);
+                writeBytes(out, resultBytes);
+            }
+        });
+    }
+
+    /**
+     * Invalidate a result on every other member, in the background
+     */
+    public void broadcastInvalidate(final String key) {
+        broadcast(new Message() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                out.writeByte(INVALIDATE);
+                writeBytes(out, key.getBytes(ENCODING));
+            }
+        });
+    }
+
+    /**
+     * Invalidate all results on every other member, in the background
+     */
+    public void broadcastInvalidateAll() {
+        broadcast(new Message() {
+            @Override
+            public void write(final DataOutputStream out) throws IOException {
+                out.writeByte(INVALIDATE_ALL);
+            }
+        });
+    }
+
+    private void broadcast(final Message message) {
+        for (final InetSocketAddress member : members) {
+            if (!member.equals(localMember)) {
+                send(member, message);
+            }
+        }
+    }
+
+    private void send(final InetSocketAddress member, final Message message) {
+        sender.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isAvailable(member)) {
+                    return;
+                }
+                try {
+                    exchange(member, new Exchange<Void>() {
+                        @Override
+                        public Void exchange(final DataInputStream in, final DataOutputStream out) throws IOException {
+                            message.write(out);
+                            out.flush();
+                            if (in.readByte() != ACK) {
+                                throw new IOException("Message was not acknowledged");
+                            }
+                            return null;
+                        }
+                    });
+                } catch (final IOException e) {
+                    markUnavailable(member, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run an exchange on an idle connection to the member, or on a new connection if there is none. An exchange that
+     * fails on an idle connection is retried once on a new connection, as the member may have closed the idle one
+     */
+    private <T> T exchange(final InetSocketAddress member, final Exchange<T> exchange) throws IOException {
+        final Connection idleConnection = pollIdleConnection(member);
+        if (idleConnection != null) {
+            try {
+                return exchange(member, idleConnection, exchange);
+            } catch (final IOException e) {
+                // fall through to a new connection
+            }
+        }
+        return exchange(member, connect(member), exchange);
+    }
+
+    private <T> T exchange(final InetSocketAddress member, final Connection connection, final Exchange<T> exchange) throws IOException {
+        boolean completed = false;
+        try {
+            final T answer = exchange.exchange(connection.in, connection.out);
+            completed = true;
+            return answer;
+        } finally {
+            if (completed) {
+                releaseConnection(member, connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    private Connection pollIdleConnection(final InetSocketAddress member) {
+        final BlockingQueue<Connection> idle = idleConnections.get(member);
+        if (idle == null) {
+            return null;
+        }
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            if (System.currentTimeMillis() - connection.lastUsed < CONNECTION_IDLE_TIMEOUT_IN_MILLIS / 2) {
+                return connection;
+            }
+            connection.close();
+        }
+        return null;
+    }
+
+    private void releaseConnection(final InetSocketAddress member, final Connection connection) {
+        connection.lastUsed = System.currentTimeMillis();
+        BlockingQueue<Connection> idle = idleConnections.get(member);
+        if (idle == null) {
+            final BlockingQueue<Connection> newIdle = new ArrayBlockingQueue<Connection>(MAX_IDLE_CONNECTIONS_PER_MEMBER);
+            idle = idleConnections.putIfAbsent(member, newIdle);
+            if (idle == null) {
+                idle = newIdle;
+            }
+        }
+        if (stopped || !idle.offer(connection)) {
+            connection.close();
+        }
+    }
+
+    private Connection connect(final InetSocketAddress member) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_IN_MILLIS);
+            socket.connect(member, CONNECT_TIMEOUT_IN_MILLIS);
+            final Connection connection = new Connection(socket);
+            final byte[] serverNonce = readFully(connection.in, NONCE_BYTES);
+            final byte[] clientNonce = createNonce();
+            connection.out.write(clientNonce);
+            connection.out.write(sign(CLIENT, serverNonce, clientNonce));
+            connection.out.flush();
+            if (!MessageDigest.isEqual(readFully(connection.in, MAC_BYTES), sign(SERVER, serverNonce, clientNonce))) {
+                throw new IOException("Member failed authentication");
+            }
+            openedConnections.incrementAndGet();
+            return connection;
+        } catch (final IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void acceptConnections(final ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try {
+                final Socket connection = socket.accept();
+                if (!memberAddresses.contains(connection.getInetAddress())) {
+                    ServicesLogger.warn(getClass().getName(), "acceptConnections", "Refused result cache cluster connection from "
+                            + connection.getInetAddress() + ", which is not a member");
+                    closeQuietly(connection);
+                    continue;
+                }
+                receivers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(connection);
+                    }
+                });
+            } catch (final IOException e) {
+                if (!socket.isClosed()) {
+                    ServicesLogger.warn(getClass().getName(), "acceptConnections", "Result cache cluster connection failed: " + e.getMessage());
+                }
+            } catch (final RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Authenticate a connection from another member, then answer its messages until it is closed or has been idle
+     * for {@link #CONNECTION_IDLE_TIMEOUT_IN_MILLIS}
+     */
+    void handle(final Socket connection) {
+        acceptedConnections.add(connection);
+        try {
+            try {
+                connection.setSoTimeout(READ_TIMEOUT_IN_MILLIS);
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                if (!authenticate(in, out)) {
+                    ServicesLogger.warn(getClass().getName(), "handle", "Refused result cache cluster connection from "
+                            + connection.getInetAddress() + ", which failed authentication");
+                    return;
+                }
+                while (!stopped) {
+                    connection.setSoTimeout(CONNECTION_IDLE_TIMEOUT_IN_MILLIS);
+                    final int operation;
+                    try {
+                        operation = in.read();
+                    } catch (final SocketTimeoutException e) {
+                        return;
+                    }
+                    if (operation == -1) {
+                        return;
+                    }
+                    connection.setSoTimeout(READ_TIMEOUT_IN_MILLIS);
+                    handle((byte) operation, in, out);
+                    out.flush();
+                }
+            } finally {
+                acceptedConnections.remove(connection);
+                connection.close();
+            }
+        } catch (final IOException e) {
+            if (!stopped) {
+                ServicesLogger.warn(getClass().getName(), "handle", "Result cache cluster message failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handle(final byte operation, final DataInputStream in, final DataOutputStream out) throws IOException {
+        if (operation == GET) {
+            final String key = readString(in, MAX_KEY_BYTES);
+            final byte[] gzipped = localCache.getGzippedLocally(key);
+            final long timeToLiveInMillis = gzipped == null ? 0 : localCache.getRemainingTimeToLiveInMillis(key);
+            out.writeLong(timeToLiveInMillis);
+            if (timeToLiveInMillis > 0) {
+                writeBytes(out, gzipped);
+            }
+            return;
+        }
+        if (operation == PUT) {
+            final String key = readString(in, MAX_KEY_BYTES);
+            final long timeToLiveInMillis = in.readLong();
+            localCache.putLocally(key, readString(in, MAX_RESULT_BYTES), timeToLiveInMillis);
+        } else if (operation == INVALIDATE) {
+            localCache.invalidateLocally(readString(in, MAX_KEY_BYTES));
+        } else if (operation == INVALIDATE_ALL) {
+            localCache.invalidateAllLocally();
+        } else {
+            throw new IOException("Unknown operation " + operation);
+        }
+        out.writeByte(ACK);
+    }
+
+    /**
+     * Challenge the connecting member to prove it holds the secret, and prove it back
+     */
+    private boolean authenticate(final DataInputStream in, final DataOutputStream out) throws IOException {
+        final byte[] serverNonce = createNonce();
+        out.write(serverNonce);
+        out.flush();
+        final byte[] clientNonce = readFully(in, NONCE_BYTES);
+        if (!MessageDigest.isEqual(readFully(in, MAC_BYTES), sign(CLIENT, serverNonce, clientNonce))) {
+            return false;
+        }
+        out.write(sign(SERVER, serverNonce, clientNonce));
+        out.flush();
+        return true;
+    }
+
+    private byte[] createNonce() {
+        final byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    private byte[] sign(final byte role, final byte[] serverNonce, final byte[] clientNonce) throws IOException {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            mac.update(role);
+            mac.update(serverNonce);
+            mac.update(clientNonce);
+            return mac.doFinal();
+        } catch (final GeneralSecurityException e) {
+            throw new IOException("Could not sign result cache cluster challenge", e);
+        }
+    }
+
+    private boolean isAvailable(final InetSocketAddress member) {
+        final Long until = unavailableUntil.get(member);
+        return until == null || System.currentTimeMillis() >= until;
+    }
+
+    private void markUnavailable(final InetSocketAddress member, final IOException cause) {
+        unavailableUntil.put(member, System.currentTimeMillis() + MEMBER_BACKOFF_IN_MILLIS);
+        ServicesLogger.warn(getClass().getName(), "markUnavailable", "Result cache cluster member " + member + " unavailable: " + cause.getMessage());
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            // nothing more to do with the connection
+        }
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in, final int maxLength) throws IOException {
+        return new String(readBytes(in, maxLength), ENCODING);
+    }
+
+    /**
+     * @throws IOException
+     *             if the frame is larger than maxLength, before it is read
+     */
+    static byte[] readBytes(final DataInputStream in, final int maxLength) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Frame of " + length + " bytes is larger than " + maxLength + " bytes");
+        }
+        return readFully(in, length);
+    }
+
+    private static byte[] readFully(final DataInputStream in, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String decompress(final byte[] gzipped) throws IOException {
+        final InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped), OffHeapResultStore.BLOCK_SIZE);
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(gzipped.length * 8);
+            final byte[] buffer = new byte[OffHeapResultStore.BLOCK_SIZE];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                if (bytes.size() + read > MAX_RESULT_BYTES) {
+                    throw new IOException("Result is larger than " + MAX_RESULT_BYTES + " bytes");
+                }
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString(ENCODING);
+        } finally {
+            gzip.close();
+        }
+    }
+
+    public List<InetSocketAddress> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    public long getRemoteHitCount() {
+        return remoteHits.get();
+    }
+
+    public long getRemoteMissCount() {
+        return remoteMisses.get();
+    }
+
+    /**
+     * @return number of connections opened to other members, which are reused while they are idle
+     */
+    long getOpenedConnectionCount() {
+        return openedConnections.get();
+    }
+
+    /**
+     * A message sent to another member, which only acknowledges it
+     */
+    private interface Message {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * A request to another member and the reading of its answer
+     */
+    private interface Exchange<T> {
+
+        T exchange(DataInputStream in, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * An authenticated connection to another member
+     */
+    private static final class Connection {
+
+        private final Socket socket;
+
+        private final DataInputStream in;
+
+        private final DataOutputStream out;
+
+        private long lastUsed;
+
+        Connection(final Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+/**
+ * JMX view of the {@link ResultCache}
+ */
+public interface ResultCacheMXBean {
+
+    /**
+     * @return the byte budget of the cache
+     */
+    long getMaxBytes();
+
+    /**
+     * @return the direct memory reserved by the cache
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return the direct memory in use by cached results
+     */
+    long getUsedBytes();
+
+    /**
+     * @return the size of the cached results after compression
+     */
+    long getCompressedBytes();
+
+    /**
+     * @return the number of cached results
+     */
+    int getEntryCount();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return hits as a fraction of all lookups
+     */
+    double getHitRatio();
+
+    /**
+     * @return the number of results evicted to make room for new ones
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the number of results not admitted to the cache
+     */
+    long getRejectionCount();
+
+    /**
+     * @return the number of local misses answered by another member of the cluster
+     */
+    long getRemoteHitCount();
+
+    /**
+     * @return the members of the cache cluster, empty if the cache is not clustered
+     */
+    String getClusterMembers();
+
+    /**
+     * Remove all cached results, on every member of the cluster
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,37 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.datatiering;
+
+/**
+ * How the values of a column from the success and error legs of a data tiered query are merged, see
+ * {@link DataTieredResultMerger}
+ */
+public enum DataTieredColumnMerge {
+
+    /** counts and other additive measures, the values of both legs are added */
+    SUM,
+
+    /** the larger of the numeric values of the legs, eg the latest event time */
+    MAX,
+
+    /** the smaller of the numeric values of the legs */
+    MIN,
+
+    /** measures only the success leg provides, eg success ratios, the value of the success leg is kept */
+    SUCCESS_LEG,
+
+    /** measures only the error leg provides, the value of the error leg is kept */
+    ERROR_LEG,
+
+    /** attributes of the key, eg the vendor, the first non empty value is kept, in success leg first order */
+    FIRST_NON_EMPTY
+}
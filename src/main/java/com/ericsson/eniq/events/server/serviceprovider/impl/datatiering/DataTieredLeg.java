@@ -0,0 +1,28 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.datatiering;
+
+/**
+ * The legs of a data tiered query when it is generated and run as separate queries, see
+ * {@link DataTieredResultMerger}. The leg is passed to the template in the {@link #TEMPLATE_PARAMETER} template
+ * parameter.
+ */
+public enum DataTieredLeg {
+
+    /** the success aggregate leg, from the 15 minute success tables */
+    SUCCESS,
+
+    /** the error leg, from the raw error tables */
+    ERROR;
+
+    public static final String TEMPLATE_PARAMETER = "dataTieredLeg";
+}
@@ -0,0 +1,137 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.datatiering;
+
+import java.util.*;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONParser;
+
+/**
+ * Merges the results of the success and error legs of a data tiered query by key.
+ * <p/>
+ * Both legs return the same columns: the key column(s) followed by the measures and attributes of the key. The values
+ * of rows with the same key are merged column by column as declared by the service, see
+ * {@link DataTieredColumnMerge}; columns that are not declared keep the first non empty value. Rows are returned in
+ * the order of the success leg, followed by the keys that only have errors.
+ */
+public class DataTieredResultMerger {
+
+    /**
+     * @param successResult
+     *            grid JSON result of the success leg
+     * @param errorResult
+     *            grid JSON result of the error leg
+     * @param numberOfKeyColumns
+     *            number of leading columns that make up the key
+     * @param columnMerges
+     *            how each non key column is merged, keyed by the index of the column in the row
+     * @return merged grid JSON result, or the failed leg's result if either leg failed
+     */
+    public String merge(final String successResult, final String errorResult, final int numberOfKeyColumns,
+                        final Map<Integer, DataTieredColumnMerge> columnMerges) {
+        if (!GridJSONParser.isSuccessResult(successResult)) {
+            return successResult;
+        }
+        if (!GridJSONParser.isSuccessResult(errorResult)) {
+            return errorResult;
+        }
+        final Map<List<String>, String[]> successRows = getRowsByKey(GridJSONParser.parseRows(successResult), numberOfKeyColumns);
+        final Map<List<String>, String[]> errorRows = getRowsByKey(GridJSONParser.parseRows(errorResult), numberOfKeyColumns);
+        final GridJSONBuilder json = new GridJSONBuilder();
+        for (final Map.Entry<List<String>, String[]> successRow : successRows.entrySet()) {
+            final String[] errorRow = errorRows.remove(successRow.getKey());
+            json.addRow(errorRow == null ? successRow.getValue() : mergeRow(successRow.getValue(), errorRow, numberOfKeyColumns,
+                    columnMerges));
+        }
+        for (final String[] errorRow : errorRows.values()) {
+            json.addRow(errorRow);
+        }
+        return json.build();
+    }
+
+    private Map<List<String>, String[]> getRowsByKey(final List<String[]> rows, final int numberOfKeyColumns) {
+        final Map<List<String>, String[]> rowsByKey = new LinkedHashMap<List<String>, String[]>();
+        for (final String[] row : rows) {
+            final List<String> key = Arrays.asList(row).subList(0, Math.min(numberOfKeyColumns, row.length));
+            if (!rowsByKey.containsKey(key)) {
+                rowsByKey.put(key, row);
+            }
+        }
+        return rowsByKey;
+    }
+
+    private String[] mergeRow(final String[] successRow, final String[] errorRow, final int numberOfKeyColumns,
+                              final Map<Integer, DataTieredColumnMerge> columnMerges) {
+        final String[] merged = successRow.clone();
+        for (int column = numberOfKeyColumns; column < merged.length && column < errorRow.length; column++) {
+            final DataTieredColumnMerge columnMerge = columnMerges.get(column);
+            merged[column] = combine(successRow[column], errorRow[column], columnMerge == null ? DataTieredColumnMerge.FIRST_NON_EMPTY
+                    : columnMerge);
+        }
+        return merged;
+    }
+
+    String combine(final String success, final String error, final DataTieredColumnMerge columnMerge) {
+        switch (columnMerge) {
+        case SUCCESS_LEG:
+            return success;
+        case ERROR_LEG:
+            return error;
+        case FIRST_NON_EMPTY:
+            return isEmpty(success) ? error : success;
+        default:
+            if (isEmpty(error)) {
+                return success;
+            }
+            if (isEmpty(success)) {
+                return error;
+            }
+            return combineNumbers(success, error, columnMerge);
+        }
+    }
+
+    private String combineNumbers(final String success, final String error, final DataTieredColumnMerge columnMerge) {
+        try {
+            final long first = Long.parseLong(success);
+            final long second = Long.parseLong(error);
+            return Long.toString(columnMerge == DataTieredColumnMerge.SUM ? first + second
+                    : columnMerge == DataTieredColumnMerge.MAX ? Math.max(first, second) : Math.min(first, second));
+        } catch (final NumberFormatException notIntegers) {
+            try {
+                final double first = Double.parseDouble(success);
+                final double second = Double.parseDouble(error);
+                return Double.toString(columnMerge == DataTieredColumnMerge.SUM ? first + second
+                        : columnMerge == DataTieredColumnMerge.MAX ? Math.max(first, second) : Math.min(first, second));
+            } catch (final NumberFormatException notNumeric) {
+                return combineStrings(success, error, columnMerge);
+            }
+        }
+    }
+
+    /**
+     * Non numeric values, eg times, are compared as strings for MAX and MIN
+     */
+    private String combineStrings(final String success, final String error, final DataTieredColumnMerge columnMerge) {
+        if (columnMerge == DataTieredColumnMerge.MAX) {
+            return success.compareTo(error) >= 0 ? success : error;
+        }
+        if (columnMerge == DataTieredColumnMerge.MIN) {
+            return success.compareTo(error) <= 0 ? success : error;
+        }
+        return success;
+    }
+
+    private boolean isEmpty(final String value) {
+        return value == null || value.length() == 0;
+    }
+}
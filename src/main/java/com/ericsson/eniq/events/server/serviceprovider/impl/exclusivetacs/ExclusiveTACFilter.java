@@ -0,0 +1,221 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.query.QueryParameter;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONParser;
+import com.ericsson.eniq.events.server.services.DataService;
+
+/**
+ * Holds the TACs of the exclusive TAC group in memory, so that the rows of exclusive TACs can be removed from a result
+ * in the service layer instead of with a NOT IN sub query in every query.
+ * <p/>
+ * Queries for requests that are and are not exclusive TAC related are then the same query, which share their cached
+ * result and query plan. The group rarely changes: it is reloaded every few minutes, or straight away through JMX
+ * after it has been edited.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ExclusiveTACFilter implements ExclusiveTACFilterMXBean {
+
+    static final String EXCLUSIVE_TACS_QUERY = "SELECT TAC FROM dc.GROUP_TYPE_E_TAC WHERE GROUP_NAME = :groupName";
+
+    static final String EXCLUSIVE_TAC_GROUP_NAME = "EXCLUSIVE_TAC";
+
+    private static final String GROUP_NAME_PARAMETER = "groupName";
+
+    private static final int DEFAULT_REFRESH_INTERVAL_IN_SECONDS = 300;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=ExclusiveTACFilter";
+
+    @EJB
+    private DataService dataService;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1,
+            ServiceExecutors.newThreadFactory("services-exclusive-tacs-", Thread.NORM_PRIORITY));
+
+    private ScheduledFuture<?> scheduledRefreshes;
+
+    private volatile IntHashSet exclusiveTACs;
+
+    private volatile long version;
+
+    private volatile int refreshIntervalInSeconds = DEFAULT_REFRESH_INTERVAL_IN_SECONDS;
+
+    private final AtomicLong filteredRowCount = new AtomicLong();
+
+    /**
+     * @return true once the exclusive TACs have been loaded, until then exclusive TACs must be excluded in SQL
+     */
+    public boolean isLoaded() {
+        return exclusiveTACs != null;
+    }
+
+    /**
+     * @param tac
+     *            type allocation code
+     * @return true if the TAC is in the exclusive TAC group
+     */
+    public boolean contains(final int tac) {
+        final IntHashSet tacs = exclusiveTACs;
+        return tacs != null && tacs.contains(tac);
+    }
+
+    /**
+     * Remove the rows of exclusive TACs from a grid JSON result
+     *
+     * @param json
+     *            grid JSON result
+     * @param tacColumn
+     *            column of the result holding the TAC, numbered from 1 as in the grid JSON
+     * @return the result without the rows of exclusive TACs, the given result if it has none
+     */
+    public String filter(final String json, final int tacColumn) {
+        if (!isLoaded() || !GridJSONParser.isSuccessResult(json)) {
+            return json;
+        }
+        final List<String[]> rows = GridJSONParser.parseRows(json);
+        final GridJSONBuilder filteredResult = new GridJSONBuilder();
+        int removedRows = 0;
+        for (final String[] row : rows) {
+            if (isExclusiveTACRow(row, tacColumn)) {
+                removedRows++;
+            } else {
+                filteredResult.addRow(row);
+            }
+        }
+        if (removedRows == 0) {
+            return json;
+        }
+        filteredRowCount.addAndGet(removedRows);
+        return filteredResult.build();
+    }
+
+    private boolean isExclusiveTACRow(final String[] row, final int tacColumn) {
+        if (tacColumn < 1 || tacColumn > row.length || row[tacColumn - 1] == null) {
+            return false;
+        }
+        try {
+            return contains(Integer.parseInt(row[tacColumn - 1].trim()));
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void refresh() {
+        final Map<String, QueryParameter> queryParameters = new HashMap<String, QueryParameter>();
+        queryParameters.put(GROUP_NAME_PARAMETER, QueryParameter.createStringParameter(EXCLUSIVE_TAC_GROUP_NAME));
+        try {
+            final IntHashSet tacs = dataService.getData(EXCLUSIVE_TACS_QUERY, queryParameters, new TACSetTransformer());
+            if (tacs != null) {
+                update(tacs);
+            }
+        } catch (final RuntimeException e) {
+            ServicesLogger.warn(getClass().getName(), "refresh", "Could not load the exclusive TACs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the exclusive TACs, the version only changes if the TACs have changed
+     */
+    synchronized void update(final IntHashSet tacs) {
+        if (!tacs.equals(exclusiveTACs)) {
+            exclusiveTACs = tacs;
+            version++;
+        }
+    }
+
+    @Override
+    public int getRefreshIntervalInSeconds() {
+        return refreshIntervalInSeconds;
+    }
+
+    @Override
+    public synchronized void setRefreshIntervalInSeconds(final int refreshIntervalInSeconds) {
+        this.refreshIntervalInSeconds = Math.max(1, refreshIntervalInSeconds);
+        if (scheduledRefreshes != null) {
+            scheduledRefreshes.cancel(false);
+            scheduleRefreshes();
+        }
+    }
+
+    @Override
+    public int getExclusiveTACCount() {
+        final IntHashSet tacs = exclusiveTACs;
+        return tacs == null ? -1 : tacs.size();
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public long getFilteredRowCount() {
+        return filteredRowCount.get();
+    }
+
+    public void setDataService(final DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    private void scheduleRefreshes() {
+        scheduledRefreshes = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, refreshIntervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        scheduleRefreshes();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "start", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "shutdown", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs;
+
+/**
+ * JMX view of the {@link ExclusiveTACFilter}
+ */
+public interface ExclusiveTACFilterMXBean {
+
+    /**
+     * Reload the exclusive TACs now, eg after the exclusive TAC group has been edited
+     */
+    void refresh();
+
+    int getRefreshIntervalInSeconds();
+
+    void setRefreshIntervalInSeconds(int refreshIntervalInSeconds);
+
+    /**
+     * @return number of exclusive TACs loaded, -1 if they have not been loaded
+     */
+    int getExclusiveTACCount();
+
+    /**
+     * @return incremented every time the loaded exclusive TACs change
+     */
+    long getVersion();
+
+    /**
+     * @return number of result rows removed because they were for an exclusive TAC
+     */
+    long getFilteredRowCount();
+}
@@ -0,0 +1,144 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs;
+
+import java.util.Arrays;
+
+/**
+ * Set of int values held in a single open addressed array, for membership tests on large sets (eg of TACs) without
+ * boxing every value. The set is not thread safe: it is built by one thread and then only read.
+ */
+public class IntHashSet {
+
+    private static final int EMPTY = 0;
+
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+
+    private int[] values;
+
+    private int size;
+
+    private boolean containsEmptyValue;
+
+    /**
+     * @param expectedSize
+     *            number of values the set is expected to hold, the set grows if it is exceeded
+     */
+    public IntHashSet(final int expectedSize) {
+        values = new int[tableSizeFor(expectedSize)];
+    }
+
+    private static int tableSizeFor(final int expectedSize) {
+        int tableSize = 16;
+        while (tableSize * MAX_LOAD_FACTOR < expectedSize) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * @param value
+     *            value to add
+     * @return true if the value was not already in the set
+     */
+    public boolean add(final int value) {
+        if (value == EMPTY) {
+            if (containsEmptyValue) {
+                return false;
+            }
+            containsEmptyValue = true;
+            size++;
+            return true;
+        }
+        if (size + 1 > values.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+        final int mask = values.length - 1;
+        int slot = hash(value) & mask;
+        while (values[slot] != EMPTY) {
+            if (values[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[slot] = value;
+        size++;
+        return true;
+    }
+
+    public boolean contains(final int value) {
+        if (value == EMPTY) {
+            return containsEmptyValue;
+        }
+        final int mask = values.length - 1;
+        int slot = hash(value) & mask;
+        while (values[slot] != EMPTY) {
+            if (values[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        final int[] oldValues = values;
+        values = new int[oldValues.length * 2];
+        size = containsEmptyValue ? 1 : 0;
+        for (final int value : oldValues) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    private static int hash(final int value) {
+        final int hash = value * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the values in ascending order
+     */
+    public int[] toSortedArray() {
+        final int[] sorted = new int[size];
+        int index = 0;
+        if (containsEmptyValue) {
+            sorted[index++] = EMPTY;
+        }
+        for (final int value : values) {
+            if (value != EMPTY) {
+                sorted[index++] = value;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof IntHashSet)) {
+            return false;
+        }
+        final IntHashSet otherSet = (IntHashSet) other;
+        return size == otherSet.size && Arrays.equals(toSortedArray(), otherSet.toSortedArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toSortedArray());
+    }
+}
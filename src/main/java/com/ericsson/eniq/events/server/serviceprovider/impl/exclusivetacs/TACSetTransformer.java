@@ -0,0 +1,37 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.ericsson.eniq.events.server.query.resultsettransformers.ResultSetTransformer;
+
+/**
+ * Reads the TACs in the first column of a result into an {@link IntHashSet}
+ */
+public class TACSetTransformer implements ResultSetTransformer<IntHashSet> {
+
+    private static final int EXPECTED_TACS = 1024;
+
+    @Override
+    public IntHashSet transform(final ResultSet resultSet) throws SQLException {
+        final IntHashSet tacs = new IntHashSet(EXPECTED_TACS);
+        while (resultSet.next()) {
+            final int tac = resultSet.getInt(1);
+            if (!resultSet.wasNull()) {
+                tacs.add(tac);
+            }
+        }
+        return tacs;
+    }
+}
@@ -0,0 +1,116 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A CSV export that is written to a local file in the background, and downloaded by the client once complete
+ */
+public class ExportJob {
+
+    private final String id;
+
+    private final File file;
+
+    private final long creationTime = System.currentTimeMillis();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private volatile ExportJobState state = ExportJobState.QUEUED;
+
+    private volatile long completionTime;
+
+    ExportJob(final String id, final File file) {
+        this.id = id;
+        this.file = file;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ExportJobState getState() {
+        return state;
+    }
+
+    /**
+     * @return size of the export written so far, the size of the file once the job has completed
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return when the job completed or failed, 0 while it is queued or running
+     */
+    public long getCompletionTime() {
+        return completionTime;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    void addBytesWritten(final long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    void setState(final ExportJobState state) {
+        if (state == ExportJobState.COMPLETED || state == ExportJobState.FAILED) {
+            completionTime = System.currentTimeMillis();
+        }
+        this.state = state;
+    }
+
+    /**
+     * Write part of the exported file to the client. The file is copied with {@link FileChannel#transferTo}, so the
+     * data does not pass through the Java heap when the container's output stream allows it
+     *
+     * @param position
+     *            offset of the first byte to write
+     * @param count
+     *            number of bytes to write
+     * @param output
+     *            the client's output stream
+     * @throws IOException
+     *             if the file cannot be read or the client goes away
+     */
+    public void transferTo(final long position, final long count, final OutputStream output) throws IOException {
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final FileChannel channel = input.getChannel();
+            final WritableByteChannel target = Channels.newChannel(output);
+            long transferred = 0;
+            while (transferred < count) {
+                final long bytes = channel.transferTo(position + transferred, count - transferred, target);
+                if (bytes <= 0) {
+                    break;
+                }
+                transferred += bytes;
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
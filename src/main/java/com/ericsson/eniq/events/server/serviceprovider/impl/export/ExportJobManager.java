@@ -0,0 +1,171 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceInvoker;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceRequest;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+
+/**
+ * Runs CSV exports in the background, writing each export to a local file that the client downloads once the job has
+ * completed.
+ * <p/>
+ * The query is streamed once, at the speed of the database rather than of the client, so the database connection is
+ * held only as long as the query runs, and a client that loses its connection can resume the download rather than
+ * running the export again. At most {@link #DEFAULT_MAX_CONCURRENT_EXPORTS} exports run at a time, further jobs are
+ * queued. Finished jobs and their files are removed after {@link #DEFAULT_RETENTION_IN_MINUTES} minutes.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ExportJobManager {
+
+    static final int DEFAULT_MAX_CONCURRENT_EXPORTS = 4;
+
+    static final int DEFAULT_MAX_JOBS = 100;
+
+    static final int DEFAULT_RETENTION_IN_MINUTES = 60;
+
+    private static final String EXPORT_FILE_SUFFIX = ".csv";
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<String, ExportJob>();
+
+    private final ExecutorService exportExecutor = Executors.newFixedThreadPool(DEFAULT_MAX_CONCURRENT_EXPORTS,
+            ServiceExecutors.newThreadFactory("services-export-", Thread.NORM_PRIORITY));
+
+    private File exportDirectory = new File(System.getProperty("java.io.tmpdir"), "eniq_events_exports");
+
+    private int maxJobs = DEFAULT_MAX_JOBS;
+
+    private long retentionInMillis = TimeUnit.MINUTES.toMillis(DEFAULT_RETENTION_IN_MINUTES);
+
+    /**
+     * Queue an export
+     *
+     * @param service
+     *            the service to export the data of
+     * @param serviceRequest
+     *            the request that started the export, the media type must be CSV
+     * @return the queued job, or null if the maximum number of jobs are already held
+     */
+    public ExportJob submit(final Service service, final ServiceRequest serviceRequest) {
+        removeExpiredJobs();
+        if (jobs.size() >= maxJobs) {
+            return null;
+        }
+        if (!exportDirectory.isDirectory() && !exportDirectory.mkdirs()) {
+            ServicesLogger.error(getClass().getName(), "submit", new IOException("Could not create export directory " + exportDirectory));
+            return null;
+        }
+        final String id = UUID.randomUUID().toString();
+        final ExportJob job = new ExportJob(id, new File(exportDirectory, id + EXPORT_FILE_SUFFIX));
+        jobs.put(id, job);
+        try {
+            exportExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runExport(job, service, serviceRequest);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            jobs.remove(id);
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * @param id
+     *            job id returned by {@link #submit(Service, ServiceRequest)}
+     * @return the job, or null if there is no such job or it has expired
+     */
+    public ExportJob getJob(final String id) {
+        removeExpiredJobs();
+        return id == null ? null : jobs.get(id);
+    }
+
+    private void runExport(final ExportJob job, final Service service, final ServiceRequest serviceRequest) {
+        job.setState(ExportJobState.RUNNING);
+        try {
+            final FileExportResponse response = new FileExportResponse(job);
+            try {
+                ServiceInvoker.getDataAsCSV(service, serviceRequest, response);
+            } finally {
+                response.close();
+            }
+            if (response.getFailure() != null) {
+                ServicesLogger.warn(getClass().getName(), "runExport", "Export job " + job.getId() + " failed: " + response.getFailure());
+                job.setState(ExportJobState.FAILED);
+                return;
+            }
+            job.setState(ExportJobState.COMPLETED);
+        } catch (final IOException e) {
+            ServicesLogger.error(getClass().getName(), "runExport", e);
+            job.setState(ExportJobState.FAILED);
+        } catch (final RuntimeException e) {
+            ServicesLogger.error(getClass().getName(), "runExport", e);
+            job.setState(ExportJobState.FAILED);
+        }
+    }
+
+    private void removeExpiredJobs() {
+        final long expiredBefore = System.currentTimeMillis() - retentionInMillis;
+        for (final Iterator<ExportJob> iterator = jobs.values().iterator(); iterator.hasNext();) {
+            final ExportJob job = iterator.next();
+            final long completionTime = job.getCompletionTime();
+            if (completionTime != 0 && completionTime < expiredBefore) {
+                iterator.remove();
+                deleteFile(job);
+            }
+        }
+    }
+
+    private void deleteFile(final ExportJob job) {
+        if (job.getFile().exists() && !job.getFile().delete()) {
+            ServicesLogger.error(getClass().getName(), "deleteFile", new IOException("Could not delete export file " + job.getFile()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        exportExecutor.shutdownNow();
+        for (final ExportJob job : jobs.values()) {
+            deleteFile(job);
+        }
+        jobs.clear();
+    }
+
+    public void setExportDirectory(final File exportDirectory) {
+        this.exportDirectory = exportDirectory;
+    }
+
+    public void setMaxJobs(final int maxJobs) {
+        this.maxJobs = maxJobs;
+    }
+
+    public void setRetentionInMinutes(final int retentionInMinutes) {
+        retentionInMillis = TimeUnit.MINUTES.toMillis(retentionInMinutes);
+    }
+}
@@ -0,0 +1,287 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.export;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Response handed to a service in place of the HTTP response when running an export job, so that the CSV streamed by
+ * the service is written to the job's file rather than to the client.
+ * <p/>
+ * Headers and status are ignored, they are set when the file is downloaded. Errors the service sends, and failures to
+ * write the file, are recorded so that the job can be marked as failed even when the service does not pass them on,
+ * see {@link #getFailure()}.
+ */
+class FileExportResponse implements HttpServletResponse {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExportJob exportJob;
+
+    private final FileOutputStream file;
+
+    private final ExportOutputStream outputStream;
+
+    private String contentType;
+
+    private volatile String failure;
+
+    FileExportResponse(final ExportJob exportJob) throws FileNotFoundException {
+        this.exportJob = exportJob;
+        file = new FileOutputStream(exportJob.getFile());
+        outputStream = new ExportOutputStream(new BufferedOutputStream(Channels.newOutputStream(file.getChannel()), BUFFER_SIZE));
+    }
+
+    /**
+     * Flush the buffered CSV to the file and close it
+     */
+    void close() throws IOException {
+        try {
+            outputStream.flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return why the export failed, null if the service sent no error and the file was written
+     */
+    String getFailure() {
+        return failure;
+    }
+
+    private void recordFailure(final String reason) {
+        if (failure == null) {
+            failure = reason;
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        throw new IllegalStateException("Exports are written to the output stream");
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return "UTF-8";
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public void setContentType(final String type) {
+        contentType = type;
+    }
+
+    @Override
+    public void setCharacterEncoding(final String charset) {
+    }
+
+    @Override
+    public void setContentLength(final int length) {
+    }
+
+    @Override
+    public void setBufferSize(final int size) {
+    }
+
+    @Override
+    public int getBufferSize() {
+        return BUFFER_SIZE;
+    }
+
+    @Override
+    public void resetBuffer() {
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void setLocale(final Locale locale) {
+    }
+
+    @Override
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    @Override
+    public void addCookie(final Cookie cookie) {
+    }
+
+    @Override
+    public boolean containsHeader(final String name) {
+        return false;
+    }
+
+    @Override
+    public String encodeURL(final String url) {
+        return url;
+    }
+
+    @Override
+    public String encodeRedirectURL(final String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeUrl(final String url) {
+        return url;
+    }
+
+    @Override
+    @Deprecated
+    public String encodeRedirectUrl(final String url) {
+        return url;
+    }
+
+    @Override
+    public void sendError(final int statusCode, final String message) {
+        recordFailure("Export failed with status " + statusCode + ": " + message);
+    }
+
+    @Override
+    public void sendError(final int statusCode) {
+        recordFailure("Export failed with status " + statusCode);
+    }
+
+    @Override
+    public void sendRedirect(final String location) throws IOException {
+        throw new IOException("Exports cannot be redirected");
+    }
+
+    @Override
+    public void setDateHeader(final String name, final long date) {
+    }
+
+    @Override
+    public void addDateHeader(final String name, final long date) {
+    }
+
+    @Override
+    public void setHeader(final String name, final String value) {
+    }
+
+    @Override
+    public void addHeader(final String name, final String value) {
+    }
+
+    @Override
+    public void setIntHeader(final String name, final int value) {
+    }
+
+    @Override
+    public void addIntHeader(final String name, final int value) {
+    }
+
+    @Override
+    public void setStatus(final int statusCode) {
+    }
+
+    @Override
+    @Deprecated
+    public void setStatus(final int statusCode, final String message) {
+    }
+
+    @Override
+    public int getStatus() {
+        return SC_OK;
+    }
+
+    @Override
+    public String getHeader(final String name) {
+        return null;
+    }
+
+    @Override
+    public Collection<String> getHeaders(final String name) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Counts the bytes written, so that clients can poll the progress of the job
+     */
+    private class ExportOutputStream extends ServletOutputStream {
+
+        private final OutputStream output;
+
+        ExportOutputStream(final OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            try {
+                output.write(b);
+            } catch (final IOException e) {
+                recordFailure(e.getMessage());
+                throw e;
+            }
+            exportJob.addBytesWritten(1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            try {
+                output.write(bytes, offset, length);
+            } catch (final IOException e) {
+                recordFailure(e.getMessage());
+                throw e;
+            }
+            exportJob.addBytesWritten(length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                output.flush();
+            } catch (final IOException e) {
+                recordFailure(e.getMessage());
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.hedging;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+
+/**
+ * A read only query that can be run on more than one reader, see {@link HedgedQueryExecutor}
+ */
+public interface HedgedQuery {
+
+    /**
+     * @param loadBalancingPolicy
+     *            policy routing the query to the reader it is run on
+     * @return json result of the query
+     */
+    String run(LoadBalancingPolicy loadBalancingPolicy);
+}
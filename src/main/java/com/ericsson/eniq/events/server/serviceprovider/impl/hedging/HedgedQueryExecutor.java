@@ -0,0 +1,340 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.hedging;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ParallelQueryExecutor;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryFingerprint;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryStatisticsRegistry;
+
+/**
+ * Cuts the tail latency caused by a reader that is stalled (eg by a merge, a load or garbage collection) by hedging:
+ * if a query has not returned within the p95 of its earlier executions, as recorded in the
+ * {@link QueryStatisticsRegistry}, it is issued again on a second reader, the first result is returned and the other
+ * execution is cancelled.
+ * <p/>
+ * Hedges are limited to a budget, a percentage of all queries (5% by default), so that a general slowdown, when every
+ * query exceeds its p95, does not double the load on the readers. The budget is kept as credit that each query adds
+ * to and each hedge spends, with the credit capped so that only a short burst of hedges can be saved up.
+ * <p/>
+ * Cancelling the losing execution interrupts its thread, but that does not stop a JDBC statement that is already
+ * executing on the reader. A losing execution that is still running therefore keeps holding a hedge's worth of the
+ * credit until its query actually returns, so that stalled readers that ignore cancellation cannot be piled up with
+ * further hedges.
+ * <p/>
+ * Both executions run on the bounded {@link ParallelQueryExecutor}. If it has no thread free the query is run on the
+ * calling thread, or, if only the hedge cannot be started, is left to the primary execution.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class HedgedQueryExecutor implements HedgedQueryExecutorMXBean {
+
+    static final double HEDGE_PERCENTILE = 95;
+
+    static final int DEFAULT_BUDGET_PERCENT = 5;
+
+    static final long DEFAULT_MIN_EXECUTIONS = 50;
+
+    private static final long CREDIT_PER_HEDGE = 100;
+
+    private static final long MAX_CREDIT = 10 * CREDIT_PER_HEDGE;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=HedgedQueryExecutor";
+
+    @EJB
+    private QueryStatisticsRegistry queryStatisticsRegistry;
+
+    @EJB
+    private ParallelQueryExecutor parallelQueryExecutor;
+
+    private volatile boolean enabled = true;
+
+    private volatile int budgetPercent = DEFAULT_BUDGET_PERCENT;
+
+    private volatile long minExecutions = DEFAULT_MIN_EXECUTIONS;
+
+    private final AtomicLong credit = new AtomicLong();
+
+    private final AtomicLong queries = new AtomicLong();
+
+    private final AtomicLong hedgedQueries = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private final AtomicInteger cancelledExecutionsRunning = new AtomicInteger();
+
+    /**
+     * Run a query, hedging it on the alternative reader if it is slow. The query is run on the calling thread if it
+     * cannot be hedged
+     *
+     * @param fingerprint
+     *            fingerprint of the query, to look up its p95
+     * @param primaryReader
+     *            policy selected for the query
+     * @param alternativeReader
+     *            policy routing to a different reader, null if there is none
+     * @param query
+     *            the query
+     * @return json result of the first execution to succeed
+     */
+    public String execute(final QueryFingerprint fingerprint, final LoadBalancingPolicy primaryReader, final LoadBalancingPolicy alternativeReader,
+                          final HedgedQuery query) {
+        queries.incrementAndGet();
+        earnCredit();
+        final long hedgeDelayInNanos = getHedgeDelayInNanos(fingerprint, alternativeReader);
+        if (hedgeDelayInNanos < 0) {
+            return query.run(primaryReader);
+        }
+        final CompletionService<String> executions = new ExecutorCompletionService<String>(new Executor() {
+            @Override
+            public void execute(final Runnable execution) {
+                parallelQueryExecutor.execute(execution);
+            }
+        });
+        final Execution primaryExecution = new Execution(query, primaryReader);
+        final Future<String> primary;
+        try {
+            primary = executions.submit(primaryExecution);
+        } catch (final RejectedExecutionException e) {
+            return query.run(primaryReader);
+        }
+        Execution hedgeExecution = null;
+        Future<String> hedge = null;
+        try {
+            Future<String> first = executions.poll(hedgeDelayInNanos, TimeUnit.NANOSECONDS);
+            if (first == null) {
+                if (!spendCredit()) {
+                    return primary.get();
+                }
+                hedgeExecution = new Execution(query, alternativeReader);
+                try {
+                    hedge = executions.submit(hedgeExecution);
+                } catch (final RejectedExecutionException e) {
+                    credit.addAndGet(CREDIT_PER_HEDGE);
+                    return primary.get();
+                }
+                hedgedQueries.incrementAndGet();
+                first = executions.take();
+            }
+            try {
+                return getResult(first, hedge);
+            } catch (final ExecutionException e) {
+                if (hedge == null) {
+                    throw e;
+                }
+                return getResult(executions.take(), hedge);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while waiting for query");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ServiceException(e.getCause());
+        } finally {
+            primaryExecution.cancel();
+            primary.cancel(true);
+            if (hedge != null) {
+                hedgeExecution.cancel();
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private String getResult(final Future<String> execution, final Future<String> hedge) throws InterruptedException, ExecutionException {
+        final String result = execution.get();
+        if (execution == hedge) {
+            hedgeWins.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Execution of the query on one reader, which counts itself against the budget if it is cancelled while its query
+     * is running, until the query returns
+     */
+    private class Execution implements Callable<String> {
+
+        private static final int NEW = 0;
+
+        private static final int RUNNING = 1;
+
+        private static final int FINISHED = 2;
+
+        private static final int CANCELLED = 3;
+
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        private final HedgedQuery query;
+
+        private final LoadBalancingPolicy reader;
+
+        Execution(final HedgedQuery query, final LoadBalancingPolicy reader) {
+            this.query = query;
+            this.reader = reader;
+        }
+
+        @Override
+        public String call() {
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                return null;
+            }
+            try {
+                return query.run(reader);
+            } finally {
+                if (!state.compareAndSet(RUNNING, FINISHED)) {
+                    cancelledExecutionsRunning.decrementAndGet();
+                }
+            }
+        }
+
+        void cancel() {
+            if (!state.compareAndSet(NEW, CANCELLED) && state.compareAndSet(RUNNING, CANCELLED)) {
+                cancelledExecutionsRunning.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return how long to wait before hedging the query, -1 if it cannot be hedged
+     */
+    private long getHedgeDelayInNanos(final QueryFingerprint fingerprint, final LoadBalancingPolicy alternativeReader) {
+        if (!enabled || alternativeReader == null || queryStatisticsRegistry == null || parallelQueryExecutor == null
+                || getAvailableCredit(credit.get()) < CREDIT_PER_HEDGE) {
+            return -1;
+        }
+        return queryStatisticsRegistry.getPercentileInNanos(fingerprint, HEDGE_PERCENTILE, minExecutions);
+    }
+
+    private void earnCredit() {
+        long current;
+        do {
+            current = credit.get();
+            if (current >= MAX_CREDIT) {
+                return;
+            }
+        } while (!credit.compareAndSet(current, Math.min(MAX_CREDIT, current + budgetPercent)));
+    }
+
+    private boolean spendCredit() {
+        long current;
+        do {
+            current = credit.get();
+            if (getAvailableCredit(current) < CREDIT_PER_HEDGE) {
+                return false;
+            }
+        } while (!credit.compareAndSet(current, current - CREDIT_PER_HEDGE));
+        return true;
+    }
+
+    /**
+     * @return the credit less that held by cancelled executions whose queries are still running
+     */
+    private long getAvailableCredit(final long currentCredit) {
+        return currentCredit - cancelledExecutionsRunning.get() * CREDIT_PER_HEDGE;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getBudgetPercent() {
+        return budgetPercent;
+    }
+
+    @Override
+    public void setBudgetPercent(final int budgetPercent) {
+        this.budgetPercent = Math.max(0, Math.min(100, budgetPercent));
+    }
+
+    @Override
+    public long getMinExecutions() {
+        return minExecutions;
+    }
+
+    @Override
+    public void setMinExecutions(final long minExecutions) {
+        this.minExecutions = minExecutions;
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.get();
+    }
+
+    @Override
+    public long getHedgedQueries() {
+        return hedgedQueries.get();
+    }
+
+    @Override
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    @Override
+    public int getCancelledExecutionsRunning() {
+        return cancelledExecutionsRunning.get();
+    }
+
+    public void setQueryStatisticsRegistry(final QueryStatisticsRegistry queryStatisticsRegistry) {
+        this.queryStatisticsRegistry = queryStatisticsRegistry;
+    }
+
+    public void setParallelQueryExecutor(final ParallelQueryExecutor parallelQueryExecutor) {
+        this.parallelQueryExecutor = parallelQueryExecutor;
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+}
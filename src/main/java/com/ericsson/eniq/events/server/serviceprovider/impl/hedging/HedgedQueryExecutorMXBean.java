@@ -0,0 +1,50 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.hedging;
+
+/**
+ * JMX view of the {@link HedgedQueryExecutor}
+ */
+public interface HedgedQueryExecutorMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return hedged queries allowed, as a percentage of all queries
+     */
+    int getBudgetPercent();
+
+    void setBudgetPercent(int budgetPercent);
+
+    /**
+     * @return number of executions of a query needed before its p95 is used to decide when to hedge it
+     */
+    long getMinExecutions();
+
+    void setMinExecutions(long minExecutions);
+
+    long getQueries();
+
+    long getHedgedQueries();
+
+    /**
+     * @return number of hedged queries answered by the second reader
+     */
+    long getHedgeWins();
+
+    /**
+     * @return number of cancelled executions whose queries have not yet returned, each holding back a hedge
+     */
+    int getCancelledExecutionsRunning();
+}
@@ -0,0 +1,159 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.imsifilter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of long values (eg IMSIs): answers whether a value may have been added, with no false negatives and a
+ * false positive rate set when the filter is created.
+ * <p/>
+ * Values can be added while the filter is being read. A value is only guaranteed to be found once its add has
+ * returned.
+ */
+public class BloomFilter {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final double LN_2 = Math.log(2);
+
+    private final AtomicLongArray words;
+
+    private final long numberOfBits;
+
+    private final int numberOfHashFunctions;
+
+    private BloomFilter(final int numberOfWords, final int numberOfHashFunctions) {
+        this.words = new AtomicLongArray(numberOfWords);
+        this.numberOfBits = (long) numberOfWords * Long.SIZE;
+        this.numberOfHashFunctions = numberOfHashFunctions;
+    }
+
+    /**
+     * @param expectedValues
+     *            number of values the filter is sized for, the false positive rate rises if more are added
+     * @param falsePositiveRate
+     *            probability that a value that was not added is reported as possibly added, eg 0.01
+     * @return an empty filter
+     */
+    public static BloomFilter create(final long expectedValues, final double falsePositiveRate) {
+        final long values = Math.max(1, expectedValues);
+        final int numberOfWords = getNumberOfWords(values, falsePositiveRate);
+        final int numberOfHashFunctions = (int) Math.max(1, Math.round((double) numberOfWords * Long.SIZE / values * LN_2));
+        return new BloomFilter(numberOfWords, numberOfHashFunctions);
+    }
+
+    /**
+     * @return memory held by the bits of a filter created with {@link #create(long, double)}, without creating it
+     */
+    public static long getSizeInBytes(final long expectedValues, final double falsePositiveRate) {
+        return (long) getNumberOfWords(Math.max(1, expectedValues), falsePositiveRate) * Long.SIZE / Byte.SIZE;
+    }
+
+    private static int getNumberOfWords(final long values, final double falsePositiveRate) {
+        final double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        final long bits = (long) Math.ceil(-values * Math.log(rate) / (LN_2 * LN_2));
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + Long.SIZE - 1) / Long.SIZE));
+    }
+
+    public void add(final long value) {
+        final long hash1 = mix(value);
+        final long hash2 = mix(hash1 ^ value) | 1;
+        for (int i = 0; i < numberOfHashFunctions; i++) {
+            setBit(bitIndex(hash1 + i * hash2));
+        }
+    }
+
+    /**
+     * @return false if the value has definitely not been added
+     */
+    public boolean mightContain(final long value) {
+        final long hash1 = mix(value);
+        final long hash2 = mix(hash1 ^ value) | 1;
+        for (int i = 0; i < numberOfHashFunctions; i++) {
+            final long bit = bitIndex(hash1 + i * hash2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long bitIndex(final long hash) {
+        return (hash & Long.MAX_VALUE) % numberOfBits;
+    }
+
+    private void setBit(final long bit) {
+        final int word = (int) (bit >>> 6);
+        final long mask = 1L << bit;
+        long current = words.get(word);
+        while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+            current = words.get(word);
+        }
+    }
+
+    /**
+     * Finalisation step of MurmurHash3, spreads the bits of IMSIs, which differ mostly in their low digits
+     */
+    private static long mix(final long value) {
+        long hash = value;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return memory held by the filter's bits
+     */
+    public long getSizeInBytes() {
+        return numberOfBits / Byte.SIZE;
+    }
+
+    public int getNumberOfHashFunctions() {
+        return numberOfHashFunctions;
+    }
+
+    public void writeTo(final DataOutput output) throws IOException {
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(numberOfHashFunctions);
+        output.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) {
+            output.writeLong(words.get(i));
+        }
+    }
+
+    /**
+     * @throws IOException
+     *             if the input does not hold a filter written by {@link #writeTo(DataOutput)}
+     */
+    public static BloomFilter readFrom(final DataInput input) throws IOException {
+        if (input.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported bloom filter format");
+        }
+        final int numberOfHashFunctions = input.readInt();
+        final int numberOfWords = input.readInt();
+        if (numberOfHashFunctions < 1 || numberOfWords < 1) {
+            throw new IOException("Invalid bloom filter");
+        }
+        final BloomFilter filter = new BloomFilter(numberOfWords, numberOfHashFunctions);
+        for (int i = 0; i < numberOfWords; i++) {
+            filter.words.set(i, input.readLong());
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,588 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.imsifilter;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.query.QueryParameter;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawPartition;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawTableAvailabilityIndex;
+import com.ericsson.eniq.events.server.services.DataService;
+import com.ericsson.eniq.events.server.utils.FormattedDateTimeRange;
+
+/**
+ * Bloom filters of the IMSIs seen in the events of each tech pack on each (UTC) day, so that a subscriber request for
+ * an IMSI with no events in the window can be answered with an empty result before the query is generated, instead of
+ * scanning the raw tables for nothing.
+ * <p/>
+ * A filter only exists once its day is complete: the distinct IMSIs of the day are read from the raw partitions the
+ * {@link RawTableAvailabilityIndex} knows of, see {@link #refresh()}, and the filter is only added, and written to the
+ * filter directory, after every partition of the day has been read. A day is only loaded once it ended
+ * {@link #getCompletionDelayInMinutes()} ago, which must cover the loading latency, as events loaded after that are not
+ * added. A load that fails leaves the day without a filter, to be loaded again on the next refresh.
+ * <p/>
+ * A window is only answered for if every day of it has a filter for every tech pack the request reads; a day without a
+ * filter (eg today, a day that has not been loaded yet, or one dropped to keep within the memory budget) is queried as
+ * before. Filter files start with a marker of a complete day and are written to a temporary file and renamed, so a file
+ * of a partly loaded day is never read back on start up.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class IMSIExistenceIndex implements IMSIExistenceIndexMXBean {
+
+    static final String IMSIS_QUERY = "SELECT DISTINCT IMSI FROM dc.%s WHERE DATETIME_ID >= :startTime AND DATETIME_ID < :endTime AND IMSI IS NOT NULL";
+
+    static final String START_TIME_PARAMETER = "startTime";
+
+    static final String END_TIME_PARAMETER = "endTime";
+
+    static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    static final long DEFAULT_EXPECTED_IMSIS_PER_DAY = 5000000;
+
+    static final long DEFAULT_MEMORY_BUDGET_IN_BYTES = 256L * 1024 * 1024;
+
+    static final String[] DEFAULT_TECH_PACKS = { "EVENT_E_SGEH", "EVENT_E_LTE" };
+
+    static final int DEFAULT_DAYS_TO_LOAD = 7;
+
+    static final int DEFAULT_COMPLETION_DELAY_IN_MINUTES = 120;
+
+    private static final int DEFAULT_REFRESH_INTERVAL_IN_SECONDS = 900;
+
+    /**
+     * Gives the {@link RawTableAvailabilityIndex} time to read the raw partitions after a restart
+     */
+    private static final int FIRST_REFRESH_DELAY_IN_SECONDS = 120;
+
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final int MAX_DAYS_IN_WINDOW = 400;
+
+    /**
+     * Marks a filter file as holding every IMSI of its day, files without it are from an older version and are deleted
+     */
+    private static final int COMPLETE_DAY_MARKER = 0x494D5344;
+
+    private static final String FILTER_FILE_SUFFIX = ".bloom";
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z0-9_]+");
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=IMSIExistenceIndex";
+
+    private final ConcurrentMap<String, DayFilter> filters = new ConcurrentHashMap<String, DayFilter>();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1,
+            ServiceExecutors.newThreadFactory("services-imsi-filters-", Thread.MIN_PRIORITY));
+
+    private ScheduledFuture<?> scheduledRefreshes;
+
+    @EJB
+    private DataService dataService;
+
+    @EJB
+    private RawTableAvailabilityIndex rawTableAvailabilityIndex;
+
+    private File filterDirectory = new File(System.getProperty("java.io.tmpdir"), "eniq_events_imsi_filters");
+
+    private volatile double falsePositiveRate = DEFAULT_FALSE_POSITIVE_RATE;
+
+    private volatile long expectedIMSIsPerDay = DEFAULT_EXPECTED_IMSIS_PER_DAY;
+
+    private volatile long memoryBudgetInBytes = DEFAULT_MEMORY_BUDGET_IN_BYTES;
+
+    private volatile String[] techPacks = DEFAULT_TECH_PACKS;
+
+    private volatile int daysToLoad = DEFAULT_DAYS_TO_LOAD;
+
+    private volatile int completionDelayInMinutes = DEFAULT_COMPLETION_DELAY_IN_MINUTES;
+
+    private volatile int refreshIntervalInSeconds = DEFAULT_REFRESH_INTERVAL_IN_SECONDS;
+
+    /**
+     * Incremented whenever filters are cleared, so that a load that started before is not added
+     */
+    private long clears;
+
+    private final AtomicLong absentIMSIAnswers = new AtomicLong();
+
+    @Override
+    public void refresh() {
+        loadCompleteDays(System.currentTimeMillis());
+    }
+
+    /**
+     * Load the days that ended at least the completion delay before the given time and have no filter yet, newest days
+     * first, stopping at the first failure or once older days would not fit the memory budget
+     */
+    void loadCompleteDays(final long now) {
+        if (dataService == null || rawTableAvailabilityIndex == null) {
+            return;
+        }
+        final long lastCompleteDay = getDay(now - TimeUnit.MINUTES.toMillis(completionDelayInMinutes)) - 1;
+        for (long day = lastCompleteDay; day > lastCompleteDay - daysToLoad; day--) {
+            for (final String techPack : techPacks) {
+                if (filters.containsKey(getKey(techPack, day))) {
+                    continue;
+                }
+                if (!fitsMemoryBudget(day)) {
+                    return;
+                }
+                final List<RawPartition> partitions = rawTableAvailabilityIndex.getPartitions(techPack);
+                if (partitions.isEmpty()) {
+                    continue;
+                }
+                try {
+                    loadDay(techPack, day, partitions);
+                } catch (final RuntimeException e) {
+                    ServicesLogger.warn(getClass().getName(), "loadCompleteDays", "Could not load the IMSIs of " + techPack + " on "
+                            + RawTableAvailabilityIndex.formatDateTime(day * DAY_IN_MILLIS) + ": " + e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the distinct IMSIs of every partition holding events of the day into a new filter, and add it once all have
+     * been read
+     */
+    private void loadDay(final String techPack, final long day, final List<RawPartition> partitions) {
+        final long loadedAfterClears = getClears();
+        final long startTime = day * DAY_IN_MILLIS;
+        final long endTime = startTime + DAY_IN_MILLIS;
+        final BloomFilter filter = BloomFilter.create(expectedIMSIsPerDay, falsePositiveRate);
+        final Map<String, QueryParameter> queryParameters = new HashMap<String, QueryParameter>();
+        queryParameters.put(START_TIME_PARAMETER, QueryParameter.createStringParameter(RawTableAvailabilityIndex.formatDateTime(startTime)));
+        queryParameters.put(END_TIME_PARAMETER, QueryParameter.createStringParameter(RawTableAvailabilityIndex.formatDateTime(endTime)));
+        for (int i = 0; i < partitions.size(); i++) {
+            final RawPartition partition = partitions.get(i);
+            final boolean openEnded = partition.isOpen() || i == partitions.size() - 1;
+            if (partition.getStartTime() >= endTime || !openEnded && partition.getEndTime() <= startTime) {
+                continue;
+            }
+            if (!TABLE_NAME.matcher(partition.getTable()).matches()) {
+                throw new IllegalStateException("Invalid raw partition name " + partition.getTable());
+            }
+            dataService.getData(String.format(IMSIS_QUERY, partition.getTable()), queryParameters, new IMSIFilterTransformer(filter));
+        }
+        addCompleteDay(new DayFilter(getKey(techPack), day, filter), loadedAfterClears);
+    }
+
+    private synchronized long getClears() {
+        return clears;
+    }
+
+    /**
+     * @return true if a new filter for the day fits the memory budget, or would replace the filter of an older day
+     */
+    private boolean fitsMemoryBudget(final long day) {
+        if (getMemoryUsageInBytes() + BloomFilter.getSizeInBytes(expectedIMSIsPerDay, falsePositiveRate) <= memoryBudgetInBytes) {
+            return true;
+        }
+        for (final DayFilter dayFilter : filters.values()) {
+            if (dayFilter.day < day) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the filter of a day that has been loaded in full and write it to the filter directory
+     */
+    private synchronized void addCompleteDay(final DayFilter dayFilter, final long loadedAfterClears) {
+        if (clears != loadedAfterClears) {
+            return;
+        }
+        filters.put(getKey(dayFilter.techPack, dayFilter.day), dayFilter);
+        dropOldestFiltersOverBudget();
+        if (filters.get(getKey(dayFilter.techPack, dayFilter.day)) != dayFilter) {
+            return;
+        }
+        if (!filterDirectory.isDirectory() && !filterDirectory.mkdirs()) {
+            ServicesLogger.error(getClass().getName(), "addCompleteDay", new IOException("Could not create filter directory " + filterDirectory));
+            return;
+        }
+        try {
+            writeFilter(dayFilter);
+        } catch (final IOException e) {
+            ServicesLogger.error(getClass().getName(), "addCompleteDay", e);
+        }
+    }
+
+    /**
+     * @param techPacks
+     *            tech packs the query reads
+     * @param imsi
+     *            the IMSI
+     * @param formattedDateTimeRange
+     *            query window
+     * @return true if it is known that none of the tech packs has events for the IMSI in the window
+     */
+    public boolean isIMSIKnownToBeAbsent(final Collection<String> techPacks, final long imsi, final FormattedDateTimeRange formattedDateTimeRange) {
+        if (filters.isEmpty()) {
+            return false;
+        }
+        final long startTime = RawTableAvailabilityIndex.parseDateTime(formattedDateTimeRange.getStartDateTime());
+        final long endTime = RawTableAvailabilityIndex.parseDateTime(formattedDateTimeRange.getEndDateTime());
+        if (startTime < 0 || !isIMSIKnownToBeAbsent(techPacks, imsi, startTime, endTime)) {
+            return false;
+        }
+        absentIMSIAnswers.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param techPacks
+     *            tech packs the query reads
+     * @param imsi
+     *            the IMSI
+     * @param startTime
+     *            start of the query window, in milliseconds since the epoch
+     * @param endTime
+     *            end (exclusive) of the query window, in milliseconds since the epoch
+     * @return true if every day of the window has a complete filter for every tech pack, and none of them contains the
+     *         IMSI
+     */
+    public boolean isIMSIKnownToBeAbsent(final Collection<String> techPacks, final long imsi, final long startTime, final long endTime) {
+        if (techPacks == null || techPacks.isEmpty() || endTime <= startTime) {
+            return false;
+        }
+        final long firstDay = getDay(startTime);
+        final long lastDay = getDay(endTime - 1);
+        if (lastDay - firstDay >= MAX_DAYS_IN_WINDOW) {
+            return false;
+        }
+        for (long day = firstDay; day <= lastDay; day++) {
+            for (final String techPack : techPacks) {
+                final DayFilter dayFilter = filters.get(getKey(techPack, day));
+                if (dayFilter == null || dayFilter.filter.mightContain(imsi)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop the filters of the oldest days until the filters fit the memory budget
+     */
+    private synchronized void dropOldestFiltersOverBudget() {
+        while (getMemoryUsageInBytes() > memoryBudgetInBytes) {
+            DayFilter oldestFilter = null;
+            for (final DayFilter dayFilter : filters.values()) {
+                if (oldestFilter == null || dayFilter.day < oldestFilter.day) {
+                    oldestFilter = dayFilter;
+                }
+            }
+            if (oldestFilter == null) {
+                return;
+            }
+            filters.remove(getKey(oldestFilter.techPack, oldestFilter.day));
+            getFilterFile(oldestFilter).delete();
+        }
+    }
+
+    @Override
+    public synchronized void clearTechPack(final String techPack) {
+        clears++;
+        final String techPackKey = getKey(techPack);
+        final Iterator<DayFilter> dayFilters = filters.values().iterator();
+        while (dayFilters.hasNext()) {
+            final DayFilter dayFilter = dayFilters.next();
+            if (dayFilter.techPack.equals(techPackKey)) {
+                dayFilters.remove();
+                getFilterFile(dayFilter).delete();
+            }
+        }
+    }
+
+    /**
+     * Write to a temporary file first and sync it before renaming, so that a filter file is never left half written
+     */
+    private void writeFilter(final DayFilter dayFilter) throws IOException {
+        final File filterFile = getFilterFile(dayFilter);
+        final File temporaryFile = new File(filterDirectory, filterFile.getName() + ".tmp");
+        final FileOutputStream fileOutput = new FileOutputStream(temporaryFile);
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+        try {
+            output.writeInt(COMPLETE_DAY_MARKER);
+            output.writeLong(dayFilter.day);
+            dayFilter.filter.writeTo(output);
+            output.flush();
+            fileOutput.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(filterFile)) {
+            filterFile.delete();
+            if (!temporaryFile.renameTo(filterFile)) {
+                throw new IOException("Could not replace " + filterFile);
+            }
+        }
+    }
+
+    /**
+     * Read the filters written by a previous run, newest days first so that the oldest are dropped if the memory budget
+     * has been reduced since. Files that do not hold a complete day are deleted
+     */
+    synchronized void loadFilters() {
+        final File[] filterFiles = filterDirectory.listFiles();
+        if (filterFiles == null) {
+            return;
+        }
+        final List<DayFilter> loadedFilters = new ArrayList<DayFilter>();
+        for (final File filterFile : filterFiles) {
+            final DayFilter dayFilter = readFilter(filterFile);
+            if (dayFilter != null) {
+                loadedFilters.add(dayFilter);
+            } else {
+                filterFile.delete();
+            }
+        }
+        Collections.sort(loadedFilters, new Comparator<DayFilter>() {
+            @Override
+            public int compare(final DayFilter first, final DayFilter second) {
+                return first.day > second.day ? -1 : first.day == second.day ? 0 : 1;
+            }
+        });
+        long memoryUsage = getMemoryUsageInBytes();
+        for (final DayFilter dayFilter : loadedFilters) {
+            memoryUsage += dayFilter.filter.getSizeInBytes();
+            if (memoryUsage > memoryBudgetInBytes) {
+                getFilterFile(dayFilter).delete();
+            } else {
+                filters.putIfAbsent(getKey(dayFilter.techPack, dayFilter.day), dayFilter);
+            }
+        }
+    }
+
+    /**
+     * @return the filter held in the file, null if the file is not the filter of a complete day
+     */
+    private DayFilter readFilter(final File filterFile) {
+        final String name = filterFile.getName();
+        final int separator = name.lastIndexOf('.', name.length() - FILTER_FILE_SUFFIX.length() - 1);
+        if (!name.endsWith(FILTER_FILE_SUFFIX) || separator <= 0) {
+            return null;
+        }
+        try {
+            final long day = Long.parseLong(name.substring(separator + 1, name.length() - FILTER_FILE_SUFFIX.length()));
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(filterFile)));
+            try {
+                if (input.readInt() != COMPLETE_DAY_MARKER || input.readLong() != day) {
+                    return null;
+                }
+                return new DayFilter(name.substring(0, separator), day, BloomFilter.readFrom(input));
+            } finally {
+                input.close();
+            }
+        } catch (final NumberFormatException e) {
+            return null;
+        } catch (final IOException e) {
+            ServicesLogger.warn(getClass().getName(), "readFilter", "Could not read IMSI filter " + filterFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private File getFilterFile(final DayFilter dayFilter) {
+        return new File(filterDirectory, dayFilter.techPack + '.' + dayFilter.day + FILTER_FILE_SUFFIX);
+    }
+
+    /**
+     * @return the UTC day of the time, as days since the epoch
+     */
+    private static long getDay(final long time) {
+        return time / DAY_IN_MILLIS;
+    }
+
+    private static String getKey(final String techPack) {
+        return techPack.toUpperCase(Locale.ENGLISH);
+    }
+
+    private static String getKey(final String techPack, final long day) {
+        return getKey(techPack) + '.' + day;
+    }
+
+    @Override
+    public String[] getTechPacks() {
+        return techPacks.clone();
+    }
+
+    @Override
+    public void setTechPacks(final String[] techPacks) {
+        this.techPacks = techPacks == null ? new String[0] : techPacks.clone();
+    }
+
+    @Override
+    public int getDaysToLoad() {
+        return daysToLoad;
+    }
+
+    @Override
+    public void setDaysToLoad(final int daysToLoad) {
+        this.daysToLoad = Math.max(0, daysToLoad);
+    }
+
+    @Override
+    public int getCompletionDelayInMinutes() {
+        return completionDelayInMinutes;
+    }
+
+    @Override
+    public void setCompletionDelayInMinutes(final int completionDelayInMinutes) {
+        this.completionDelayInMinutes = Math.max(0, completionDelayInMinutes);
+    }
+
+    @Override
+    public int getRefreshIntervalInSeconds() {
+        return refreshIntervalInSeconds;
+    }
+
+    @Override
+    public synchronized void setRefreshIntervalInSeconds(final int refreshIntervalInSeconds) {
+        this.refreshIntervalInSeconds = Math.max(1, refreshIntervalInSeconds);
+        if (scheduledRefreshes != null) {
+            scheduledRefreshes.cancel(false);
+            scheduleRefreshes();
+        }
+    }
+
+    @Override
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    @Override
+    public void setFalsePositiveRate(final double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    @Override
+    public long getExpectedIMSIsPerDay() {
+        return expectedIMSIsPerDay;
+    }
+
+    @Override
+    public void setExpectedIMSIsPerDay(final long expectedIMSIsPerDay) {
+        this.expectedIMSIsPerDay = expectedIMSIsPerDay;
+    }
+
+    @Override
+    public long getMemoryBudgetInBytes() {
+        return memoryBudgetInBytes;
+    }
+
+    @Override
+    public void setMemoryBudgetInBytes(final long memoryBudgetInBytes) {
+        this.memoryBudgetInBytes = memoryBudgetInBytes;
+        dropOldestFiltersOverBudget();
+    }
+
+    @Override
+    public long getMemoryUsageInBytes() {
+        long memoryUsage = 0;
+        for (final DayFilter dayFilter : filters.values()) {
+            memoryUsage += dayFilter.filter.getSizeInBytes();
+        }
+        return memoryUsage;
+    }
+
+    @Override
+    public int getFilterCount() {
+        return filters.size();
+    }
+
+    @Override
+    public long getAbsentIMSIAnswerCount() {
+        return absentIMSIAnswers.get();
+    }
+
+    public void setFilterDirectory(final File filterDirectory) {
+        this.filterDirectory = filterDirectory;
+    }
+
+    public void setDataService(final DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    public void setRawTableAvailabilityIndex(final RawTableAvailabilityIndex rawTableAvailabilityIndex) {
+        this.rawTableAvailabilityIndex = rawTableAvailabilityIndex;
+    }
+
+    private void scheduleRefreshes() {
+        scheduledRefreshes = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, FIRST_REFRESH_DELAY_IN_SECONDS, refreshIntervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        loadFilters();
+        scheduleRefreshes();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "start", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "stop", e);
+        }
+    }
+
+    /**
+     * The filter of a tech pack for a day, only created once every IMSI of the day has been added
+     */
+    private static class DayFilter {
+
+        private final String techPack;
+
+        private final long day;
+
+        private final BloomFilter filter;
+
+        DayFilter(final String techPack, final long day, final BloomFilter filter) {
+            this.techPack = techPack;
+            this.day = day;
+            this.filter = filter;
+        }
+    }
+}
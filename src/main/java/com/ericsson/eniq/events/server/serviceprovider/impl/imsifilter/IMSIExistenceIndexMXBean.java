@@ -0,0 +1,87 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.imsifilter;
+
+/**
+ * JMX view of the {@link IMSIExistenceIndex}
+ */
+public interface IMSIExistenceIndexMXBean {
+
+    /**
+     * Load the complete days that have no filter yet now, instead of waiting for the next scheduled refresh
+     */
+    void refresh();
+
+    /**
+     * Forget the filters of a tech pack, eg after its events have been reloaded. They are loaded again on the next
+     * refresh
+     *
+     * @param techPack
+     *            name of the tech pack
+     */
+    void clearTechPack(String techPack);
+
+    /**
+     * @return names of the tech packs whose IMSIs are loaded, eg EVENT_E_SGEH
+     */
+    String[] getTechPacks();
+
+    void setTechPacks(String[] techPacks);
+
+    /**
+     * @return number of complete days before today that are loaded
+     */
+    int getDaysToLoad();
+
+    void setDaysToLoad(int daysToLoad);
+
+    /**
+     * @return how long after its end a day is loaded, must cover the time taken to load the events of the day
+     */
+    int getCompletionDelayInMinutes();
+
+    void setCompletionDelayInMinutes(int completionDelayInMinutes);
+
+    int getRefreshIntervalInSeconds();
+
+    void setRefreshIntervalInSeconds(int refreshIntervalInSeconds);
+
+    /**
+     * @return false positive rate of new filters
+     */
+    double getFalsePositiveRate();
+
+    void setFalsePositiveRate(double falsePositiveRate);
+
+    /**
+     * @return number of IMSIs a day's filter of a tech pack is sized for
+     */
+    long getExpectedIMSIsPerDay();
+
+    void setExpectedIMSIsPerDay(long expectedIMSIsPerDay);
+
+    /**
+     * @return memory the filters may use, the filters of the oldest days are dropped to keep within it
+     */
+    long getMemoryBudgetInBytes();
+
+    void setMemoryBudgetInBytes(long memoryBudgetInBytes);
+
+    long getMemoryUsageInBytes();
+
+    int getFilterCount();
+
+    /**
+     * @return the number of requests answered as having no events for the IMSI without running a query
+     */
+    long getAbsentIMSIAnswerCount();
+}
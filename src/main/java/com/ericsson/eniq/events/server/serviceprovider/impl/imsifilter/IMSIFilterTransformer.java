@@ -0,0 +1,45 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.imsifilter;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.ericsson.eniq.events.server.query.resultsettransformers.ResultSetTransformer;
+
+/**
+ * Adds the IMSIs in a result of one IMSI column to a filter
+ */
+public class IMSIFilterTransformer implements ResultSetTransformer<Long> {
+
+    private final BloomFilter filter;
+
+    public IMSIFilterTransformer(final BloomFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return the number of IMSIs added
+     */
+    @Override
+    public Long transform(final ResultSet resultSet) throws SQLException {
+        long imsis = 0;
+        while (resultSet.next()) {
+            final long imsi = resultSet.getLong(1);
+            if (!resultSet.wasNull()) {
+                filter.add(imsi);
+                imsis++;
+            }
+        }
+        return imsis;
+    }
+}
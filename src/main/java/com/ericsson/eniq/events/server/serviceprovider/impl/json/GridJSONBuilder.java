@@ -0,0 +1,96 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.json;
+
+/**
+ * Builds a result in the grid JSON format used by the data service ie
+ * <pre>
+ *     {"success":"true","errorDescription":"","data":[{"1":"value","2":"value"},...]}
+ * </pre>
+ * for results that are produced in the service layer rather than by the data service
+ */
+public class GridJSONBuilder {
+
+    private final StringBuilder json = new StringBuilder("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[");
+
+    private boolean firstRow = true;
+
+    /**
+     * @param values
+     *            the column values of the row, in column order. Null values are written as empty strings
+     * @return this builder
+     */
+    public GridJSONBuilder addRow(final String... values) {
+        if (!firstRow) {
+            json.append(',');
+        }
+        firstRow = false;
+        json.append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(i + 1).append("\":\"");
+            appendEscaped(json, values[i]);
+            json.append('"');
+        }
+        json.append('}');
+        return this;
+    }
+
+    /**
+     * @return the grid JSON result
+     */
+    public String build() {
+        return json.toString() + "]}";
+    }
+
+    /**
+     * Append a value to a JSON string literal, escaping it as required
+     *
+     * @param json
+     *            the JSON being built
+     * @param value
+     *            the value to append, nothing is appended for null
+     */
+    public static void appendEscaped(final StringBuilder json, final String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char character = value.charAt(i);
+            switch (character) {
+            case '"':
+                json.append("\\\"");
+                break;
+            case '\\':
+                json.append("\\\\");
+                break;
+            case '\n':
+                json.append("\\n");
+                break;
+            case '\r':
+                json.append("\\r");
+                break;
+            case '\t':
+                json.append("\\t");
+                break;
+            default:
+                if (character < ' ') {
+                    json.append(String.format("\\u%04x", (int) character));
+                } else {
+                    json.append(character);
+                }
+            }
+        }
+    }
+}
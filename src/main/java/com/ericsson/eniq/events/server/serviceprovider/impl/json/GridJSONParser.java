@@ -0,0 +1,258 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.json;
+
+import java.util.*;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+
+/**
+ * Reads the rows of a result in the grid JSON format used by the data service, see {@link GridJSONBuilder}, for the
+ * services that combine several grid results in the service layer
+ */
+public class GridJSONParser {
+
+    private static final String SUCCESS = "success";
+
+    private static final String DATA = "data";
+
+    private static final String SUCCESS_RESULT_PREFIX = "{\"success\":\"true\"";
+
+    private final String json;
+
+    private int position;
+
+    private GridJSONParser(final String json) {
+        this.json = json;
+    }
+
+    /**
+     * The data service writes the success flag as the first member of its results, so only the start of the result is
+     * read unless the flag is elsewhere
+     *
+     * @param json
+     *            grid JSON result
+     * @return true if the result is a success result
+     */
+    public static boolean isSuccessResult(final String json) {
+        if (json == null) {
+            return false;
+        }
+        if (json.startsWith(SUCCESS_RESULT_PREFIX)) {
+            return true;
+        }
+        return new GridJSONParser(json).parseSuccess();
+    }
+
+    /**
+     * @param json
+     *            grid JSON result
+     * @return the column values of each row, in column order
+     */
+    public static List<String[]> parseRows(final String json) {
+        final Object result = new GridJSONParser(json).parse();
+        final List<String[]> rows = new ArrayList<String[]>();
+        if (!(result instanceof Map)) {
+            return rows;
+        }
+        final Object data = ((Map<?, ?>) result).get(DATA);
+        if (!(data instanceof List)) {
+            return rows;
+        }
+        for (final Object row : (List<?>) data) {
+            if (row instanceof Map) {
+                rows.add(toColumnValues((Map<?, ?>) row));
+            }
+        }
+        return rows;
+    }
+
+    private static String[] toColumnValues(final Map<?, ?> row) {
+        final String[] values = new String[row.size()];
+        for (final Map.Entry<?, ?> column : row.entrySet()) {
+            final int index = Integer.parseInt(String.valueOf(column.getKey())) - 1;
+            if (index >= 0 && index < values.length) {
+                values[index] = column.getValue() == null ? null : String.valueOf(column.getValue());
+            }
+        }
+        return values;
+    }
+
+    private boolean parseSuccess() {
+        skipWhitespace();
+        if (position >= json.length() || json.charAt(position) != '{') {
+            return false;
+        }
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            return false;
+        }
+        if (SUCCESS.equals(parseString())) {
+            skipWhitespace();
+            expect(':');
+            return "true".equals(String.valueOf(parseValue()));
+        }
+        position = 0;
+        final Object result = parse();
+        return result instanceof Map && "true".equals(String.valueOf(((Map<?, ?>) result).get(SUCCESS)));
+    }
+
+    private Object parse() {
+        final Object value = parseValue();
+        skipWhitespace();
+        if (position != json.length()) {
+            throw invalid();
+        }
+        return value;
+    }
+
+    private Object parseValue() {
+        skipWhitespace();
+        if (position >= json.length()) {
+            throw invalid();
+        }
+        final char character = json.charAt(position);
+        switch (character) {
+        case '{':
+            return parseObject();
+        case '[':
+            return parseArray();
+        case '"':
+            return parseString();
+        default:
+            return parseLiteral();
+        }
+    }
+
+    private Map<String, Object> parseObject() {
+        final Map<String, Object> object = new LinkedHashMap<String, Object>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            final String key = parseString();
+            skipWhitespace();
+            expect(':');
+            object.put(key, parseValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> parseArray() {
+        final List<Object> array = new ArrayList<Object>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            array.add(parseValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String parseString() {
+        expect('"');
+        final StringBuilder value = new StringBuilder();
+        while (true) {
+            if (position >= json.length()) {
+                throw invalid();
+            }
+            final char character = json.charAt(position++);
+            if (character == '"') {
+                return value.toString();
+            }
+            if (character != '\\') {
+                value.append(character);
+                continue;
+            }
+            final char escaped = json.charAt(position++);
+            switch (escaped) {
+            case 'n':
+                value.append('\n');
+                break;
+            case 'r':
+                value.append('\r');
+                break;
+            case 't':
+                value.append('\t');
+                break;
+            case 'b':
+                value.append('\b');
+                break;
+            case 'f':
+                value.append('\f');
+                break;
+            case 'u':
+                value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                position += 4;
+                break;
+            default:
+                value.append(escaped);
+            }
+        }
+    }
+
+    private Object parseLiteral() {
+        final int start = position;
+        while (position < json.length() && ",}] \t\r\n".indexOf(json.charAt(position)) < 0) {
+            position++;
+        }
+        final String literal = json.substring(start, position);
+        if (literal.length() == 0) {
+            throw invalid();
+        }
+        return "null".equals(literal) ? null : literal;
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        if (position >= json.length()) {
+            throw invalid();
+        }
+        return json.charAt(position);
+    }
+
+    private void expect(final char expected) {
+        if (peek() != expected) {
+            throw invalid();
+        }
+        position++;
+    }
+
+    private ServiceException invalid() {
+        return new ServiceException("Invalid grid result at position " + position);
+    }
+}
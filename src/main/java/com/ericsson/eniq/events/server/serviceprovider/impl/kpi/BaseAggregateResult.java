@@ -0,0 +1,138 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.kpi;
+
+import java.util.*;
+
+/**
+ * Result of the base aggregate query used by the in memory KPI engine.
+ * <p/>
+ * Each row holds the grouping key (eg the node) followed by the counts and sums that the KPIs are calculated from.
+ * Measure columns are looked up by column label, so that KPIs can be defined independently of the column order in the
+ * template.
+ */
+public class BaseAggregateResult {
+
+    private final List<String> keyColumns;
+
+    private final Map<String, Integer> measureColumnIndices = new HashMap<String, Integer>();
+
+    private final List<BaseAggregateRow> rows = new ArrayList<BaseAggregateRow>();
+
+    /**
+     * @param keyColumns
+     *            labels of the grouping key columns
+     * @param measureColumns
+     *            labels of the count and sum columns, in the order they appear in each row
+     */
+    public BaseAggregateResult(final List<String> keyColumns, final List<String> measureColumns) {
+        this.keyColumns = Collections.unmodifiableList(new ArrayList<String>(keyColumns));
+        for (int i = 0; i < measureColumns.size(); i++) {
+            measureColumnIndices.put(measureColumns.get(i).toUpperCase(Locale.ENGLISH), i);
+        }
+    }
+
+    /**
+     * Read the grid result of a base aggregate query. The first <code>numberOfKeyColumns</code> columns are read as the
+     * grouping key, the remaining columns as the counts and sums labelled by <code>measureColumns</code>. A missing or
+     * empty count or sum is read as 0.
+     *
+     * @param numberOfKeyColumns
+     *            number of leading grouping key columns
+     * @param measureColumns
+     *            labels of the count and sum columns, in the order they appear after the key columns
+     * @param rows
+     *            column values of each row, see {@link com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONParser}
+     * @return the base aggregate result
+     */
+    public static BaseAggregateResult fromGridRows(final int numberOfKeyColumns, final List<String> measureColumns,
+                                                   final List<String[]> rows) {
+        final List<String> keyColumns = new ArrayList<String>();
+        for (int column = 1; column <= numberOfKeyColumns; column++) {
+            keyColumns.add(String.valueOf(column));
+        }
+        final BaseAggregateResult result = new BaseAggregateResult(keyColumns, measureColumns);
+        for (final String[] row : rows) {
+            final String[] keys = new String[numberOfKeyColumns];
+            System.arraycopy(row, 0, keys, 0, Math.min(numberOfKeyColumns, row.length));
+            final double[] measures = new double[measureColumns.size()];
+            for (int i = 0; i < measures.length; i++) {
+                measures[i] = parseMeasure(row, numberOfKeyColumns + i);
+            }
+            result.addRow(new BaseAggregateRow(keys, measures));
+        }
+        return result;
+    }
+
+    private static double parseMeasure(final String[] row, final int column) {
+        if (column >= row.length || row[column] == null || row[column].length() == 0) {
+            return 0;
+        }
+        return Double.parseDouble(row[column]);
+    }
+
+    /**
+     * Get the position of a measure column within {@link BaseAggregateRow#getMeasures()}
+     *
+     * @param measureColumn
+     *            column label (case insensitive)
+     * @return index of the measure column
+     * @throws IllegalArgumentException
+     *             if the base query does not return the column
+     */
+    public int getMeasureIndex(final String measureColumn) {
+        final Integer index = measureColumnIndices.get(measureColumn.toUpperCase(Locale.ENGLISH));
+        if (index == null) {
+            throw new IllegalArgumentException("Column " + measureColumn + " is not returned by the base aggregate query");
+        }
+        return index;
+    }
+
+    public void addRow(final BaseAggregateRow row) {
+        rows.add(row);
+    }
+
+    public List<BaseAggregateRow> getRows() {
+        return rows;
+    }
+
+    public List<String> getKeyColumns() {
+        return keyColumns;
+    }
+
+    /**
+     * A single row of the base aggregate result
+     */
+    public static class BaseAggregateRow {
+
+        private final String[] keys;
+
+        private final double[] measures;
+
+        public BaseAggregateRow(final String[] keys, final double[] measures) {
+            this.keys = keys;
+            this.measures = measures;
+        }
+
+        public String[] getKeys() {
+            return keys;
+        }
+
+        public double[] getMeasures() {
+            return measures;
+        }
+
+        public double getMeasure(final int index) {
+            return measures[index];
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.kpi;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.BaseAggregateResult.BaseAggregateRow;
+
+/**
+ * A KPI that is calculated in the services layer from the counts and sums returned by a base aggregate query, rather
+ * than being calculated in the generated SQL.
+ *
+ * @see KPIEvaluationEngine
+ */
+public interface InMemoryKPI {
+
+    /**
+     * @return name of the KPI, used as the column header in the result
+     */
+    String getName();
+
+    /**
+     * Resolve the columns used by this KPI against the base aggregate result.
+     * This is called once per result, before any row is evaluated, so that column lookups are not repeated per row
+     *
+     * @param result
+     *            the base aggregate result the KPI will be evaluated over
+     * @return the calculation for this KPI
+     */
+    Calculation bind(BaseAggregateResult result);
+
+    /**
+     * KPI calculation bound to the columns of a specific base aggregate result
+     */
+    interface Calculation {
+
+        /**
+         * @param row
+         *            row of the base aggregate result
+         * @return value of the KPI for this row, or {@link Double#NaN} if the KPI is undefined for the row (eg no attempts)
+         */
+        double calculate(BaseAggregateRow row);
+    }
+}
@@ -0,0 +1,66 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.kpi;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.BaseAggregateResult.BaseAggregateRow;
+
+/**
+ * Evaluates a list of KPIs over a single base aggregate result.
+ * <p/>
+ * Instead of generating one SQL expression per KPI (each of which the database aggregates separately), the service
+ * fetches the counts and sums per grouping key once, and all KPIs are calculated from that result in a single pass
+ * over the rows.
+ * <p/>
+ * The result is returned in the grid JSON format used by the data service, with the grouping key columns first,
+ * followed by one column per KPI, in the order of the KPI list.
+ */
+public class KPIEvaluationEngine {
+
+    private static final int KPI_DECIMAL_PLACES = 2;
+
+    /**
+     * @param result
+     *            the base aggregate result
+     * @param kpis
+     *            the KPIs to calculate for each row
+     * @return JSON grid result
+     */
+    public String evaluateAsJSON(final BaseAggregateResult result, final List<InMemoryKPI> kpis) {
+        final InMemoryKPI.Calculation[] calculations = new InMemoryKPI.Calculation[kpis.size()];
+        for (int i = 0; i < calculations.length; i++) {
+            calculations[i] = kpis.get(i).bind(result);
+        }
+        final GridJSONBuilder json = new GridJSONBuilder();
+        final int numberOfKeyColumns = result.getKeyColumns().size();
+        for (final BaseAggregateRow row : result.getRows()) {
+            final String[] values = new String[numberOfKeyColumns + calculations.length];
+            System.arraycopy(row.getKeys(), 0, values, 0, numberOfKeyColumns);
+            for (int i = 0; i < calculations.length; i++) {
+                values[numberOfKeyColumns + i] = formatKPIValue(calculations[i].calculate(row));
+            }
+            json.addRow(values);
+        }
+        return json.build();
+    }
+
+    String formatKPIValue(final double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "";
+        }
+        return new BigDecimal(value).setScale(KPI_DECIMAL_PLACES, RoundingMode.HALF_UP).toPlainString();
+    }
+}
@@ -0,0 +1,88 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.kpi;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.BaseAggregateResult.BaseAggregateRow;
+
+/**
+ * KPI calculated as a percentile of a distribution that the base aggregate query returns as histogram bucket counts,
+ * eg the 95th percentile of setup time from the counts of events in each setup time range.
+ * <p/>
+ * The value returned is the upper bound of the bucket that contains the requested percentile.
+ */
+public class PercentileKPI implements InMemoryKPI {
+
+    private final String name;
+
+    private final String[] bucketColumns;
+
+    private final double[] bucketUpperBounds;
+
+    private final double percentile;
+
+    /**
+     * @param name
+     *            name of the KPI
+     * @param bucketColumns
+     *            columns holding the count for each bucket, in ascending order of bucket
+     * @param bucketUpperBounds
+     *            upper bound of each bucket, in the same order as bucketColumns
+     * @param percentile
+     *            the percentile to calculate, between 0 and 100
+     */
+    public PercentileKPI(final String name, final String[] bucketColumns, final double[] bucketUpperBounds, final double percentile) {
+        if (bucketColumns.length != bucketUpperBounds.length) {
+            throw new IllegalArgumentException("Each bucket column of KPI " + name + " requires an upper bound");
+        }
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile + " for KPI " + name);
+        }
+        this.name = name;
+        this.bucketColumns = bucketColumns.clone();
+        this.bucketUpperBounds = bucketUpperBounds.clone();
+        this.percentile = percentile;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Calculation bind(final BaseAggregateResult result) {
+        final int[] bucketIndices = new int[bucketColumns.length];
+        for (int i = 0; i < bucketColumns.length; i++) {
+            bucketIndices[i] = result.getMeasureIndex(bucketColumns[i]);
+        }
+        return new Calculation() {
+            @Override
+            public double calculate(final BaseAggregateRow row) {
+                double total = 0;
+                for (final int index : bucketIndices) {
+                    total += row.getMeasure(index);
+                }
+                if (total == 0) {
+                    return Double.NaN;
+                }
+                final double target = total * percentile / 100;
+                double cumulative = 0;
+                for (int i = 0; i < bucketIndices.length; i++) {
+                    cumulative += row.getMeasure(bucketIndices[i]);
+                    if (cumulative >= target) {
+                        return bucketUpperBounds[i];
+                    }
+                }
+                return bucketUpperBounds[bucketUpperBounds.length - 1];
+            }
+        };
+    }
+}
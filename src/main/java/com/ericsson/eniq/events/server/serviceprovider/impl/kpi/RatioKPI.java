@@ -0,0 +1,83 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.kpi;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.BaseAggregateResult.BaseAggregateRow;
+
+/**
+ * KPI calculated as numerator / denominator * multiplier, eg a success rate as
+ * NO_OF_SUCCESSES / (NO_OF_SUCCESSES + NO_OF_ERRORS) * 100 where the denominator is the sum of several columns
+ */
+public class RatioKPI implements InMemoryKPI {
+
+    private final String name;
+
+    private final String[] numeratorColumns;
+
+    private final String[] denominatorColumns;
+
+    private final double multiplier;
+
+    /**
+     * @param name
+     *            name of the KPI
+     * @param numeratorColumns
+     *            columns summed for the numerator
+     * @param denominatorColumns
+     *            columns summed for the denominator
+     * @param multiplier
+     *            applied to the ratio, eg 100 for a percentage
+     */
+    public RatioKPI(final String name, final String[] numeratorColumns, final String[] denominatorColumns, final double multiplier) {
+        this.name = name;
+        this.numeratorColumns = numeratorColumns.clone();
+        this.denominatorColumns = denominatorColumns.clone();
+        this.multiplier = multiplier;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Calculation bind(final BaseAggregateResult result) {
+        final int[] numeratorIndices = getIndices(result, numeratorColumns);
+        final int[] denominatorIndices = getIndices(result, denominatorColumns);
+        return new Calculation() {
+            @Override
+            public double calculate(final BaseAggregateRow row) {
+                final double denominator = sum(row, denominatorIndices);
+                if (denominator == 0) {
+                    return Double.NaN;
+                }
+                return sum(row, numeratorIndices) / denominator * multiplier;
+            }
+        };
+    }
+
+    private static int[] getIndices(final BaseAggregateResult result, final String[] columns) {
+        final int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indices[i] = result.getMeasureIndex(columns[i]);
+        }
+        return indices;
+    }
+
+    private static double sum(final BaseAggregateRow row, final int[] indices) {
+        double sum = 0;
+        for (final int index : indices) {
+            sum += row.getMeasure(index);
+        }
+        return sum;
+    }
+}
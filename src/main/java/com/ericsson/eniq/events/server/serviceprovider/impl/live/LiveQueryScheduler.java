@@ -0,0 +1,254 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.live;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceInvoker;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceRequest;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Runs the queries of live screens on behalf of all their subscribers.
+ * <p/>
+ * Subscriptions to the same service with the same parameters share one live query, which is run once when the first
+ * client subscribes and then once per refresh interval (the service's getInterval() for the requested time range)
+ * until the last client unsubscribes. Each new result is published to every subscriber; results that have not changed
+ * since the previous run are not published again. A late subscriber is given the latest result straight away.
+ * <p/>
+ * So fifty screens watching the same view cost one query per interval rather than fifty.
+ * <p/>
+ * Each subscriber holds a request thread for as long as it is subscribed, so at most
+ * {@link #DEFAULT_MAX_SUBSCRIPTIONS} subscriptions are open at a time (configurable through JMX), further subscriptions
+ * are rejected rather than taking the threads the other requests need.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class LiveQueryScheduler implements LiveQuerySchedulerMXBean {
+
+    static final int DEFAULT_MAX_SUBSCRIPTIONS = 32;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=LiveQueryScheduler";
+
+    private static final int SCHEDULER_THREADS = 2;
+
+    private static final Set<String> PER_CLIENT_PARAMETERS = new HashSet<String>(Arrays.asList(REQUEST_ID, REQUEST_URI, IP_ADDRESS_PARAM,
+            USER_NAME_PARAM, FairQueryScheduler.AUTHENTICATED_USER_PARAM, MEDIA_TYPE));
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS,
+            ServiceExecutors.newThreadFactory("services-live-query-", Thread.NORM_PRIORITY));
+
+    private final Map<String, LiveQuery> liveQueries = new HashMap<String, LiveQuery>();
+
+    private int subscriptionCount;
+
+    private volatile int maxSubscriptions = DEFAULT_MAX_SUBSCRIPTIONS;
+
+    /**
+     * Subscribe to the results of a service. Every subscription must be ended with
+     * {@link #unsubscribe(LiveSubscription)} when the client disconnects
+     *
+     * @param service
+     *            the service to run
+     * @param parameters
+     *            parameters from the resource layer
+     * @param intervalInMinutes
+     *            how often the query is re-run
+     * @return the subscription, which receives the results, or null if the maximum number of subscriptions are open
+     */
+    public LiveSubscription subscribe(final Service service, final MultivaluedMap<String, String> parameters, final int intervalInMinutes) {
+        final MultivaluedMap<String, String> queryParameters = getSharedQueryParameters(parameters);
+        final String queryKey = getQueryKey(service, queryParameters);
+        final LiveSubscription subscription = new LiveSubscription(queryKey);
+        synchronized (liveQueries) {
+            if (subscriptionCount >= maxSubscriptions) {
+                return null;
+            }
+            subscriptionCount++;
+            LiveQuery liveQuery = liveQueries.get(queryKey);
+            if (liveQuery == null) {
+                liveQuery = new LiveQuery(service, queryParameters);
+                liveQueries.put(queryKey, liveQuery);
+                liveQuery.schedule(Math.max(1, intervalInMinutes));
+            }
+            liveQuery.addSubscription(subscription);
+        }
+        return subscription;
+    }
+
+    /**
+     * @param subscription
+     *            subscription returned by {@link #subscribe(Service, MultivaluedMap, int)}
+     */
+    public void unsubscribe(final LiveSubscription subscription) {
+        synchronized (liveQueries) {
+            final LiveQuery liveQuery = liveQueries.get(subscription.getQueryKey());
+            if (liveQuery == null || !liveQuery.removeSubscription(subscription)) {
+                return;
+            }
+            subscriptionCount--;
+            if (!liveQuery.hasSubscriptions()) {
+                liveQueries.remove(subscription.getQueryKey());
+                liveQuery.cancel();
+            }
+        }
+    }
+
+    @Override
+    public int getLiveQueryCount() {
+        synchronized (liveQueries) {
+            return liveQueries.size();
+        }
+    }
+
+    @Override
+    public int getSubscriptionCount() {
+        synchronized (liveQueries) {
+            return subscriptionCount;
+        }
+    }
+
+    @Override
+    public int getMaxSubscriptions() {
+        return maxSubscriptions;
+    }
+
+    @Override
+    public void setMaxSubscriptions(final int maxSubscriptions) {
+        this.maxSubscriptions = maxSubscriptions;
+    }
+
+    /**
+     * The parameters of the shared query, without those that identify an individual client
+     */
+    private MultivaluedMap<String, String> getSharedQueryParameters(final MultivaluedMap<String, String> parameters) {
+        final MultivaluedMap<String, String> queryParameters = new MultivaluedMapImpl();
+        for (final Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+            if (!PER_CLIENT_PARAMETERS.contains(parameter.getKey())) {
+                queryParameters.put(parameter.getKey(), parameter.getValue());
+            }
+        }
+        queryParameters.putSingle(MEDIA_TYPE, MediaType.APPLICATION_JSON);
+        return queryParameters;
+    }
+
+    private String getQueryKey(final Service service, final MultivaluedMap<String, String> queryParameters) {
+        return service.getClass().getName() + new TreeMap<String, List<String>>(queryParameters);
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        synchronized (liveQueries) {
+            liveQueries.clear();
+            subscriptionCount = 0;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "shutdown", e);
+        }
+    }
+
+    private class LiveQuery implements Runnable {
+
+        private final Service service;
+
+        private final MultivaluedMap<String, String> queryParameters;
+
+        private final List<LiveSubscription> subscriptions = new CopyOnWriteArrayList<LiveSubscription>();
+
+        private volatile String latestResult;
+
+        private ScheduledFuture<?> scheduledRuns;
+
+        LiveQuery(final Service service, final MultivaluedMap<String, String> queryParameters) {
+            this.service = service;
+            this.queryParameters = queryParameters;
+        }
+
+        void schedule(final int intervalInMinutes) {
+            scheduledRuns = scheduler.scheduleAtFixedRate(this, 0, intervalInMinutes, TimeUnit.MINUTES);
+        }
+
+        void cancel() {
+            scheduledRuns.cancel(false);
+        }
+
+        void addSubscription(final LiveSubscription subscription) {
+            subscriptions.add(subscription);
+            final String result = latestResult;
+            if (result != null) {
+                subscription.publish(result);
+            }
+        }
+
+        /**
+         * @return true if the subscription was subscribed to this query
+         */
+        boolean removeSubscription(final LiveSubscription subscription) {
+            return subscriptions.remove(subscription);
+        }
+
+        boolean hasSubscriptions() {
+            return !subscriptions.isEmpty();
+        }
+
+        @Override
+        public void run() {
+            try {
+                final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+                parameters.putAll(queryParameters);
+                final String result = ServiceInvoker.getData(service, ServiceRequest.fromParameters(parameters));
+                if (result == null || result.equals(latestResult)) {
+                    return;
+                }
+                latestResult = result;
+                for (final LiveSubscription subscription : subscriptions) {
+                    subscription.publish(result);
+                }
+            } catch (final RuntimeException e) {
+                ServicesLogger.error(LiveQueryScheduler.class.getName(), "run", e);
+            }
+        }
+    }
+}
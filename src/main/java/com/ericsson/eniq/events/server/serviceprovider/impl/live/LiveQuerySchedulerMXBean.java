@@ -0,0 +1,35 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.live;
+
+/**
+ * JMX view of the {@link LiveQueryScheduler}
+ */
+public interface LiveQuerySchedulerMXBean {
+
+    /**
+     * @return the number of distinct queries being run for live subscribers
+     */
+    int getLiveQueryCount();
+
+    /**
+     * @return the number of open subscriptions, each holding a request thread
+     */
+    int getSubscriptionCount();
+
+    /**
+     * @return the number of subscriptions that can be open at a time, further subscriptions are rejected
+     */
+    int getMaxSubscriptions();
+
+    void setMaxSubscriptions(int maxSubscriptions);
+}
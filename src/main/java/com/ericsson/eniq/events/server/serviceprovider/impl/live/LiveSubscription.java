@@ -0,0 +1,57 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.live;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client subscribed to a live query. The results of the query are queued here until the client's connection takes
+ * them. Only the latest result matters to a live screen, so a slow client never holds more than
+ * {@link #MAX_QUEUED_RESULTS} results, older ones are dropped.
+ */
+public class LiveSubscription {
+
+    static final int MAX_QUEUED_RESULTS = 2;
+
+    private final String queryKey;
+
+    private final BlockingQueue<String> results = new LinkedBlockingQueue<String>(MAX_QUEUED_RESULTS);
+
+    LiveSubscription(final String queryKey) {
+        this.queryKey = queryKey;
+    }
+
+    String getQueryKey() {
+        return queryKey;
+    }
+
+    void publish(final String result) {
+        while (!results.offer(result)) {
+            results.poll();
+        }
+    }
+
+    /**
+     * @param timeout
+     *            how long to wait for a result
+     * @param unit
+     *            unit of the timeout
+     * @return the next result of the live query, or null if there was none within the timeout
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting
+     */
+    public String nextResult(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return results.poll(timeout, unit);
+    }
+}
@@ -0,0 +1,424 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass;
+import com.ericsson.eniq.events.server.utils.LoadBalancingPolicyService;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Load balancing policy service that selects the multiplex reader for each query based on how the readers are
+ * performing, rather than on the request parameters alone.
+ * <p/>
+ * Each reader is represented by the load balancing policy that routes queries to it. The latency and the number of
+ * queries in flight on each reader are tracked through the {@link QueryExecutionListener} callbacks from the service
+ * layer, and each query is sent to the cheaper of two randomly chosen readers ("power of two choices"). This steers
+ * interactive queries away from a reader that is busy with a long export or merge, without the herd behaviour of
+ * always choosing the single least loaded reader.
+ * <p/>
+ * Readers can be dedicated to workload classes (see {@link #setWorkloadReaders(Map)}), eg to keep exports on one reader
+ * so that the others stay free for interactive queries. A query of such a class is balanced across the readers of its
+ * class only.
+ * <p/>
+ * Each reader has a {@link ReaderCircuitBreaker}: a reader whose queries are failing or stalling is excluded, and
+ * queries fail over to the other readers, until a probe query shows that it has recovered. If every candidate reader
+ * is excluded the queries are balanced across them regardless, as refusing them would be an outage.
+ * <p/>
+ * This is the load balancing policy service deployed to the services layer. The readers are configured explicitly,
+ * with {@link #setReaderPolicies(Map)} or through JMX with {@link #setReader(String, String[])}; the policies the
+ * standard {@link LoadBalancingPolicyService} selects are never taken to be readers, as they may be built per request
+ * or per user. Until a reader is configured the standard selection is passed through unchanged. The workload readers
+ * and circuit breaker thresholds are also configured through JMX, see {@link AdaptiveLoadBalancingPolicyServiceMXBean}
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AdaptiveLoadBalancingPolicyService extends LoadBalancingPolicyService implements QueryExecutionListener,
+        WorkloadReaderSelector, AlternativeReaderSelector, AdaptiveLoadBalancingPolicyServiceMXBean {
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=AdaptiveLoadBalancingPolicyService";
+
+    private volatile List<ReaderStatistics> readers = Collections.emptyList();
+
+    private volatile Map<LoadBalancingPolicy, ReaderStatistics> readersByPolicy = Collections.emptyMap();
+
+    private Map<WorkloadClass, Set<String>> workloadReaderNames = Collections.emptyMap();
+
+    private volatile Map<WorkloadClass, List<ReaderStatistics>> readersByWorkloadClass = Collections.emptyMap();
+
+    private CircuitBreakerConfiguration circuitBreakerConfiguration = CircuitBreakerConfiguration.DEFAULT;
+
+    private final Random random = new Random();
+
+    @Override
+    public LoadBalancingPolicy getLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters) {
+        return getLoadBalancingPolicy(requestParameters, null);
+    }
+
+    @Override
+    public LoadBalancingPolicy getLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters, final WorkloadClass workloadClass) {
+        final List<ReaderStatistics> currentReaders = readers;
+        if (currentReaders.isEmpty()) {
+            return getStandardLoadBalancingPolicy(requestParameters);
+        }
+        return selectAvailableReader(getCandidateReaders(workloadClass, currentReaders), currentReaders).getLoadBalancingPolicy();
+    }
+
+    LoadBalancingPolicy getStandardLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters) {
+        return super.getLoadBalancingPolicy(requestParameters);
+    }
+
+    /**
+     * Select among the candidate readers whose circuit breakers are closed or due to be probed, failing over to the
+     * other readers if all the candidates are excluded
+     */
+    ReaderStatistics selectAvailableReader(final List<ReaderStatistics> candidateReaders, final List<ReaderStatistics> allReaders) {
+        final long now = System.nanoTime();
+        List<ReaderStatistics> availableReaders = getAvailableReaders(candidateReaders, now);
+        if (availableReaders.isEmpty() && candidateReaders != allReaders) {
+            availableReaders = getAvailableReaders(allReaders, now);
+        }
+        while (!availableReaders.isEmpty()) {
+            final ReaderStatistics reader = selectReader(availableReaders);
+            if (reader.getCircuitBreaker().tryAcquire(now)) {
+                return reader;
+            }
+            availableReaders = new ArrayList<ReaderStatistics>(availableReaders);
+            availableReaders.remove(reader);
+        }
+        return selectReader(candidateReaders);
+    }
+
+    private static List<ReaderStatistics> getAvailableReaders(final List<ReaderStatistics> readers, final long now) {
+        List<ReaderStatistics> availableReaders = null;
+        for (int i = 0; i < readers.size(); i++) {
+            final ReaderStatistics reader = readers.get(i);
+            if (reader.getCircuitBreaker().isAvailable(now)) {
+                if (availableReaders != null) {
+                    availableReaders.add(reader);
+                }
+            } else if (availableReaders == null) {
+                availableReaders = new ArrayList<ReaderStatistics>(readers.subList(0, i));
+            }
+        }
+        return availableReaders == null ? readers : availableReaders;
+    }
+
+    /**
+     * The cheapest of the candidate readers other than the excluded one, ie the reader most likely to return the
+     * query quickly. Only readers whose circuit breakers are closed are used
+     */
+    @Override
+    public LoadBalancingPolicy getAlternativeLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters,
+                                                                 final WorkloadClass workloadClass, final LoadBalancingPolicy excluded) {
+        final long now = System.nanoTime();
+        ReaderStatistics cheapest = null;
+        for (final ReaderStatistics reader : getCandidateReaders(workloadClass, readers)) {
+            if (reader.getLoadBalancingPolicy() != excluded && reader.getCircuitBreaker().getState() == CircuitState.CLOSED
+                    && (cheapest == null || reader.getCost(now) < cheapest.getCost(now))) {
+                cheapest = reader;
+            }
+        }
+        return cheapest == null ? null : cheapest.getLoadBalancingPolicy();
+    }
+
+    /**
+     * @return the readers dedicated to the workload class, or all readers if it has none
+     */
+    private List<ReaderStatistics> getCandidateReaders(final WorkloadClass workloadClass, final List<ReaderStatistics> currentReaders) {
+        final List<ReaderStatistics> workloadReaders = workloadClass == null ? null : readersByWorkloadClass.get(workloadClass);
+        return workloadReaders == null ? currentReaders : workloadReaders;
+    }
+
+    ReaderStatistics selectReader(final List<ReaderStatistics> currentReaders) {
+        final int numberOfReaders = currentReaders.size();
+        if (numberOfReaders == 1) {
+            return currentReaders.get(0);
+        }
+        final int first = random.nextInt(numberOfReaders);
+        int second = random.nextInt(numberOfReaders - 1);
+        if (second >= first) {
+            second++;
+        }
+        final long now = System.nanoTime();
+        final ReaderStatistics firstReader = currentReaders.get(first);
+        final ReaderStatistics secondReader = currentReaders.get(second);
+        return firstReader.getCost(now) <= secondReader.getCost(now) ? firstReader : secondReader;
+    }
+
+    @Override
+    public void queryStarted(final LoadBalancingPolicy loadBalancingPolicy) {
+        final ReaderStatistics reader = readersByPolicy.get(loadBalancingPolicy);
+        if (reader != null) {
+            reader.queryStarted();
+        }
+    }
+
+    @Override
+    public void queryFinished(final LoadBalancingPolicy loadBalancingPolicy, final long durationInNanos, final long slowQueryDurationInNanos,
+                              final boolean failed) {
+        final ReaderStatistics reader = readersByPolicy.get(loadBalancingPolicy);
+        if (reader != null) {
+            reader.queryFinished(durationInNanos, slowQueryDurationInNanos, failed, System.nanoTime());
+        }
+    }
+
+    /**
+     * @param readerPolicies
+     *            the policy that routes queries to each multiplex reader, keyed by reader name
+     */
+    public synchronized void setReaderPolicies(final Map<String, LoadBalancingPolicy> readerPolicies) {
+        final List<ReaderStatistics> newReaders = new ArrayList<ReaderStatistics>();
+        for (final Map.Entry<String, LoadBalancingPolicy> readerPolicy : readerPolicies.entrySet()) {
+            newReaders.add(new ReaderStatistics(readerPolicy.getKey(), readerPolicy.getValue(), circuitBreakerConfiguration));
+        }
+        replaceReaders(newReaders);
+    }
+
+    /**
+     * The policy of the reader is the one the standard selection returns for the request parameters, selected once
+     * here. A reader of the same name is replaced
+     */
+    @Override
+    public synchronized void setReader(final String readerName, final String[] requestParameters) {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        for (final String requestParameter : requestParameters) {
+            final int separator = requestParameter.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Request parameter not in the form name=value: " + requestParameter);
+            }
+            parameters.add(requestParameter.substring(0, separator), requestParameter.substring(separator + 1));
+        }
+        final LoadBalancingPolicy loadBalancingPolicy = getStandardLoadBalancingPolicy(parameters);
+        if (loadBalancingPolicy == null) {
+            throw new IllegalArgumentException("No load balancing policy is selected for " + Arrays.toString(requestParameters));
+        }
+        final List<ReaderStatistics> newReaders = withoutReader(readerName);
+        newReaders.add(new ReaderStatistics(readerName, loadBalancingPolicy, circuitBreakerConfiguration));
+        replaceReaders(newReaders);
+    }
+
+    @Override
+    public synchronized void removeReader(final String readerName) {
+        replaceReaders(withoutReader(readerName));
+    }
+
+    private List<ReaderStatistics> withoutReader(final String readerName) {
+        final List<ReaderStatistics> remainingReaders = new ArrayList<ReaderStatistics>();
+        for (final ReaderStatistics reader : readers) {
+            if (!reader.getReaderName().equals(readerName)) {
+                remainingReaders.add(reader);
+            }
+        }
+        return remainingReaders;
+    }
+
+    private void replaceReaders(final List<ReaderStatistics> newReaders) {
+        final Map<LoadBalancingPolicy, ReaderStatistics> newReadersByPolicy = new HashMap<LoadBalancingPolicy, ReaderStatistics>();
+        for (final ReaderStatistics reader : newReaders) {
+            newReadersByPolicy.put(reader.getLoadBalancingPolicy(), reader);
+        }
+        readersByPolicy = newReadersByPolicy;
+        readers = Collections.unmodifiableList(newReaders);
+        readersByWorkloadClass = groupReadersByWorkloadClass(newReaders, workloadReaderNames);
+    }
+
+    /**
+     * @param workloadReaders
+     *            names of the readers dedicated to each workload class. Queries of a class without dedicated readers, or
+     *            whose dedicated readers are not configured, are balanced across all readers
+     */
+    public synchronized void setWorkloadReaders(final Map<WorkloadClass, Set<String>> workloadReaders) {
+        workloadReaderNames = new EnumMap<WorkloadClass, Set<String>>(WorkloadClass.class);
+        workloadReaderNames.putAll(workloadReaders);
+        readersByWorkloadClass = groupReadersByWorkloadClass(readers, workloadReaderNames);
+    }
+
+    private static Map<WorkloadClass, List<ReaderStatistics>> groupReadersByWorkloadClass(final List<ReaderStatistics> allReaders,
+                                                                                          final Map<WorkloadClass, Set<String>> readerNames) {
+        final Map<WorkloadClass, List<ReaderStatistics>> grouped = new EnumMap<WorkloadClass, List<ReaderStatistics>>(WorkloadClass.class);
+        for (final Map.Entry<WorkloadClass, Set<String>> workloadReaders : readerNames.entrySet()) {
+            final List<ReaderStatistics> classReaders = new ArrayList<ReaderStatistics>();
+            for (final ReaderStatistics reader : allReaders) {
+                if (workloadReaders.getValue().contains(reader.getReaderName())) {
+                    classReaders.add(reader);
+                }
+            }
+            if (!classReaders.isEmpty()) {
+                grouped.put(workloadReaders.getKey(), Collections.unmodifiableList(classReaders));
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * @param circuitBreakerConfiguration
+     *            thresholds of the readers' circuit breakers
+     */
+    public synchronized void setCircuitBreakerConfiguration(final CircuitBreakerConfiguration circuitBreakerConfiguration) {
+        this.circuitBreakerConfiguration = circuitBreakerConfiguration;
+        for (final ReaderStatistics reader : readers) {
+            reader.getCircuitBreaker().setConfiguration(circuitBreakerConfiguration);
+        }
+    }
+
+    /**
+     * @return the statistics for each configured reader
+     */
+    public List<ReaderStatistics> getReaderStatistics() {
+        return readers;
+    }
+
+    @Override
+    public String[] getReaders() {
+        final long now = System.nanoTime();
+        final List<ReaderStatistics> currentReaders = readers;
+        final String[] descriptions = new String[currentReaders.size()];
+        for (int i = 0; i < descriptions.length; i++) {
+            final ReaderStatistics reader = currentReaders.get(i);
+            descriptions[i] = reader.getReaderName() + ": " + reader.getCircuitBreaker().getState() + ", " + reader.getQueriesInFlight()
+                    + " queries in flight, average latency " + TimeUnit.NANOSECONDS.toMillis((long) reader.getAverageLatencyInNanos(now)) + "ms";
+        }
+        return descriptions;
+    }
+
+    @Override
+    public String[] getWorkloadReaders() {
+        final List<String> descriptions = new ArrayList<String>();
+        synchronized (this) {
+            for (final Map.Entry<WorkloadClass, Set<String>> workloadReaders : workloadReaderNames.entrySet()) {
+                descriptions.add(workloadReaders.getKey() + ": " + workloadReaders.getValue());
+            }
+        }
+        return descriptions.toArray(new String[descriptions.size()]);
+    }
+
+    @Override
+    public synchronized void setWorkloadReaders(final String workloadClass, final String[] readerNames) {
+        final Map<WorkloadClass, Set<String>> workloadReaders = new EnumMap<WorkloadClass, Set<String>>(WorkloadClass.class);
+        workloadReaders.putAll(workloadReaderNames);
+        if (readerNames == null || readerNames.length == 0) {
+            workloadReaders.remove(WorkloadClass.valueOf(workloadClass));
+        } else {
+            workloadReaders.put(WorkloadClass.valueOf(workloadClass), new HashSet<String>(Arrays.asList(readerNames)));
+        }
+        setWorkloadReaders(workloadReaders);
+    }
+
+    @Override
+    public int getWindowSize() {
+        return circuitBreakerConfiguration.getWindowSize();
+    }
+
+    @Override
+    public synchronized void setWindowSize(final int windowSize) {
+        final CircuitBreakerConfiguration current = circuitBreakerConfiguration;
+        setCircuitBreakerConfiguration(new CircuitBreakerConfiguration(windowSize, current.getMinimumQueries(), current.getFailureRatePercent(),
+                current.getSlowQueryRatePercent(), current.getSlowQueryDurationInNanos(), current.getOpenDurationInNanos()));
+    }
+
+    @Override
+    public int getMinimumQueries() {
+        return circuitBreakerConfiguration.getMinimumQueries();
+    }
+
+    @Override
+    public synchronized void setMinimumQueries(final int minimumQueries) {
+        final CircuitBreakerConfiguration current = circuitBreakerConfiguration;
+        setCircuitBreakerConfiguration(new CircuitBreakerConfiguration(current.getWindowSize(), minimumQueries, current.getFailureRatePercent(),
+                current.getSlowQueryRatePercent(), current.getSlowQueryDurationInNanos(), current.getOpenDurationInNanos()));
+    }
+
+    @Override
+    public int getFailureRatePercent() {
+        return circuitBreakerConfiguration.getFailureRatePercent();
+    }
+
+    @Override
+    public synchronized void setFailureRatePercent(final int failureRatePercent) {
+        final CircuitBreakerConfiguration current = circuitBreakerConfiguration;
+        setCircuitBreakerConfiguration(new CircuitBreakerConfiguration(current.getWindowSize(), current.getMinimumQueries(), failureRatePercent,
+                current.getSlowQueryRatePercent(), current.getSlowQueryDurationInNanos(), current.getOpenDurationInNanos()));
+    }
+
+    @Override
+    public int getSlowQueryRatePercent() {
+        return circuitBreakerConfiguration.getSlowQueryRatePercent();
+    }
+
+    @Override
+    public synchronized void setSlowQueryRatePercent(final int slowQueryRatePercent) {
+        final CircuitBreakerConfiguration current = circuitBreakerConfiguration;
+        setCircuitBreakerConfiguration(new CircuitBreakerConfiguration(current.getWindowSize(), current.getMinimumQueries(),
+                current.getFailureRatePercent(), slowQueryRatePercent, current.getSlowQueryDurationInNanos(), current.getOpenDurationInNanos()));
+    }
+
+    @Override
+    public long getSlowQueryDurationInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(circuitBreakerConfiguration.getSlowQueryDurationInNanos());
+    }
+
+    @Override
+    public synchronized void setSlowQueryDurationInMillis(final long slowQueryDurationInMillis) {
+        final CircuitBreakerConfiguration current = circuitBreakerConfiguration;
+        setCircuitBreakerConfiguration(new CircuitBreakerConfiguration(current.getWindowSize(), current.getMinimumQueries(),
+                current.getFailureRatePercent(), current.getSlowQueryRatePercent(), TimeUnit.MILLISECONDS.toNanos(slowQueryDurationInMillis),
+                current.getOpenDurationInNanos()));
+    }
+
+    @Override
+    public long getOpenDurationInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(circuitBreakerConfiguration.getOpenDurationInNanos());
+    }
+
+    @Override
+    public synchronized void setOpenDurationInMillis(final long openDurationInMillis) {
+        final CircuitBreakerConfiguration current = circuitBreakerConfiguration;
+        setCircuitBreakerConfiguration(new CircuitBreakerConfiguration(current.getWindowSize(), current.getMinimumQueries(),
+                current.getFailureRatePercent(), current.getSlowQueryRatePercent(), current.getSlowQueryDurationInNanos(),
+                TimeUnit.MILLISECONDS.toNanos(openDurationInMillis)));
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+/**
+ * JMX view of the {@link AdaptiveLoadBalancingPolicyService}
+ */
+public interface AdaptiveLoadBalancingPolicyServiceMXBean {
+
+    /**
+     * @return name, circuit breaker state, queries in flight and average latency of each reader
+     */
+    String[] getReaders();
+
+    /**
+     * Balance queries across a reader, until a reader is configured the standard selection is used unchanged
+     *
+     * @param readerName
+     *            name of the reader
+     * @param requestParameters
+     *            request parameters, each in the form name=value, for which the standard selection returns the policy
+     *            that routes to the reader
+     */
+    void setReader(String readerName, String[] requestParameters);
+
+    void removeReader(String readerName);
+
+    /**
+     * @return names of the readers dedicated to each workload class
+     */
+    String[] getWorkloadReaders();
+
+    /**
+     * @param workloadClass
+     *            name of the workload class, eg EXPORT
+     * @param readerNames
+     *            names of the readers dedicated to the class, empty to balance the class across all readers
+     */
+    void setWorkloadReaders(String workloadClass, String[] readerNames);
+
+    /**
+     * @return number of most recent queries on a reader that its circuit breaker considers
+     */
+    int getWindowSize();
+
+    void setWindowSize(int windowSize);
+
+    int getMinimumQueries();
+
+    void setMinimumQueries(int minimumQueries);
+
+    int getFailureRatePercent();
+
+    void setFailureRatePercent(int failureRatePercent);
+
+    int getSlowQueryRatePercent();
+
+    void setSlowQueryRatePercent(int slowQueryRatePercent);
+
+    long getSlowQueryDurationInMillis();
+
+    void setSlowQueryDurationInMillis(long slowQueryDurationInMillis);
+
+    /**
+     * @return how long an open circuit breaker excludes its reader before probing it
+     */
+    long getOpenDurationInMillis();
+
+    void setOpenDurationInMillis(long openDurationInMillis);
+}
@@ -0,0 +1,36 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass;
+
+/**
+ * Selects a second reader for a query that is already running on one, so that the service layer can hedge a slow
+ * query by issuing it again elsewhere
+ */
+public interface AlternativeReaderSelector {
+
+    /**
+     * @param requestParameters
+     *            parameters of the request
+     * @param workloadClass
+     *            class of the query, null if it has none
+     * @param excluded
+     *            the policy the query is already running with
+     * @return policy routing the query to a different reader, null if there is no other reader
+     */
+    LoadBalancingPolicy getAlternativeLoadBalancingPolicy(MultivaluedMap<String, String> requestParameters, WorkloadClass workloadClass,
+                                                          LoadBalancingPolicy excluded);
+}
@@ -0,0 +1,87 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thresholds of the {@link ReaderCircuitBreaker}s
+ */
+public class CircuitBreakerConfiguration {
+
+    /**
+     * Opens a breaker when half of the last 20 queries (after at least 10) on the reader failed or took longer than 10
+     * seconds, and probes the reader again after 5 seconds
+     */
+    public static final CircuitBreakerConfiguration DEFAULT = new CircuitBreakerConfiguration(20, 10, 50, 50, TimeUnit.SECONDS.toNanos(10),
+            TimeUnit.SECONDS.toNanos(5));
+
+    private final int windowSize;
+
+    private final int minimumQueries;
+
+    private final int failureRatePercent;
+
+    private final int slowQueryRatePercent;
+
+    private final long slowQueryDurationInNanos;
+
+    private final long openDurationInNanos;
+
+    /**
+     * @param windowSize
+     *            number of most recent queries the failure and slow query rates are calculated over
+     * @param minimumQueries
+     *            number of queries needed in the window before the breaker can open
+     * @param failureRatePercent
+     *            percentage of failed queries at which the breaker opens
+     * @param slowQueryRatePercent
+     *            percentage of slow queries at which the breaker opens
+     * @param slowQueryDurationInNanos
+     *            duration above which a query is slow
+     * @param openDurationInNanos
+     *            how long an open breaker excludes the reader before probing it
+     */
+    public CircuitBreakerConfiguration(final int windowSize, final int minimumQueries, final int failureRatePercent, final int slowQueryRatePercent,
+                                       final long slowQueryDurationInNanos, final long openDurationInNanos) {
+        this.windowSize = windowSize;
+        this.minimumQueries = Math.min(minimumQueries, windowSize);
+        this.failureRatePercent = failureRatePercent;
+        this.slowQueryRatePercent = slowQueryRatePercent;
+        this.slowQueryDurationInNanos = slowQueryDurationInNanos;
+        this.openDurationInNanos = openDurationInNanos;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinimumQueries() {
+        return minimumQueries;
+    }
+
+    public int getFailureRatePercent() {
+        return failureRatePercent;
+    }
+
+    public int getSlowQueryRatePercent() {
+        return slowQueryRatePercent;
+    }
+
+    public long getSlowQueryDurationInNanos() {
+        return slowQueryDurationInNanos;
+    }
+
+    public long getOpenDurationInNanos() {
+        return openDurationInNanos;
+    }
+}
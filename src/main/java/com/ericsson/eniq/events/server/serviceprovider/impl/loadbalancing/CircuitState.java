@@ -0,0 +1,27 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+/**
+ * State of a {@link ReaderCircuitBreaker}
+ */
+public enum CircuitState {
+
+    /** The reader is healthy and used for queries */
+    CLOSED,
+
+    /** The reader is failing or stalled and is excluded from load balancing */
+    OPEN,
+
+    /** The reader has been excluded for the open duration, and a single probe query is sent to it */
+    HALF_OPEN
+}
@@ -0,0 +1,41 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+
+/**
+ * Notified by the service layer when a query starts and finishes executing on the reader selected by a
+ * load balancing policy, so that the selection of readers for later queries can take account of how each reader is
+ * performing
+ */
+public interface QueryExecutionListener {
+
+    /**
+     * @param loadBalancingPolicy
+     *            the policy the query is executed with
+     */
+    void queryStarted(LoadBalancingPolicy loadBalancingPolicy);
+
+    /**
+     * @param loadBalancingPolicy
+     *            the policy the query was executed with
+     * @param durationInNanos
+     *            time taken by the reader to execute the query (to the first byte streamed, for CSV exports)
+     * @param slowQueryDurationInNanos
+     *            duration above which the query is slow for its kind of query (eg its p99), -1 to use the
+     *            configured slow query duration
+     * @param failed
+     *            true if the query failed
+     */
+    void queryFinished(LoadBalancingPolicy loadBalancingPolicy, long durationInNanos, long slowQueryDurationInNanos, boolean failed);
+}
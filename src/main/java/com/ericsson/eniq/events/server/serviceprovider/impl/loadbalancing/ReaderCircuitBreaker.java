@@ -0,0 +1,175 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+/**
+ * Circuit breaker of a single multiplex reader.
+ * <p/>
+ * The outcome of the most recent queries on the reader is kept in a ring. When the share of failed or slow queries
+ * reaches its threshold, the breaker opens and the reader is excluded from load balancing for the open duration, so
+ * that new queries fail over to the healthy readers instead of waiting for the reader's connection timeout. Once the
+ * open duration has passed the breaker is half open: a single probe query is let through, and the breaker closes if
+ * the probe succeeds in time, or opens again if it does not. Only a query started once the probe was taken decides the
+ * probe: the results of queries that were already running on the reader when it was excluded say nothing about whether
+ * it has recovered, and are ignored. A probe that never reports back (eg because the request failed before the query
+ * was run) is replaced after another open duration.
+ * <p/>
+ * Whether a query is slow is judged against its own kind of query (eg the p99 of its earlier executions), as a query
+ * that is normally slow (eg a week long trend on raw data) says nothing about the reader. The configured slow query
+ * duration is used for queries that have not run often enough for that.
+ */
+public class ReaderCircuitBreaker {
+
+    private static final byte SUCCESS = 0;
+
+    private static final byte FAILURE = 1;
+
+    private static final byte SLOW = 2;
+
+    private CircuitBreakerConfiguration configuration;
+
+    private CircuitState state = CircuitState.CLOSED;
+
+    private byte[] outcomes;
+
+    private int numberOfOutcomes;
+
+    private int nextOutcome;
+
+    private long stateChangeTime;
+
+    private boolean probeInFlight;
+
+    private long probeStartTime;
+
+    public ReaderCircuitBreaker(final CircuitBreakerConfiguration configuration) {
+        setConfiguration(configuration);
+    }
+
+    /**
+     * @param now
+     *            current value of {@link System#nanoTime()}
+     * @return true if a query can be sent to the reader now, without taking the half open probe
+     */
+    public synchronized boolean isAvailable(final long now) {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            return now - stateChangeTime >= configuration.getOpenDurationInNanos();
+        default:
+            return !probeInFlight || now - stateChangeTime >= configuration.getOpenDurationInNanos();
+        }
+    }
+
+    /**
+     * Called when the reader has been selected for a query, to take the probe if the breaker is due to be probed
+     *
+     * @param now
+     *            current value of {@link System#nanoTime()}
+     * @return false if the reader can no longer be used, eg because another query has just taken the probe
+     */
+    public synchronized boolean tryAcquire(final long now) {
+        if (!isAvailable(now)) {
+            return false;
+        }
+        if (state != CircuitState.CLOSED) {
+            state = CircuitState.HALF_OPEN;
+            stateChangeTime = now;
+            probeInFlight = true;
+            probeStartTime = now;
+        }
+        return true;
+    }
+
+    /**
+     * Record the result of a query, judged against the configured slow query duration
+     *
+     * @param durationInNanos
+     *            duration of the query
+     * @param failed
+     *            true if the query failed
+     * @param now
+     *            current value of {@link System#nanoTime()}
+     */
+    public void recordResult(final long durationInNanos, final boolean failed, final long now) {
+        recordResult(durationInNanos, -1, failed, now);
+    }
+
+    /**
+     * @param durationInNanos
+     *            duration of the query
+     * @param slowQueryDurationInNanos
+     *            duration above which the query is slow, -1 to use the configured slow query duration
+     * @param failed
+     *            true if the query failed
+     * @param now
+     *            current value of {@link System#nanoTime()}
+     */
+    public synchronized void recordResult(final long durationInNanos, final long slowQueryDurationInNanos, final boolean failed, final long now) {
+        final long slowDuration = slowQueryDurationInNanos > 0 ? slowQueryDurationInNanos : configuration.getSlowQueryDurationInNanos();
+        final byte outcome = failed ? FAILURE : durationInNanos > slowDuration ? SLOW : SUCCESS;
+        if (state == CircuitState.HALF_OPEN) {
+            if (!probeInFlight || now - durationInNanos - probeStartTime < 0) {
+                return;
+            }
+            if (outcome == SUCCESS) {
+                transitionTo(CircuitState.CLOSED, now);
+            } else {
+                transitionTo(CircuitState.OPEN, now);
+            }
+            return;
+        }
+        if (state == CircuitState.OPEN) {
+            return;
+        }
+        outcomes[nextOutcome] = outcome;
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+        numberOfOutcomes = Math.min(numberOfOutcomes + 1, outcomes.length);
+        if (numberOfOutcomes >= configuration.getMinimumQueries() && isThresholdReached()) {
+            transitionTo(CircuitState.OPEN, now);
+        }
+    }
+
+    private boolean isThresholdReached() {
+        int failures = 0;
+        int slowQueries = 0;
+        for (int i = 0; i < numberOfOutcomes; i++) {
+            if (outcomes[i] == FAILURE) {
+                failures++;
+            } else if (outcomes[i] == SLOW) {
+                slowQueries++;
+            }
+        }
+        return failures * 100 >= configuration.getFailureRatePercent() * numberOfOutcomes
+                || slowQueries * 100 >= configuration.getSlowQueryRatePercent() * numberOfOutcomes;
+    }
+
+    private void transitionTo(final CircuitState newState, final long now) {
+        state = newState;
+        stateChangeTime = now;
+        probeInFlight = false;
+        numberOfOutcomes = 0;
+        nextOutcome = 0;
+    }
+
+    public synchronized CircuitState getState() {
+        return state;
+    }
+
+    public final synchronized void setConfiguration(final CircuitBreakerConfiguration configuration) {
+        this.configuration = configuration;
+        outcomes = new byte[configuration.getWindowSize()];
+        numberOfOutcomes = 0;
+        nextOutcome = 0;
+    }
+}
@@ -0,0 +1,132 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+
+/**
+ * Latency and load of a single multiplex reader, as observed by the service layer.
+ * <p/>
+ * The latency is tracked as an exponentially weighted moving average (EWMA) of the query durations on the reader.
+ * A reader that has not been used for a while has its average decayed towards zero, so that a reader that was slow
+ * (eg during a merge) is tried again once it has been idle, rather than being excluded for ever.
+ * <p/>
+ * A reader that is failing or stalled is excluded outright by its {@link ReaderCircuitBreaker}.
+ */
+public class ReaderStatistics {
+
+    static final double EWMA_WEIGHT = 0.2;
+
+    static final long IDLE_HALF_LIFE_IN_NANOS = 10L * 1000 * 1000 * 1000;
+
+    private final String readerName;
+
+    private final LoadBalancingPolicy loadBalancingPolicy;
+
+    private final AtomicLong averageLatencyBits = new AtomicLong(Double.doubleToLongBits(0));
+
+    private final AtomicLong lastUpdateTime = new AtomicLong(System.nanoTime());
+
+    private final AtomicInteger queriesInFlight = new AtomicInteger();
+
+    private final ReaderCircuitBreaker circuitBreaker;
+
+    public ReaderStatistics(final String readerName, final LoadBalancingPolicy loadBalancingPolicy) {
+        this(readerName, loadBalancingPolicy, CircuitBreakerConfiguration.DEFAULT);
+    }
+
+    public ReaderStatistics(final String readerName, final LoadBalancingPolicy loadBalancingPolicy,
+                            final CircuitBreakerConfiguration circuitBreakerConfiguration) {
+        this.readerName = readerName;
+        this.loadBalancingPolicy = loadBalancingPolicy;
+        this.circuitBreaker = new ReaderCircuitBreaker(circuitBreakerConfiguration);
+    }
+
+    public void queryStarted() {
+        queriesInFlight.incrementAndGet();
+    }
+
+    /**
+     * Failed queries are not included in the average, as a reader that fails fast would otherwise look like the best
+     * reader to use
+     *
+     * @param durationInNanos
+     *            duration of the query
+     * @param slowQueryDurationInNanos
+     *            duration above which the query is slow, -1 to use the configured slow query duration
+     * @param failed
+     *            true if the query failed
+     * @param now
+     *            current value of {@link System#nanoTime()}
+     */
+    public void queryFinished(final long durationInNanos, final long slowQueryDurationInNanos, final boolean failed, final long now) {
+        queriesInFlight.decrementAndGet();
+        circuitBreaker.recordResult(durationInNanos, slowQueryDurationInNanos, failed, now);
+        if (failed) {
+            return;
+        }
+        while (true) {
+            final long currentBits = averageLatencyBits.get();
+            final double current = Double.longBitsToDouble(currentBits);
+            final double updated = current == 0 ? durationInNanos : current + EWMA_WEIGHT * (durationInNanos - current);
+            if (averageLatencyBits.compareAndSet(currentBits, Double.doubleToLongBits(updated))) {
+                lastUpdateTime.set(now);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param now
+     *            current value of {@link System#nanoTime()}
+     * @return the average latency of the reader, decayed by the time since the reader was last used
+     */
+    public double getAverageLatencyInNanos(final long now) {
+        final double average = Double.longBitsToDouble(averageLatencyBits.get());
+        final long idleTime = now - lastUpdateTime.get();
+        if (idleTime <= 0) {
+            return average;
+        }
+        return average * Math.pow(0.5, (double) idleTime / IDLE_HALF_LIFE_IN_NANOS);
+    }
+
+    /**
+     * The expected cost of sending one more query to this reader: its average latency, scaled by the number of queries
+     * that are already executing on it
+     *
+     * @param now
+     *            current value of {@link System#nanoTime()}
+     * @return relative cost of using this reader
+     */
+    public double getCost(final long now) {
+        return (getAverageLatencyInNanos(now) + 1) * (queriesInFlight.get() + 1);
+    }
+
+    public int getQueriesInFlight() {
+        return queriesInFlight.get();
+    }
+
+    public ReaderCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public String getReaderName() {
+        return readerName;
+    }
+
+    public LoadBalancingPolicy getLoadBalancingPolicy() {
+        return loadBalancingPolicy;
+    }
+}
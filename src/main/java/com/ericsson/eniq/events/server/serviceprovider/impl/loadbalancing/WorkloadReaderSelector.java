@@ -0,0 +1,32 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass;
+
+/**
+ * Selects the reader for a query taking its workload class into account, so that readers can be dedicated to a class
+ */
+public interface WorkloadReaderSelector {
+
+    /**
+     * @param requestParameters
+     *            parameters of the request
+     * @param workloadClass
+     *            class of the query, null if it has none
+     * @return policy routing the query to a reader of its class
+     */
+    LoadBalancingPolicy getLoadBalancingPolicy(MultivaluedMap<String, String> requestParameters, WorkloadClass workloadClass);
+}
@@ -0,0 +1,158 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.pipeline;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+
+/**
+ * Always on recording of the stages of every service request.
+ * <p/>
+ * The most recent stages are kept in a fixed size ring buffer, overwriting the oldest, and can be read over JMX with
+ * the timestamps, thread names and contention counters needed to line them up with GC logs and thread dumps. Recording
+ * a stage allocates one event and does not lock.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class PipelineFlightRecorder implements PipelineFlightRecorderMXBean {
+
+    static final int DEFAULT_CAPACITY = 8192;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=PipelineFlightRecorder";
+
+    private final AtomicReferenceArray<PipelineStageEvent> events;
+
+    private final AtomicLong recordedEventCount = new AtomicLong();
+
+    private volatile boolean enabled = true;
+
+    public PipelineFlightRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    PipelineFlightRecorder(final int capacity) {
+        events = new AtomicReferenceArray<PipelineStageEvent>(capacity);
+    }
+
+    /**
+     * @param stage
+     *            stage that is starting on the current thread
+     * @param templatePath
+     *            template path of the service
+     * @param requestId
+     *            id of the request, can be null
+     * @return timer to pass to {@link #stop}, null if recording is disabled
+     */
+    public PipelineStageTimer start(final PipelineStage stage, final String templatePath, final String requestId) {
+        if (!enabled) {
+            return null;
+        }
+        return new PipelineStageTimer(stage, templatePath, requestId);
+    }
+
+    /**
+     * Record the stage, must be called on the thread that started it
+     * 
+     * @param timer
+     *            timer returned by {@link #start}, can be null
+     * @param rows
+     *            rows produced by the stage
+     * @param bytes
+     *            bytes produced by the stage
+     */
+    public void stop(final PipelineStageTimer timer, final long rows, final long bytes) {
+        if (timer == null) {
+            return;
+        }
+        final long sequence = recordedEventCount.getAndIncrement();
+        events.set((int) (sequence % events.length()), timer.stop(rows, bytes));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getRecordedEventCount() {
+        return recordedEventCount.get();
+    }
+
+    @Override
+    public List<PipelineStageEvent> recentEvents(final int count) {
+        final List<PipelineStageEvent> recentEvents = new ArrayList<PipelineStageEvent>();
+        final long last = recordedEventCount.get() - 1;
+        for (long sequence = last; sequence >= 0 && sequence > last - events.length() && recentEvents.size() < count; sequence--) {
+            final PipelineStageEvent event = events.get((int) (sequence % events.length()));
+            if (event != null) {
+                recentEvents.add(event);
+            }
+        }
+        return recentEvents;
+    }
+
+    @Override
+    public List<PipelineStageEvent> eventsForRequest(final String requestId) {
+        final List<PipelineStageEvent> requestEvents = new ArrayList<PipelineStageEvent>();
+        for (final PipelineStageEvent event : recentEvents(events.length())) {
+            if (requestId != null && requestId.equals(event.getRequestId())) {
+                requestEvents.add(event);
+            }
+        }
+        Collections.reverse(requestEvents);
+        return requestEvents;
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isThreadContentionMonitoringSupported()) {
+            threads.setThreadContentionMonitoringEnabled(true);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+}
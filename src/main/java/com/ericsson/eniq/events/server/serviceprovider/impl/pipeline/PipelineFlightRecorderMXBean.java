@@ -0,0 +1,43 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.pipeline;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link PipelineFlightRecorder}
+ */
+public interface PipelineFlightRecorderMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return number of stages recorded since startup
+     */
+    long getRecordedEventCount();
+
+    /**
+     * @param count
+     *            maximum number of events to return
+     * @return the most recently completed stages, newest first
+     */
+    List<PipelineStageEvent> recentEvents(int count);
+
+    /**
+     * @param requestId
+     *            id of the request
+     * @return the recorded stages of the request, in the order they completed
+     */
+    List<PipelineStageEvent> eventsForRequest(String requestId);
+}
@@ -0,0 +1,53 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.pipeline;
+
+/**
+ * Stages of the service pipeline that are recorded by the {@link PipelineFlightRecorder}
+ */
+public enum PipelineStage {
+
+    /**
+     * Checking the request parameters
+     */
+    VALIDATION,
+
+    /**
+     * Finding the licensed tech packs
+     */
+    LICENSING,
+
+    /**
+     * Translating the request's time parameters into a time range
+     */
+    TIME_TRANSLATION,
+
+    /**
+     * Selecting the aggregation level and the tables to query
+     */
+    TECH_PACK_RESOLUTION,
+
+    /**
+     * Generating the SQL query and its parameters
+     */
+    SQL_GENERATION,
+
+    /**
+     * Running the query and building the JSON result
+     */
+    EXECUTION,
+
+    /**
+     * Running the query and streaming the CSV result to the client
+     */
+    STREAMING
+}
@@ -0,0 +1,151 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.pipeline;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A completed pipeline stage of a single request.
+ * <p/>
+ * Besides the elapsed time, the event carries what the request thread spent its time on during the stage (CPU, blocked
+ * on monitors, waiting) and the garbage collection time of the whole JVM over the same period. Elapsed time that is
+ * neither CPU, blocked nor waited time is mostly socket I/O with the database or the client.
+ */
+public class PipelineStageEvent {
+
+    private final String stage;
+
+    private final String templatePath;
+
+    private final String requestId;
+
+    private final String threadName;
+
+    private final long startTime;
+
+    private final long durationNanos;
+
+    private final long cpuNanos;
+
+    private final long blockedCount;
+
+    private final long blockedMillis;
+
+    private final long waitedCount;
+
+    private final long waitedMillis;
+
+    private final long gcMillis;
+
+    private final long rows;
+
+    private final long bytes;
+
+    @ConstructorProperties({ "stage", "templatePath", "requestId", "threadName", "startTime", "durationNanos", "cpuNanos", "blockedCount",
+            "blockedMillis", "waitedCount", "waitedMillis", "gcMillis", "rows", "bytes" })
+    public PipelineStageEvent(final String stage, final String templatePath, final String requestId, final String threadName, final long startTime,
+                              final long durationNanos, final long cpuNanos, final long blockedCount, final long blockedMillis,
+                              final long waitedCount, final long waitedMillis, final long gcMillis, final long rows, final long bytes) {
+        this.stage = stage;
+        this.templatePath = templatePath;
+        this.requestId = requestId;
+        this.threadName = threadName;
+        this.startTime = startTime;
+        this.durationNanos = durationNanos;
+        this.cpuNanos = cpuNanos;
+        this.blockedCount = blockedCount;
+        this.blockedMillis = blockedMillis;
+        this.waitedCount = waitedCount;
+        this.waitedMillis = waitedMillis;
+        this.gcMillis = gcMillis;
+        this.rows = rows;
+        this.bytes = bytes;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public String getTemplatePath() {
+        return templatePath;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return wall clock time the stage started at, in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return CPU time used by the request thread during the stage, -1 if thread CPU time is not supported
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    /**
+     * @return time the request thread spent blocked on monitors, -1 if thread contention monitoring is not supported
+     */
+    public long getBlockedMillis() {
+        return blockedMillis;
+    }
+
+    public long getWaitedCount() {
+        return waitedCount;
+    }
+
+    /**
+     * @return time the request thread spent waiting, -1 if thread contention monitoring is not supported
+     */
+    public long getWaitedMillis() {
+        return waitedMillis;
+    }
+
+    /**
+     * @return garbage collection time of all collectors during the stage
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return stage + " " + templatePath + " request=" + requestId + " thread=" + threadName + " durationNanos=" + durationNanos + " cpuNanos="
+                + cpuNanos + " blocked=" + blockedCount + "/" + blockedMillis + "ms waited=" + waitedCount + "/" + waitedMillis + "ms gc="
+                + gcMillis + "ms rows=" + rows + " bytes=" + bytes;
+    }
+}
@@ -0,0 +1,97 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.pipeline;
+
+import java.lang.management.*;
+import java.util.List;
+
+/**
+ * Measures a pipeline stage on the thread that started it.
+ * <p/>
+ * Reading the thread's CPU time and contention counters does not stop the JVM, so the timer is cheap enough to be used
+ * on every request.
+ */
+public final class PipelineStageTimer {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final List<GarbageCollectorMXBean> GARBAGE_COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final PipelineStage stage;
+
+    private final String templatePath;
+
+    private final String requestId;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final long startNanos = System.nanoTime();
+
+    private final long startCpuNanos = getCurrentThreadCpuTime();
+
+    private final ThreadInfo startThreadInfo = getCurrentThreadInfo();
+
+    private final long startGcMillis = getGcMillis();
+
+    PipelineStageTimer(final PipelineStage stage, final String templatePath, final String requestId) {
+        this.stage = stage;
+        this.templatePath = templatePath;
+        this.requestId = requestId;
+    }
+
+    /**
+     * @param rows
+     *            rows produced by the stage
+     * @param bytes
+     *            bytes produced by the stage
+     * @return the completed stage
+     */
+    PipelineStageEvent stop(final long rows, final long bytes) {
+        final long durationNanos = System.nanoTime() - startNanos;
+        final long endCpuNanos = getCurrentThreadCpuTime();
+        final ThreadInfo endThreadInfo = getCurrentThreadInfo();
+        long blockedCount = 0;
+        long blockedMillis = -1;
+        long waitedCount = 0;
+        long waitedMillis = -1;
+        if (startThreadInfo != null && endThreadInfo != null) {
+            blockedCount = endThreadInfo.getBlockedCount() - startThreadInfo.getBlockedCount();
+            waitedCount = endThreadInfo.getWaitedCount() - startThreadInfo.getWaitedCount();
+            if (startThreadInfo.getBlockedTime() >= 0 && endThreadInfo.getBlockedTime() >= 0) {
+                blockedMillis = endThreadInfo.getBlockedTime() - startThreadInfo.getBlockedTime();
+                waitedMillis = endThreadInfo.getWaitedTime() - startThreadInfo.getWaitedTime();
+            }
+        }
+        return new PipelineStageEvent(stage.name(), templatePath, requestId, Thread.currentThread().getName(), startTime, durationNanos,
+                startCpuNanos < 0 || endCpuNanos < 0 ? -1 : endCpuNanos - startCpuNanos, blockedCount, blockedMillis, waitedCount, waitedMillis,
+                getGcMillis() - startGcMillis, rows, bytes);
+    }
+
+    private static long getCurrentThreadCpuTime() {
+        if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+            return -1;
+        }
+        return THREADS.getCurrentThreadCpuTime();
+    }
+
+    private static ThreadInfo getCurrentThreadInfo() {
+        return THREADS.getThreadInfo(Thread.currentThread().getId(), 0);
+    }
+
+    private static long getGcMillis() {
+        long gcMillis = 0;
+        for (final GarbageCollectorMXBean garbageCollector : GARBAGE_COLLECTORS) {
+            gcMillis += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        return gcMillis;
+    }
+}
@@ -0,0 +1,48 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.prefetch;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Describes the drill downs of a summary view (eg a ranking of RNCs) that are worth running ahead of the user's next
+ * click, see {@link DrillDownPrefetcher}
+ */
+public abstract class DrillDownPrefetch {
+
+    private final int numberOfRows;
+
+    /**
+     * @param numberOfRows
+     *            number of rows, from the top of the summary result, to prefetch the drill downs of
+     */
+    protected DrillDownPrefetch(final int numberOfRows) {
+        this.numberOfRows = numberOfRows;
+    }
+
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    /**
+     * Create the parameters of the request the user sends when drilling down on a row of the summary result. The drill
+     * down is run by the same service, which selects the drill down query through getDrillDownTypeForService(), so the
+     * parameters must be exactly those of the user's drill down request for the prefetched result to be used.
+     *
+     * @param summaryParameters
+     *            parameters of the summary request
+     * @param row
+     *            row of the summary result
+     * @return parameters of the drill down request
+     */
+    public abstract MultivaluedMap<String, String> createDrillDownParameters(MultivaluedMap<String, String> summaryParameters, String[] row);
+}
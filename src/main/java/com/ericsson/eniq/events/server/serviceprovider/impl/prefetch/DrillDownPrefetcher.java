@@ -0,0 +1,225 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.prefetch;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
+
+/**
+ * Runs the drill downs of a summary view in the background, on a small pool of low priority threads, so that their
+ * results are in the result cache by the time the user clicks on one of the top rows.
+ * <p/>
+ * Prefetching only uses spare reader capacity: no drill down is queued or started while queries are waiting for the
+ * {@link FairQueryScheduler}, and the queued drill downs are dropped as soon as they are. A drill down that is already
+ * running completes, so interactive queries wait for at most one prefetch per prefetch thread.
+ * <p/>
+ * The drill downs are run as the {@link com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass#PREFETCH}
+ * class and are scheduled as their own {@link #TENANT} with the lowest weight, rather than being charged to the user
+ * whose summary view they were prefetched for. They cannot take the slots reserved for interactive queries.
+ * <p/>
+ * Services that are not cached only look their results up in the result cache for as long as one of their drill downs
+ * may have been prefetched there, see {@link #mayHavePrefetched(String)}.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DrillDownPrefetcher implements DrillDownPrefetcherMXBean {
+
+    /**
+     * Tenant the {@link FairQueryScheduler} schedules the prefetched drill downs as. The name cannot be a user name or
+     * an IP address
+     */
+    public static final String TENANT = "#prefetch";
+
+    static final double TENANT_WEIGHT = 0.1;
+
+    static final int DEFAULT_TIME_TO_LIVE_IN_SECONDS = 60;
+
+    private static final int NUMBER_OF_THREADS = 2;
+
+    private static final int MAX_QUEUED_PREFETCHES = 32;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=DrillDownPrefetcher";
+
+    @EJB
+    private FairQueryScheduler fairQueryScheduler;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(NUMBER_OF_THREADS, NUMBER_OF_THREADS, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_QUEUED_PREFETCHES), ServiceExecutors.newThreadFactory("services-prefetch-", Thread.MIN_PRIORITY));
+
+    private volatile boolean enabled = true;
+
+    private volatile int timeToLiveInSeconds = DEFAULT_TIME_TO_LIVE_IN_SECONDS;
+
+    private final AtomicLong scheduledPrefetches = new AtomicLong();
+
+    private final AtomicLong completedPrefetches = new AtomicLong();
+
+    private final AtomicLong skippedPrefetches = new AtomicLong();
+
+    private final ConcurrentMap<String, Long> prefetchExpiryTimes = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Record that a drill down result of the service was stored in the result cache
+     *
+     * @param service
+     *            name of the service
+     * @param timeToLiveInSeconds
+     *            how long the result is kept in the result cache
+     */
+    public void recordPrefetch(final String service, final int timeToLiveInSeconds) {
+        prefetchExpiryTimes.put(service, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeToLiveInSeconds));
+    }
+
+    /**
+     * @param service
+     *            name of the service
+     * @return true if a drill down result of the service may still be in the result cache
+     */
+    public boolean mayHavePrefetched(final String service) {
+        final Long expiryTime = prefetchExpiryTimes.get(service);
+        return expiryTime != null && expiryTime > System.currentTimeMillis();
+    }
+
+    /**
+     * Queue a drill down to be prefetched, unless the readers are busy
+     *
+     * @param drillDown
+     *            runs the drill down request, which stores its result in the result cache
+     * @return true if the drill down was queued, false if it was skipped, in which case there is no point queueing the
+     *         drill downs of the following rows
+     */
+    public boolean schedule(final Runnable drillDown) {
+        if (!enabled || isUnderLoad()) {
+            skippedPrefetches.incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runDrillDown(drillDown);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            skippedPrefetches.incrementAndGet();
+            return false;
+        }
+        scheduledPrefetches.incrementAndGet();
+        return true;
+    }
+
+    void runDrillDown(final Runnable drillDown) {
+        if (!enabled || isUnderLoad()) {
+            skippedPrefetches.incrementAndGet();
+            dropQueuedPrefetches();
+            return;
+        }
+        try {
+            drillDown.run();
+            completedPrefetches.incrementAndGet();
+        } catch (final RuntimeException e) {
+            ServicesLogger.warn(getClass().getName(), "runDrillDown", "Drill down prefetch failed: " + e.getMessage());
+        }
+    }
+
+    private void dropQueuedPrefetches() {
+        final List<Runnable> dropped = new ArrayList<Runnable>();
+        executor.getQueue().drainTo(dropped);
+        skippedPrefetches.addAndGet(dropped.size());
+    }
+
+    private boolean isUnderLoad() {
+        return fairQueryScheduler != null && fairQueryScheduler.getQueuedQueries() > 0;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            dropQueuedPrefetches();
+        }
+    }
+
+    @Override
+    public int getTimeToLiveInSeconds() {
+        return timeToLiveInSeconds;
+    }
+
+    @Override
+    public void setTimeToLiveInSeconds(final int timeToLiveInSeconds) {
+        this.timeToLiveInSeconds = timeToLiveInSeconds;
+    }
+
+    @Override
+    public long getScheduledPrefetches() {
+        return scheduledPrefetches.get();
+    }
+
+    @Override
+    public long getCompletedPrefetches() {
+        return completedPrefetches.get();
+    }
+
+    @Override
+    public long getSkippedPrefetches() {
+        return skippedPrefetches.get();
+    }
+
+    public void setFairQueryScheduler(final FairQueryScheduler fairQueryScheduler) {
+        this.fairQueryScheduler = fairQueryScheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (fairQueryScheduler != null) {
+            fairQueryScheduler.setTenantWeight(TENANT, TENANT_WEIGHT);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "start", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "shutdown", e);
+        }
+    }
+}
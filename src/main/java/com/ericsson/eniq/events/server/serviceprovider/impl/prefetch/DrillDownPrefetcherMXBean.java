@@ -0,0 +1,44 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.prefetch;
+
+/**
+ * JMX view of the {@link DrillDownPrefetcher}
+ */
+public interface DrillDownPrefetcherMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return how long a prefetched drill down result is kept in the result cache
+     */
+    int getTimeToLiveInSeconds();
+
+    void setTimeToLiveInSeconds(int timeToLiveInSeconds);
+
+    /**
+     * @return number of drill downs queued to be prefetched
+     */
+    long getScheduledPrefetches();
+
+    /**
+     * @return number of drill downs prefetched
+     */
+    long getCompletedPrefetches();
+
+    /**
+     * @return number of drill downs not prefetched because the readers were busy or the queue was full
+     */
+    long getSkippedPrefetches();
+}
@@ -0,0 +1,27 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rawtables;
+
+/**
+ * Answer of the {@link RawTableAvailabilityIndex} for a query window
+ */
+public enum RawDataAvailability {
+
+    /** a raw partition of at least one of the tech packs overlaps the window */
+    AVAILABLE,
+
+    /** every tech pack is indexed and none has a raw partition overlapping the window */
+    NOT_AVAILABLE,
+
+    /** at least one of the tech packs is not indexed, table discovery must decide */
+    UNKNOWN
+}
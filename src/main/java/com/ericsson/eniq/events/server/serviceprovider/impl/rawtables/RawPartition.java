@@ -0,0 +1,62 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rawtables;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A partition of a raw table and the time window it holds, see {@link RawTableAvailabilityIndex}
+ */
+public class RawPartition {
+
+    private final String table;
+
+    private final long startTime;
+
+    private final long endTime;
+
+    /**
+     * @param table
+     *            name of the partition table, eg EVENT_E_SGEH_ERR_RAW_01
+     * @param startTime
+     *            start of the window held by the partition, in milliseconds since the epoch
+     * @param endTime
+     *            end (exclusive) of the window held by the partition, 0 if the partition is still being loaded
+     */
+    @ConstructorProperties({ "table", "startTime", "endTime" })
+    public RawPartition(final String table, final long startTime, final long endTime) {
+        this.table = table;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public boolean isOpen() {
+        return endTime <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return table + "[" + startTime + ", " + (isOpen() ? "open" : String.valueOf(endTime)) + ")";
+    }
+}
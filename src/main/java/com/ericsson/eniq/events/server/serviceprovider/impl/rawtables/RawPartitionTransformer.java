@@ -0,0 +1,66 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rawtables;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ericsson.eniq.events.server.query.resultsettransformers.ResultSetTransformer;
+
+/**
+ * Reads the raw partitions in a result of table name, start time and end time (null while the partition is being
+ * loaded) into the partitions of each tech pack. Times are read as UTC, as the raw tables are loaded in UTC.
+ */
+public class RawPartitionTransformer implements ResultSetTransformer<Map<String, List<RawPartition>>> {
+
+    private static final Pattern RAW_TABLE_NAME = Pattern.compile("(.+?)_(?:ERR_|SUC_)?RAW(?:_\\d+)?", Pattern.CASE_INSENSITIVE);
+
+    private final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.ENGLISH);
+
+    @Override
+    public Map<String, List<RawPartition>> transform(final ResultSet resultSet) throws SQLException {
+        final Map<String, List<RawPartition>> partitionsByTechPack = new HashMap<String, List<RawPartition>>();
+        while (resultSet.next()) {
+            final String table = resultSet.getString(1);
+            final Timestamp startTime = resultSet.getTimestamp(2, utc);
+            final String techPack = getTechPack(table);
+            if (techPack == null || startTime == null) {
+                continue;
+            }
+            final Timestamp endTime = resultSet.getTimestamp(3, utc);
+            List<RawPartition> partitions = partitionsByTechPack.get(techPack);
+            if (partitions == null) {
+                partitions = new ArrayList<RawPartition>();
+                partitionsByTechPack.put(techPack, partitions);
+            }
+            partitions.add(new RawPartition(table, startTime.getTime(), endTime == null ? 0 : endTime.getTime()));
+        }
+        return partitionsByTechPack;
+    }
+
+    /**
+     * @param table
+     *            name of a raw partition, eg EVENT_E_SGEH_ERR_RAW_01
+     * @return name of the tech pack the partition belongs to, eg EVENT_E_SGEH, null if the table is not a raw partition
+     */
+    static String getTechPack(final String table) {
+        if (table == null) {
+            return null;
+        }
+        final Matcher matcher = RAW_TABLE_NAME.matcher(table.trim());
+        return matcher.matches() ? matcher.group(1).toUpperCase(Locale.ENGLISH) : null;
+    }
+}
@@ -0,0 +1,313 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rawtables;
+
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.query.QueryParameter;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ServiceExecutors;
+import com.ericsson.eniq.events.server.services.DataService;
+import com.ericsson.eniq.events.server.utils.FormattedDateTimeRange;
+
+/**
+ * In memory index of the raw partitions of each tech pack and the time windows they hold, so that a request for a
+ * window with no raw data can be answered before the tech pack tables are discovered and the query is generated.
+ * <p/>
+ * The partitions of all tech packs are read from the repository every minute, see {@link #refresh()}, and can also be
+ * reported through JMX as they roll. A tech pack is only answered for once its partitions have been supplied in full,
+ * see {@link #replacePartitions(String, List)}; until then table discovery decides as before. After that the index is
+ * kept up to date as partitions roll, see {@link #recordPartition(String, String, long, long)}. The latest partition of a
+ * tech pack is treated as open ended, so a roll that has not been reported yet can only make the index answer
+ * {@link RawDataAvailability#AVAILABLE} for too long, never {@link RawDataAvailability#NOT_AVAILABLE}.
+ * <p/>
+ * The partitions of each tech pack are held in an array that is replaced on every update, as updates are rare (a few
+ * per tech pack per roll period) and lookups happen on every request.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class RawTableAvailabilityIndex implements RawTableAvailabilityIndexMXBean {
+
+    static final String RAW_PARTITIONS_QUERY = "SELECT TABLENAME, STARTTIME, ENDTIME FROM dwhrep.DWHPartition WHERE STORAGEID LIKE '%RAW:RAW' AND STATUS = 'ACTIVE'";
+
+    private static final int DEFAULT_REFRESH_INTERVAL_IN_SECONDS = 60;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=RawTableAvailabilityIndex";
+
+    private static final String DATE_TIME_FORMAT = "yyyy-MM-dd HH:mm";
+
+    private static final ThreadLocal<DateFormat> DATE_TIME_FORMATTER = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            final DateFormat dateFormat = new SimpleDateFormat(DATE_TIME_FORMAT, Locale.ENGLISH);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            dateFormat.setLenient(false);
+            return dateFormat;
+        }
+    };
+
+    private static final RawPartition[] NO_PARTITIONS = new RawPartition[0];
+
+    private static final Comparator<RawPartition> BY_START_TIME = new Comparator<RawPartition>() {
+        @Override
+        public int compare(final RawPartition first, final RawPartition second) {
+            return first.getStartTime() < second.getStartTime() ? -1 : first.getStartTime() == second.getStartTime() ? 0 : 1;
+        }
+    };
+
+    private final ConcurrentMap<String, RawPartition[]> partitionsByTechPack = new ConcurrentHashMap<String, RawPartition[]>();
+
+    private final AtomicLong noRawDataAnswers = new AtomicLong();
+
+    @EJB
+    private DataService dataService;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1,
+            ServiceExecutors.newThreadFactory("services-raw-partitions-", Thread.NORM_PRIORITY));
+
+    private ScheduledFuture<?> scheduledRefreshes;
+
+    private volatile int refreshIntervalInSeconds = DEFAULT_REFRESH_INTERVAL_IN_SECONDS;
+
+    @Override
+    public void refresh() {
+        try {
+            final Map<String, List<RawPartition>> partitions = dataService.getData(RAW_PARTITIONS_QUERY,
+                    new HashMap<String, QueryParameter>(), new RawPartitionTransformer());
+            if (partitions != null) {
+                update(partitions);
+            }
+        } catch (final RuntimeException e) {
+            ServicesLogger.warn(getClass().getName(), "refresh", "Could not load the raw partitions: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the partitions of every tech pack read from the repository, and forget the tech packs that have no raw
+     * partitions there, so that they are left to table discovery
+     */
+    synchronized void update(final Map<String, List<RawPartition>> partitions) {
+        final Set<String> techPacks = new HashSet<String>();
+        for (final Map.Entry<String, List<RawPartition>> techPackPartitions : partitions.entrySet()) {
+            replacePartitions(techPackPartitions.getKey(), techPackPartitions.getValue());
+            techPacks.add(getKey(techPackPartitions.getKey()));
+        }
+        partitionsByTechPack.keySet().retainAll(techPacks);
+    }
+
+    @Override
+    public int getRefreshIntervalInSeconds() {
+        return refreshIntervalInSeconds;
+    }
+
+    @Override
+    public synchronized void setRefreshIntervalInSeconds(final int refreshIntervalInSeconds) {
+        this.refreshIntervalInSeconds = Math.max(1, refreshIntervalInSeconds);
+        if (scheduledRefreshes != null) {
+            scheduledRefreshes.cancel(false);
+            scheduleRefreshes();
+        }
+    }
+
+    @Override
+    public synchronized void replacePartitions(final String techPack, final List<RawPartition> partitions) {
+        final RawPartition[] sortedPartitions = partitions == null ? NO_PARTITIONS : partitions.toArray(new RawPartition[partitions.size()]);
+        Arrays.sort(sortedPartitions, BY_START_TIME);
+        partitionsByTechPack.put(getKey(techPack), sortedPartitions);
+    }
+
+    @Override
+    public synchronized void recordPartition(final String techPack, final String table, final long startTime, final long endTime) {
+        final String key = getKey(techPack);
+        final RawPartition[] partitions = partitionsByTechPack.get(key);
+        if (partitions == null) {
+            return;
+        }
+        final List<RawPartition> updatedPartitions = withoutTable(partitions, table);
+        updatedPartitions.add(new RawPartition(table, startTime, endTime));
+        final RawPartition[] sortedPartitions = updatedPartitions.toArray(new RawPartition[updatedPartitions.size()]);
+        Arrays.sort(sortedPartitions, BY_START_TIME);
+        partitionsByTechPack.put(key, sortedPartitions);
+    }
+
+    @Override
+    public synchronized void removePartition(final String techPack, final String table) {
+        final String key = getKey(techPack);
+        final RawPartition[] partitions = partitionsByTechPack.get(key);
+        if (partitions != null) {
+            final List<RawPartition> updatedPartitions = withoutTable(partitions, table);
+            partitionsByTechPack.put(key, updatedPartitions.toArray(new RawPartition[updatedPartitions.size()]));
+        }
+    }
+
+    @Override
+    public void clearTechPack(final String techPack) {
+        partitionsByTechPack.remove(getKey(techPack));
+    }
+
+    @Override
+    public List<RawPartition> getPartitions(final String techPack) {
+        final RawPartition[] partitions = partitionsByTechPack.get(getKey(techPack));
+        return partitions == null ? Collections.<RawPartition> emptyList() : Collections.unmodifiableList(Arrays.asList(partitions));
+    }
+
+    @Override
+    public int getIndexedTechPackCount() {
+        return partitionsByTechPack.size();
+    }
+
+    @Override
+    public long getNoRawDataAnswerCount() {
+        return noRawDataAnswers.get();
+    }
+
+    /**
+     * @param techPacks
+     *            tech packs the query reads
+     * @param startTime
+     *            start of the query window, in milliseconds since the epoch
+     * @param endTime
+     *            end (exclusive) of the query window, in milliseconds since the epoch
+     * @return whether raw data is available for the window
+     */
+    public RawDataAvailability getRawDataAvailability(final Collection<String> techPacks, final long startTime, final long endTime) {
+        boolean allIndexed = true;
+        for (final String techPack : techPacks) {
+            final RawPartition[] partitions = partitionsByTechPack.get(getKey(techPack));
+            if (partitions == null) {
+                allIndexed = false;
+            } else if (overlaps(partitions, startTime, endTime)) {
+                return RawDataAvailability.AVAILABLE;
+            }
+        }
+        return allIndexed ? RawDataAvailability.NOT_AVAILABLE : RawDataAvailability.UNKNOWN;
+    }
+
+    /**
+     * @param techPacks
+     *            tech packs the query reads
+     * @param formattedDateTimeRange
+     *            query window
+     * @return true if it is known that none of the tech packs has raw data for the window
+     */
+    public boolean isRawDataKnownToBeMissing(final Collection<String> techPacks, final FormattedDateTimeRange formattedDateTimeRange) {
+        if (techPacks == null || techPacks.isEmpty() || partitionsByTechPack.isEmpty()) {
+            return false;
+        }
+        final long startTime = parseDateTime(formattedDateTimeRange.getStartDateTime());
+        final long endTime = parseDateTime(formattedDateTimeRange.getEndDateTime());
+        if (startTime < 0 || endTime < 0) {
+            return false;
+        }
+        if (getRawDataAvailability(techPacks, startTime, endTime) != RawDataAvailability.NOT_AVAILABLE) {
+            return false;
+        }
+        noRawDataAnswers.incrementAndGet();
+        return true;
+    }
+
+    private static boolean overlaps(final RawPartition[] partitions, final long startTime, final long endTime) {
+        for (int i = 0; i < partitions.length; i++) {
+            final RawPartition partition = partitions[i];
+            final boolean openEnded = partition.isOpen() || i == partitions.length - 1;
+            if (partition.getStartTime() < endTime && (openEnded || partition.getEndTime() > startTime)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<RawPartition> withoutTable(final RawPartition[] partitions, final String table) {
+        final List<RawPartition> remainingPartitions = new ArrayList<RawPartition>(partitions.length + 1);
+        for (final RawPartition partition : partitions) {
+            if (!partition.getTable().equalsIgnoreCase(table)) {
+                remainingPartitions.add(partition);
+            }
+        }
+        return remainingPartitions;
+    }
+
+    private static String getKey(final String techPack) {
+        return techPack.toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch, -1 if the date time is missing or not in the expected format
+     */
+    public static long parseDateTime(final String dateTime) {
+        if (dateTime == null) {
+            return -1;
+        }
+        try {
+            return DATE_TIME_FORMATTER.get().parse(dateTime).getTime();
+        } catch (final ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the time in the format of {@link #parseDateTime(String)}
+     */
+    public static String formatDateTime(final long time) {
+        return DATE_TIME_FORMATTER.get().format(new Date(time));
+    }
+
+    public void setDataService(final DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    private void scheduleRefreshes() {
+        scheduledRefreshes = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, refreshIntervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        scheduleRefreshes();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "start", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "shutdown", e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rawtables;
+
+import java.util.List;
+
+/**
+ * JMX view of the {@link RawTableAvailabilityIndex}, used by the partition manager to report raw partitions as they
+ * roll
+ */
+public interface RawTableAvailabilityIndexMXBean {
+
+    /**
+     * Read the raw partitions of all tech packs from the repository now, rather than at the next scheduled refresh
+     */
+    void refresh();
+
+    int getRefreshIntervalInSeconds();
+
+    void setRefreshIntervalInSeconds(int refreshIntervalInSeconds);
+
+    /**
+     * Replace all raw partitions of a tech pack. The tech pack is indexed from then on - a window that none of its
+     * partitions overlaps is answered as having no raw data
+     *
+     * @param techPack
+     *            name of the tech pack, eg EVENT_E_SGEH
+     * @param partitions
+     *            all raw partitions of the tech pack, can be empty
+     */
+    void replacePartitions(String techPack, List<RawPartition> partitions);
+
+    /**
+     * Record that a raw partition rolled, ie that it now holds a new window. A tech pack that is not indexed yet is
+     * not indexed by this call.
+     *
+     * @param techPack
+     *            name of the tech pack
+     * @param table
+     *            name of the partition table
+     * @param startTime
+     *            start of the new window, in milliseconds since the epoch
+     * @param endTime
+     *            end of the new window, 0 if the partition is still being loaded
+     */
+    void recordPartition(String techPack, String table, long startTime, long endTime);
+
+    /**
+     * @param techPack
+     *            name of the tech pack
+     * @param table
+     *            name of the partition table that was dropped
+     */
+    void removePartition(String techPack, String table);
+
+    /**
+     * Forget a tech pack, so that its raw tables are found by table discovery again
+     *
+     * @param techPack
+     *            name of the tech pack
+     */
+    void clearTechPack(String techPack);
+
+    /**
+     * @param techPack
+     *            name of the tech pack
+     * @return the raw partitions of the tech pack, oldest first, empty if the tech pack is not indexed
+     */
+    List<RawPartition> getPartitions(String techPack);
+
+    /**
+     * @return the number of indexed tech packs
+     */
+    int getIndexedTechPackCount();
+
+    /**
+     * @return the number of requests answered as having no raw data without table discovery
+     */
+    long getNoRawDataAnswerCount();
+}
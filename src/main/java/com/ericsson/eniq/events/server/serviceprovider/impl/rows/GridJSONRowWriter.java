@@ -0,0 +1,91 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rows;
+
+import java.io.*;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+
+/**
+ * Writes a result to an output stream in the grid JSON format, see {@link GridJSONBuilder}, as its rows are read, so
+ * that a large result is never held in memory
+ */
+public class GridJSONRowWriter implements RowCallback<Long> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer writer;
+
+    private int columnCount;
+
+    private long rowCount;
+
+    /**
+     * @param outputStream
+     *            stream the result is written to, as UTF-8. It is flushed but not closed once the result is written
+     */
+    public GridJSONRowWriter(final OutputStream outputStream) {
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"), BUFFER_SIZE);
+        } catch (final UnsupportedEncodingException e) {
+            throw new ServiceException(e);
+        }
+    }
+
+    @Override
+    public void start(final ResultSetMetaData metaData) throws SQLException {
+        columnCount = metaData.getColumnCount();
+        rowCount = 0;
+        write("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[");
+    }
+
+    @Override
+    public void row(final ResultSet resultSet) throws SQLException {
+        final StringBuilder row = new StringBuilder(rowCount == 0 ? "{" : ",{");
+        for (int column = 1; column <= columnCount; column++) {
+            if (column > 1) {
+                row.append(',');
+            }
+            row.append('"').append(column).append("\":\"");
+            GridJSONBuilder.appendEscaped(row, resultSet.getString(column));
+            row.append('"');
+        }
+        write(row.append('}').toString());
+        rowCount++;
+    }
+
+    /**
+     * @return number of rows written
+     */
+    @Override
+    public Long finish() {
+        write("]}");
+        try {
+            writer.flush();
+        } catch (final IOException e) {
+            throw new ServiceException("Could not write result: " + e.getMessage());
+        }
+        return rowCount;
+    }
+
+    private void write(final String json) {
+        try {
+            writer.write(json);
+        } catch (final IOException e) {
+            throw new ServiceException("Could not write result: " + e.getMessage());
+        }
+    }
+}
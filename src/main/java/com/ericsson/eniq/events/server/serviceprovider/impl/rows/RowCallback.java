@@ -0,0 +1,50 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rows;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a query result one at a time, while the result is read from the database, so that a result can
+ * be written to a sink (eg an output stream) or built into typed objects without first being held as a string. See
+ * {@link RowCallbackTransformer}
+ *
+ * @param <T>
+ *            type of the value produced once all rows have been received
+ */
+public interface RowCallback<T> {
+
+    /**
+     * Called once, before the first row
+     *
+     * @param metaData
+     *            the columns of the result
+     */
+    void start(ResultSetMetaData metaData) throws SQLException;
+
+    /**
+     * Called for each row of the result
+     *
+     * @param resultSet
+     *            the result, positioned on the row. The callback must not move it
+     */
+    void row(ResultSet resultSet) throws SQLException;
+
+    /**
+     * Called once, after the last row
+     *
+     * @return the value produced from the rows
+     */
+    T finish() throws SQLException;
+}
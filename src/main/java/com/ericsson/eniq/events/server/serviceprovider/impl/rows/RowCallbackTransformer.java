@@ -0,0 +1,52 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rows;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.ericsson.eniq.events.server.query.resultsettransformers.ResultSetTransformer;
+
+/**
+ * Pushes each row of a result to a {@link RowCallback} as it is read, so that the data service can run a row callback
+ * like any other transformer
+ *
+ * @param <T>
+ *            type of the value produced by the callback
+ */
+public class RowCallbackTransformer<T> implements ResultSetTransformer<T> {
+
+    private final RowCallback<T> rowCallback;
+
+    private long rowCount;
+
+    public RowCallbackTransformer(final RowCallback<T> rowCallback) {
+        this.rowCallback = rowCallback;
+    }
+
+    @Override
+    public T transform(final ResultSet resultSet) throws SQLException {
+        rowCallback.start(resultSet.getMetaData());
+        while (resultSet.next()) {
+            rowCallback.row(resultSet);
+            rowCount++;
+        }
+        return rowCallback.finish();
+    }
+
+    /**
+     * @return number of rows pushed to the callback
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+}
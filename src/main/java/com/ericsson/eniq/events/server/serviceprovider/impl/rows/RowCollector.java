@@ -0,0 +1,50 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rows;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the rows of a result as a list of typed objects, built by a {@link RowMapper}
+ *
+ * @param <E>
+ *            type of the object built from each row
+ */
+public class RowCollector<E> implements RowCallback<List<E>> {
+
+    private final RowMapper<E> rowMapper;
+
+    private final List<E> rows = new ArrayList<E>();
+
+    public RowCollector(final RowMapper<E> rowMapper) {
+        this.rowMapper = rowMapper;
+    }
+
+    @Override
+    public void start(final ResultSetMetaData metaData) {
+        rows.clear();
+    }
+
+    @Override
+    public void row(final ResultSet resultSet) throws SQLException {
+        rows.add(rowMapper.mapRow(resultSet));
+    }
+
+    @Override
+    public List<E> finish() {
+        return rows;
+    }
+}
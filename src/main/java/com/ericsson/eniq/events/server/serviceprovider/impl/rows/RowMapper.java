@@ -0,0 +1,31 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rows;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Builds a typed object from a row of a result, see {@link RowCollector}
+ *
+ * @param <E>
+ *            type of the object built from each row
+ */
+public interface RowMapper<E> {
+
+    /**
+     * @param resultSet
+     *            the result, positioned on the row. The mapper must not move it
+     * @return the object for the row
+     */
+    E mapRow(ResultSet resultSet) throws SQLException;
+}
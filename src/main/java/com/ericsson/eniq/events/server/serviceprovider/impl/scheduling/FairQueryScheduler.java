@@ -0,0 +1,598 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.scheduling;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass;
+
+/**
+ * Limits the number of queries executing at the same time, and when that limit is reached, queues the waiting queries
+ * per tenant and admits them in weighted fair order.
+ * <p/>
+ * The tenant of a request is the authenticated user, or the client IP address for requests that are not authenticated,
+ * as provided by the resource layer under {@link #AUTHENTICATED_USER_PARAM} and the IP address parameter. The user name
+ * request parameter is chosen by the client and is never used as the tenant. Each tenant is given a share of the
+ * query slots proportional to its weight (1 by default), using start time fair queueing: every tenant has a virtual
+ * start time which advances by 1/weight each time one of its queries is admitted, and the waiting query of the tenant
+ * with the lowest virtual start time is admitted next. A tenant running scripted exports therefore only delays other
+ * tenants by its share, rather than by the length of its own queue, while still using all free slots when no one else
+ * is waiting.
+ * <p/>
+ * Query slots can be reserved for a {@link WorkloadClass}: a query of another class is only admitted while enough slots
+ * stay free for the reserved slots that are not in use. Once a query limit is configured, 8 of its slots are
+ * reserved for interactive queries by default, so that trend queries and exports, which are bounded by their own pools in
+ * {@link com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadIsolation}, can never hold all slots.
+ * However many slots are reserved, a query of every class can execute once the others leave a slot free.
+ * <p/>
+ * A query that waits longer than the queue timeout is rejected with a {@link ServiceException} rather than holding the
+ * request until a slot frees up, so that callers fail fast while the readers are overloaded.
+ * <p/>
+ * The number of queries is not limited until a query limit is configured. The query limit, the reserved slots, the
+ * queue timeout and the tenant weights are configured, and the queue wait per tenant is exposed, through JMX, see
+ * {@link FairQuerySchedulerMXBean}
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class FairQueryScheduler implements FairQuerySchedulerMXBean {
+
+    /**
+     * Parameter the resource layer puts the name of the authenticated user under, replacing any value given by the
+     * client
+     */
+    public static final String AUTHENTICATED_USER_PARAM = "authenticatedUser";
+
+    static final String DEFAULT_TENANT = "default";
+
+    /**
+     * Query limit under which the number of queries executing at the same time is not limited
+     */
+    public static final int NO_LIMIT = 0;
+
+    static final int DEFAULT_MAX_CONCURRENT_QUERIES = NO_LIMIT;
+
+    static final long DEFAULT_QUEUE_TIMEOUT_IN_MILLIS = 30000;
+
+    static final int DEFAULT_SATURATION_QUEUE_PERCENT = 50;
+
+    static final int DEFAULT_RESERVED_INTERACTIVE_QUERIES = 8;
+
+    private static final int MAX_IDLE_TENANTS = 1000;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=FairQueryScheduler";
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, Tenant> tenants = new HashMap<String, Tenant>();
+
+    private Map<String, Double> tenantWeights = new HashMap<String, Double>();
+
+    private int maxConcurrentQueries = DEFAULT_MAX_CONCURRENT_QUERIES;
+
+    private int saturationQueuePercent = DEFAULT_SATURATION_QUEUE_PERCENT;
+
+    private long queueTimeoutInMillis = DEFAULT_QUEUE_TIMEOUT_IN_MILLIS;
+
+    private long timedOutQueries;
+
+    private final Map<WorkloadClass, Integer> reservedQueries = new EnumMap<WorkloadClass, Integer>(WorkloadClass.class);
+
+    private final int[] activeQueriesByClass = new int[WorkloadClass.values().length];
+
+    private int activeQueries;
+
+    private int queuedQueries;
+
+    private double virtualTime;
+
+    public FairQueryScheduler() {
+        reservedQueries.put(WorkloadClass.INTERACTIVE, DEFAULT_RESERVED_INTERACTIVE_QUERIES);
+    }
+
+    /**
+     * @param parameters
+     *            parameters from the resource layer
+     * @return the tenant the request is scheduled as
+     */
+    public static String getTenant(final MultivaluedMap<String, String> parameters) {
+        final String userName = parameters.getFirst(AUTHENTICATED_USER_PARAM);
+        if (StringUtils.isNotBlank(userName)) {
+            return userName;
+        }
+        final String ipAddress = parameters.getFirst(IP_ADDRESS_PARAM);
+        return StringUtils.isBlank(ipAddress) ? DEFAULT_TENANT : ipAddress;
+    }
+
+    /**
+     * Wait until the tenant is admitted to execute an interactive query. Every successful call must be matched by a
+     * call to {@link #release()} once the query has completed
+     *
+     * @param tenantName
+     *            the tenant the query is executed for
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting, in which case no query slot is held
+     * @throws ServiceException
+     *             if the query is not admitted within the queue timeout, in which case no query slot is held
+     */
+    public void acquire(final String tenantName) throws InterruptedException {
+        acquire(tenantName, WorkloadClass.INTERACTIVE);
+    }
+
+    /**
+     * Wait until the tenant is admitted to execute a query of the workload class. Every successful call must be
+     * matched by a call to {@link #release(WorkloadClass)} once the query has completed
+     *
+     * @param tenantName
+     *            the tenant the query is executed for
+     * @param workloadClass
+     *            class of the query
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting, in which case no query slot is held
+     * @throws ServiceException
+     *             if the query is not admitted within the queue timeout, in which case no query slot is held
+     */
+    public void acquire(final String tenantName, final WorkloadClass workloadClass) throws InterruptedException {
+        lock.lock();
+        try {
+            final Tenant tenant = getOrCreateTenant(tenantName);
+            if (tenant.waiters.isEmpty()) {
+                tenant.virtualStartTime = Math.max(tenant.virtualStartTime, virtualTime);
+            }
+            if (queuedQueries == 0 && canAdmit(workloadClass)) {
+                admit(tenant, workloadClass, 0);
+                return;
+            }
+            final Waiter waiter = new Waiter(lock.newCondition(), workloadClass);
+            tenant.waiters.addLast(waiter);
+            queuedQueries++;
+            // the queued queries may all be of classes that cannot be admitted
+            dispatch();
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutInMillis);
+            try {
+                while (!waiter.admitted) {
+                    if (remainingNanos <= 0) {
+                        tenant.waiters.remove(waiter);
+                        queuedQueries--;
+                        timedOutQueries++;
+                        throw new ServiceException("Query of " + tenantName + " not admitted within " + queueTimeoutInMillis
+                                + " ms, too many queries are executing");
+                    }
+                    remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+                }
+            } catch (final InterruptedException e) {
+                if (waiter.admitted) {
+                    releaseSlot(workloadClass);
+                    dispatch();
+                } else {
+                    tenant.waiters.remove(waiter);
+                    queuedQueries--;
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release the interactive query slot held by the caller, and admit the next waiting query
+     */
+    public void release() {
+        release(WorkloadClass.INTERACTIVE);
+    }
+
+    /**
+     * Release the query slot of the workload class held by the caller, and admit the next waiting query
+     */
+    public void release(final WorkloadClass workloadClass) {
+        lock.lock();
+        try {
+            releaseSlot(workloadClass);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseSlot(final WorkloadClass workloadClass) {
+        activeQueries--;
+        activeQueriesByClass[workloadClass.ordinal()]--;
+    }
+
+    /**
+     * Admit waiting queries while there are free slots. Each tenant's next query is its longest waiting query that can
+     * be admitted, so that a query waiting for the reserved slots of another class does not hold up the tenant's other
+     * queries
+     */
+    private void dispatch() {
+        while (hasFreeSlot() && queuedQueries > 0) {
+            Tenant next = null;
+            Waiter nextWaiter = null;
+            for (final Tenant tenant : tenants.values()) {
+                final Waiter waiter = getFirstAdmissibleWaiter(tenant);
+                if (waiter != null && (next == null || isAheadOf(tenant, waiter, next, nextWaiter))) {
+                    next = tenant;
+                    nextWaiter = waiter;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            next.waiters.remove(nextWaiter);
+            queuedQueries--;
+            admit(next, nextWaiter.workloadClass, System.nanoTime() - nextWaiter.enqueueTime);
+            nextWaiter.admitted = true;
+            nextWaiter.condition.signal();
+        }
+    }
+
+    private Waiter getFirstAdmissibleWaiter(final Tenant tenant) {
+        for (final Waiter waiter : tenant.waiters) {
+            if (canAdmit(waiter.workloadClass)) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tenants are ordered by virtual start time, and then by how long their next query has been waiting
+     */
+    private static boolean isAheadOf(final Tenant tenant, final Waiter waiter, final Tenant other, final Waiter otherWaiter) {
+        if (tenant.virtualStartTime != other.virtualStartTime) {
+            return tenant.virtualStartTime < other.virtualStartTime;
+        }
+        return waiter.enqueueTime - otherWaiter.enqueueTime < 0;
+    }
+
+    /**
+     * @return true if a query of the workload class can execute now and leave enough slots free for the reserved slots
+     *         of the other classes that are not in use. At most all but one slot is kept free for them
+     */
+    private boolean canAdmit(final WorkloadClass workloadClass) {
+        if (maxConcurrentQueries == NO_LIMIT) {
+            return true;
+        }
+        int unusedReservedQueries = 0;
+        for (final Map.Entry<WorkloadClass, Integer> reserved : reservedQueries.entrySet()) {
+            if (reserved.getKey() != workloadClass) {
+                unusedReservedQueries += Math.max(0, reserved.getValue() - activeQueriesByClass[reserved.getKey().ordinal()]);
+            }
+        }
+        return activeQueries + 1 + Math.min(unusedReservedQueries, maxConcurrentQueries - 1) <= maxConcurrentQueries;
+    }
+
+    private boolean hasFreeSlot() {
+        return maxConcurrentQueries == NO_LIMIT || activeQueries < maxConcurrentQueries;
+    }
+
+    private void admit(final Tenant tenant, final WorkloadClass workloadClass, final long queueWaitInNanos) {
+        virtualTime = tenant.virtualStartTime;
+        tenant.virtualStartTime += 1 / tenant.weight;
+        tenant.admittedQueries++;
+        tenant.totalQueueWaitInNanos += queueWaitInNanos;
+        tenant.maxQueueWaitInNanos = Math.max(tenant.maxQueueWaitInNanos, queueWaitInNanos);
+        activeQueries++;
+        activeQueriesByClass[workloadClass.ordinal()]++;
+    }
+
+    private Tenant getOrCreateTenant(final String tenantName) {
+        Tenant tenant = tenants.get(tenantName);
+        if (tenant == null) {
+            if (tenants.size() >= MAX_IDLE_TENANTS) {
+                removeIdleTenants();
+            }
+            tenant = new Tenant(tenantName, getWeight(tenantName));
+            tenant.virtualStartTime = virtualTime;
+            tenants.put(tenantName, tenant);
+        }
+        return tenant;
+    }
+
+    /**
+     * Tenants without waiting queries, and which are not ahead of the virtual time, carry no scheduling state
+     */
+    private void removeIdleTenants() {
+        final Iterator<Tenant> iterator = tenants.values().iterator();
+        while (iterator.hasNext()) {
+            final Tenant tenant = iterator.next();
+            if (tenant.waiters.isEmpty() && tenant.virtualStartTime <= virtualTime) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private double getWeight(final String tenantName) {
+        final Double weight = tenantWeights.get(tenantName);
+        return weight == null || weight <= 0 ? 1 : weight;
+    }
+
+    /**
+     * @param weights
+     *            weight of each tenant, keyed by tenant. Tenants that are not listed have a weight of 1
+     */
+    public void setTenantWeights(final Map<String, Double> weights) {
+        lock.lock();
+        try {
+            tenantWeights = new HashMap<String, Double>(weights);
+            for (final Tenant tenant : tenants.values()) {
+                tenant.weight = getWeight(tenant.name);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Double> getTenantWeights() {
+        lock.lock();
+        try {
+            return new TreeMap<String, Double>(tenantWeights);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setTenantWeight(final String tenantName, final double weight) {
+        lock.lock();
+        try {
+            final Map<String, Double> weights = new HashMap<String, Double>(tenantWeights);
+            if (weight <= 0) {
+                weights.remove(tenantName);
+            } else {
+                weights.put(tenantName, weight);
+            }
+            setTenantWeights(weights);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param maxConcurrentQueries
+     *            the number of queries that can execute at the same time, {@link #NO_LIMIT} to not limit them
+     */
+    @Override
+    public void setMaxConcurrentQueries(final int maxConcurrentQueries) {
+        lock.lock();
+        try {
+            this.maxConcurrentQueries = Math.max(NO_LIMIT, maxConcurrentQueries);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getMaxConcurrentQueries() {
+        lock.lock();
+        try {
+            return maxConcurrentQueries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getReservedQueries() {
+        lock.lock();
+        try {
+            final Map<String, Integer> reserved = new TreeMap<String, Integer>();
+            for (final Map.Entry<WorkloadClass, Integer> reservedQueriesOfClass : reservedQueries.entrySet()) {
+                reserved.put(reservedQueriesOfClass.getKey().name(), reservedQueriesOfClass.getValue());
+            }
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setReservedQueries(final String workloadClass, final int reservedQueries) {
+        setReservedQueries(WorkloadClass.valueOf(workloadClass), reservedQueries);
+    }
+
+    public void setReservedQueries(final WorkloadClass workloadClass, final int reservedQueries) {
+        lock.lock();
+        try {
+            if (reservedQueries <= 0) {
+                this.reservedQueries.remove(workloadClass);
+            } else {
+                this.reservedQueries.put(workloadClass, reservedQueries);
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getActiveQueries() {
+        lock.lock();
+        try {
+            return activeQueries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getQueuedQueries() {
+        lock.lock();
+        try {
+            return queuedQueries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The readers are considered saturated when all query slots are in use and the queue holds at least
+     * {@link #getSaturationQueuePercent()} percent of the number of slots, so that a short burst of queued queries
+     * does not count as saturation
+     *
+     * @return true if the readers are saturated
+     */
+    public boolean isSaturated() {
+        lock.lock();
+        try {
+            return maxConcurrentQueries != NO_LIMIT && activeQueries >= maxConcurrentQueries
+                    && queuedQueries >= Math.max(1, (long) maxConcurrentQueries * saturationQueuePercent / 100);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getSaturationQueuePercent() {
+        lock.lock();
+        try {
+            return saturationQueuePercent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setSaturationQueuePercent(final int saturationQueuePercent) {
+        lock.lock();
+        try {
+            this.saturationQueuePercent = saturationQueuePercent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getQueueTimeoutInMillis() {
+        lock.lock();
+        try {
+            return queueTimeoutInMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setQueueTimeoutInMillis(final long queueTimeoutInMillis) {
+        lock.lock();
+        try {
+            this.queueTimeoutInMillis = Math.max(0, queueTimeoutInMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getTimedOutQueries() {
+        lock.lock();
+        try {
+            return timedOutQueries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<TenantStatistics> getTenantStatistics() {
+        lock.lock();
+        try {
+            final List<TenantStatistics> statistics = new ArrayList<TenantStatistics>();
+            for (final Tenant tenant : tenants.values()) {
+                statistics.add(new TenantStatistics(tenant.name, tenant.weight, tenant.waiters.size(), tenant.admittedQueries,
+                        TimeUnit.NANOSECONDS.toMillis(tenant.totalQueueWaitInNanos), TimeUnit.NANOSECONDS
+                                .toMillis(tenant.maxQueueWaitInNanos)));
+            }
+            return statistics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+
+    private static class Tenant {
+
+        private final String name;
+
+        private final Deque<Waiter> waiters = new ArrayDeque<Waiter>();
+
+        private double weight;
+
+        private double virtualStartTime;
+
+        private long admittedQueries;
+
+        private long totalQueueWaitInNanos;
+
+        private long maxQueueWaitInNanos;
+
+        Tenant(final String name, final double weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+
+    private static class Waiter {
+
+        private final Condition condition;
+
+        private final long enqueueTime = System.nanoTime();
+
+        private final WorkloadClass workloadClass;
+
+        private boolean admitted;
+
+        Waiter(final Condition condition, final WorkloadClass workloadClass) {
+            this.condition = condition;
+            this.workloadClass = workloadClass;
+        }
+    }
+}
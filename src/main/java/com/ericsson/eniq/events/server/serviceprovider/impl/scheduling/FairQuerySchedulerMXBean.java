@@ -0,0 +1,89 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.scheduling;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of the {@link FairQueryScheduler}
+ */
+public interface FairQuerySchedulerMXBean {
+
+    /**
+     * @return the number of queries that can execute at the same time, 0 if they are not limited
+     */
+    int getMaxConcurrentQueries();
+
+    void setMaxConcurrentQueries(int maxConcurrentQueries);
+
+    /**
+     * @return number of query slots reserved for each workload class that has reserved slots
+     */
+    Map<String, Integer> getReservedQueries();
+
+    /**
+     * @param workloadClass
+     *            name of the workload class, eg INTERACTIVE
+     * @param reservedQueries
+     *            number of query slots queries of other classes must leave free for the class, 0 to reserve none
+     */
+    void setReservedQueries(String workloadClass, int reservedQueries);
+
+    /**
+     * @return weight of each tenant that does not have the default weight of 1
+     */
+    Map<String, Double> getTenantWeights();
+
+    /**
+     * @param tenant
+     *            the authenticated user name, or the client IP address of requests that are not authenticated
+     * @param weight
+     *            share of the query slots relative to other tenants, 0 to restore the default weight of 1
+     */
+    void setTenantWeight(String tenant, double weight);
+
+    /**
+     * @return the number of queries currently executing
+     */
+    int getActiveQueries();
+
+    /**
+     * @return the number of queries waiting to execute
+     */
+    int getQueuedQueries();
+
+    /**
+     * @return queued queries, as a percentage of the query limit, from which the readers are considered saturated
+     *         once all query slots are in use
+     */
+    int getSaturationQueuePercent();
+
+    void setSaturationQueuePercent(int saturationQueuePercent);
+
+    /**
+     * @return how long a query waits to be admitted before it is rejected
+     */
+    long getQueueTimeoutInMillis();
+
+    void setQueueTimeoutInMillis(long queueTimeoutInMillis);
+
+    /**
+     * @return the number of queries rejected because they were not admitted within the queue timeout
+     */
+    long getTimedOutQueries();
+
+    /**
+     * @return queue statistics for each tenant
+     */
+    List<TenantStatistics> getTenantStatistics();
+}
@@ -0,0 +1,71 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.scheduling;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the queue statistics of one tenant of the {@link FairQueryScheduler}
+ */
+public class TenantStatistics {
+
+    private final String tenant;
+
+    private final double weight;
+
+    private final int queuedQueries;
+
+    private final long admittedQueries;
+
+    private final long totalQueueWaitMillis;
+
+    private final long maxQueueWaitMillis;
+
+    @ConstructorProperties({ "tenant", "weight", "queuedQueries", "admittedQueries", "totalQueueWaitMillis", "maxQueueWaitMillis" })
+    public TenantStatistics(final String tenant, final double weight, final int queuedQueries, final long admittedQueries,
+                            final long totalQueueWaitMillis, final long maxQueueWaitMillis) {
+        this.tenant = tenant;
+        this.weight = weight;
+        this.queuedQueries = queuedQueries;
+        this.admittedQueries = admittedQueries;
+        this.totalQueueWaitMillis = totalQueueWaitMillis;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public int getQueuedQueries() {
+        return queuedQueries;
+    }
+
+    public long getAdmittedQueries() {
+        return admittedQueries;
+    }
+
+    public long getTotalQueueWaitMillis() {
+        return totalQueueWaitMillis;
+    }
+
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis;
+    }
+
+    public long getAverageQueueWaitMillis() {
+        return admittedQueries == 0 ? 0 : totalQueueWaitMillis / admittedQueries;
+    }
+}
@@ -0,0 +1,92 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes and lines of a CSV result as it is streamed to the client, and records when the first byte was
+ * written, which is when the reader has executed the query and the time spent streaming to the client starts
+ */
+public class CountingOutputStream extends OutputStream {
+
+    private final OutputStream output;
+
+    private long byteCount;
+
+    private long lineCount;
+
+    private long firstWriteTime;
+
+    public CountingOutputStream(final OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        recordFirstWrite();
+        output.write(b);
+        byteCount++;
+        if (b == '\n') {
+            lineCount++;
+        }
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        recordFirstWrite();
+        output.write(bytes, offset, length);
+        byteCount += length;
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] == '\n') {
+                lineCount++;
+            }
+        }
+    }
+
+    private void recordFirstWrite() {
+        if (firstWriteTime == 0) {
+            firstWriteTime = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return the number of lines written, including the header line
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param startTime
+     *            value of {@link System#nanoTime()} when the query was started
+     * @return time from the start of the query to the first byte written, or to now if nothing has been written
+     */
+    public long getTimeToFirstWriteInNanos(final long startTime) {
+        return (firstWriteTime == 0 ? System.nanoTime() : firstWriteTime) - startTime;
+    }
+}
@@ -0,0 +1,41 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+/**
+ * Counts the rows of a grid JSON result without parsing it, by counting the opening of the first column of each row
+ */
+public final class GridJSONRowCounter {
+
+    private static final String ROW_START = "{\"1\":";
+
+    private GridJSONRowCounter() {
+    }
+
+    /**
+     * @param json
+     *            grid JSON result, can be null
+     * @return number of rows in the result
+     */
+    public static long countRows(final String json) {
+        if (json == null) {
+            return 0;
+        }
+        long rows = 0;
+        int index = json.indexOf(ROW_START);
+        while (index != -1) {
+            rows++;
+            index = json.indexOf(ROW_START, index + ROW_START.length());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,74 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+/**
+ * Identifies the queries generated from the same template for the same drill down type and aggregation level, which
+ * are expected to perform alike whatever the node or time range requested
+ */
+public class QueryFingerprint {
+
+    private final String templatePath;
+
+    private final String drillDownType;
+
+    private final String aggregationLevel;
+
+    /**
+     * @param templatePath
+     *            template the query was generated from
+     * @param drillDownType
+     *            drill down type of the request, can be null
+     * @param aggregationLevel
+     *            aggregation level queried, can be null
+     */
+    public QueryFingerprint(final String templatePath, final String drillDownType, final String aggregationLevel) {
+        this.templatePath = String.valueOf(templatePath);
+        this.drillDownType = drillDownType == null ? "" : drillDownType;
+        this.aggregationLevel = aggregationLevel == null ? "" : aggregationLevel;
+    }
+
+    public String getTemplatePath() {
+        return templatePath;
+    }
+
+    public String getDrillDownType() {
+        return drillDownType;
+    }
+
+    public String getAggregationLevel() {
+        return aggregationLevel;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof QueryFingerprint)) {
+            return false;
+        }
+        final QueryFingerprint other = (QueryFingerprint) obj;
+        return templatePath.equals(other.templatePath) && drillDownType.equals(other.drillDownType)
+                && aggregationLevel.equals(other.aggregationLevel);
+    }
+
+    @Override
+    public int hashCode() {
+        return (templatePath.hashCode() * 31 + drillDownType.hashCode()) * 31 + aggregationLevel.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return templatePath + '|' + drillDownType + '|' + aggregationLevel;
+    }
+}
@@ -0,0 +1,117 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free statistics of the executions of queries with the same {@link QueryFingerprint}.
+ * <p/>
+ * Latencies are counted in buckets of 4 per power of two of microseconds (from 1 microsecond to over an hour), so
+ * percentiles are accurate to within 25%, which is enough to rank templates.
+ */
+class QueryStatistics {
+
+    private static final int SUB_BUCKETS = 4;
+
+    private static final int BUCKETS = 33 * SUB_BUCKETS;
+
+    private final QueryFingerprint fingerprint;
+
+    private final StripedCounter executionCount = new StripedCounter();
+
+    private final StripedCounter failureCount = new StripedCounter();
+
+    private final StripedCounter totalNanos = new StripedCounter();
+
+    private final StripedCounter rowsReturned = new StripedCounter();
+
+    private final StripedCounter bytesProduced = new StripedCounter();
+
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    QueryStatistics(final QueryFingerprint fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    void record(final long durationNanos, final long rows, final long bytes, final boolean failed) {
+        executionCount.increment();
+        totalNanos.add(durationNanos);
+        latencyBuckets.incrementAndGet(bucketOf(durationNanos / 1000));
+        long max = maxNanos.get();
+        while (durationNanos > max && !maxNanos.compareAndSet(max, durationNanos)) {
+            max = maxNanos.get();
+        }
+        if (failed) {
+            failureCount.increment();
+        }
+        rowsReturned.add(rows);
+        bytesProduced.add(bytes);
+    }
+
+    QueryStatisticsSnapshot snapshot() {
+        final long executions = executionCount.sum();
+        final long totalMillis = totalNanos.sum() / 1000000;
+        return new QueryStatisticsSnapshot(fingerprint.getTemplatePath(), fingerprint.getDrillDownType(), fingerprint.getAggregationLevel(),
+                executions, failureCount.sum(), totalMillis, executions == 0 ? 0 : (double) totalMillis / executions, getPercentileMillis(50),
+                getPercentileMillis(99), maxNanos.get() / 1000000.0, rowsReturned.sum(), bytesProduced.sum());
+    }
+
+    long getExecutionCount() {
+        return executionCount.sum();
+    }
+
+    /**
+     * @return upper bound of the latency bucket holding the percentile
+     */
+    double getPercentileMillis(final double percentile) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] = latencyBuckets.get(bucket);
+            total += counts[bucket];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return bucketUpperBoundMicros(bucket) / 1000.0;
+            }
+        }
+        return maxNanos.get() / 1000000.0;
+    }
+
+    static int bucketOf(final long micros) {
+        if (micros < 1) {
+            return 0;
+        }
+        final int powerOfTwo = 63 - Long.numberOfLeadingZeros(micros);
+        final int subBucket = powerOfTwo < 2 ? 0 : (int) ((micros >>> (powerOfTwo - 2)) & (SUB_BUCKETS - 1));
+        return Math.min(BUCKETS - 1, powerOfTwo * SUB_BUCKETS + subBucket);
+    }
+
+    static long bucketUpperBoundMicros(final int bucket) {
+        final int powerOfTwo = bucket / SUB_BUCKETS;
+        final int subBucket = bucket % SUB_BUCKETS;
+        if (powerOfTwo < 2) {
+            return 1L << (powerOfTwo + 1);
+        }
+        return (1L << powerOfTwo) + ((subBucket + 1L) << (powerOfTwo - 2));
+    }
+}
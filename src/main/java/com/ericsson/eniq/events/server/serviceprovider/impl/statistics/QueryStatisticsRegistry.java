@@ -0,0 +1,271 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+import com.ericsson.eniq.events.server.serviceprovider.impl.aggregation.AggregationCostModel;
+import com.ericsson.eniq.events.server.serviceprovider.impl.aggregation.RowStatistics;
+
+/**
+ * Records the execution count, latency distribution, rows returned and bytes produced of every query run by the
+ * services, per {@link QueryFingerprint}, so that the templates worth optimizing can be found through JMX without
+ * turning on SQL logging.
+ * <p/>
+ * Recording is lock free: the statistics of a fingerprint are created once, and updated with striped counters.
+ * Only the first {@link #MAX_FINGERPRINTS} fingerprints are recorded.
+ * <p/>
+ * The registry also keeps a moving average of the rows returned per interval by the queries of each template, tech
+ * pack and aggregation level, which the {@link AggregationCostModel} uses to estimate the cost of an aggregation level,
+ * see {@link #getRowStatistics(String)}.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class QueryStatisticsRegistry implements QueryStatisticsRegistryMXBean {
+
+    static final int MAX_FINGERPRINTS = 5000;
+
+    private static final int DEFAULT_TOP_COUNT = 10;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=QueryStatisticsRegistry";
+
+    /**
+     * Weight of the previous average in the moving average of the rows per interval, as a power of 2
+     */
+    private static final int ROWS_PER_INTERVAL_HISTORY_SHIFT = 3;
+
+    static final double SLOW_QUERY_PERCENTILE = 99;
+
+    static final long SLOW_QUERY_MIN_EXECUTIONS = 100;
+
+    private final ConcurrentMap<QueryFingerprint, QueryStatistics> statistics = new ConcurrentHashMap<QueryFingerprint, QueryStatistics>();
+
+    private final ConcurrentMap<String, AtomicLong> rowsPerInterval = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * @param fingerprint
+     *            fingerprint of the query
+     * @param durationNanos
+     *            execution time of the query on the reader. For CSV exports this is the time to the first byte
+     *            streamed, as the time taken by the client to read the rest depends on the client
+     * @param rows
+     *            rows returned by the query
+     * @param bytes
+     *            size of the JSON or CSV result
+     * @param failed
+     *            true if the query failed
+     */
+    public void record(final QueryFingerprint fingerprint, final long durationNanos, final long rows, final long bytes, final boolean failed) {
+        QueryStatistics queryStatistics = statistics.get(fingerprint);
+        if (queryStatistics == null) {
+            if (statistics.size() >= MAX_FINGERPRINTS) {
+                return;
+            }
+            final QueryStatistics newStatistics = new QueryStatistics(fingerprint);
+            queryStatistics = statistics.putIfAbsent(fingerprint, newStatistics);
+            if (queryStatistics == null) {
+                queryStatistics = newStatistics;
+            }
+        }
+        queryStatistics.record(durationNanos, rows, bytes, failed);
+    }
+
+    /**
+     * @param fingerprint
+     *            fingerprint of the query
+     * @param percentile
+     *            percentile of the execution times, eg 95
+     * @param minExecutions
+     *            number of executions below which the percentile is not considered representative
+     * @return upper bound of the percentile of the execution times, -1 if the query has been executed fewer than
+     *         minExecutions times
+     */
+    public long getPercentileInNanos(final QueryFingerprint fingerprint, final double percentile, final long minExecutions) {
+        final QueryStatistics queryStatistics = statistics.get(fingerprint);
+        if (queryStatistics == null || queryStatistics.getExecutionCount() < minExecutions) {
+            return -1;
+        }
+        return (long) (queryStatistics.getPercentileMillis(percentile) * 1000000);
+    }
+
+    /**
+     * @param fingerprint
+     *            fingerprint of the query
+     * @return duration above which an execution of the query is slow for its kind of query (its p99), -1 if the
+     *         query has not been executed often enough to tell
+     */
+    public long getSlowQueryDurationInNanos(final QueryFingerprint fingerprint) {
+        return getPercentileInNanos(fingerprint, SLOW_QUERY_PERCENTILE, SLOW_QUERY_MIN_EXECUTIONS);
+    }
+
+    /**
+     * Record the rows returned by a query, spread evenly over its tech packs and the intervals of its time range
+     *
+     * @param templatePath
+     *            template of the query
+     * @param techPacks
+     *            tech packs queried
+     * @param aggregation
+     *            aggregation level queried
+     * @param rangeInMinutes
+     *            time range queried
+     * @param rows
+     *            rows returned by the query
+     */
+    public void recordRows(final String templatePath, final List<String> techPacks, final EventDataSourceType aggregation,
+                           final long rangeInMinutes, final long rows) {
+        if (techPacks.isEmpty() || rows < 0) {
+            return;
+        }
+        final long techPackRowsPerInterval = rows / techPacks.size() / AggregationCostModel.getIntervals(aggregation, rangeInMinutes);
+        for (final String techPack : techPacks) {
+            final AtomicLong average = getOrCreateRowsPerInterval(getRowsPerIntervalKey(templatePath, techPack, aggregation));
+            if (average == null) {
+                return;
+            }
+            long previous;
+            long next;
+            do {
+                previous = average.get();
+                next = previous < 0 ? techPackRowsPerInterval : previous + (techPackRowsPerInterval - previous >> ROWS_PER_INTERVAL_HISTORY_SHIFT);
+            } while (!average.compareAndSet(previous, next));
+        }
+    }
+
+    private AtomicLong getOrCreateRowsPerInterval(final String key) {
+        final AtomicLong average = rowsPerInterval.get(key);
+        if (average != null || rowsPerInterval.size() >= MAX_FINGERPRINTS) {
+            return average;
+        }
+        final AtomicLong newAverage = new AtomicLong(-1);
+        final AtomicLong existingAverage = rowsPerInterval.putIfAbsent(key, newAverage);
+        return existingAverage == null ? newAverage : existingAverage;
+    }
+
+    /**
+     * @param templatePath
+     *            template of the queries
+     * @return the average rows per interval returned by the queries of the template
+     */
+    public RowStatistics getRowStatistics(final String templatePath) {
+        return new RowStatistics() {
+            @Override
+            public long getRowsPerInterval(final String techPack, final EventDataSourceType aggregation) {
+                final AtomicLong average = rowsPerInterval.get(getRowsPerIntervalKey(templatePath, techPack, aggregation));
+                return average == null ? -1 : average.get();
+            }
+        };
+    }
+
+    private static String getRowsPerIntervalKey(final String templatePath, final String techPack, final EventDataSourceType aggregation) {
+        return templatePath + ':' + techPack + ':' + aggregation;
+    }
+
+    @Override
+    public Map<String, Long> getRowsPerInterval() {
+        final Map<String, Long> averages = new TreeMap<String, Long>();
+        for (final Map.Entry<String, AtomicLong> entry : rowsPerInterval.entrySet()) {
+            if (entry.getValue().get() >= 0) {
+                averages.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        return averages;
+    }
+
+    @Override
+    public List<QueryStatisticsSnapshot> getTopByTotalTime() {
+        return topByTotalTime(DEFAULT_TOP_COUNT);
+    }
+
+    @Override
+    public List<QueryStatisticsSnapshot> getTopByP99() {
+        return topByP99(DEFAULT_TOP_COUNT);
+    }
+
+    @Override
+    public List<QueryStatisticsSnapshot> topByTotalTime(final int count) {
+        return top(count, new Comparator<QueryStatisticsSnapshot>() {
+            @Override
+            public int compare(final QueryStatisticsSnapshot first, final QueryStatisticsSnapshot second) {
+                return compareDescending(first.getTotalTimeMillis(), second.getTotalTimeMillis());
+            }
+        });
+    }
+
+    @Override
+    public List<QueryStatisticsSnapshot> topByP99(final int count) {
+        return top(count, new Comparator<QueryStatisticsSnapshot>() {
+            @Override
+            public int compare(final QueryStatisticsSnapshot first, final QueryStatisticsSnapshot second) {
+                return compareDescending(first.getP99Millis(), second.getP99Millis());
+            }
+        });
+    }
+
+    @Override
+    public int getFingerprintCount() {
+        return statistics.size();
+    }
+
+    @Override
+    public void reset() {
+        statistics.clear();
+        rowsPerInterval.clear();
+    }
+
+    private List<QueryStatisticsSnapshot> top(final int count, final Comparator<QueryStatisticsSnapshot> order) {
+        final List<QueryStatisticsSnapshot> snapshots = new ArrayList<QueryStatisticsSnapshot>(statistics.size());
+        for (final QueryStatistics queryStatistics : statistics.values()) {
+            snapshots.add(queryStatistics.snapshot());
+        }
+        Collections.sort(snapshots, order);
+        return new ArrayList<QueryStatisticsSnapshot>(snapshots.subList(0, Math.min(Math.max(0, count), snapshots.size())));
+    }
+
+    private static int compareDescending(final double first, final double second) {
+        return Double.compare(second, first);
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+}
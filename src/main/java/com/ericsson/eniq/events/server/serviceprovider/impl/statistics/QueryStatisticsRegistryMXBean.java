@@ -0,0 +1,60 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of the {@link QueryStatisticsRegistry}
+ */
+public interface QueryStatisticsRegistryMXBean {
+
+    /**
+     * @return the query fingerprints with the highest total execution time, ie the templates most worth optimizing
+     */
+    List<QueryStatisticsSnapshot> getTopByTotalTime();
+
+    /**
+     * @return the query fingerprints with the highest 99th percentile latency
+     */
+    List<QueryStatisticsSnapshot> getTopByP99();
+
+    /**
+     * @param count
+     *            number of fingerprints to return
+     * @return the query fingerprints with the highest total execution time
+     */
+    List<QueryStatisticsSnapshot> topByTotalTime(int count);
+
+    /**
+     * @param count
+     *            number of fingerprints to return
+     * @return the query fingerprints with the highest 99th percentile latency
+     */
+    List<QueryStatisticsSnapshot> topByP99(int count);
+
+    /**
+     * @return the number of distinct query fingerprints recorded
+     */
+    int getFingerprintCount();
+
+    /**
+     * @return average rows returned per interval, keyed by template, tech pack and aggregation level
+     */
+    Map<String, Long> getRowsPerInterval();
+
+    /**
+     * Discard all recorded statistics
+     */
+    void reset();
+}
@@ -0,0 +1,112 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the execution statistics of the queries with one {@link QueryFingerprint}, see
+ * {@link QueryStatisticsRegistry}
+ */
+public class QueryStatisticsSnapshot {
+
+    private final String templatePath;
+
+    private final String drillDownType;
+
+    private final String aggregationLevel;
+
+    private final long executionCount;
+
+    private final long failureCount;
+
+    private final long totalTimeMillis;
+
+    private final double meanMillis;
+
+    private final double p50Millis;
+
+    private final double p99Millis;
+
+    private final double maxMillis;
+
+    private final long rowsReturned;
+
+    private final long bytesProduced;
+
+    @ConstructorProperties({ "templatePath", "drillDownType", "aggregationLevel", "executionCount", "failureCount", "totalTimeMillis",
+            "meanMillis", "p50Millis", "p99Millis", "maxMillis", "rowsReturned", "bytesProduced" })
+    public QueryStatisticsSnapshot(final String templatePath, final String drillDownType, final String aggregationLevel, final long executionCount,
+                                    final long failureCount, final long totalTimeMillis, final double meanMillis, final double p50Millis,
+                                    final double p99Millis, final double maxMillis, final long rowsReturned, final long bytesProduced) {
+        this.templatePath = templatePath;
+        this.drillDownType = drillDownType;
+        this.aggregationLevel = aggregationLevel;
+        this.executionCount = executionCount;
+        this.failureCount = failureCount;
+        this.totalTimeMillis = totalTimeMillis;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+        this.rowsReturned = rowsReturned;
+        this.bytesProduced = bytesProduced;
+    }
+
+    public String getTemplatePath() {
+        return templatePath;
+    }
+
+    public String getDrillDownType() {
+        return drillDownType;
+    }
+
+    public String getAggregationLevel() {
+        return aggregationLevel;
+    }
+
+    public long getExecutionCount() {
+        return executionCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getTotalTimeMillis() {
+        return totalTimeMillis;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public long getBytesProduced() {
+        return bytesProduced;
+    }
+}
@@ -0,0 +1,57 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to without contending on a single memory location: each thread adds to one of
+ * several cells, picked by thread id, and the cells are summed when read. The cells are spaced a cache line apart to
+ * avoid false sharing.
+ */
+class StripedCounter {
+
+    private static final int CELL_SPACING = 8;
+
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * CELL_SPACING);
+
+    void add(final long value) {
+        cells.addAndGet(cellIndex(), value);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += cells.get(stripe * CELL_SPACING);
+        }
+        return sum;
+    }
+
+    private static int cellIndex() {
+        final long threadId = Thread.currentThread().getId();
+        return (int) ((threadId ^ (threadId >>> 16)) & (STRIPES - 1)) * CELL_SPACING;
+    }
+}
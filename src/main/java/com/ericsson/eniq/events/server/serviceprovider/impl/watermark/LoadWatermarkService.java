@@ -0,0 +1,158 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.watermark;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+import com.ericsson.eniq.events.server.common.TechPackList;
+import com.ericsson.eniq.events.server.common.TechPackRepresentation;
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+
+/**
+ * Tracks the load watermark of the tables a query reads, ie the latest time at which data that the query could return
+ * was loaded. A result computed after the watermark stays valid until the watermark advances.
+ * <p/>
+ * The watermark of a query is the latest of
+ * <li>the latest load recorded for each of the raw tables in its {@link TechPackList}, see
+ * {@link #recordLoad(String, long)}</li>
+ * <li>for queries against aggregation tables, the latest load recorded for the aggregation level of each of its tech
+ * packs, see {@link #recordAggregationLoad(String, String, long)}</li>
+ * The loaders report their loads through JMX. Until every table the query reads has a recorded load, the query has no
+ * watermark, as a result cannot be known to be current.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class LoadWatermarkService implements LoadWatermarkServiceMXBean {
+
+    /**
+     * Returned when the watermark of a query is not known
+     */
+    public static final long UNKNOWN = -1;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=LoadWatermarkService";
+
+    private final ConcurrentMap<String, Long> recordedLoads = new ConcurrentHashMap<String, Long>();
+
+    private final ConcurrentMap<String, Long> recordedAggregationLoads = new ConcurrentHashMap<String, Long>();
+
+    @Override
+    public void recordLoad(final String table, final long loadTime) {
+        recordLatest(recordedLoads, table.toUpperCase(Locale.ENGLISH), loadTime);
+    }
+
+    @Override
+    public void recordAggregationLoad(final String techPack, final String aggregation, final long loadTime) {
+        recordLatest(recordedAggregationLoads, getAggregationKey(techPack, aggregation), loadTime);
+    }
+
+    private static void recordLatest(final ConcurrentMap<String, Long> loads, final String key, final long loadTime) {
+        Long previousLoad = loads.putIfAbsent(key, loadTime);
+        while (previousLoad != null && previousLoad < loadTime && !loads.replace(key, previousLoad, loadTime)) {
+            previousLoad = loads.get(key);
+        }
+    }
+
+    private static String getAggregationKey(final String techPack, final String aggregation) {
+        return techPack.toUpperCase(Locale.ENGLISH) + ':' + aggregation.toUpperCase(Locale.ENGLISH);
+    }
+
+    @Override
+    public int getRecordedTableCount() {
+        return recordedLoads.size();
+    }
+
+    @Override
+    public int getRecordedAggregationCount() {
+        return recordedAggregationLoads.size();
+    }
+
+    /**
+     * @param techPackList
+     *            tables read by the query
+     * @param aggregation
+     *            aggregation level queried
+     * @return the load watermark of the query, in milliseconds since the epoch, or {@link #UNKNOWN} if a table the
+     *         query reads has no recorded load
+     */
+    public long getLoadWatermark(final TechPackList techPackList, final EventDataSourceType aggregation) {
+        final Collection<TechPackRepresentation> techPacks = techPackList == null ? null : techPackList.getTechPacks();
+        if (aggregation == null || techPacks == null || techPacks.isEmpty()) {
+            return UNKNOWN;
+        }
+        long watermark = UNKNOWN;
+        for (final TechPackRepresentation techPack : techPacks) {
+            final long successWatermark = getLatestLoad(techPack.getSucRawTables());
+            final long errorWatermark = getLatestLoad(techPack.getErrRawTables());
+            if (successWatermark == UNKNOWN || errorWatermark == UNKNOWN) {
+                return UNKNOWN;
+            }
+            watermark = Math.max(watermark, Math.max(successWatermark, errorWatermark));
+            if (aggregation != EventDataSourceType.RAW) {
+                final Long aggregationLoad = recordedAggregationLoads.get(getAggregationKey(techPack.getName(), aggregation.name()));
+                if (aggregationLoad == null) {
+                    return UNKNOWN;
+                }
+                watermark = Math.max(watermark, aggregationLoad);
+            }
+        }
+        return watermark;
+    }
+
+    /**
+     * @return the latest load of the tables, 0 if there are no tables, {@link #UNKNOWN} if a table has no recorded load
+     */
+    private long getLatestLoad(final List<String> tables) {
+        long latestLoad = 0;
+        if (tables != null) {
+            for (final String table : tables) {
+                final Long load = recordedLoads.get(table.toUpperCase(Locale.ENGLISH));
+                if (load == null) {
+                    return UNKNOWN;
+                }
+                latestLoad = Math.max(latestLoad, load);
+            }
+        }
+        return latestLoad;
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.watermark;
+
+/**
+ * JMX view of the {@link LoadWatermarkService}, used by the loaders to report when new data has been loaded
+ */
+public interface LoadWatermarkServiceMXBean {
+
+    /**
+     * @param table
+     *            name of the table (or view) data was loaded into
+     * @param loadTime
+     *            time the load completed, in milliseconds since the epoch
+     */
+    void recordLoad(String table, long loadTime);
+
+    /**
+     * @param techPack
+     *            name of the tech pack, eg EVENT_E_SGEH
+     * @param aggregation
+     *            aggregation level whose tables were loaded, eg AGGREGATED_15MIN
+     * @param loadTime
+     *            time the aggregation load completed, in milliseconds since the epoch
+     */
+    void recordAggregationLoad(String techPack, String aggregation, long loadTime);
+
+    /**
+     * @return the number of tables with a recorded load
+     */
+    int getRecordedTableCount();
+
+    /**
+     * @return the number of tech pack aggregation levels with a recorded load
+     */
+    int getRecordedAggregationCount();
+}
@@ -0,0 +1,55 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.workload;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+
+/**
+ * Class of work a query belongs to. Each class has its own bounded share of the reader connections (see
+ * {@link WorkloadIsolation}) and can be routed to its own readers (see
+ * {@link com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing.AdaptiveLoadBalancingPolicyService}), so
+ * that long trend queries and exports cannot block the short interactive queries.
+ */
+public enum WorkloadClass {
+
+    /** JSON queries against the raw and 1 minute tables, ie short time ranges */
+    INTERACTIVE,
+
+    /** JSON queries against the 15 minute and day tables, ie long time ranges */
+    TREND,
+
+    /** CSV exports, of any time range */
+    EXPORT,
+
+    /**
+     * Drill downs run in the background ahead of the user, see
+     * {@link com.ericsson.eniq.events.server.serviceprovider.impl.prefetch.DrillDownPrefetcher}
+     */
+    PREFETCH;
+
+    /**
+     * @param aggregation
+     *            aggregation level the query runs against, can be null
+     * @param csv
+     *            true if the result is streamed as CSV
+     * @return the workload class of the query
+     */
+    public static WorkloadClass classify(final EventDataSourceType aggregation, final boolean csv) {
+        if (csv) {
+            return EXPORT;
+        }
+        if (aggregation == EventDataSourceType.AGGREGATED_15MIN || aggregation == EventDataSourceType.AGGREGATED_DAY) {
+            return TREND;
+        }
+        return INTERACTIVE;
+    }
+}
@@ -0,0 +1,233 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.workload;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+import com.ericsson.eniq.events.server.logging.ServicesLogger;
+
+/**
+ * Gives each {@link WorkloadClass} its own bounded pool of query slots, so that a burst of trend queries or exports
+ * holds at most its own share of the reader connections and interactive queries never queue behind them.
+ * <p/>
+ * A request takes a slot of its class before it is admitted by the
+ * {@link com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler}, so that a request waiting
+ * for a busy class does not hold one of the shared query slots while it waits. The pools together are larger than the
+ * scheduler's query limit, so the scheduler reserves part of its slots for interactive queries: trend queries and
+ * exports share the rest however many of their pool slots they hold.
+ * <p/>
+ * The pools do not limit their class until a limit is configured through JMX, see {@link WorkloadIsolationMXBean}. A
+ * query that waits longer than the queue timeout for a slot is rejected with a {@link ServiceException}.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class WorkloadIsolation implements WorkloadIsolationMXBean {
+
+    /**
+     * Pool limit under which the queries of the class are not limited
+     */
+    public static final int NO_LIMIT = 0;
+
+    static final long DEFAULT_QUEUE_TIMEOUT_IN_MILLIS = 30000;
+
+    private static final String OBJECT_NAME = "com.ericsson.eniq.events.server:type=WorkloadIsolation";
+
+    private final Map<WorkloadClass, WorkloadPool> pools = new EnumMap<WorkloadClass, WorkloadPool>(WorkloadClass.class);
+
+    private volatile long queueTimeoutInMillis = DEFAULT_QUEUE_TIMEOUT_IN_MILLIS;
+
+    public WorkloadIsolation() {
+        for (final WorkloadClass workloadClass : WorkloadClass.values()) {
+            pools.put(workloadClass, new WorkloadPool(NO_LIMIT));
+        }
+    }
+
+    /**
+     * Wait for a slot of the workload class. Every successful call must be matched by a call to
+     * {@link #release(WorkloadClass)} once the query has completed
+     *
+     * @param workloadClass
+     *            class of the query
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting, in which case no slot is held
+     * @throws ServiceException
+     *             if no slot is free within the queue timeout, in which case no slot is held
+     */
+    public void acquire(final WorkloadClass workloadClass) throws InterruptedException {
+        final long timeoutInMillis = queueTimeoutInMillis;
+        if (!pools.get(workloadClass).acquire(TimeUnit.MILLISECONDS.toNanos(timeoutInMillis))) {
+            throw new ServiceException(workloadClass + " query not admitted within " + timeoutInMillis + " ms, too many "
+                    + workloadClass + " queries are executing");
+        }
+    }
+
+    /**
+     * @param workloadClass
+     *            class of the completed query
+     */
+    public void release(final WorkloadClass workloadClass) {
+        pools.get(workloadClass).release();
+    }
+
+    public void setMaxConcurrentQueries(final WorkloadClass workloadClass, final int maxConcurrentQueries) {
+        pools.get(workloadClass).setMaxConcurrentQueries(Math.max(NO_LIMIT, maxConcurrentQueries));
+    }
+
+    @Override
+    public void setMaxConcurrentQueries(final String workloadClass, final int maxConcurrentQueries) {
+        setMaxConcurrentQueries(WorkloadClass.valueOf(workloadClass), maxConcurrentQueries);
+    }
+
+    @Override
+    public long getQueueTimeoutInMillis() {
+        return queueTimeoutInMillis;
+    }
+
+    @Override
+    public void setQueueTimeoutInMillis(final long queueTimeoutInMillis) {
+        this.queueTimeoutInMillis = Math.max(0, queueTimeoutInMillis);
+    }
+
+    @Override
+    public List<WorkloadPoolStatistics> getPoolStatistics() {
+        final List<WorkloadPoolStatistics> statistics = new ArrayList<WorkloadPoolStatistics>();
+        for (final Map.Entry<WorkloadClass, WorkloadPool> pool : pools.entrySet()) {
+            statistics.add(pool.getValue().getStatistics(pool.getKey()));
+        }
+        return statistics;
+    }
+
+    @PostConstruct
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "registerMBean", e);
+        }
+    }
+
+    @PreDestroy
+    public void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (final JMException e) {
+            ServicesLogger.error(getClass().getName(), "unregisterMBean", e);
+        }
+    }
+
+    /**
+     * Bounded pool of query slots, admitting waiting queries in arrival order
+     */
+    private static class WorkloadPool {
+
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        private final Condition slotFreed = lock.newCondition();
+
+        private int maxConcurrentQueries;
+
+        private int activeQueries;
+
+        private int queuedQueries;
+
+        private long admittedQueries;
+
+        private long timedOutQueries;
+
+        private long totalQueueWaitInNanos;
+
+        private long maxQueueWaitInNanos;
+
+        WorkloadPool(final int maxConcurrentQueries) {
+            this.maxConcurrentQueries = maxConcurrentQueries;
+        }
+
+        /**
+         * @return false if no slot was free within the timeout
+         */
+        boolean acquire(final long timeoutInNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                final long enqueueTime = System.nanoTime();
+                long remainingNanos = timeoutInNanos;
+                queuedQueries++;
+                try {
+                    while (maxConcurrentQueries != NO_LIMIT && activeQueries >= maxConcurrentQueries) {
+                        if (remainingNanos <= 0) {
+                            timedOutQueries++;
+                            return false;
+                        }
+                        remainingNanos = slotFreed.awaitNanos(remainingNanos);
+                    }
+                } finally {
+                    queuedQueries--;
+                }
+                final long queueWaitInNanos = System.nanoTime() - enqueueTime;
+                activeQueries++;
+                admittedQueries++;
+                totalQueueWaitInNanos += queueWaitInNanos;
+                maxQueueWaitInNanos = Math.max(maxQueueWaitInNanos, queueWaitInNanos);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                activeQueries--;
+                slotFreed.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void setMaxConcurrentQueries(final int maxConcurrentQueries) {
+            lock.lock();
+            try {
+                this.maxConcurrentQueries = maxConcurrentQueries;
+                slotFreed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        WorkloadPoolStatistics getStatistics(final WorkloadClass workloadClass) {
+            lock.lock();
+            try {
+                return new WorkloadPoolStatistics(workloadClass.name(), maxConcurrentQueries, activeQueries, queuedQueries, admittedQueries,
+                        timedOutQueries, TimeUnit.NANOSECONDS.toMillis(totalQueueWaitInNanos), TimeUnit.NANOSECONDS.toMillis(maxQueueWaitInNanos));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.workload;
+
+import java.util.List;
+
+/**
+ * JMX view of the {@link WorkloadIsolation}
+ */
+public interface WorkloadIsolationMXBean {
+
+    /**
+     * @param workloadClass
+     *            name of the workload class, see {@link WorkloadClass}
+     * @param maxConcurrentQueries
+     *            the number of queries of the class that can execute at the same time, 0 to not limit them
+     */
+    void setMaxConcurrentQueries(String workloadClass, int maxConcurrentQueries);
+
+    /**
+     * @return how long a query waits for a slot of its class before it is rejected
+     */
+    long getQueueTimeoutInMillis();
+
+    void setQueueTimeoutInMillis(long queueTimeoutInMillis);
+
+    /**
+     * @return pool statistics for each workload class
+     */
+    List<WorkloadPoolStatistics> getPoolStatistics();
+}
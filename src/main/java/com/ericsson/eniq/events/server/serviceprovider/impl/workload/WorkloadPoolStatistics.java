@@ -0,0 +1,83 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.workload;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the statistics of the pool of one {@link WorkloadClass}, see {@link WorkloadIsolation}
+ */
+public class WorkloadPoolStatistics {
+
+    private final String workloadClass;
+
+    private final int maxConcurrentQueries;
+
+    private final int activeQueries;
+
+    private final int queuedQueries;
+
+    private final long admittedQueries;
+
+    private final long timedOutQueries;
+
+    private final long totalQueueWaitMillis;
+
+    private final long maxQueueWaitMillis;
+
+    @ConstructorProperties({ "workloadClass", "maxConcurrentQueries", "activeQueries", "queuedQueries", "admittedQueries", "timedOutQueries",
+            "totalQueueWaitMillis", "maxQueueWaitMillis" })
+    public WorkloadPoolStatistics(final String workloadClass, final int maxConcurrentQueries, final int activeQueries, final int queuedQueries,
+                                  final long admittedQueries, final long timedOutQueries, final long totalQueueWaitMillis,
+                                  final long maxQueueWaitMillis) {
+        this.workloadClass = workloadClass;
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.activeQueries = activeQueries;
+        this.queuedQueries = queuedQueries;
+        this.admittedQueries = admittedQueries;
+        this.timedOutQueries = timedOutQueries;
+        this.totalQueueWaitMillis = totalQueueWaitMillis;
+        this.maxQueueWaitMillis = maxQueueWaitMillis;
+    }
+
+    public String getWorkloadClass() {
+        return workloadClass;
+    }
+
+    public int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    public int getActiveQueries() {
+        return activeQueries;
+    }
+
+    public int getQueuedQueries() {
+        return queuedQueries;
+    }
+
+    public long getAdmittedQueries() {
+        return admittedQueries;
+    }
+
+    public long getTimedOutQueries() {
+        return timedOutQueries;
+    }
+
+    public long getTotalQueueWaitMillis() {
+        return totalQueueWaitMillis;
+    }
+
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis;
+    }
+}
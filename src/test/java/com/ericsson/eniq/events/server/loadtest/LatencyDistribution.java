@@ -0,0 +1,99 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a synthetic query
+ */
+public abstract class LatencyDistribution {
+
+    /**
+     * @param random
+     *            random source of the calling thread
+     * @return latency of one query
+     */
+    public abstract long sampleNanos(Random random);
+
+    public static LatencyDistribution fixed(final long millis) {
+        return new LatencyDistribution() {
+            @Override
+            public long sampleNanos(final Random random) {
+                return TimeUnit.MILLISECONDS.toNanos(millis);
+            }
+
+            @Override
+            public String toString() {
+                return "fixed:" + millis;
+            }
+        };
+    }
+
+    public static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+        return new LatencyDistribution() {
+            @Override
+            public long sampleNanos(final Random random) {
+                final long rangeNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis - minMillis);
+                return TimeUnit.MILLISECONDS.toNanos(minMillis) + (long) (random.nextDouble() * rangeNanos);
+            }
+
+            @Override
+            public String toString() {
+                return "uniform:" + minMillis + ":" + maxMillis;
+            }
+        };
+    }
+
+    /**
+     * Log-normal latencies have the long tail that database queries show in production: most queries take about the
+     * median, a few take many times longer
+     * 
+     * @param medianMillis
+     *            median latency
+     * @param sigma
+     *            standard deviation of the latency's logarithm, 0.5 gives a p99 of about 3 times the median
+     */
+    public static LatencyDistribution logNormal(final double medianMillis, final double sigma) {
+        return new LatencyDistribution() {
+            @Override
+            public long sampleNanos(final Random random) {
+                return (long) (medianMillis * Math.exp(sigma * random.nextGaussian()) * 1000000);
+            }
+
+            @Override
+            public String toString() {
+                return "lognormal:" + medianMillis + ":" + sigma;
+            }
+        };
+    }
+
+    /**
+     * @param specification
+     *            fixed:millis, uniform:minMillis:maxMillis or lognormal:medianMillis:sigma
+     * @return the distribution
+     */
+    public static LatencyDistribution parse(final String specification) {
+        final String[] parts = specification.split(":");
+        if ("fixed".equals(parts[0]) && parts.length == 2) {
+            return fixed(Long.parseLong(parts[1]));
+        }
+        if ("uniform".equals(parts[0]) && parts.length == 3) {
+            return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        }
+        if ("lognormal".equals(parts[0]) && parts.length == 3) {
+            return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+        }
+        throw new IllegalArgumentException("Unknown latency distribution " + specification);
+    }
+}
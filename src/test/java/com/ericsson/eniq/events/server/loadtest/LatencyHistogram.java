@@ -0,0 +1,95 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+/**
+ * Latency histogram of one load test thread, with 4 buckets per power of two of microseconds so that percentiles are
+ * accurate to within 25% whatever the latency. Recording does not allocate, so it does not distort the allocation
+ * figures of the run.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long count;
+
+    private long totalNanos;
+
+    private long maxNanos;
+
+    void record(final long nanos) {
+        counts[bucketOf(nanos / 1000)]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    void add(final LatencyHistogram other) {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        count += other.count;
+        totalNanos += other.totalNanos;
+        maxNanos = Math.max(maxNanos, other.maxNanos);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    double getMeanMillis() {
+        return count == 0 ? 0 : totalNanos / 1000000.0 / count;
+    }
+
+    double getMaxMillis() {
+        return maxNanos / 1000000.0;
+    }
+
+    /**
+     * @return upper bound of the bucket holding the percentile
+     */
+    double getPercentileMillis(final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBoundMicros(bucket) / 1000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    private static int bucketOf(final long micros) {
+        if (micros < 1) {
+            return 0;
+        }
+        final int powerOfTwo = 63 - Long.numberOfLeadingZeros(micros);
+        final int subBucket = powerOfTwo < 2 ? 0 : (int) ((micros >>> (powerOfTwo - 2)) & (SUB_BUCKETS - 1));
+        return Math.min(BUCKETS - 1, powerOfTwo * SUB_BUCKETS + subBucket);
+    }
+
+    private static long bucketUpperBoundMicros(final int bucket) {
+        final int powerOfTwo = bucket / SUB_BUCKETS;
+        if (powerOfTwo < 2) {
+            return 1L << (powerOfTwo + 1);
+        }
+        return (1L << powerOfTwo) + ((bucket % SUB_BUCKETS + 1L) << (powerOfTwo - 2));
+    }
+}
@@ -0,0 +1,119 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of a load test run - throughput, latency percentiles and the memory cost of the requests
+ */
+public class LoadTestReport {
+
+    private final long durationNanos;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final Map<String, LatencyHistogram> latenciesByRequestType = new TreeMap<String, LatencyHistogram>();
+
+    private long errors;
+
+    private long csvBytes;
+
+    private long allocatedBytes = -1;
+
+    private long heapUsedBefore;
+
+    private long heapUsedAfter;
+
+    private long gcCount;
+
+    private long gcMillis;
+
+    LoadTestReport(final long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+
+    void addWorker(final LoadTestWorker worker) {
+        latencies.add(worker.getLatencies());
+        for (final Map.Entry<String, LatencyHistogram> entry : worker.getLatenciesByRequestType().entrySet()) {
+            LatencyHistogram histogram = latenciesByRequestType.get(entry.getKey());
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                latenciesByRequestType.put(entry.getKey(), histogram);
+            }
+            histogram.add(entry.getValue());
+        }
+        errors += worker.getErrors();
+        csvBytes += worker.getCsvBytes();
+    }
+
+    void setAllocatedBytes(final long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    void setHeapUsed(final long heapUsedBefore, final long heapUsedAfter) {
+        this.heapUsedBefore = heapUsedBefore;
+        this.heapUsedAfter = heapUsedAfter;
+    }
+
+    void setGarbageCollection(final long gcCount, final long gcMillis) {
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    public long getRequests() {
+        return latencies.getCount();
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getThroughputPerSecond() {
+        return durationNanos == 0 ? 0 : latencies.getCount() * 1000000000.0 / durationNanos;
+    }
+
+    public double getPercentileMillis(final double percentile) {
+        return latencies.getPercentileMillis(percentile);
+    }
+
+    /**
+     * @return bytes allocated by the load test threads per request, or -1 if the JVM does not measure thread allocation
+     */
+    public long getAllocatedBytesPerRequest() {
+        if (allocatedBytes < 0 || latencies.getCount() == 0) {
+            return -1;
+        }
+        return allocatedBytes / latencies.getCount();
+    }
+
+    public void print(final PrintStream out) {
+        out.printf("Requests: %d in %.1fs (%.1f/s), errors: %d%n", getRequests(), durationNanos / 1000000000.0, getThroughputPerSecond(),
+                errors);
+        printLatencies(out, "all", latencies);
+        for (final Map.Entry<String, LatencyHistogram> entry : latenciesByRequestType.entrySet()) {
+            printLatencies(out, entry.getKey(), entry.getValue());
+        }
+        out.printf("CSV bytes streamed: %d%n", csvBytes);
+        out.printf("Allocated per request: %s%n", allocatedBytes < 0 ? "not measured" : getAllocatedBytesPerRequest() + " bytes");
+        out.printf("Heap used: %d MB before, %d MB after%n", heapUsedBefore >> 20, heapUsedAfter >> 20);
+        out.printf("GC: %d collections, %d ms%n", gcCount, gcMillis);
+    }
+
+    private static void printLatencies(final PrintStream out, final String name, final LatencyHistogram histogram) {
+        out.printf("  %-24s n=%-8d mean=%8.2fms p50=%8.2fms p90=%8.2fms p99=%8.2fms max=%8.2fms%n", name, histogram.getCount(),
+                histogram.getMeanMillis(), histogram.getPercentileMillis(50), histogram.getPercentileMillis(90),
+                histogram.getPercentileMillis(99), histogram.getMaxMillis());
+    }
+}
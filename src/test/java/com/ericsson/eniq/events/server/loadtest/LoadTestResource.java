@@ -0,0 +1,170 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.*;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.*;
+
+import com.ericsson.eniq.events.server.common.MediaTypeConstants;
+import com.ericsson.eniq.events.server.resources.AbstractResource;
+import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Resource for a single load test request, with the JAX-RS and servlet context that the container would inject.
+ * The response body of a CSV request is discarded, only its size is kept.
+ */
+public class LoadTestResource extends AbstractResource {
+
+    private static final MediaType CSV_MEDIA_TYPE = new MediaType("application", "csv");
+
+    private static final MediaType JSON_MEDIA_TYPE = new MediaType("application", "json");
+
+    private final Service service;
+
+    private long csvBytes;
+
+    /**
+     * @param service
+     *            service the resource delegates to
+     * @param queryParameters
+     *            URI parameters of the request
+     * @param requestId
+     *            value of the request id header
+     * @param csv
+     *            true to accept CSV, false to accept JSON
+     */
+    public LoadTestResource(final Service service, final MultivaluedMap<String, String> queryParameters, final String requestId,
+                            final boolean csv) {
+        this.service = service;
+        final MultivaluedMap<String, String> requestHeaders = new MultivaluedMapImpl();
+        requestHeaders.add(REQUEST_ID, requestId);
+        requestHeaders.add(IP_ADDRESS_PARAM, "127.0.0.1");
+        uriInfo = createProxy(UriInfo.class, new UriInfoHandler(queryParameters));
+        httpHeaders = createProxy(HttpHeaders.class, new HttpHeadersHandler(requestHeaders, csv ? CSV_MEDIA_TYPE : JSON_MEDIA_TYPE));
+        response = createProxy(HttpServletResponse.class, new ResponseHandler());
+    }
+
+    @Override
+    protected Service getService() {
+        return service;
+    }
+
+    /**
+     * @return bytes written to the response by a CSV request
+     */
+    public long getCsvBytes() {
+        return csvBytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T createProxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(LoadTestResource.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue(final Class<?> returnType) {
+        if (returnType == boolean.class) {
+            return false;
+        }
+        if (returnType == int.class) {
+            return 0;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    private static class UriInfoHandler implements InvocationHandler {
+
+        private final MultivaluedMap<String, String> queryParameters;
+
+        UriInfoHandler(final MultivaluedMap<String, String> queryParameters) {
+            this.queryParameters = queryParameters;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] arguments) {
+            if ("getQueryParameters".equals(method.getName())) {
+                final MultivaluedMap<String, String> copy = new MultivaluedMapImpl();
+                copy.putAll(queryParameters);
+                return copy;
+            }
+            if ("getRequestUri".equals(method.getName())) {
+                return URI.create("http://localhost/EniqEventsServices/LOADTEST");
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    private static class HttpHeadersHandler implements InvocationHandler {
+
+        private final MultivaluedMap<String, String> requestHeaders;
+
+        private final MediaType acceptableMediaType;
+
+        HttpHeadersHandler(final MultivaluedMap<String, String> requestHeaders, final MediaType acceptableMediaType) {
+            this.requestHeaders = requestHeaders;
+            this.acceptableMediaType = acceptableMediaType;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] arguments) {
+            if ("getRequestHeaders".equals(method.getName())) {
+                return requestHeaders;
+            }
+            if ("getRequestHeader".equals(method.getName())) {
+                return requestHeaders.get(arguments[0]);
+            }
+            if ("getAcceptableMediaTypes".equals(method.getName())) {
+                return Collections.singletonList(acceptableMediaType);
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    private class ResponseHandler implements InvocationHandler {
+
+        private final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                csvBytes++;
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                csvBytes += length;
+            }
+        };
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] arguments) {
+            if ("getOutputStream".equals(method.getName())) {
+                return outputStream;
+            }
+            if ("getContentType".equals(method.getName())) {
+                return MediaTypeConstants.APPLICATION_CSV;
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.ericsson.eniq.events.server.loadtest.RequestMix.RequestType;
+
+/**
+ * Thread sending requests from a {@link RequestMix} back to back until the run ends. Latencies are only recorded once
+ * the warm up is over.
+ */
+class LoadTestWorker extends Thread {
+
+    private final RequestMix requestMix;
+
+    private final long warmupEndNanos;
+
+    private final long endNanos;
+
+    private final Random random;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final Map<String, LatencyHistogram> latenciesByRequestType = new HashMap<String, LatencyHistogram>();
+
+    private long errors;
+
+    private long csvBytes;
+
+    private long allocatedBytesAtWarmupEnd = -1;
+
+    private long allocatedBytesAtEnd = -1;
+
+    LoadTestWorker(final String name, final RequestMix requestMix, final long warmupEndNanos, final long endNanos, final long seed) {
+        super(name);
+        this.requestMix = requestMix;
+        this.warmupEndNanos = warmupEndNanos;
+        this.endNanos = endNanos;
+        this.random = new Random(seed);
+        for (final RequestType requestType : requestMix.getRequestTypes()) {
+            latenciesByRequestType.put(requestType.name, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void run() {
+        long requestNumber = 0;
+        boolean warm = false;
+        while (true) {
+            final long start = System.nanoTime();
+            if (start >= endNanos) {
+                // measured by the thread itself, the counter of a terminated thread cannot be read
+                allocatedBytesAtEnd = ThreadAllocation.allocatedBytes(getId());
+                return;
+            }
+            if (!warm && start >= warmupEndNanos) {
+                warm = true;
+                allocatedBytesAtWarmupEnd = ThreadAllocation.allocatedBytes(getId());
+            }
+            final RequestType requestType = requestMix.pick(random);
+            final LoadTestResource resource = new LoadTestResource(requestType.service, requestType.queryParameters, getName() + '-'
+                    + requestNumber++, requestType.csv);
+            boolean failed = false;
+            try {
+                if (requestType.csv) {
+                    resource.getDataAsCSV();
+                } else {
+                    resource.getData();
+                }
+            } catch (final RuntimeException e) {
+                failed = true;
+            }
+            if (warm) {
+                final long nanos = System.nanoTime() - start;
+                latencies.record(nanos);
+                latenciesByRequestType.get(requestType.name).record(nanos);
+                csvBytes += resource.getCsvBytes();
+                if (failed) {
+                    errors++;
+                }
+            }
+        }
+    }
+
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    Map<String, LatencyHistogram> getLatenciesByRequestType() {
+        return latenciesByRequestType;
+    }
+
+    long getErrors() {
+        return errors;
+    }
+
+    long getCsvBytes() {
+        return csvBytes;
+    }
+
+    /**
+     * @return bytes allocated by this thread after the warm up, or -1 if not measured. Only valid once the thread has
+     *         been joined.
+     */
+    long getAllocatedBytesAfterWarmup() {
+        if (allocatedBytesAtEnd < 0 || allocatedBytesAtWarmupEnd < 0) {
+            return -1;
+        }
+        return allocatedBytesAtEnd - allocatedBytesAtWarmupEnd;
+    }
+}
@@ -0,0 +1,94 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.serviceprovider.Service;
+
+/**
+ * Weighted mix of the requests a load test sends, eg 70% ranking grids, 25% summary charts and 5% CSV exports
+ */
+public class RequestMix {
+
+    private final List<RequestType> requestTypes = new ArrayList<RequestType>();
+
+    private int totalWeight;
+
+    /**
+     * @param name
+     *            name of the request type in the report
+     * @param weight
+     *            relative share of the requests
+     * @param service
+     *            service handling the request
+     * @param queryParameters
+     *            URI parameters of the request
+     * @param csv
+     *            true to request CSV rather than JSON
+     * @return this mix
+     */
+    public RequestMix add(final String name, final int weight, final Service service, final MultivaluedMap<String, String> queryParameters,
+                          final boolean csv) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight of " + name + " must be positive");
+        }
+        requestTypes.add(new RequestType(name, weight, service, queryParameters, csv));
+        totalWeight += weight;
+        return this;
+    }
+
+    RequestType pick(final Random random) {
+        int remaining = random.nextInt(totalWeight);
+        for (final RequestType requestType : requestTypes) {
+            remaining -= requestType.weight;
+            if (remaining < 0) {
+                return requestType;
+            }
+        }
+        throw new IllegalStateException("The request mix is empty");
+    }
+
+    List<RequestType> getRequestTypes() {
+        return requestTypes;
+    }
+
+    boolean isEmpty() {
+        return requestTypes.isEmpty();
+    }
+
+    static class RequestType {
+
+        final String name;
+
+        final int weight;
+
+        final Service service;
+
+        final MultivaluedMap<String, String> queryParameters;
+
+        final boolean csv;
+
+        RequestType(final String name, final int weight, final Service service, final MultivaluedMap<String, String> queryParameters,
+                    final boolean csv) {
+            this.name = name;
+            this.weight = weight;
+            this.service = service;
+            this.queryParameters = queryParameters;
+            this.csv = csv;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.GenericService;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ParallelQueryExecutor;
+import com.ericsson.eniq.events.server.serviceprovider.impl.cache.ResultCache;
+import com.ericsson.eniq.events.server.serviceprovider.impl.hedging.HedgedQueryExecutor;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.PipelineFlightRecorder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.prefetch.DrillDownPrefetcher;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawTableAvailabilityIndex;
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryStatisticsRegistry;
+import com.ericsson.eniq.events.server.serviceprovider.impl.watermark.LoadWatermarkService;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadIsolation;
+
+/**
+ * The singletons of the service framework, wired together as the container would inject them, and shared by all the
+ * services of a load test.
+ * <p/>
+ * The exclusive TAC filter and the IMSI existence index are not included: they load their data from the database and
+ * the file system at start up, and the load test services do not use them.
+ */
+public class ServiceSingletons {
+
+    private final FairQueryScheduler fairQueryScheduler = new FairQueryScheduler();
+
+    private final WorkloadIsolation workloadIsolation = new WorkloadIsolation();
+
+    private final ResultCache resultCache = new ResultCache();
+
+    private final LoadWatermarkService loadWatermarkService = new LoadWatermarkService();
+
+    private final QueryStatisticsRegistry queryStatisticsRegistry = new QueryStatisticsRegistry();
+
+    private final PipelineFlightRecorder pipelineFlightRecorder = new PipelineFlightRecorder();
+
+    private final RawTableAvailabilityIndex rawTableAvailabilityIndex = new RawTableAvailabilityIndex();
+
+    private final HedgedQueryExecutor hedgedQueryExecutor = new HedgedQueryExecutor();
+
+    private final ParallelQueryExecutor parallelQueryExecutor = new ParallelQueryExecutor();
+
+    private final DrillDownPrefetcher drillDownPrefetcher = new DrillDownPrefetcher();
+
+    public ServiceSingletons() {
+        hedgedQueryExecutor.setQueryStatisticsRegistry(queryStatisticsRegistry);
+        hedgedQueryExecutor.setParallelQueryExecutor(parallelQueryExecutor);
+        drillDownPrefetcher.setFairQueryScheduler(fairQueryScheduler);
+    }
+
+    /**
+     * Inject the singletons into a service, as the container does for the services it deploys
+     */
+    public void injectInto(final GenericService service) {
+        service.setFairQueryScheduler(fairQueryScheduler);
+        service.setWorkloadIsolation(workloadIsolation);
+        service.setResultCache(resultCache);
+        service.setLoadWatermarkService(loadWatermarkService);
+        service.setQueryStatisticsRegistry(queryStatisticsRegistry);
+        service.setPipelineFlightRecorder(pipelineFlightRecorder);
+        service.setRawTableAvailabilityIndex(rawTableAvailabilityIndex);
+        service.setHedgedQueryExecutor(hedgedQueryExecutor);
+        service.setParallelQueryExecutor(parallelQueryExecutor);
+        service.setDrillDownPrefetcher(drillDownPrefetcher);
+    }
+
+    public QueryStatisticsRegistry getQueryStatisticsRegistry() {
+        return queryStatisticsRegistry;
+    }
+
+    public PipelineFlightRecorder getPipelineFlightRecorder() {
+        return pipelineFlightRecorder;
+    }
+
+    /**
+     * Stop the threads of the singletons, as the container does when the application is undeployed
+     */
+    public void shutdown() {
+        drillDownPrefetcher.shutdown();
+        parallelQueryExecutor.shutdown();
+    }
+}
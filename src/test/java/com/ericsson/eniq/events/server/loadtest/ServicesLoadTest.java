@@ -0,0 +1,192 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.LoadTestGenericService;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryStatisticsSnapshot;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Local load test of the service framework.
+ * <p/>
+ * Requests go through the resource and {@link com.ericsson.eniq.events.server.serviceprovider.impl.GenericService}
+ * pipeline as they would in the container, with the framework singletons wired in (see {@link ServiceSingletons}), but
+ * the database is replaced by a {@link SyntheticDataService}, so the figures are the cost of the framework itself -
+ * request parsing, scheduling, JSON and CSV streaming - at a given concurrency and query latency. Parameter checking,
+ * tech pack resolution and template rendering are not included, see
+ * {@link com.ericsson.eniq.events.server.serviceprovider.impl.LoadTestGenericService}. Run with eg
+ *
+ * <pre>
+ * java -Dloadtest.threads=32 -Dloadtest.durationSeconds=60 -Dloadtest.latency=lognormal:40:0.5 \
+ *      com.ericsson.eniq.events.server.loadtest.ServicesLoadTest
+ * </pre>
+ *
+ * <ul>
+ * <li>loadtest.threads - concurrent requests, default 8</li>
+ * <li>loadtest.durationSeconds - measured time, default 30</li>
+ * <li>loadtest.warmupSeconds - time before measuring starts, default 10</li>
+ * <li>loadtest.rows and loadtest.columns - size of every result, default 500 by 10</li>
+ * <li>loadtest.latency - query latency, see {@link LatencyDistribution#parse(String)}, default lognormal:20:0.5</li>
+ * <li>loadtest.csvShare - percentage of CSV exports in the mix, default 5</li>
+ * <li>loadtest.cacheSeconds - how long results are cached, default 0 (no caching)</li>
+ * </ul>
+ */
+public class ServicesLoadTest {
+
+    private final RequestMix requestMix;
+
+    private final int threads;
+
+    public ServicesLoadTest(final RequestMix requestMix, final int threads) {
+        if (requestMix.isEmpty()) {
+            throw new IllegalArgumentException("The request mix is empty");
+        }
+        this.requestMix = requestMix;
+        this.threads = threads;
+    }
+
+    /**
+     * Run the load test, blocking until it ends
+     *
+     * @param warmupMillis
+     *            time before measuring starts
+     * @param durationMillis
+     *            measured time
+     * @return report of the measured time
+     * @throws InterruptedException
+     *             if interrupted while waiting for the load test threads
+     */
+    public LoadTestReport run(final long warmupMillis, final long durationMillis) throws InterruptedException {
+        final long warmupEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+        final long endNanos = warmupEndNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        final List<LoadTestWorker> workers = new ArrayList<LoadTestWorker>();
+        for (int i = 0; i < threads; i++) {
+            final LoadTestWorker worker = new LoadTestWorker("loadtest-" + i, requestMix, warmupEndNanos, endNanos, i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEndNanos - System.nanoTime()));
+        final long heapUsedBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        final long[] gcBefore = garbageCollection();
+        for (final LoadTestWorker worker : workers) {
+            worker.join();
+        }
+        final long[] gcAfter = garbageCollection();
+        final long heapUsedAfter = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        final LoadTestReport report = new LoadTestReport(endNanos - warmupEndNanos);
+        long allocatedBytes = 0;
+        for (final LoadTestWorker worker : workers) {
+            report.addWorker(worker);
+            final long workerAllocatedBytes = worker.getAllocatedBytesAfterWarmup();
+            allocatedBytes = allocatedBytes < 0 || workerAllocatedBytes < 0 ? -1 : allocatedBytes + workerAllocatedBytes;
+        }
+        report.setAllocatedBytes(allocatedBytes);
+        report.setHeapUsed(heapUsedBefore, heapUsedAfter);
+        report.setGarbageCollection(gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+        return report;
+    }
+
+    private static long[] garbageCollection() {
+        final long[] countAndMillis = new long[2];
+        for (final GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            countAndMillis[0] += Math.max(0, garbageCollector.getCollectionCount());
+            countAndMillis[1] += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        return countAndMillis;
+    }
+
+    /**
+     * Create the default mix - grids and charts over JSON, plus a share of CSV exports
+     *
+     * @param dataService
+     *            synthetic data service answering every query
+     * @param csvShare
+     *            percentage of CSV exports
+     * @param cacheSeconds
+     *            how long results are cached, 0 to run every query
+     * @param singletons
+     *            singletons injected into the services
+     * @return the request mix
+     */
+    public static RequestMix createDefaultMix(final SyntheticDataService dataService, final int csvShare, final int cacheSeconds,
+                                              final ServiceSingletons singletons) {
+        final LoadTestGenericService rankingService = createService("LOADTEST_RANKING", dataService, cacheSeconds, singletons);
+        final LoadTestGenericService summaryService = createService("LOADTEST_SUMMARY", dataService, cacheSeconds, singletons);
+        final RequestMix requestMix = new RequestMix();
+        final int jsonShare = 100 - Math.max(0, Math.min(100, csvShare));
+        if (jsonShare > 0) {
+            requestMix.add("ranking grid", Math.max(1, jsonShare * 3 / 4), rankingService, createParameters("BSC", "grid"), false);
+            requestMix.add("summary chart", Math.max(1, jsonShare / 4), summaryService, createParameters("BSC", "chart"), false);
+        }
+        if (csvShare > 0) {
+            requestMix.add("ranking CSV export", csvShare, rankingService, createParameters("BSC", "grid"), true);
+        }
+        return requestMix;
+    }
+
+    private static LoadTestGenericService createService(final String templatePath, final SyntheticDataService dataService,
+                                                        final int cacheSeconds, final ServiceSingletons singletons) {
+        final LoadTestGenericService service = new LoadTestGenericService(templatePath, dataService.asDataService(),
+                dataService.asStreamingDataService());
+        service.setResultCacheTimeToLiveInSeconds(cacheSeconds);
+        singletons.injectInto(service);
+        return service;
+    }
+
+    private static MultivaluedMap<String, String> createParameters(final String type, final String display) {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.add(TIME_QUERY_PARAM, "30");
+        parameters.add(TZ_OFFSET, "+0000");
+        parameters.add(TYPE_PARAM, type);
+        parameters.add(DISPLAY_PARAM, display);
+        return parameters;
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        final int threads = Integer.getInteger("loadtest.threads", 8);
+        final int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 30);
+        final int warmupSeconds = Integer.getInteger("loadtest.warmupSeconds", 10);
+        final SyntheticDataService dataService = new SyntheticDataService(Integer.getInteger("loadtest.rows", 500), Integer.getInteger(
+                "loadtest.columns", 10), LatencyDistribution.parse(System.getProperty("loadtest.latency", "lognormal:20:0.5")));
+        final ServiceSingletons singletons = new ServiceSingletons();
+        final RequestMix requestMix = createDefaultMix(dataService, Integer.getInteger("loadtest.csvShare", 5), Integer.getInteger(
+                "loadtest.cacheSeconds", 0), singletons);
+
+        System.out.printf("Load test: %d threads, %ds warm up, %ds measured%n", threads, warmupSeconds, durationSeconds);
+        final LoadTestReport report;
+        try {
+            report = new ServicesLoadTest(requestMix, threads).run(TimeUnit.SECONDS.toMillis(warmupSeconds), TimeUnit.SECONDS
+                    .toMillis(durationSeconds));
+        } finally {
+            singletons.shutdown();
+        }
+        report.print(System.out);
+        System.out.println("Slowest queries (including warm up):");
+        for (final QueryStatisticsSnapshot query : singletons.getQueryStatisticsRegistry().topByP99(5)) {
+            System.out.printf("  %-40s n=%-8d p50=%8.2fms p99=%8.2fms%n", query.getTemplatePath(), query.getExecutionCount(),
+                    query.getP50Millis(), query.getP99Millis());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ServicesLoadTestTest {
+
+    @Test
+    public void testShortRunCompletesRequestsWithoutErrors() throws Exception {
+        final SyntheticDataService dataService = new SyntheticDataService(20, 4, LatencyDistribution.parse("fixed:1"));
+        final ServiceSingletons singletons = new ServiceSingletons();
+        final RequestMix requestMix = ServicesLoadTest.createDefaultMix(dataService, 25, 0, singletons);
+        final LoadTestReport report;
+        try {
+            report = new ServicesLoadTest(requestMix, 2).run(100, 300);
+        } finally {
+            singletons.shutdown();
+        }
+        assertTrue(report.getRequests() > 0);
+        assertThat(report.getErrors(), is(0L));
+        assertTrue(report.getPercentileMillis(50) >= 1);
+        assertTrue(singletons.getQueryStatisticsRegistry().getFingerprintCount() > 0);
+    }
+
+    @Test
+    public void testPercentilesOfHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1000000L);
+        }
+        assertThat(histogram.getCount(), is(100L));
+        assertTrue(Math.abs(histogram.getPercentileMillis(50) - 50) <= 50 * 0.25);
+        assertTrue(Math.abs(histogram.getPercentileMillis(99) - 99) <= 99 * 0.25);
+        assertTrue(histogram.getPercentileMillis(100) == 100);
+    }
+}
@@ -0,0 +1,151 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.ericsson.eniq.events.server.services.DataService;
+import com.ericsson.eniq.events.server.services.StreamingDataService;
+
+/**
+ * In memory stand-in for the {@link DataService} and {@link StreamingDataService}, answering every grid query with
+ * synthetic rows after a latency drawn from a {@link LatencyDistribution}.
+ * <p/>
+ * The stand-ins are dynamic proxies, so only the grid and CSV methods are implemented - any other method of the data
+ * services throws {@link UnsupportedOperationException}.
+ */
+public class SyntheticDataService implements InvocationHandler {
+
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final int rows;
+
+    private final int columns;
+
+    private final LatencyDistribution latencyDistribution;
+
+    /**
+     * @param rows
+     *            rows returned by every query
+     * @param columns
+     *            columns of every row
+     * @param latencyDistribution
+     *            time each query takes before returning its first row
+     */
+    public SyntheticDataService(final int rows, final int columns, final LatencyDistribution latencyDistribution) {
+        this.rows = rows;
+        this.columns = columns;
+        this.latencyDistribution = latencyDistribution;
+    }
+
+    public DataService asDataService() {
+        return (DataService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataService.class }, this);
+    }
+
+    public StreamingDataService asStreamingDataService() {
+        return (StreamingDataService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { StreamingDataService.class }, this);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] arguments) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, arguments);
+        }
+        if ("getGridData".equals(method.getName())) {
+            waitForQuery();
+            return createGridData();
+        }
+        if ("streamDataAsCsv".equals(method.getName())) {
+            waitForQuery();
+            writeCsvData((OutputStream) arguments[arguments.length - 1]);
+            return null;
+        }
+        throw new UnsupportedOperationException(method.getName() + " is not supported by the synthetic data service");
+    }
+
+    private Object invokeObjectMethod(final Object proxy, final Method method, final Object[] arguments) {
+        if ("equals".equals(method.getName())) {
+            return proxy == arguments[0];
+        }
+        if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        }
+        return "SyntheticDataService[rows=" + rows + ", columns=" + columns + ", latency=" + latencyDistribution + "]";
+    }
+
+    private void waitForQuery() throws InterruptedException {
+        final long latencyNanos = latencyDistribution.sampleNanos(RANDOM.get());
+        if (latencyNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(latencyNanos);
+        }
+    }
+
+    String createGridData() {
+        final Random random = RANDOM.get();
+        final StringBuilder json = new StringBuilder(64 + rows * columns * 16).append("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[");
+        for (int row = 0; row < rows; row++) {
+            if (row > 0) {
+                json.append(',');
+            }
+            json.append('{');
+            for (int column = 1; column <= columns; column++) {
+                if (column > 1) {
+                    json.append(',');
+                }
+                json.append('"').append(column).append("\":\"");
+                appendValue(json, row, column, random);
+                json.append('"');
+            }
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private void writeCsvData(final OutputStream output) throws IOException {
+        final Random random = RANDOM.get();
+        final StringBuilder line = new StringBuilder();
+        for (int column = 1; column <= columns; column++) {
+            line.append(column > 1 ? "," : "").append("Column").append(column);
+        }
+        output.write(line.append('\n').toString().getBytes("UTF-8"));
+        for (int row = 0; row < rows; row++) {
+            line.setLength(0);
+            for (int column = 1; column <= columns; column++) {
+                if (column > 1) {
+                    line.append(',');
+                }
+                appendValue(line, row, column, random);
+            }
+            output.write(line.append('\n').toString().getBytes("UTF-8"));
+        }
+        output.flush();
+    }
+
+    private static void appendValue(final StringBuilder target, final int row, final int column, final Random random) {
+        if (column == 1) {
+            target.append("NODE_").append(row);
+        } else {
+            target.append(random.nextInt(100000));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Per thread allocation counter of the HotSpot JVM, where it is available
+ */
+final class ThreadAllocation {
+
+    private ThreadAllocation() {
+    }
+
+    /**
+     * @return bytes allocated by the thread since it started, or -1 if the JVM does not measure thread allocation
+     */
+    static long allocatedBytes(final long threadId) {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean hotSpotThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (hotSpotThreadMXBean.isThreadAllocatedMemorySupported() && hotSpotThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return hotSpotThreadMXBean.getThreadAllocatedBytes(threadId);
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,132 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.resources;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.BatchRequestScope;
+import com.ericsson.eniq.events.server.serviceprovider.RequestContext;
+import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.impl.batch.BatchEntryExecutor;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class AbstractBatchResourceTest {
+
+    private static final String SAMPLE_SERVICE = "SAMPLE_SERVICE";
+
+    private SimpleBatchResource resource;
+
+    private MultivaluedMap<String, String> requestParameters;
+
+    private BatchEntryExecutor batchEntryExecutor;
+
+    @Before
+    public void setup() {
+        resource = new SimpleBatchResource();
+        batchEntryExecutor = new BatchEntryExecutor();
+        resource.setBatchEntryExecutor(batchEntryExecutor);
+        requestParameters = new MultivaluedMapImpl();
+        requestParameters.add(TIME_QUERY_PARAM, "30");
+    }
+
+    @After
+    public void tearDown() {
+        batchEntryExecutor.shutdown();
+    }
+
+    @Test
+    public void testSharedParametersAreCopiedToEachEntry() {
+        requestParameters.add("rnc." + AbstractBatchResource.BATCH_SERVICE_PARAM, SAMPLE_SERVICE);
+        requestParameters.add("tac." + AbstractBatchResource.BATCH_SERVICE_PARAM, SAMPLE_SERVICE);
+        final Map<String, MultivaluedMap<String, String>> entries = resource.splitIntoEntries(requestParameters);
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get("rnc").getFirst(TIME_QUERY_PARAM), is("30"));
+        assertThat(entries.get("tac").getFirst(TIME_QUERY_PARAM), is("30"));
+    }
+
+    @Test
+    public void testEntryParametersOverrideSharedParameters() {
+        requestParameters.add("rnc." + AbstractBatchResource.BATCH_SERVICE_PARAM, SAMPLE_SERVICE);
+        requestParameters.add("rnc." + TIME_QUERY_PARAM, "1440");
+        final Map<String, MultivaluedMap<String, String>> entries = resource.splitIntoEntries(requestParameters);
+        assertThat(entries.get("rnc").getFirst(TIME_QUERY_PARAM), is("1440"));
+        assertThat(entries.get("rnc").getFirst(AbstractBatchResource.BATCH_SERVICE_PARAM), is(SAMPLE_SERVICE));
+    }
+
+    @Test
+    public void testResultsOfAllEntriesAreReturnedInOneResponse() {
+        requestParameters.add("a." + AbstractBatchResource.BATCH_SERVICE_PARAM, SAMPLE_SERVICE);
+        requestParameters.add("b." + AbstractBatchResource.BATCH_SERVICE_PARAM, SAMPLE_SERVICE);
+        final String result = resource.getBatchData(RequestContext.fromParameters(requestParameters), requestParameters);
+        assertThat(result, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":{\"a\":{\"scoped\":\"true\"},\"b\":{\"scoped\":\"true\"}}}"));
+    }
+
+    @Test
+    public void testUnknownServiceIsReportedForThatEntryOnly() {
+        requestParameters.add("a." + AbstractBatchResource.BATCH_SERVICE_PARAM, SAMPLE_SERVICE);
+        requestParameters.add("b." + AbstractBatchResource.BATCH_SERVICE_PARAM, "UNKNOWN");
+        final String result = resource.getBatchData(RequestContext.fromParameters(requestParameters), requestParameters);
+        assertThat(result, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":{\"a\":{\"scoped\":\"true\"},"
+                + "\"b\":{\"success\":\"false\",\"errorDescription\":\"Unknown service UNKNOWN\"}}}"));
+    }
+
+    @Test
+    public void testUnknownServiceNameIsEscaped() {
+        requestParameters.add("a." + AbstractBatchResource.BATCH_SERVICE_PARAM, "UNKNOWN\"}");
+        final String result = resource.getBatchData(RequestContext.fromParameters(requestParameters), requestParameters);
+        assertThat(result, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":{"
+                + "\"a\":{\"success\":\"false\",\"errorDescription\":\"Unknown service UNKNOWN\\\"}\"}}}"));
+    }
+
+    @Test(expected = WebApplicationException.class)
+    public void testBatchIsRejectedWhenEntriesCannotBeRun() {
+        requestParameters.add("a." + AbstractBatchResource.BATCH_SERVICE_PARAM, SAMPLE_SERVICE);
+        batchEntryExecutor.shutdown();
+        resource.getBatchData(RequestContext.fromParameters(requestParameters), requestParameters);
+    }
+
+    class SimpleBatchResource extends AbstractBatchResource {
+
+        @Override
+        protected Service getService(final String serviceName) {
+            if (!SAMPLE_SERVICE.equals(serviceName)) {
+                return null;
+            }
+            return new Service() {
+
+                @Override
+                public Response getDataAsCSV(final MultivaluedMap<String, String> serviceProviderParameters,
+                        final HttpServletResponse response) {
+                    return null;
+                }
+
+                @Override
+                public String getData(final MultivaluedMap<String, String> serviceProviderParameters) {
+                    return "{\"scoped\":\"" + (BatchRequestScope.getCurrentScope() != null) + "\"}";
+                }
+            };
+        }
+    }
+}
@@ -11,20 +11,33 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
 import java.net.URI;
+import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriInfo;
 
 import org.jmock.Expectations;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.ericsson.eniq.events.server.serviceprovider.ContextAwareService;
 import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceRequest;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceResult;
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
 import com.ericsson.eniq.events.server.test.common.BaseJMockUnitTest;
+import com.sun.jersey.api.core.HttpContext;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
 
 /**
@@ -39,6 +52,8 @@ public class AbstractResourceTest extends BaseJMockUnitTest {
 
     private static final String SAMPLE_IP_ADDRESS = "0.0.0.0";
 
+    private static final String SUCCESS_RESULT = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[]}";
+
     private SimpleResource resource;
 
     HttpHeaders mockedHttpHeaders;
@@ -68,6 +83,39 @@ public class AbstractResourceTest extends BaseJMockUnitTest {
         assertThat(result.getFirst(IP_ADDRESS_PARAM), is(SAMPLE_IP_ADDRESS));
     }
 
+    @Test
+    public void testMapResourceLayerParameters_AuthenticatedUserName() {
+        final MultivaluedMap<String, String> queryParameters = new MultivaluedMapImpl();
+        queryParameters.add(USER_NAME_PARAM, "spoofedUser");
+        setUpExpectations(null, queryParameters, SAMPLE_REQUEST_URI, SAMPLE_IP_ADDRESS, SAMPLE_REQUEST_ID);
+        final SecurityContext mockedSecurityContext = mockery.mock(SecurityContext.class);
+        final Principal mockedPrincipal = mockery.mock(Principal.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(mockedSecurityContext).getUserPrincipal();
+                will(returnValue(mockedPrincipal));
+                allowing(mockedPrincipal).getName();
+                will(returnValue("authenticatedUser"));
+            }
+        });
+        resource.securityContext = mockedSecurityContext;
+        final MultivaluedMap<String, String> result = resource.mapResourceLayerParameters();
+        assertThat(result.get(FairQueryScheduler.AUTHENTICATED_USER_PARAM).size(), is(1));
+        assertThat(result.getFirst(FairQueryScheduler.AUTHENTICATED_USER_PARAM), is("authenticatedUser"));
+        assertThat(result.getFirst(USER_NAME_PARAM), is("spoofedUser"));
+    }
+
+    @Test
+    public void testMapResourceLayerParameters_AuthenticatedUserNotTakenFromURIParameters() {
+        final MultivaluedMap<String, String> queryParameters = new MultivaluedMapImpl();
+        queryParameters.add(USER_NAME_PARAM, "spoofedUser");
+        queryParameters.add(FairQueryScheduler.AUTHENTICATED_USER_PARAM, "spoofedUser");
+        setUpExpectations(null, queryParameters, SAMPLE_REQUEST_URI, SAMPLE_IP_ADDRESS, SAMPLE_REQUEST_ID);
+        final MultivaluedMap<String, String> result = resource.mapResourceLayerParameters();
+        assertThat(result.containsKey(FairQueryScheduler.AUTHENTICATED_USER_PARAM), is(false));
+        assertThat(result.getFirst(USER_NAME_PARAM), is("spoofedUser"));
+    }
+
     @Test
     public void testMapResourceLayerParameters_URI() {
         setUpExpectations(null, new MultivaluedMapImpl(), SAMPLE_REQUEST_URI, SAMPLE_IP_ADDRESS, SAMPLE_REQUEST_ID);
@@ -183,12 +231,156 @@ public class AbstractResourceTest extends BaseJMockUnitTest {
         });
     }
 
+    @Test
+    public void testNotModifiedSentWhenClientHasResult() {
+        final TaggingService service = new TaggingService("abc", SUCCESS_RESULT);
+        resource.service = service;
+        expectGetDataRequest("\"abc\"");
+        try {
+            resource.getData();
+            fail("expected 304 Not Modified");
+        } catch (final WebApplicationException e) {
+            assertThat(e.getResponse().getStatus(), is(304));
+        }
+        assertThat(service.ifNoneMatch, is("\"abc\""));
+    }
+
+    @Test
+    public void testETagSentWithSuccessResult() {
+        resource.service = new TaggingService("abc", SUCCESS_RESULT);
+        expectGetDataRequest(null);
+        mockery.checking(new Expectations() {
+            {
+                one(resource.response).setHeader(HttpHeaders.ETAG, "\"abc\"");
+            }
+        });
+        assertThat(resource.getData(), is(SUCCESS_RESULT));
+    }
+
+    @Test
+    public void testNoETagSentWithErrorResult() {
+        final String errorResult = "{\"success\":\"false\",\"errorDescription\":\"Query failed\"}";
+        resource.service = new TaggingService("abc", errorResult);
+        expectGetDataRequest("\"abc\"");
+        assertThat(resource.getData(), is(errorResult));
+    }
+
+    @Test
+    public void testGzippedResultIsHandedToFilterWhenClientAcceptsGzip() {
+        final TaggingService service = new TaggingService(null, SUCCESS_RESULT);
+        service.gzippedResult = new byte[] { 31, -117 };
+        resource.service = service;
+        final Map<String, Object> requestProperties = expectGzipRequest();
+        GzippedResultFilter.markApplied(requestProperties);
+        final String entity = resource.getData();
+        assertThat(entity, is(sameInstance(GzippedResultFilter.GZIPPED_RESULT)));
+        assertThat(GzippedResultFilter.takeGzippedResult(requestProperties, entity), is(service.gzippedResult));
+    }
+
+    @Test
+    public void testResultIsReturnedAsTextWhenFilterIsNotApplied() {
+        final TaggingService service = new TaggingService(null, SUCCESS_RESULT);
+        service.gzippedResult = new byte[] { 31, -117 };
+        resource.service = service;
+        expectGzipRequest();
+        assertThat(resource.getData(), is(SUCCESS_RESULT));
+        assertThat(service.acceptsGzip, is(false));
+    }
+
+    /**
+     * Expect a JSON request with the If-None-Match header, the response is a mock that fails on any header not expected
+     */
+    private void expectGetDataRequest(final String ifNoneMatch) {
+        setUpExpectations(null, new MultivaluedMapImpl(), SAMPLE_REQUEST_URI, SAMPLE_IP_ADDRESS, SAMPLE_REQUEST_ID);
+        resource.response = mockery.mock(HttpServletResponse.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(mockedHttpHeaders).getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+                will(returnValue(ifNoneMatch == null ? null : Collections.singletonList(ifNoneMatch)));
+                allowing(mockedHttpHeaders).getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+                will(returnValue(null));
+            }
+        });
+    }
+
+    /**
+     * Expect a JSON request from a client that accepts gzip encoding
+     *
+     * @return properties of the request
+     */
+    private Map<String, Object> expectGzipRequest() {
+        setUpExpectations(null, new MultivaluedMapImpl(), SAMPLE_REQUEST_URI, SAMPLE_IP_ADDRESS, SAMPLE_REQUEST_ID);
+        final Map<String, Object> requestProperties = new HashMap<String, Object>();
+        resource.httpContext = mockery.mock(HttpContext.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(mockedHttpHeaders).getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+                will(returnValue(null));
+                allowing(mockedHttpHeaders).getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+                will(returnValue(Collections.singletonList("gzip, deflate")));
+                allowing(resource.httpContext).getProperties();
+                will(returnValue(requestProperties));
+            }
+        });
+        return requestProperties;
+    }
+
     class SimpleResource extends AbstractResource {
 
+        Service service;
+
         @Override
         protected Service getService() {
-            return null;
+            return service;
+        }
+
+    }
+
+    /**
+     * Service that tags its result with a fixed ETag, as services that know the load watermark of their tables do
+     */
+    static class TaggingService implements ContextAwareService {
+
+        private final String eTag;
+
+        private final String result;
+
+        String ifNoneMatch;
+
+        byte[] gzippedResult;
+
+        boolean acceptsGzip;
+
+        TaggingService(final String eTag, final String result) {
+            this.eTag = eTag;
+            this.result = result;
         }
 
+        @Override
+        public ServiceResult getResult(final ServiceRequest serviceRequest) {
+            ifNoneMatch = serviceRequest.getIfNoneMatch();
+            acceptsGzip = serviceRequest.acceptsGzip();
+            return new ServiceResult(result, acceptsGzip ? gzippedResult : null, eTag);
+        }
+
+        @Override
+        public String getData(final ServiceRequest serviceRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Response getDataAsCSV(final ServiceRequest serviceRequest, final HttpServletResponse response) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getData(final MultivaluedMap<String, String> serviceProviderParameters) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Response getDataAsCSV(final MultivaluedMap<String, String> serviceProviderParameters, final HttpServletResponse response) {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -0,0 +1,49 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.resources;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+    @Test
+    public void testOpenEndedRangeResumesDownload() {
+        final ByteRange range = ByteRange.parse("bytes=1000-", 5000);
+        assertThat(range.getFirst(), is(1000L));
+        assertThat(range.getCount(), is(4000L));
+        assertThat(range.getContentRange(), is("bytes 1000-4999/5000"));
+    }
+
+    @Test
+    public void testSuffixRange() {
+        final ByteRange range = ByteRange.parse("bytes=-500", 5000);
+        assertThat(range.getFirst(), is(4500L));
+        assertThat(range.getCount(), is(500L));
+    }
+
+    @Test
+    public void testRangeBeyondEndOfFileIsNotSatisfiable() {
+        final ByteRange range = ByteRange.parse("bytes=5000-5999", 5000);
+        assertThat(range.isSatisfiable(), is(false));
+        assertThat(range.getContentRange(), is("bytes */5000"));
+    }
+
+    @Test
+    public void testWholeFileIsReturnedForMissingOrMultipleRanges() {
+        assertThat(ByteRange.parse(null, 5000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=0-10,20-30", 5000), is(nullValue()));
+        assertThat(ByteRange.parse("bytes=abc", 5000), is(nullValue()));
+    }
+}
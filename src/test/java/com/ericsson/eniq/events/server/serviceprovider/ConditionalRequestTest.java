@@ -0,0 +1,43 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ConditionalRequestTest {
+
+    private static final String QUERY = "select RNC, count(*) from EVENT_E_RAN_HFA_ERR_RAW group by RNC";
+
+    @Test
+    public void testETagChangesWhenWatermarkAdvances() {
+        final String eTag = ConditionalRequest.createETag(QUERY, 1000);
+        assertThat(ConditionalRequest.createETag(QUERY, 1000), is(eTag));
+        assertThat(ConditionalRequest.createETag(QUERY, 2000), is(not(equalTo(eTag))));
+        assertThat(ConditionalRequest.createETag(QUERY + " order by RNC", 1000), is(not(equalTo(eTag))));
+    }
+
+    @Test
+    public void testIfNoneMatchIsCheckedAgainstETag() {
+        final String ifNoneMatch = "\"abc\", W/\"def\"";
+        assertThat(ConditionalRequest.matches(ifNoneMatch, "def"), is(true));
+        assertThat(ConditionalRequest.matches(ifNoneMatch, "ghi"), is(false));
+    }
+
+    @Test
+    public void testNoMatchWithoutIfNoneMatch() {
+        assertThat(ConditionalRequest.matches(null, "abc"), is(false));
+        assertThat(ConditionalRequest.matches("*", "abc"), is(true));
+    }
+}
@@ -0,0 +1,92 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class RequestContextTest {
+
+    @Test
+    public void testContextIsCreatedFromServiceProviderParameters() {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.add(REQUEST_ID, "42");
+        parameters.add(REQUEST_URI, "http://localhost/EniqEventsServices/NETWORK/EVENT_ANALYSIS");
+        parameters.put(IP_ADDRESS_PARAM, new ArrayList<String>(Arrays.asList("10.0.0.1")));
+
+        final RequestContext requestContext = RequestContext.fromParameters(parameters);
+        parameters.get(IP_ADDRESS_PARAM).add("10.0.0.2");
+
+        assertThat(requestContext.getRequestId(), is("42"));
+        assertThat(requestContext.getRequestUri(), is("http://localhost/EniqEventsServices/NETWORK/EVENT_ANALYSIS"));
+        assertThat(requestContext.getIpAddresses(), is(Arrays.asList("10.0.0.1")));
+        assertTrue(requestContext.getStartTime() > 0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIpAddressesCannotBeModified() {
+        final List<String> ipAddresses = new RequestContext(null, null, Arrays.asList("10.0.0.1"), 0).getIpAddresses();
+        ipAddresses.add("10.0.0.2");
+    }
+
+    @Test
+    public void testContextIsOnlyPassedToContextAwareServices() {
+        final ServiceRequest serviceRequest = ServiceRequest.fromParameters(new RequestContext("1", null, null, 0),
+                new MultivaluedMapImpl());
+        assertThat(ServiceInvoker.getData(new ContextAwareStubService(), serviceRequest), is("context 1"));
+        assertThat(ServiceInvoker.getData(new StubService(), serviceRequest), is("no context"));
+    }
+
+    private static class StubService implements Service {
+
+        @Override
+        public Response getDataAsCSV(final MultivaluedMap<String, String> serviceProviderParameters, final HttpServletResponse response) {
+            return null;
+        }
+
+        @Override
+        public String getData(final MultivaluedMap<String, String> serviceProviderParameters) {
+            return "no context";
+        }
+    }
+
+    private static class ContextAwareStubService extends StubService implements ContextAwareService {
+
+        @Override
+        public Response getDataAsCSV(final ServiceRequest serviceRequest, final HttpServletResponse response) {
+            return null;
+        }
+
+        @Override
+        public String getData(final ServiceRequest serviceRequest) {
+            return "context " + serviceRequest.getRequestId();
+        }
+
+        @Override
+        public ServiceResult getResult(final ServiceRequest serviceRequest) {
+            return new ServiceResult(getData(serviceRequest));
+        }
+    }
+}
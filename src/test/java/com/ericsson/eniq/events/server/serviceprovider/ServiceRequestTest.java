@@ -0,0 +1,83 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.common.MediaTypeConstants;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class ServiceRequestTest {
+
+    @Test
+    public void testRequestIsParsedFromServiceProviderParameters() {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.add(REQUEST_ID, "7");
+        parameters.add(MEDIA_TYPE, MediaTypeConstants.APPLICATION_CSV);
+        parameters.add(TZ_OFFSET, "-0530");
+
+        final ServiceRequest serviceRequest = ServiceRequest.fromParameters(parameters);
+
+        assertThat(serviceRequest.getRequestId(), is("7"));
+        assertThat(serviceRequest.getMediaType(), is(ResponseMediaType.CSV));
+        assertTrue(serviceRequest.isCSV());
+        assertThat(serviceRequest.getTzOffset(), is("-0530"));
+        assertThat(serviceRequest.getTzOffsetInMinutes(), is(-330));
+        assertThat(serviceRequest.getParameters(), is(sameInstance(parameters)));
+    }
+
+    @Test
+    public void testRequestWithoutMediaTypeOrTzOffsetIsJSONWithNoOffset() {
+        final ServiceRequest serviceRequest = ServiceRequest.fromParameters(new MultivaluedMapImpl());
+        assertThat(serviceRequest.getMediaType(), is(ResponseMediaType.JSON));
+        assertThat(serviceRequest.getTzOffsetInMinutes(), is(nullValue()));
+    }
+
+    @Test
+    public void testCopiesCarryClientPreferencesWithoutChangingTheRequestOrItsParameters() {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        final ServiceRequest serviceRequest = ServiceRequest.fromParameters(parameters);
+        final ServiceRequest conditionalRequest = serviceRequest.withAcceptsGzip(true).withIfNoneMatch("\"abc\"");
+        assertThat(conditionalRequest.acceptsGzip(), is(true));
+        assertThat(conditionalRequest.getIfNoneMatch(), is("\"abc\""));
+        assertThat(serviceRequest.acceptsGzip(), is(false));
+        assertThat(serviceRequest.getIfNoneMatch(), is(nullValue()));
+        assertThat(parameters.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testTzOffsetParsing() {
+        assertThat(ServiceRequest.parseTzOffset("+0100"), is(60));
+        assertThat(ServiceRequest.parseTzOffset("+0000"), is(0));
+        assertThat(ServiceRequest.parseTzOffset("0100"), is(nullValue()));
+        assertThat(ServiceRequest.parseTzOffset("+01:00"), is(nullValue()));
+        assertThat(ServiceRequest.parseTzOffset("+01a0"), is(nullValue()));
+    }
+
+    @Test
+    public void testMediaTypeIsResolvedFromAcceptableMediaTypes() {
+        assertThat(ResponseMediaType.fromAcceptableMediaTypes(Arrays.asList(new MediaType("application", "json"), new MediaType(
+                "application", "csv"))), is(ResponseMediaType.CSV));
+        assertThat(ResponseMediaType.fromAcceptableMediaTypes(Arrays.asList(new MediaType("application", "json"))),
+                is(ResponseMediaType.JSON));
+        assertThat(ResponseMediaType.fromAcceptableMediaTypes(null), is(ResponseMediaType.JSON));
+    }
+}
@@ -0,0 +1,51 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class ServiceResultTest {
+
+    private static final String RESULT = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\"}]}";
+
+    @Test
+    public void testResultOnlyAvailableCompressedIsDecompressedWhenAskedFor() throws Exception {
+        final ServiceResult.Builder builder = new ServiceResult.Builder();
+        final byte[] gzipped = gzip(RESULT);
+        final ServiceResult result = builder.build(builder.setGzippedResult(gzipped));
+        assertThat(result.getGzippedResult(), is(gzipped));
+        assertThat(result.getResult(), is(RESULT));
+    }
+
+    @Test
+    public void testCompressedResultIsDroppedWhenResultIsChanged() throws Exception {
+        final ServiceResult.Builder builder = new ServiceResult.Builder();
+        builder.setGzippedResult(gzip(RESULT));
+        final ServiceResult result = builder.build(RESULT);
+        assertThat(result.getGzippedResult(), is(nullValue()));
+        assertThat(result.getResult(), is(RESULT));
+    }
+
+    private static byte[] gzip(final String result) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(result.getBytes("UTF-8"));
+        gzip.close();
+        return bytes.toByteArray();
+    }
+}
@@ -10,18 +10,24 @@ import static com.ericsson.eniq.events.server.common.TechPackData.*;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.MultivaluedMap;
 
 import org.jmock.Expectations;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+import com.ericsson.eniq.events.server.common.MediaTypeConstants;
 import com.ericsson.eniq.events.server.common.TechPackList;
 import com.ericsson.eniq.events.server.common.TechPackRepresentation;
 import com.ericsson.eniq.events.server.common.tablesandviews.AggregationTableInfo;
@@ -30,11 +36,32 @@ import com.ericsson.eniq.events.server.logging.performance.ServicePerformanceTra
 import com.ericsson.eniq.events.server.query.QueryGenerator;
 import com.ericsson.eniq.events.server.query.QueryGeneratorParameters;
 import com.ericsson.eniq.events.server.query.QueryParameter;
+import com.ericsson.eniq.events.server.query.resultsettransformers.ResultSetTransformer;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceRequest;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceQueryType;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceResult;
+import com.ericsson.eniq.events.server.serviceprovider.impl.cache.ResultCache;
+import com.ericsson.eniq.events.server.serviceprovider.impl.datatiering.DataTieredLeg;
+import com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs.ExclusiveTACFilter;
+import com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs.IntHashSet;
+import com.ericsson.eniq.events.server.serviceprovider.impl.imsifilter.IMSIExistenceIndex;
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONParser;
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.InMemoryKPI;
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.RatioKPI;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.PipelineFlightRecorder;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.PipelineStage;
+import com.ericsson.eniq.events.server.serviceprovider.impl.pipeline.PipelineStageEvent;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawPartition;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawTableAvailabilityIndex;
+import com.ericsson.eniq.events.server.serviceprovider.impl.watermark.LoadWatermarkService;
+import com.ericsson.eniq.events.server.services.DataService;
 import com.ericsson.eniq.events.server.services.datatiering.DataTieringHandler;
 import com.ericsson.eniq.events.server.services.exclusivetacs.ExclusiveTACHandler;
 import com.ericsson.eniq.events.server.test.common.BaseJMockUnitTest;
 import com.ericsson.eniq.events.server.utils.AuditService;
+import com.ericsson.eniq.events.server.utils.CSVResponseBuilder;
 import com.ericsson.eniq.events.server.utils.FormattedDateTimeRange;
+import com.ericsson.eniq.events.server.utils.LoadBalancingPolicyService;
 import com.ericsson.eniq.events.server.utils.QueryUtils;
 import com.ericsson.eniq.events.server.utils.datetime.DateTimeHelper;
 import com.ericsson.eniq.events.server.utils.parameterchecking.ParameterChecker;
@@ -63,6 +90,8 @@ public class GenericServiceTest extends BaseJMockUnitTest {
 
     QueryGenerator queryGenerator;
 
+    private static final String BASE_AGGREGATE_QUERY = "SELECT RNC, SUM(NO_OF_SUCCESSES), SUM(NO_OF_ERRORS) FROM EVENT_E_SGEH_RAW GROUP BY RNC";
+
     private final String BUILD_QUERY_FAILURE_JSON = JSON_ERROR_RESULT_PREFIX + "\"Failed to build query\"}";
 
     public List<String> applicableTechPacks = new ArrayList<String>();
@@ -132,9 +161,13 @@ public class GenericServiceTest extends BaseJMockUnitTest {
         expectCallOnQueryGenerator(blankQuery);
         expectCallOnParameterChecker();
         expectCallOnTechPackLicensingService(applicableTechPacks, applicableTechPacks);
+        final PipelineFlightRecorder pipelineFlightRecorder = new PipelineFlightRecorder();
+        service.setPipelineFlightRecorder(pipelineFlightRecorder);
         final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
         final String result = service.getData(parameters);
         assertThat(result, is(BUILD_QUERY_FAILURE_JSON));
+        final List<PipelineStageEvent> events = pipelineFlightRecorder.recentEvents(10);
+        assertThat(events.get(0).getStage(), is(PipelineStage.SQL_GENERATION.name()));
     }
 
     private void expectCallOnTechPackLicensingService(final List<String> techPacks, final List<String> licensedTechPacks) {
@@ -183,6 +216,25 @@ public class GenericServiceTest extends BaseJMockUnitTest {
         assertThat(result, is(expectedErrorMessage));
     }
 
+    @Test
+    public void testErrorIsSentWhenCSVRequestFailsBeforeStreaming() throws Exception {
+        expectCallOnParameterChecker();
+        final List<String> descriptionsForTechPacks = new ArrayList<String>();
+        descriptionsForTechPacks.add("2G Feature");
+        expectCallsOnTechPackDescriptionMappingsService(descriptionsForTechPacks);
+        expectCallOnTechPackLicensingService(applicableTechPacks, Collections.<String> emptyList());
+        service.setCsvResponseBuilder(createAndIgnore(CSVResponseBuilder.class));
+        final HttpServletResponse response = mockery.mock(HttpServletResponse.class);
+        mockery.checking(new Expectations() {
+            {
+                one(response).sendError(HttpServletResponse.SC_BAD_REQUEST, buildExpectedErrorMessage(descriptionsForTechPacks));
+            }
+        });
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.putSingle(MEDIA_TYPE, MediaTypeConstants.APPLICATION_CSV);
+        service.getDataAsCSV(parameters, response);
+    }
+
     private void expectCallsOnTechPackDescriptionMappingsService(final List<String> descriptionsForTechPacks) {
 
         mockery.checking(new Expectations() {
@@ -261,6 +313,313 @@ public class GenericServiceTest extends BaseJMockUnitTest {
 
     }
 
+    @Test
+    public void testInMemoryKPIsEvaluatedOverBaseAggregateQueryRunOnLoadBalancedReader() {
+        final LoadBalancingPolicy reader = mockery.mock(LoadBalancingPolicy.class);
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(reader));
+        service.inMemoryKPIs.add(new RatioKPI("SUCCESS_RATE", new String[] { "NO_OF_SUCCESSES" }, new String[] { "NO_OF_SUCCESSES",
+                "NO_OF_ERRORS" }, 100));
+        service.baseAggregateMeasureColumns.add("NO_OF_SUCCESSES");
+        service.baseAggregateMeasureColumns.add("NO_OF_ERRORS");
+        service.queryResult = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\",\"2\":\"3\",\"3\":\"1\"}]}";
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        final String result = service.getData(new MultivaluedMapImpl());
+        assertThat(result, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\",\"2\":\"75.00\"}]}"));
+        assertThat(service.queryLoadBalancingPolicy, is(reader));
+    }
+
+    @Test
+    public void testInMemoryKPIServiceReturnsErrorOfBaseAggregateQuery() {
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(null));
+        service.inMemoryKPIs.add(new RatioKPI("SUCCESS_RATE", new String[] { "NO_OF_SUCCESSES" }, new String[] { "NO_OF_ERRORS" }, 100));
+        service.queryResult = JSON_ERROR_RESULT_PREFIX + "\"Query failed\"}";
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        assertThat(service.getData(new MultivaluedMapImpl()), is(service.queryResult));
+    }
+
+    @Test
+    public void testCachedResultIsReturnedGzippedToClientsAcceptingGzip() {
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(null));
+        service.setResultCache(new ResultCache());
+        service.resultCacheTimeToLiveInSeconds = 60;
+        service.queryResult = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\"}]}";
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        final ServiceResult firstResult = service.getResult(ServiceRequest.fromParameters(new MultivaluedMapImpl()).withAcceptsGzip(true));
+        assertThat(firstResult.getGzippedResult(), is(nullValue()));
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        final ServiceResult cachedResult = service.getResult(ServiceRequest.fromParameters(new MultivaluedMapImpl()).withAcceptsGzip(true));
+        assertThat(cachedResult.getResult(), is(service.queryResult));
+        assertThat(ResultCache.decompress(cachedResult.getGzippedResult()), is(service.queryResult));
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        assertThat(service.getData(ServiceRequest.fromParameters(new MultivaluedMapImpl()).withAcceptsGzip(true)), is(service.queryResult));
+    }
+
+    @Test
+    public void testQueryIsNotRunWhenClientHasResultForCurrentLoadWatermark() {
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(null));
+        final LoadWatermarkService loadWatermarkService = new LoadWatermarkService();
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_ERR_RAW", 1000);
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_SUC_RAW", 1000);
+        service.setLoadWatermarkService(loadWatermarkService);
+        expectRawTimeRange();
+        service.queryResult = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\"}]}";
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY, createRawTechPacks());
+        final ServiceResult firstResult = service.getResult(ServiceRequest.fromParameters(new MultivaluedMapImpl()));
+        assertThat(firstResult.getResult(), is(service.queryResult));
+        final String eTag = firstResult.getETag();
+        assertThat(eTag, is(notNullValue()));
+
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY, createRawTechPacks());
+        final ServiceResult revalidation = service.getResult(ServiceRequest.fromParameters(new MultivaluedMapImpl()).withIfNoneMatch(
+                '"' + eTag + '"'));
+        assertThat(revalidation.getResult(), is(EMPTY_JSON_SUCCESS_RESULT));
+        assertThat(revalidation.getETag(), is(eTag));
+        assertThat(service.queriesRun, is(1));
+
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_SUC_RAW", 2000);
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY, createRawTechPacks());
+        final ServiceResult afterLoad = service.getResult(ServiceRequest.fromParameters(new MultivaluedMapImpl()).withIfNoneMatch(
+                '"' + eTag + '"'));
+        assertThat(afterLoad.getResult(), is(service.queryResult));
+        assertThat(afterLoad.getETag(), is(not(equalTo(eTag))));
+        assertThat(service.queriesRun, is(2));
+
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY, createRawTechPacks());
+        assertThat(service.getData(ServiceRequest.fromParameters(new MultivaluedMapImpl()).withIfNoneMatch('"' + afterLoad.getETag() + '"')),
+                is(service.queryResult));
+    }
+
+    @Test
+    public void testNoETagWhenTablesHaveNoRecordedLoad() {
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(null));
+        final LoadWatermarkService loadWatermarkService = new LoadWatermarkService();
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_SUC_RAW", 1000);
+        service.setLoadWatermarkService(loadWatermarkService);
+        expectRawTimeRange();
+        service.queryResult = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\"}]}";
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY, createRawTechPacks());
+        final ServiceResult result = service.getResult(ServiceRequest.fromParameters(new MultivaluedMapImpl()).withIfNoneMatch("*"));
+        assertThat(result.getResult(), is(service.queryResult));
+        assertThat(result.getETag(), is(nullValue()));
+    }
+
+    @Test
+    public void testEmptyResultWithoutTableDiscoveryWhenRawDataIsKnownToBeMissing() {
+        final RawTableAvailabilityIndex rawTableAvailabilityIndex = new RawTableAvailabilityIndex();
+        for (final String techPack : applicableTechPacks) {
+            rawTableAvailabilityIndex.replacePartitions(techPack, Collections.singletonList(new RawPartition(techPack + "_ERR_RAW_01",
+                    RawTableAvailabilityIndex.parseDateTime("2014-01-02 00:00"), 0)));
+        }
+        service.setRawTableAvailabilityIndex(rawTableAvailabilityIndex);
+        expectRawTimeRange("2014-01-01 10:00", "2014-01-01 11:00");
+        expectCallOnParameterChecker();
+        expectCallOnTechPackLicensingService(applicableTechPacks, applicableTechPacks);
+        assertThat(service.getData(new MultivaluedMapImpl()), is(EMPTY_JSON_SUCCESS_RESULT));
+        assertThat(rawTableAvailabilityIndex.getNoRawDataAnswerCount(), is(1L));
+        assertThat(service.queriesRun, is(0));
+    }
+
+    @Test
+    public void testEmptyResultWithoutTableDiscoveryWhenIMSIIsKnownToBeAbsent() {
+        final RawTableAvailabilityIndex rawTableAvailabilityIndex = new RawTableAvailabilityIndex();
+        for (final String techPack : applicableTechPacks) {
+            rawTableAvailabilityIndex.replacePartitions(techPack, Collections.singletonList(new RawPartition(techPack + "_ERR_RAW_01",
+                    RawTableAvailabilityIndex.parseDateTime("2014-01-01 00:00"), 0)));
+        }
+        final DataService dataService = mockery.mock(DataService.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(dataService).getData(with(any(String.class)), with(any(Map.class)), with(any(ResultSetTransformer.class)));
+                will(returnValue(0L));
+            }
+        });
+        final File filterDirectory = new File(System.getProperty("java.io.tmpdir"), "GenericServiceTest" + System.nanoTime());
+        final IMSIExistenceIndex imsiExistenceIndex = new IMSIExistenceIndex();
+        imsiExistenceIndex.setFilterDirectory(filterDirectory);
+        imsiExistenceIndex.setExpectedIMSIsPerDay(1000);
+        imsiExistenceIndex.setDaysToLoad(3);
+        imsiExistenceIndex.setDataService(dataService);
+        imsiExistenceIndex.setRawTableAvailabilityIndex(rawTableAvailabilityIndex);
+        imsiExistenceIndex.setTechPacks(applicableTechPacks.toArray(new String[applicableTechPacks.size()]));
+        imsiExistenceIndex.refresh();
+        service.setIMSIExistenceIndex(imsiExistenceIndex);
+        final long threeDaysAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(3);
+        expectRawTimeRange(RawTableAvailabilityIndex.formatDateTime(threeDaysAgo), RawTableAvailabilityIndex.formatDateTime(threeDaysAgo + 60000));
+        expectCallOnParameterChecker();
+        expectCallOnTechPackLicensingService(applicableTechPacks, applicableTechPacks);
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.putSingle(TYPE_PARAM, ServiceQueryType.IMSI.name());
+        parameters.putSingle(IMSI_PARAM, "240991234567890");
+        try {
+            assertThat(service.getData(parameters), is(EMPTY_JSON_SUCCESS_RESULT));
+            assertThat(imsiExistenceIndex.getAbsentIMSIAnswerCount(), is(1L));
+            assertThat(service.queriesRun, is(0));
+        } finally {
+            for (final String techPack : applicableTechPacks) {
+                imsiExistenceIndex.clearTechPack(techPack);
+            }
+            filterDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testDataTieredLegsAreRunSeparatelyAndMergedByKey() {
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(null));
+        service.splitDataTieredQuery = true;
+        final DataTieringHandler dataTieredViewHandler = mockery.mock(DataTieringHandler.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(dataTieredViewHandler).appplyLatencyForDataTiering(with(any(FormattedDateTimeRange.class)),
+                        with(any(boolean.class)), with(any(List.class)), with(any(MultivaluedMap.class)));
+                will(returnValue(false));
+                allowing(dataTieredViewHandler).useDataTieringView(with(any(FormattedDateTimeRange.class)),
+                        with(any(boolean.class)), with(any(Collection.class)));
+                will(returnValue(true));
+            }
+        });
+        service.setDataTieringHandler(dataTieredViewHandler);
+        service.legResults.add("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\",\"2\":\"3\",\"3\":\"\"}]}");
+        service.legResults.add("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\",\"2\":\"\",\"3\":\"1\"}]}");
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        expectCallOnQueryGenerator(BASE_AGGREGATE_QUERY);
+        final String result = service.getData(new MultivaluedMapImpl());
+        assertThat(result, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\",\"2\":\"3\",\"3\":\"1\"}]}"));
+        assertThat(service.queriesRun, is(2));
+        assertThat(service.legsGenerated.contains(DataTieredLeg.SUCCESS.name()), is(true));
+        assertThat(service.legsGenerated.contains(DataTieredLeg.ERROR.name()), is(true));
+    }
+
+    @Test
+    public void testRowsOfExclusiveTACsAreRemovedFromResultInMemory() {
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(null));
+        service.setExclusiveTACFilter(createExclusiveTACFilter(35000001));
+        service.exclusiveTACColumn = 1;
+        service.queryResult = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"35000001\",\"2\":\"7\"},"
+                + "{\"1\":\"35000002\",\"2\":\"3\"}]}";
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        final String result = service.getData(new MultivaluedMapImpl());
+        assertThat(GridJSONParser.parseRows(result).size(), is(1));
+        assertThat(GridJSONParser.parseRows(result).get(0)[0], is("35000002"));
+    }
+
+    @Test
+    public void testRowsOfExclusiveTACsAreNotRemovedFromLimitedResult() {
+        service.setLoadBalancingPolicyService(createLoadBalancingPolicyService(null));
+        service.setExclusiveTACFilter(createExclusiveTACFilter(35000001));
+        service.exclusiveTACColumn = 1;
+        service.queryResult = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"35000002\",\"2\":\"3\"}]}";
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.putSingle(GenericService.MAX_ROWS_PARAMETER, "10");
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        // the limited query excludes exclusive TACs in SQL, so its result is returned as it is
+        assertThat(service.getData(parameters), is(service.queryResult));
+        service.maxAllowableSize = 500;
+        expectQueryToBeRun(BASE_AGGREGATE_QUERY);
+        assertThat(service.getData(new MultivaluedMapImpl()), is(service.queryResult));
+    }
+
+    private ExclusiveTACFilter createExclusiveTACFilter(final int... tacs) {
+        final IntHashSet exclusiveTACs = new IntHashSet(tacs.length);
+        for (final int tac : tacs) {
+            exclusiveTACs.add(tac);
+        }
+        final DataService dataService = mockery.mock(DataService.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(dataService).getData(with(any(String.class)), with(any(Map.class)), with(any(ResultSetTransformer.class)));
+                will(returnValue(exclusiveTACs));
+            }
+        });
+        final ExclusiveTACFilter exclusiveTACFilter = new ExclusiveTACFilter();
+        exclusiveTACFilter.setDataService(dataService);
+        exclusiveTACFilter.refresh();
+        return exclusiveTACFilter;
+    }
+
+    private void expectRawTimeRange() {
+        final DateTimeHelper dateTimeHelper = mockery.mock(DateTimeHelper.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(dateTimeHelper).translateDateTimeParameters(with(any(MultivaluedMap.class)), with(any(List.class)));
+                allowing(dateTimeHelper).getEventDataSourceType(with(any(FormattedDateTimeRange.class)));
+                will(returnValue(EventDataSourceType.RAW));
+            }
+        });
+        service.setDateTimeHelper(dateTimeHelper);
+    }
+
+    /**
+     * Expect the request to be for the raw time range between the start and end date times
+     */
+    private void expectRawTimeRange(final String startDateTime, final String endDateTime) {
+        final FormattedDateTimeRange timeRange = mockery.mock(FormattedDateTimeRange.class);
+        final DateTimeHelper dateTimeHelper = mockery.mock(DateTimeHelper.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(timeRange).getStartDateTime();
+                will(returnValue(startDateTime));
+                allowing(timeRange).getEndDateTime();
+                will(returnValue(endDateTime));
+                allowing(dateTimeHelper).translateDateTimeParameters(with(any(MultivaluedMap.class)), with(any(List.class)));
+                will(returnValue(timeRange));
+                allowing(dateTimeHelper).getEventDataSourceType(with(any(FormattedDateTimeRange.class)));
+                will(returnValue(EventDataSourceType.RAW));
+            }
+        });
+        service.setDateTimeHelper(dateTimeHelper);
+    }
+
+    private List<TechPackRepresentation> createRawTechPacks() {
+        final TechPackRepresentation techPack = new TechPackRepresentation(EVENT_E_SGEH);
+        techPack.setErrRawTables(Collections.singletonList("EVENT_E_SGEH_ERR_RAW"));
+        techPack.setSucRawTables(Collections.singletonList("EVENT_E_SGEH_SUC_RAW"));
+        return Collections.singletonList(techPack);
+    }
+
+    private LoadBalancingPolicyService createLoadBalancingPolicyService(final LoadBalancingPolicy loadBalancingPolicy) {
+        return new LoadBalancingPolicyService() {
+            @Override
+            public LoadBalancingPolicy getLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters) {
+                return loadBalancingPolicy;
+            }
+        };
+    }
+
+    /**
+     * Expect a request to pass validation, licensing and tech pack resolution against raw tables, and the query to be generated
+     */
+    private void expectQueryToBeRun(final String query) {
+        expectQueryToBeRun(query, null);
+    }
+
+    /**
+     * Expect the query to be run against the tech packs, which default if null
+     */
+    private void expectQueryToBeRun(final String query, final List<TechPackRepresentation> techPacks) {
+        expectCallOnParameterChecker();
+        expectCallOnTechPackLicensingService(applicableTechPacks, applicableTechPacks);
+        final TechPackList mockedTechPackList = mockery.mock(TechPackList.class);
+        mockery.checking(new Expectations() {
+            {
+                one(techPackListFactory).createTechPackList(with(equal(applicableTechPacks)),
+                        with(any(FormattedDateTimeRange.class)), with(equal((AggregationTableInfo) null)));
+                will(returnValue(mockedTechPackList));
+                allowing(mockedTechPackList).hasRawTables();
+                will(returnValue(true));
+                allowing(mockedTechPackList).shouldQueryUseAggregationTables();
+                will(returnValue(false));
+                allowing(mockedTechPackList).getTechPacks();
+                if (techPacks != null) {
+                    will(returnValue(techPacks));
+                }
+                allowing(queryUtils).getQueryParameters(with(any(MultivaluedMap.class)), with(any(FormattedDateTimeRange.class)),
+                        with(any(String.class)));
+                will(returnValue(new HashMap<String, QueryParameter>()));
+            }
+        });
+        expectCallOnQueryGenerator(query);
+    }
+
     @Test
     public void testshouldReportErrorAboutRawTablesIsFalseWhenRawTablesAreRequiredAndFound() {
         areRawTablesRequiredForAllQueries = true;
@@ -322,21 +681,87 @@ public class GenericServiceTest extends BaseJMockUnitTest {
 
     class StubbedGenericService extends GenericService {
 
+        String queryResult;
+
+        LoadBalancingPolicy queryLoadBalancingPolicy;
+
+        final List<InMemoryKPI> inMemoryKPIs = new ArrayList<InMemoryKPI>();
+
+        final List<String> baseAggregateMeasureColumns = new ArrayList<String>();
+
+        int resultCacheTimeToLiveInSeconds;
+
+        int exclusiveTACColumn;
+
+        int maxAllowableSize;
+
+        int queriesRun;
+
+        boolean splitDataTieredQuery;
+
+        final List<String> legResults = new ArrayList<String>();
+
+        final List<Object> legsGenerated = new ArrayList<Object>();
+
+        @Override
+        protected boolean splitDataTieredQuery(final MultivaluedMap<String, String> parameters) {
+            return splitDataTieredQuery;
+        }
+
+        @Override
+        public boolean isDataTieredService(final MultivaluedMap<String, String> parameters) {
+            return splitDataTieredQuery;
+        }
+
+        @Override
+        protected int getResultCacheTimeToLiveInSeconds(final MultivaluedMap<String, String> parameters) {
+            return resultCacheTimeToLiveInSeconds;
+        }
+
+        @Override
+        protected int getExclusiveTACColumn(final MultivaluedMap<String, String> requestParameters) {
+            return exclusiveTACColumn;
+        }
+
         /* (non-Javadoc)
          * @see com.ericsson.eniq.events.server.serviceprovider.impl.GenericService#runQuery(java.lang.String, java.lang.String, java.util.Map, com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy, java.util.Map)
          */
         @Override
-        public String runQuery(final String query, final String requestId,
+        public synchronized String runQuery(final String query, final String requestId,
                 final Map<String, QueryParameter> queryParameters, final LoadBalancingPolicy loadBalancingPolicy,
                 final Map<String, Object> serviceSpecificDataServiceParameters) {
-            return null;
+            queryLoadBalancingPolicy = loadBalancingPolicy;
+            queriesRun++;
+            return legResults.isEmpty() ? queryResult : legResults.remove(0);
+        }
+
+        @Override
+        public List<InMemoryKPI> getInMemoryKPIList() {
+            return inMemoryKPIs;
+        }
+
+        @Override
+        protected List<String> getBaseAggregateMeasureColumns() {
+            return baseAggregateMeasureColumns;
         }
 
         @Override
         public Map<String, Object> getServiceSpecificTemplateParameters(
                 final MultivaluedMap<String, String> requestParameters, final FormattedDateTimeRange dateTimeRange,
                 final TechPackList techPackList) {
-            return null;
+            if (!splitDataTieredQuery) {
+                return null;
+            }
+            // records the leg each data tiered query is generated for
+            return new HashMap<String, Object>() {
+                @Override
+                public Object put(final String key, final Object value) {
+                    if (DataTieredLeg.TEMPLATE_PARAMETER.equals(key)) {
+                        legsGenerated.add(value);
+                    }
+                    return super.put(key, value);
+                }
+            };
         }
 
         /* (non-Javadoc)
@@ -398,7 +823,7 @@ public class GenericServiceTest extends BaseJMockUnitTest {
          */
         @Override
         public int getMaxAllowableSize() {
-            return 0;
+            return maxAllowableSize;
         }
 
         /* (non-Javadoc)
@@ -423,8 +848,7 @@ public class GenericServiceTest extends BaseJMockUnitTest {
         @Override
         public Map<String, QueryParameter> getServiceSpecificQueryParameters(
                 final MultivaluedMap<String, String> requestParameters) {
-            // TODO Auto-generated method stub
-            return null;
+            return new HashMap<String, QueryParameter>();
         }
 
         /* (non-Javadoc)
@@ -0,0 +1,244 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+
+import java.util.*;
+import java.util.logging.Level;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+import com.ericsson.eniq.events.server.common.TechPackList;
+import com.ericsson.eniq.events.server.common.tablesandviews.AggregationTableInfo;
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+import com.ericsson.eniq.events.server.logging.performance.ServicePerformanceTraceLogger;
+import com.ericsson.eniq.events.server.query.QueryParameter;
+import com.ericsson.eniq.events.server.services.DataService;
+import com.ericsson.eniq.events.server.services.StreamingDataService;
+import com.ericsson.eniq.events.server.services.datatiering.DataTieringHandler;
+import com.ericsson.eniq.events.server.utils.*;
+import com.ericsson.eniq.events.server.utils.datetime.DateTimeHelper;
+import com.ericsson.eniq.events.server.utils.parameterchecking.ParameterChecker;
+import com.ericsson.eniq.events.server.utils.parameterchecking.RequiredParameters;
+import com.ericsson.eniq.events.server.utils.techpacks.TechPackLicensingService;
+
+/**
+ * A {@link GenericService} for load testing the services layer outside the container.
+ * <p/>
+ * The request pipeline of {@link GenericService} runs as in production, with the singletons the load test injects (see
+ * {@link com.ericsson.eniq.events.server.loadtest.ServiceSingletons}). The collaborators that need the database, the
+ * tech pack catalogue or the query templates are replaced by fixed answers:
+ * <li>the parameter checker accepts every request</li>
+ * <li>the date time helper and data tiering handler give no time range, and the 15 minute aggregation</li>
+ * <li>the query parameters are empty</li>
+ * <li>there is no tech pack list, and the query is generated from the template path and the request parameters
+ * rather than from a template (createTechPackList() and getQuery() are overridden)</li>
+ * So the figures do not include parameter checking, tech pack resolution or template rendering. The data service is
+ * whatever the load test supplies, typically a synthetic one.
+ */
+public class LoadTestGenericService extends GenericService {
+
+    private final String templatePath;
+
+    private int resultCacheTimeToLiveInSeconds;
+
+    /**
+     * @param templatePath
+     *            template path reported for the service's queries
+     * @param dataService
+     *            data service answering JSON queries
+     * @param streamingDataService
+     *            data service answering CSV queries
+     */
+    public LoadTestGenericService(final String templatePath, final DataService dataService, final StreamingDataService streamingDataService) {
+        this.templatePath = templatePath;
+        setDataService(dataService);
+        setStreamingDataService(streamingDataService);
+        setAuditService(new AuditService() {
+            @Override
+            public void logAuditEntryForQuery(final MultivaluedMap<String, String> parameters, final String query,
+                                              final Map<String, QueryParameter> queryParameters) {
+            }
+
+            @Override
+            public void logAuditEntryForURI(final MultivaluedMap<String, String> parameters) {
+            }
+        });
+        setPerformanceTrace(new ServicePerformanceTraceLogger() {
+            @Override
+            public void detailed(final Level level, final String message) {
+            }
+        });
+        setLoadBalancingPolicyService(new LoadBalancingPolicyService() {
+            @Override
+            public LoadBalancingPolicy getLoadBalancingPolicy(final MultivaluedMap<String, String> parameters) {
+                return null;
+            }
+        });
+        setParameterChecker(new ParameterChecker() {
+            @Override
+            public String performValidityChecking(final RequiredParameters requiredParameters, final MultivaluedMap<String, String> parameters,
+                                                  final List<String> techPacks) {
+                return "";
+            }
+        });
+        setDataTieringHandler(new DataTieringHandler() {
+            @Override
+            public boolean appplyLatencyForDataTiering(final FormattedDateTimeRange formattedDateTimeRange, final boolean isDataTieredService,
+                                                       final List<String> techPacks, final MultivaluedMap<String, String> parameters) {
+                return false;
+            }
+        });
+        setTechPackLicensingService(new TechPackLicensingService() {
+            @Override
+            public List<String> getLicensedTechPacks(final List<String> applicableTechPacks) {
+                return applicableTechPacks;
+            }
+        });
+        setQueryUtils(new QueryUtils() {
+            @Override
+            public Map<String, QueryParameter> getQueryParameters(final MultivaluedMap<String, String> parameters,
+                                                                  final FormattedDateTimeRange formattedDateTimeRange, final String template) {
+                return new HashMap<String, QueryParameter>();
+            }
+        });
+        setDateTimeHelper(new DateTimeHelper() {
+            @Override
+            public FormattedDateTimeRange translateDateTimeParameters(final MultivaluedMap<String, String> parameters,
+                                                                      final List<String> licensedTechPacks) {
+                return null;
+            }
+
+            @Override
+            public EventDataSourceType getEventDataSourceType(final FormattedDateTimeRange formattedDateTimeRange) {
+                return EventDataSourceType.AGGREGATED_15MIN;
+            }
+        });
+        setCsvResponseBuilder(new CSVResponseBuilder() {
+            @Override
+            public Response buildHttpResponseForCSVData() {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @param resultCacheTimeToLiveInSeconds
+     *            how long results are cached, 0 (the default) to run every query
+     */
+    public void setResultCacheTimeToLiveInSeconds(final int resultCacheTimeToLiveInSeconds) {
+        this.resultCacheTimeToLiveInSeconds = resultCacheTimeToLiveInSeconds;
+    }
+
+    @Override
+    protected int getResultCacheTimeToLiveInSeconds(final MultivaluedMap<String, String> parameters) {
+        return resultCacheTimeToLiveInSeconds;
+    }
+
+    @Override
+    protected TechPackList createTechPackList(final FormattedDateTimeRange formattedDateTimeRange,
+                                              final MultivaluedMap<String, String> requestParameters) {
+        return null;
+    }
+
+    @Override
+    boolean shouldReportErrorAboutRawTables(final TechPackList techPackList) {
+        return false;
+    }
+
+    @Override
+    protected String getQuery(final MultivaluedMap<String, String> parameters, final FormattedDateTimeRange formattedDateTimeRange,
+                              final TechPackList techPackList) {
+        return "select * from " + templatePath + " where " + new TreeMap<String, List<String>>(parameters);
+    }
+
+    @Override
+    public String getTemplatePath() {
+        return templatePath;
+    }
+
+    @Override
+    public Map<String, Object> getServiceSpecificTemplateParameters(final MultivaluedMap<String, String> requestParameters,
+                                                                    final FormattedDateTimeRange dateTimeRange, final TechPackList techPackList) {
+        return new HashMap<String, Object>();
+    }
+
+    @Override
+    public Map<String, Object> getServiceSpecificDataServiceParameters(final MultivaluedMap<String, String> requestParameters) {
+        final Map<String, Object> dataServiceParameters = new HashMap<String, Object>();
+        dataServiceParameters.put(TZ_OFFSET, requestParameters.getFirst(TZ_OFFSET));
+        return dataServiceParameters;
+    }
+
+    @Override
+    public Map<String, QueryParameter> getServiceSpecificQueryParameters(final MultivaluedMap<String, String> requestParameters) {
+        return new HashMap<String, QueryParameter>();
+    }
+
+    @Override
+    public List<String> getRequiredParametersForQuery() {
+        return new ArrayList<String>();
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getStaticParameters() {
+        return null;
+    }
+
+    @Override
+    public String getDrillDownTypeForService(final MultivaluedMap<String, String> requestParameters) {
+        return null;
+    }
+
+    @Override
+    public AggregationTableInfo getAggregationView(final String type) {
+        return null;
+    }
+
+    @Override
+    public List<String> getApplicableTechPacks(final MultivaluedMap<String, String> requestParameters) {
+        return Arrays.asList("EVENT_E_SGEH");
+    }
+
+    @Override
+    public boolean areRawTablesRequiredForAggregationQueries() {
+        return false;
+    }
+
+    @Override
+    public int getMaxAllowableSize() {
+        return 0;
+    }
+
+    @Override
+    public boolean requiredToCheckValidParameterValue(final MultivaluedMap<String, String> requestParameters) {
+        return false;
+    }
+
+    @Override
+    public String getTableSuffixKey() {
+        return null;
+    }
+
+    @Override
+    public List<String> getMeasurementTypes() {
+        return null;
+    }
+
+    @Override
+    public List<String> getRawTableKeys() {
+        return null;
+    }
+}
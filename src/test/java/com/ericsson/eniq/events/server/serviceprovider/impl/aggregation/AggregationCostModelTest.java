@@ -0,0 +1,96 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.aggregation;
+
+import static com.ericsson.eniq.events.server.common.TechPackData.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+
+public class AggregationCostModelTest {
+
+    private static final long ONE_DAY_IN_MINUTES = 1440;
+
+    private final List<String> techPacks = Arrays.asList(EVENT_E_SGEH);
+
+    private AggregationCostModel costModel;
+
+    @Before
+    public void setup() {
+        costModel = new AggregationCostModel();
+        costModel.setMaxRowsToScan(1000000);
+        costModel.setRowsPerInterval(EVENT_E_SGEH, EventDataSourceType.AGGREGATED_1MIN, 1000);
+        costModel.setRowsPerInterval(EVENT_E_SGEH, EventDataSourceType.AGGREGATED_15MIN, 5000);
+        costModel.setRowsPerInterval(EVENT_E_SGEH, EventDataSourceType.AGGREGATED_DAY, 50000);
+    }
+
+    @Test
+    public void testDefaultLevelIsKeptWhenWithinBudget() {
+        final AggregationLevelDecision decision = costModel.selectAggregation(EventDataSourceType.AGGREGATED_1MIN,
+                EventDataSourceType.AGGREGATED_DAY, 60, techPacks, false);
+        assertThat(decision.getAggregation(), is(EventDataSourceType.AGGREGATED_1MIN));
+        assertThat(decision.isCoarserThanDefault(), is(false));
+    }
+
+    @Test
+    public void testFinestLevelWithinBudgetIsSelected() {
+        final AggregationLevelDecision decision = costModel.selectAggregation(EventDataSourceType.AGGREGATED_1MIN,
+                EventDataSourceType.AGGREGATED_DAY, ONE_DAY_IN_MINUTES, techPacks, false);
+        assertThat(decision.getAggregation(), is(EventDataSourceType.AGGREGATED_15MIN));
+        assertThat(decision.isCoarserThanDefault(), is(true));
+        assertThat(decision.getEstimatedRowsScanned(), is(96 * 5000L));
+    }
+
+    @Test
+    public void testLevelIsNeverCoarserThanServiceAccepts() {
+        costModel.setMaxRowsToScan(1);
+        final AggregationLevelDecision decision = costModel.selectAggregation(EventDataSourceType.AGGREGATED_1MIN,
+                EventDataSourceType.AGGREGATED_15MIN, ONE_DAY_IN_MINUTES, techPacks, true);
+        assertThat(decision.getAggregation(), is(EventDataSourceType.AGGREGATED_15MIN));
+    }
+
+    @Test
+    public void testCoarserLevelIsSelectedWhenReadersAreSaturated() {
+        final AggregationLevelDecision decision = costModel.selectAggregation(EventDataSourceType.AGGREGATED_1MIN,
+                EventDataSourceType.AGGREGATED_DAY, 60, techPacks, true);
+        assertThat(decision.getAggregation(), is(EventDataSourceType.AGGREGATED_15MIN));
+        assertThat(decision.isCoarserThanDefault(), is(true));
+    }
+
+    @Test
+    public void testObservedRowsPerIntervalAreUsedWhenNotSetExplicitly() {
+        final RowStatistics rowStatistics = new RowStatistics() {
+            @Override
+            public long getRowsPerInterval(final String techPack, final EventDataSourceType aggregation) {
+                return aggregation == EventDataSourceType.AGGREGATED_15MIN ? 100 : -1;
+            }
+        };
+        final List<String> lteTechPacks = Arrays.asList(EVENT_E_LTE);
+        final AggregationLevelDecision decision = costModel.selectAggregation(EventDataSourceType.AGGREGATED_1MIN,
+                EventDataSourceType.AGGREGATED_DAY, ONE_DAY_IN_MINUTES, lteTechPacks, false, rowStatistics);
+        assertThat(decision.getAggregation(), is(EventDataSourceType.AGGREGATED_15MIN));
+        assertThat(decision.getEstimatedRowsScanned(), is(96 * 100L));
+    }
+
+    @Test
+    public void testDefaultRowsPerIntervalIsUsedWithoutStatistics() {
+        assertThat(costModel.estimateRowsScanned(EventDataSourceType.AGGREGATED_15MIN, 30, Arrays.asList(EVENT_E_LTE)),
+                is(2 * AggregationCostModel.DEFAULT_ROWS_PER_INTERVAL));
+    }
+}
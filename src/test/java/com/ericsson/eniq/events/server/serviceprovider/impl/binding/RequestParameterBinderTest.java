@@ -0,0 +1,77 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.binding;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+import com.ericsson.eniq.events.server.query.QueryParameter;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class RequestParameterBinderTest {
+
+    private RequestParameterBinder binder;
+
+    @Before
+    public void setup() {
+        final Map<String, BindParameterType> boundParameters = new HashMap<String, BindParameterType>();
+        boundParameters.put("imsi", BindParameterType.LONG);
+        boundParameters.put("node", BindParameterType.STRING);
+        binder = new RequestParameterBinder(boundParameters);
+    }
+
+    @Test
+    public void testTemplateParametersAreTheSameForEveryValue() {
+        final MultivaluedMap<String, String> first = createParameters("460000123456789", "RNC01");
+        final MultivaluedMap<String, String> second = createParameters("460000987654321", "RNC02");
+        assertThat(binder.getTemplateParameters(first), is(binder.getTemplateParameters(second)));
+        assertThat(binder.getTemplateParameters(first).getFirst("imsi"), is(":imsi"));
+        assertThat(binder.getTemplateParameters(first).getFirst("display"), is("grid"));
+    }
+
+    @Test
+    public void testBoundValuesArePassedAsTypedQueryParameters() {
+        final Map<String, QueryParameter> queryParameters = binder.getQueryParameters(createParameters("460000123456789", "RNC01"));
+        assertThat(queryParameters.size(), is(2));
+        assertThat(queryParameters.get("imsi").getValue(), is((Object) 460000123456789L));
+        assertThat(queryParameters.get("node").getValue(), is((Object) "RNC01"));
+    }
+
+    @Test
+    public void testEachValueOfMultiValuedParameterGetsItsOwnPlaceholder() {
+        final MultivaluedMap<String, String> parameters = createParameters("460000123456789", "RNC01");
+        parameters.add("node", "RNC02");
+        assertThat(binder.getTemplateParameters(parameters).get("node"), is(Arrays.asList(":node_0", ":node_1")));
+        assertThat(binder.getQueryParameters(parameters).get("node_1").getValue(), is((Object) "RNC02"));
+    }
+
+    @Test(expected = ServiceException.class)
+    public void testNonNumericValueOfNumericParameterIsRejected() {
+        binder.getQueryParameters(createParameters("1 OR 1=1", "RNC01"));
+    }
+
+    private MultivaluedMap<String, String> createParameters(final String imsi, final String node) {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.putSingle("imsi", imsi);
+        parameters.putSingle("node", node);
+        parameters.putSingle("display", "grid");
+        return parameters;
+    }
+}
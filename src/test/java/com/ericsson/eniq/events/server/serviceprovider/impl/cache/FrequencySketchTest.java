@@ -0,0 +1,50 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testCountersSaturateAtFifteen() {
+        final FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("popular");
+        }
+        sketch.increment("other");
+        assertThat(sketch.frequency("popular"), is(15));
+        assertThat(sketch.frequency("other"), is(1));
+        assertThat(sketch.frequency("unknown"), is(0));
+    }
+
+    @Test
+    public void testCountersAreHalvedAfterSample() {
+        final FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 6; i++) {
+            sketch.increment("popular");
+        }
+        for (int i = 0; i < 16 * 10 - 6; i++) {
+            sketch.increment("key" + i);
+        }
+        assertThat(sketch.frequency("popular") <= 3 + 15 / 2, is(true));
+        assertThat(sketch.frequency("popular") >= 3, is(true));
+    }
+
+    @Test
+    public void testCountersTakeHalfAByte() {
+        assertThat(new FrequencySketch(1024).getSizeInBytes(), is(4 * 1024 / 2));
+    }
+}
@@ -0,0 +1,117 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapResultStoreTest {
+
+    private static final long ONE_MINUTE = 60000;
+
+    private OffHeapResultStore store;
+
+    @Before
+    public void setup() {
+        store = new OffHeapResultStore(8 * OffHeapResultStore.BLOCK_SIZE);
+    }
+
+    @Test
+    public void testResultIsReturnedAfterCompression() {
+        final String result = "{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\",\"2\":\"\u00e9\"}]}";
+        assertThat(store.put("key", result, ONE_MINUTE), is(true));
+        assertThat(store.get("key"), is(result));
+        assertThat(store.get("other"), is(nullValue()));
+        assertThat(store.getHitRatio(), is(0.5));
+    }
+
+    @Test
+    public void testGzippedResultCanBeServedAsIs() throws IOException {
+        store.put("key", "result", ONE_MINUTE);
+        final GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(store.getGzipped("key")));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int read;
+        while ((read = gzip.read()) != -1) {
+            bytes.write(read);
+        }
+        assertThat(bytes.toString("UTF-8"), is("result"));
+    }
+
+    @Test
+    public void testExpiredResultIsNotReturned() {
+        store.put("key", "result", 0);
+        assertThat(store.get("key"), is(nullValue()));
+        assertThat(store.getEntryCount(), is(0));
+    }
+
+    @Test
+    public void testPopularResultIsNotEvictedByOneOffResult() {
+        final String popular = incompressible(3 * OffHeapResultStore.BLOCK_SIZE);
+        store.put("popular", popular, ONE_MINUTE);
+        for (int i = 0; i < 5; i++) {
+            store.get("popular");
+        }
+        assertThat(store.put("firstOneOff", incompressible(3 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(true));
+        assertThat(store.put("secondOneOff", incompressible(3 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(false));
+        assertThat(store.get("popular"), is(popular));
+        assertThat(store.getRejectionCount(), is(1L));
+    }
+
+    @Test
+    public void testRejectedResultDoesNotEvictAnyResult() {
+        store = new OffHeapResultStore(16 * OffHeapResultStore.BLOCK_SIZE);
+        assertThat(store.put("stale", incompressible(2 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(true));
+        assertThat(store.put("popular", incompressible(4 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(true));
+        for (int i = 0; i < 5; i++) {
+            store.get("popular");
+        }
+        assertThat(store.put("other", incompressible(4 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(true));
+        assertThat(store.put("filler", incompressible(5 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(true));
+        store.get("candidate");
+        store.get("candidate");
+        assertThat(store.put("candidate", incompressible(8 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(false));
+        assertThat(store.getEvictionCount(), is(0L));
+        assertThat(store.getEntryCount(), is(4));
+        assertThat(store.get("stale"), is(notNullValue()));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResultIsEvictedForMoreFrequentResult() {
+        store.put("first", incompressible(3 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE);
+        store.put("second", incompressible(3 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE);
+        store.get("third");
+        store.get("third");
+        assertThat(store.put("third", incompressible(3 * OffHeapResultStore.BLOCK_SIZE), ONE_MINUTE), is(true));
+        assertThat(store.get("first"), is(nullValue()));
+        assertThat(store.get("second"), is(notNullValue()));
+        assertThat(store.getEvictionCount(), is(1L));
+        assertThat(store.getUsedBytes() <= store.getMaxBytes(), is(true));
+    }
+
+    private String incompressible(final int length) {
+        final Random random = new Random(length);
+        final StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value.append((char) ('!' + random.nextInt(90)));
+        }
+        return value.toString();
+    }
+}
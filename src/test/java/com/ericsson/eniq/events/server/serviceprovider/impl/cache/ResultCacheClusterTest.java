@@ -0,0 +1,168 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.cache;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs three cache cluster members on the loopback interface
+ */
+public class ResultCacheClusterTest {
+
+    private static final String RESULT = "{\"success\":\"true\",\"data\":[{\"1\":\"RNC01\",\"2\":\"42\"}]}";
+
+    private static final int MEMBERS = 3;
+
+    private static final byte[] SECRET = "cluster secret".getBytes();
+
+    private final List<ResultCache> caches = new ArrayList<ResultCache>();
+
+    private final List<InetSocketAddress> members = new ArrayList<InetSocketAddress>();
+
+    @Before
+    public void setup() throws IOException {
+        for (int i = 0; i < MEMBERS; i++) {
+            members.add(new InetSocketAddress("127.0.0.1", getFreePort()));
+        }
+        for (int i = 0; i < MEMBERS; i++) {
+            final ResultCache cache = new ResultCache();
+            cache.startCluster(members.get(i), members, SECRET);
+            caches.add(cache);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (final ResultCache cache : caches) {
+            cache.stopCluster();
+        }
+    }
+
+    @Test
+    public void testResultCachedOnOneMemberIsHitOnEveryMember() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            caches.get(i % MEMBERS).put("key" + i, RESULT, 60);
+        }
+        for (int i = 0; i < 20; i++) {
+            final String key = "key" + i;
+            for (final ResultCache cache : caches) {
+                assertThat(waitForResult(cache, key), is(RESULT));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidationIsBroadcastToEveryMember() throws Exception {
+        caches.get(0).put("key", RESULT, 60);
+        for (final ResultCache cache : caches) {
+            assertThat(waitForResult(cache, "key"), is(RESULT));
+        }
+        caches.get(1).invalidateAll();
+        for (final ResultCache cache : caches) {
+            assertThat(waitForInvalidation(cache, "key"), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void testConnectionsToMembersAreReused() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            caches.get(0).put("key" + i, RESULT, 60);
+        }
+        for (int i = 0; i < 20; i++) {
+            for (final ResultCache cache : caches) {
+                assertThat(waitForResult(cache, "key" + i), is(RESULT));
+            }
+        }
+        for (final ResultCache cache : caches) {
+            assertThat(cache.getCluster().getOpenedConnectionCount() <= MEMBERS - 1, is(true));
+        }
+    }
+
+    @Test
+    public void testMemberWithoutTheSecretIsRefused() throws Exception {
+        final ResultCache intruder = new ResultCache();
+        final List<InetSocketAddress> intruderMembers = new ArrayList<InetSocketAddress>(members);
+        intruderMembers.add(new InetSocketAddress("127.0.0.1", getFreePort()));
+        intruder.startCluster(intruderMembers.get(MEMBERS), intruderMembers, "wrong secret".getBytes());
+        try {
+            int i = 0;
+            while (!members.contains(intruder.getCluster().getOwner("key" + i))) {
+                i++;
+            }
+            for (final ResultCache cache : caches) {
+                cache.put("key" + i, RESULT, 60);
+            }
+            assertThat(intruder.get("key" + i), is(nullValue()));
+            assertThat(intruder.getCluster().getOpenedConnectionCount(), is(0L));
+        } finally {
+            intruder.stopCluster();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testFrameLargerThanTheLimitIsRejectedBeforeItIsRead() throws IOException {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        new DataOutputStream(frame).writeInt(Integer.MAX_VALUE);
+        ResultCacheCluster.readBytes(new DataInputStream(new ByteArrayInputStream(frame.toByteArray())), ResultCacheCluster.MAX_KEY_BYTES);
+    }
+
+    @Test(expected = IOException.class)
+    public void testClusterIsNotBoundOnEveryInterface() throws IOException {
+        final InetSocketAddress wildcard = new InetSocketAddress(getFreePort());
+        final List<InetSocketAddress> wildcardMembers = new ArrayList<InetSocketAddress>(members);
+        wildcardMembers.add(wildcard);
+        new ResultCache().startCluster(wildcard, wildcardMembers, SECRET);
+    }
+
+    /**
+     * Results are replicated to their owner in the background
+     */
+    private String waitForResult(final ResultCache cache, final String key) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        String result = cache.get(key);
+        while (result == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            result = cache.get(key);
+        }
+        return result;
+    }
+
+    private String waitForInvalidation(final ResultCache cache, final String key) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        String result = cache.get(key);
+        while (result != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            result = cache.get(key);
+        }
+        return result;
+    }
+
+    private static int getFreePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
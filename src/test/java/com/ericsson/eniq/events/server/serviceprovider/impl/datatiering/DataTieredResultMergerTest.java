@@ -0,0 +1,78 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.datatiering;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+
+public class DataTieredResultMergerTest {
+
+    private static final String FAILED_RESULT = "{\"success\":\"false\",\"errorDescription\":\"Query failed\"}";
+
+    private DataTieredResultMerger merger;
+
+    @Before
+    public void setup() {
+        merger = new DataTieredResultMerger();
+    }
+
+    @Test
+    public void testRowsWithSameKeyAreMergedPerColumn() {
+        final Map<Integer, DataTieredColumnMerge> columnMerges = new HashMap<Integer, DataTieredColumnMerge>();
+        columnMerges.put(2, DataTieredColumnMerge.SUM);
+        columnMerges.put(3, DataTieredColumnMerge.ERROR_LEG);
+        columnMerges.put(4, DataTieredColumnMerge.SUCCESS_LEG);
+        columnMerges.put(5, DataTieredColumnMerge.MAX);
+        final String success = new GridJSONBuilder().addRow("RNC01", "Ericsson", "10", "0", "98.5", "2014-01-01 10:00")
+                .addRow("RNC02", "Ericsson", "4", "0", "100", "2014-01-01 09:00").build();
+        final String error = new GridJSONBuilder().addRow("RNC01", "", "3", "3", "0", "2014-01-01 10:15")
+                .addRow("RNC03", "Ericsson", "2", "2", "0", "2014-01-01 08:00").build();
+        final String expected = new GridJSONBuilder().addRow("RNC01", "Ericsson", "13", "3", "98.5", "2014-01-01 10:15")
+                .addRow("RNC02", "Ericsson", "4", "0", "100", "2014-01-01 09:00")
+                .addRow("RNC03", "Ericsson", "2", "2", "0", "2014-01-01 08:00").build();
+        assertThat(merger.merge(success, error, 1, columnMerges), is(expected));
+    }
+
+    @Test
+    public void testUndeclaredColumnsAreNotAdded() {
+        final String success = new GridJSONBuilder().addRow("RNC01", "17").build();
+        final String error = new GridJSONBuilder().addRow("RNC01", "17").build();
+        assertThat(merger.merge(success, error, 1, Collections.<Integer, DataTieredColumnMerge> emptyMap()), is(success));
+    }
+
+    @Test
+    public void testFailedLegIsReturned() {
+        final String success = new GridJSONBuilder().addRow("RNC01", "10", "0").build();
+        final Map<Integer, DataTieredColumnMerge> columnMerges = Collections.emptyMap();
+        assertThat(merger.merge(success, FAILED_RESULT, 1, columnMerges), is(FAILED_RESULT));
+        assertThat(merger.merge(FAILED_RESULT, success, 1, columnMerges), is(FAILED_RESULT));
+    }
+
+    @Test
+    public void testCombine() {
+        assertThat(merger.combine("2", "3", DataTieredColumnMerge.SUM), is("5"));
+        assertThat(merger.combine("1.5", "2", DataTieredColumnMerge.SUM), is("3.5"));
+        assertThat(merger.combine("", "7", DataTieredColumnMerge.SUM), is("7"));
+        assertThat(merger.combine("2", "7", DataTieredColumnMerge.MIN), is("2"));
+        assertThat(merger.combine("", "Nokia", DataTieredColumnMerge.FIRST_NON_EMPTY), is("Nokia"));
+        assertThat(merger.combine("Ericsson", "Nokia", DataTieredColumnMerge.SUM), is("Ericsson"));
+    }
+}
@@ -0,0 +1,86 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.exclusivetacs;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+
+public class ExclusiveTACFilterTest {
+
+    private ExclusiveTACFilter exclusiveTACFilter;
+
+    @Before
+    public void setup() {
+        exclusiveTACFilter = new ExclusiveTACFilter();
+    }
+
+    @Test
+    public void testRowsOfExclusiveTACsAreRemoved() {
+        exclusiveTACFilter.update(tacs(35123456, 1234));
+        final String result = new GridJSONBuilder().addRow("Phone A", "35123456", "3").addRow("Phone B", "44556677", "5")
+                .addRow("Phone C", "1234", "1").build();
+        final String filteredResult = exclusiveTACFilter.filter(result, 2);
+        assertThat(filteredResult, is(new GridJSONBuilder().addRow("Phone B", "44556677", "5").build()));
+        assertThat(exclusiveTACFilter.getFilteredRowCount(), is(2L));
+    }
+
+    @Test
+    public void testResultIsUnchangedWhenItHasNoExclusiveTACs() {
+        exclusiveTACFilter.update(tacs(35123456));
+        final String result = new GridJSONBuilder().addRow("Phone B", "44556677").addRow("Phone D", "").build();
+        assertThat(exclusiveTACFilter.filter(result, 2), is(sameInstance(result)));
+    }
+
+    @Test
+    public void testResultIsUnchangedUntilExclusiveTACsAreLoaded() {
+        final String result = new GridJSONBuilder().addRow("Phone A", "35123456").build();
+        assertThat(exclusiveTACFilter.isLoaded(), is(false));
+        assertThat(exclusiveTACFilter.filter(result, 2), is(sameInstance(result)));
+    }
+
+    @Test
+    public void testVersionOnlyChangesWhenExclusiveTACsChange() {
+        exclusiveTACFilter.update(tacs(1, 2, 3));
+        final long version = exclusiveTACFilter.getVersion();
+        exclusiveTACFilter.update(tacs(3, 2, 1));
+        assertThat(exclusiveTACFilter.getVersion(), is(version));
+        exclusiveTACFilter.update(tacs(1, 2));
+        assertThat(exclusiveTACFilter.getVersion(), is(version + 1));
+        assertThat(exclusiveTACFilter.getExclusiveTACCount(), is(2));
+    }
+
+    @Test
+    public void testSetHoldsAllValuesAfterGrowing() {
+        final IntHashSet tacs = new IntHashSet(1);
+        for (int tac = 0; tac < 10000; tac += 7) {
+            tacs.add(tac);
+        }
+        assertThat(tacs.size(), is(1429));
+        assertThat(tacs.contains(0), is(true));
+        assertThat(tacs.contains(9996), is(true));
+        assertThat(tacs.contains(9997), is(false));
+        assertThat(tacs.add(14), is(false));
+    }
+
+    private static IntHashSet tacs(final int... values) {
+        final IntHashSet tacs = new IntHashSet(values.length);
+        for (final int value : values) {
+            tacs.add(value);
+        }
+        return tacs;
+    }
+}
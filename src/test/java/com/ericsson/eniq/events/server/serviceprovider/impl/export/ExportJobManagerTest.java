@@ -0,0 +1,140 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.export;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.ericsson.eniq.events.server.serviceprovider.ServiceRequest;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class ExportJobManagerTest {
+
+    private static final String CSV = "RNC,Failures\nRNC01,3\nRNC02,5\n";
+
+    private ExportJobManager exportJobManager;
+
+    private File exportDirectory;
+
+    @Before
+    public void setup() {
+        exportDirectory = new File(System.getProperty("java.io.tmpdir"), "ExportJobManagerTest" + System.nanoTime());
+        exportJobManager = new ExportJobManager();
+        exportJobManager.setExportDirectory(exportDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        exportJobManager.shutdown();
+        exportDirectory.delete();
+    }
+
+    @Test
+    public void testExportIsWrittenToFileAndCanBeReadInParts() throws Exception {
+        final ExportJob job = submit(new CSVService(false));
+        waitForCompletion(job);
+        assertThat(job.getState(), is(ExportJobState.COMPLETED));
+        assertThat(job.getBytesWritten(), is((long) CSV.length()));
+        assertThat(exportJobManager.getJob(job.getId()), is(job));
+        final ByteArrayOutputStream part = new ByteArrayOutputStream();
+        job.transferTo(13, 8, part);
+        assertThat(part.toString("UTF-8"), is("RNC01,3\n"));
+    }
+
+    @Test
+    public void testJobFailsWhenServiceFails() throws Exception {
+        final ExportJob job = submit(new CSVService(true));
+        waitForCompletion(job);
+        assertThat(job.getState(), is(ExportJobState.FAILED));
+    }
+
+    @Test
+    public void testJobFailsWhenServiceSendsError() throws Exception {
+        final ExportJob job = submit(new Service() {
+            @Override
+            public Response getDataAsCSV(final MultivaluedMap<String, String> serviceProviderParameters, final HttpServletResponse response) {
+                try {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "{\"success\":\"false\",\"errorDescription\":\"Invalid\"}");
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            }
+
+            @Override
+            public String getData(final MultivaluedMap<String, String> serviceProviderParameters) {
+                return null;
+            }
+        });
+        waitForCompletion(job);
+        assertThat(job.getState(), is(ExportJobState.FAILED));
+    }
+
+    @Test
+    public void testNoJobIsQueuedWhenMaximumJobsAreHeld() {
+        exportJobManager.setMaxJobs(1);
+        assertThat(submit(new CSVService(false)), is(notNullValue()));
+        assertThat(submit(new CSVService(false)), is(nullValue()));
+    }
+
+    private ExportJob submit(final Service service) {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        return exportJobManager.submit(service, ServiceRequest.fromParameters(parameters));
+    }
+
+    private void waitForCompletion(final ExportJob job) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (job.getCompletionTime() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static class CSVService implements Service {
+
+        private final boolean fail;
+
+        CSVService(final boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public Response getDataAsCSV(final MultivaluedMap<String, String> serviceProviderParameters, final HttpServletResponse response) {
+            if (fail) {
+                throw new IllegalStateException("Query failed");
+            }
+            try {
+                response.getOutputStream().write(CSV.getBytes("UTF-8"));
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public String getData(final MultivaluedMap<String, String> serviceProviderParameters) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.hedging;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+import com.ericsson.eniq.events.server.serviceprovider.impl.ParallelQueryExecutor;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryFingerprint;
+import com.ericsson.eniq.events.server.serviceprovider.impl.statistics.QueryStatisticsRegistry;
+import com.ericsson.eniq.events.server.test.common.BaseJMockUnitTest;
+
+public class HedgedQueryExecutorTest extends BaseJMockUnitTest {
+
+    private static final QueryFingerprint FINGERPRINT = new QueryFingerprint("NETWORK_EVENT_ANALYSIS", null, "RAW");
+
+    private HedgedQueryExecutor executor;
+
+    private QueryStatisticsRegistry registry;
+
+    private ParallelQueryExecutor parallelQueryExecutor;
+
+    private LoadBalancingPolicy stalledReader;
+
+    private LoadBalancingPolicy healthyReader;
+
+    private final CountDownLatch stalledQueryCancelled = new CountDownLatch(1);
+
+    private final CountDownLatch stalledQueryReturned = new CountDownLatch(1);
+
+    @Before
+    public void setup() {
+        registry = new QueryStatisticsRegistry();
+        executor = new HedgedQueryExecutor();
+        executor.setQueryStatisticsRegistry(registry);
+        parallelQueryExecutor = new ParallelQueryExecutor();
+        executor.setParallelQueryExecutor(parallelQueryExecutor);
+        executor.setMinExecutions(1);
+        executor.setBudgetPercent(100);
+        stalledReader = mockery.mock(LoadBalancingPolicy.class, "stalledReader");
+        healthyReader = mockery.mock(LoadBalancingPolicy.class, "healthyReader");
+    }
+
+    @After
+    public void tearDown() {
+        parallelQueryExecutor.shutdown();
+    }
+
+    @Test
+    public void testSlowQueryIsAnsweredByHedgeAndStalledExecutionIsCancelled() throws Exception {
+        registry.record(FINGERPRINT, TimeUnit.MILLISECONDS.toNanos(5), 1, 10, false);
+        assertThat(executor.execute(FINGERPRINT, stalledReader, healthyReader, new ReaderQuery()), is("healthyReader"));
+        assertThat(stalledQueryCancelled.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(executor.getHedgedQueries(), is(1L));
+        assertThat(executor.getHedgeWins(), is(1L));
+    }
+
+    @Test
+    public void testQueryWithoutHistoryIsNotHedged() {
+        assertThat(executor.execute(FINGERPRINT, healthyReader, stalledReader, new ReaderQuery()), is("healthyReader"));
+        assertThat(executor.getHedgedQueries(), is(0L));
+    }
+
+    @Test
+    public void testQueryIsNotHedgedWhenBudgetIsSpent() {
+        executor.setBudgetPercent(0);
+        registry.record(FINGERPRINT, 1, 1, 10, false);
+        assertThat(executor.execute(FINGERPRINT, healthyReader, stalledReader, new ReaderQuery()), is("healthyReader"));
+        assertThat(executor.getHedgedQueries(), is(0L));
+    }
+
+    @Test
+    public void testCancelledExecutionHoldsBudgetUntilItsQueryReturns() throws Exception {
+        registry.record(FINGERPRINT, TimeUnit.MILLISECONDS.toNanos(5), 1, 10, false);
+        final CountDownLatch releaseStalledQuery = new CountDownLatch(1);
+        final HedgedQuery uninterruptibleQuery = new HedgedQuery() {
+            @Override
+            public String run(final LoadBalancingPolicy loadBalancingPolicy) {
+                if (loadBalancingPolicy == stalledReader) {
+                    awaitUninterruptibly(releaseStalledQuery);
+                    stalledQueryReturned.countDown();
+                    return "stalledReader";
+                }
+                return "healthyReader";
+            }
+        };
+        assertThat(executor.execute(FINGERPRINT, stalledReader, healthyReader, uninterruptibleQuery), is("healthyReader"));
+        assertThat(executor.getCancelledExecutionsRunning(), is(1));
+        final HedgedQuery slowQuery = new HedgedQuery() {
+            @Override
+            public String run(final LoadBalancingPolicy loadBalancingPolicy) {
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return loadBalancingPolicy == stalledReader ? "stalledReader" : "healthyReader";
+            }
+        };
+        assertThat(executor.execute(FINGERPRINT, stalledReader, healthyReader, slowQuery), is("stalledReader"));
+        assertThat(executor.getHedgedQueries(), is(1L));
+
+        releaseStalledQuery.countDown();
+        assertThat(stalledQueryReturned.await(5, TimeUnit.SECONDS), is(true));
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getCancelledExecutionsRunning() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(executor.getCancelledExecutionsRunning(), is(0));
+    }
+
+    @Test
+    public void testQueryIsLeftToPrimaryExecutionWhenPoolHasNoThreadForHedge() {
+        parallelQueryExecutor.shutdown();
+        parallelQueryExecutor = new ParallelQueryExecutor(1);
+        executor.setParallelQueryExecutor(parallelQueryExecutor);
+        registry.record(FINGERPRINT, TimeUnit.MILLISECONDS.toNanos(5), 1, 10, false);
+        final HedgedQuery slowQuery = new HedgedQuery() {
+            @Override
+            public String run(final LoadBalancingPolicy loadBalancingPolicy) {
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return loadBalancingPolicy == stalledReader ? "stalledReader" : "healthyReader";
+            }
+        };
+        assertThat(executor.execute(FINGERPRINT, stalledReader, healthyReader, slowQuery), is("stalledReader"));
+        assertThat(executor.getHedgedQueries(), is(0L));
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the name of the reader it is run on; the query never returns on the stalled reader, until cancelled
+     */
+    private class ReaderQuery implements HedgedQuery {
+
+        @Override
+        public String run(final LoadBalancingPolicy loadBalancingPolicy) {
+            if (loadBalancingPolicy == stalledReader) {
+                try {
+                    Thread.sleep(60000);
+                } catch (final InterruptedException e) {
+                    stalledQueryCancelled.countDown();
+                }
+                return "stalledReader";
+            }
+            return "healthyReader";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.imsifilter;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jmock.Expectations;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.query.resultsettransformers.ResultSetTransformer;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawPartition;
+import com.ericsson.eniq.events.server.serviceprovider.impl.rawtables.RawTableAvailabilityIndex;
+import com.ericsson.eniq.events.server.services.DataService;
+import com.ericsson.eniq.events.server.test.common.BaseJMockUnitTest;
+
+public class IMSIExistenceIndexTest extends BaseJMockUnitTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static final long DAY = 24 * HOUR;
+
+    private static final long TODAY = 20000 * DAY;
+
+    private static final List<String> SGEH = Arrays.asList("EVENT_E_SGEH");
+
+    private static final long IMSI = 240991234567890L;
+
+    private IMSIExistenceIndex imsiExistenceIndex;
+
+    private RawTableAvailabilityIndex rawTableAvailabilityIndex;
+
+    private DataService dataService;
+
+    private File filterDirectory;
+
+    @Before
+    public void setup() {
+        filterDirectory = new File(System.getProperty("java.io.tmpdir"), "IMSIExistenceIndexTest" + System.nanoTime());
+        rawTableAvailabilityIndex = new RawTableAvailabilityIndex();
+        rawTableAvailabilityIndex.replacePartitions("EVENT_E_SGEH", Collections.singletonList(new RawPartition("EVENT_E_SGEH_ERR_RAW_01",
+                TODAY - 10 * DAY, 0)));
+        dataService = mockery.mock(DataService.class);
+        imsiExistenceIndex = createIndex();
+    }
+
+    @After
+    public void tearDown() {
+        imsiExistenceIndex.clearTechPack("EVENT_E_SGEH");
+        imsiExistenceIndex.clearTechPack("EVENT_E_LTE");
+        final File[] files = filterDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        filterDirectory.delete();
+    }
+
+    @Test
+    public void testIMSIIsOnlyKnownToBeAbsentWhenEveryDayHasACompleteFilter() {
+        allowQueries();
+        imsiExistenceIndex.setDaysToLoad(2);
+        imsiExistenceIndex.loadCompleteDays(TODAY + 3 * HOUR);
+        assertThat(imsiExistenceIndex.getFilterCount(), is(2));
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - 2 * DAY, TODAY), is(true));
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - DAY, TODAY + HOUR), is(false));
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - 3 * DAY, TODAY - 2 * DAY), is(false));
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(Arrays.asList("EVENT_E_SGEH", "EVENT_E_LTE"), IMSI, TODAY - DAY, TODAY),
+                is(false));
+    }
+
+    @Test
+    public void testDayIsNotLoadedUntilCompletionDelayHasPassed() {
+        allowQueries();
+        imsiExistenceIndex.setDaysToLoad(1);
+        imsiExistenceIndex.loadCompleteDays(TODAY + HOUR);
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - DAY, TODAY), is(false));
+        imsiExistenceIndex.loadCompleteDays(TODAY + 2 * HOUR);
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - DAY, TODAY), is(true));
+    }
+
+    @Test
+    public void testDayIsNotAnsweredForWhenLoadingOneOfItsPartitionsFails() {
+        rawTableAvailabilityIndex.replacePartitions("EVENT_E_SGEH", Arrays.asList(new RawPartition("EVENT_E_SGEH_ERR_RAW_01", TODAY - 10 * DAY,
+                TODAY - DAY / 2), new RawPartition("EVENT_E_SGEH_ERR_RAW_02", TODAY - DAY / 2, 0)));
+        mockery.checking(new Expectations() {
+            {
+                allowing(dataService).getData(with(equal(String.format(IMSIExistenceIndex.IMSIS_QUERY, "EVENT_E_SGEH_ERR_RAW_02"))),
+                        with(any(Map.class)), with(any(ResultSetTransformer.class)));
+                will(throwException(new RuntimeException("Connection refused")));
+            }
+        });
+        allowQueries();
+        imsiExistenceIndex.setDaysToLoad(1);
+        imsiExistenceIndex.loadCompleteDays(TODAY + 3 * HOUR);
+        assertThat(imsiExistenceIndex.getFilterCount(), is(0));
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - DAY, TODAY), is(false));
+        assertThat(new File(filterDirectory, "EVENT_E_SGEH." + (TODAY / DAY - 1) + ".bloom").exists(), is(false));
+    }
+
+    @Test
+    public void testOldestFiltersAreDroppedToKeepWithinMemoryBudget() {
+        allowQueries();
+        imsiExistenceIndex.setDaysToLoad(1);
+        imsiExistenceIndex.loadCompleteDays(TODAY - 2 * DAY + 3 * HOUR);
+        final long filterSize = imsiExistenceIndex.getMemoryUsageInBytes();
+        imsiExistenceIndex.setMemoryBudgetInBytes(filterSize * 2);
+        imsiExistenceIndex.setDaysToLoad(3);
+        imsiExistenceIndex.loadCompleteDays(TODAY + 3 * HOUR);
+        assertThat(imsiExistenceIndex.getFilterCount(), is(2));
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - 3 * DAY, TODAY - 2 * DAY), is(false));
+        assertThat(imsiExistenceIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - 2 * DAY, TODAY), is(true));
+    }
+
+    @Test
+    public void testOnlyFiltersOfCompleteDaysAreReadBackFromFilterDirectory() throws IOException {
+        allowQueries();
+        imsiExistenceIndex.setDaysToLoad(1);
+        imsiExistenceIndex.loadCompleteDays(TODAY + 3 * HOUR);
+        final File partialFilterFile = new File(filterDirectory, "EVENT_E_LTE." + (TODAY / DAY - 1) + ".bloom");
+        final FileOutputStream output = new FileOutputStream(partialFilterFile);
+        try {
+            output.write(new byte[] { 0, 0, 0, 1 });
+        } finally {
+            output.close();
+        }
+        final IMSIExistenceIndex restartedIndex = createIndex();
+        restartedIndex.loadFilters();
+        assertThat(restartedIndex.getFilterCount(), is(1));
+        assertThat(partialFilterFile.exists(), is(false));
+        assertThat(restartedIndex.isIMSIKnownToBeAbsent(SGEH, IMSI, TODAY - DAY, TODAY), is(true));
+        assertThat(restartedIndex.isIMSIKnownToBeAbsent(Arrays.asList("EVENT_E_LTE"), IMSI, TODAY - DAY, TODAY), is(false));
+    }
+
+    @Test
+    public void testIMSIsOfResultAreAddedToFilter() throws SQLException {
+        final ResultSet resultSet = mockery.mock(ResultSet.class);
+        mockery.checking(new Expectations() {
+            {
+                one(resultSet).next();
+                will(returnValue(true));
+                one(resultSet).getLong(1);
+                will(returnValue(IMSI));
+                one(resultSet).wasNull();
+                will(returnValue(false));
+                one(resultSet).next();
+                will(returnValue(false));
+            }
+        });
+        final BloomFilter filter = BloomFilter.create(1000, 0.01);
+        assertThat(new IMSIFilterTransformer(filter).transform(resultSet), is(1L));
+        assertThat(filter.mightContain(IMSI), is(true));
+    }
+
+    @Test
+    public void testFalsePositiveRateIsCloseToConfiguredRate() {
+        final BloomFilter filter = BloomFilter.create(10000, 0.01);
+        for (long imsi = 0; imsi < 10000; imsi++) {
+            filter.add(IMSI + imsi);
+        }
+        for (long imsi = 0; imsi < 10000; imsi++) {
+            assertThat(filter.mightContain(IMSI + imsi), is(true));
+        }
+        int falsePositives = 0;
+        for (long imsi = 10000; imsi < 110000; imsi++) {
+            if (filter.mightContain(IMSI + imsi)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives < 2000, is(true));
+    }
+
+    private void allowQueries() {
+        mockery.checking(new Expectations() {
+            {
+                allowing(dataService).getData(with(any(String.class)), with(any(Map.class)), with(any(ResultSetTransformer.class)));
+                will(returnValue(0L));
+            }
+        });
+    }
+
+    private IMSIExistenceIndex createIndex() {
+        final IMSIExistenceIndex index = new IMSIExistenceIndex();
+        index.setFilterDirectory(filterDirectory);
+        index.setExpectedIMSIsPerDay(1000);
+        index.setDataService(dataService);
+        index.setRawTableAvailabilityIndex(rawTableAvailabilityIndex);
+        return index;
+    }
+}
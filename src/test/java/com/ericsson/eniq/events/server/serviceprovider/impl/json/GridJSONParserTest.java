@@ -0,0 +1,40 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.json;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GridJSONParserTest {
+
+    @Test
+    public void testSuccessIsReadFromLeadingMember() {
+        assertThat(GridJSONParser.isSuccessResult("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[]}"), is(true));
+        assertThat(GridJSONParser.isSuccessResult(" { \"success\" : true, \"data\":[{\"1\":\"a\"}]}"), is(true));
+        assertThat(GridJSONParser.isSuccessResult("{\"success\":\"false\",\"errorDescription\":\"failed\"}"), is(false));
+    }
+
+    @Test
+    public void testSuccessIsReadFromAnyMemberWhenNotLeading() {
+        assertThat(GridJSONParser.isSuccessResult("{\"data\":[],\"success\":\"true\"}"), is(true));
+        assertThat(GridJSONParser.isSuccessResult("{\"data\":[]}"), is(false));
+    }
+
+    @Test
+    public void testResultThatIsNotAnObjectIsNotSuccessful() {
+        assertThat(GridJSONParser.isSuccessResult(null), is(false));
+        assertThat(GridJSONParser.isSuccessResult("[]"), is(false));
+        assertThat(GridJSONParser.isSuccessResult("{}"), is(false));
+    }
+}
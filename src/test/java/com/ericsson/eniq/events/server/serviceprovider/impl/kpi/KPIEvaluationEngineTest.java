@@ -0,0 +1,86 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.kpi;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.kpi.BaseAggregateResult.BaseAggregateRow;
+
+public class KPIEvaluationEngineTest {
+
+    private static final String NO_OF_SUCCESSES = "NO_OF_SUCCESSES";
+
+    private static final String NO_OF_ERRORS = "NO_OF_ERRORS";
+
+    private KPIEvaluationEngine engine;
+
+    private BaseAggregateResult result;
+
+    private final List<InMemoryKPI> kpis = new ArrayList<InMemoryKPI>();
+
+    @Before
+    public void setup() {
+        engine = new KPIEvaluationEngine();
+        result = new BaseAggregateResult(Arrays.asList("RNC"), Arrays.asList(NO_OF_SUCCESSES, NO_OF_ERRORS, "BUCKET_1", "BUCKET_2",
+                "BUCKET_3"));
+        kpis.add(new RatioKPI("SUCCESS_RATE", new String[] { NO_OF_SUCCESSES }, new String[] { NO_OF_SUCCESSES, NO_OF_ERRORS }, 100));
+        kpis.add(new PercentileKPI("P90", new String[] { "BUCKET_1", "BUCKET_2", "BUCKET_3" }, new double[] { 100, 500, 1000 }, 90));
+    }
+
+    @Test
+    public void testAllKPIsEvaluatedForEachRow() {
+        result.addRow(new BaseAggregateRow(new String[] { "RNC01" }, new double[] { 3, 1, 80, 15, 5 }));
+        result.addRow(new BaseAggregateRow(new String[] { "RNC02" }, new double[] { 1, 0, 95, 5, 0 }));
+        final String json = engine.evaluateAsJSON(result, kpis);
+        assertThat(json, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":["
+                + "{\"1\":\"RNC01\",\"2\":\"75.00\",\"3\":\"500.00\"},{\"1\":\"RNC02\",\"2\":\"100.00\",\"3\":\"100.00\"}]}"));
+    }
+
+    @Test
+    public void testKPIIsEmptyWhenDenominatorIsZero() {
+        result.addRow(new BaseAggregateRow(new String[] { "RNC01" }, new double[] { 0, 0, 0, 0, 0 }));
+        final String json = engine.evaluateAsJSON(result, kpis);
+        assertThat(json, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[{\"1\":\"RNC01\",\"2\":\"\",\"3\":\"\"}]}"));
+    }
+
+    @Test
+    public void testKeyValuesAreEscaped() {
+        result.addRow(new BaseAggregateRow(new String[] { "RNC\"01" }, new double[] { 1, 0, 1, 0, 0 }));
+        final String json = engine.evaluateAsJSON(result, kpis);
+        assertThat(json.contains("\"RNC\\\"01\""), is(true));
+    }
+
+    @Test
+    public void testKPIsEvaluatedOverGridRowsOfBaseAggregateQuery() {
+        final List<String[]> rows = new ArrayList<String[]>();
+        rows.add(new String[] { "RNC01", "3", "1", "80", "15", "5" });
+        rows.add(new String[] { "RNC02", "1", "", "95", "5", null });
+        result = BaseAggregateResult.fromGridRows(1, Arrays.asList(NO_OF_SUCCESSES, NO_OF_ERRORS, "BUCKET_1", "BUCKET_2", "BUCKET_3"), rows);
+        final String json = engine.evaluateAsJSON(result, kpis);
+        assertThat(json, is("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":["
+                + "{\"1\":\"RNC01\",\"2\":\"75.00\",\"3\":\"500.00\"},{\"1\":\"RNC02\",\"2\":\"100.00\",\"3\":\"100.00\"}]}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKPIReferencingUnknownColumnIsRejected() {
+        kpis.add(new RatioKPI("BAD", new String[] { "UNKNOWN" }, new String[] { NO_OF_ERRORS }, 1));
+        engine.evaluateAsJSON(result, kpis);
+    }
+}
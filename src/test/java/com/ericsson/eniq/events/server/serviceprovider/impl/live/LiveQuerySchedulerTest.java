@@ -0,0 +1,115 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.live;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.Service;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class LiveQuerySchedulerTest {
+
+    private LiveQueryScheduler liveQueryScheduler;
+
+    private CountingService service;
+
+    @Before
+    public void setup() {
+        liveQueryScheduler = new LiveQueryScheduler();
+        service = new CountingService();
+    }
+
+    @After
+    public void tearDown() {
+        liveQueryScheduler.shutdown();
+    }
+
+    @Test
+    public void testSubscribersToSameQueryShareOneQuery() throws InterruptedException {
+        final LiveSubscription first = liveQueryScheduler.subscribe(service, createParameters("10.0.0.1", "1"), 1);
+        assertThat(first.nextResult(5, TimeUnit.SECONDS), is("result 1"));
+        final LiveSubscription second = liveQueryScheduler.subscribe(service, createParameters("10.0.0.2", "2"), 1);
+        assertThat(second.nextResult(5, TimeUnit.SECONDS), is("result 1"));
+        assertThat(service.queries.get(), is(1));
+        assertThat(liveQueryScheduler.getLiveQueryCount(), is(1));
+    }
+
+    @Test
+    public void testLiveQueryStopsWhenLastSubscriberLeaves() throws InterruptedException {
+        final LiveSubscription first = liveQueryScheduler.subscribe(service, createParameters("10.0.0.1", "1"), 1);
+        final LiveSubscription second = liveQueryScheduler.subscribe(service, createParameters("10.0.0.2", "2"), 1);
+        first.nextResult(5, TimeUnit.SECONDS);
+        liveQueryScheduler.unsubscribe(first);
+        assertThat(liveQueryScheduler.getLiveQueryCount(), is(1));
+        liveQueryScheduler.unsubscribe(second);
+        assertThat(liveQueryScheduler.getLiveQueryCount(), is(0));
+    }
+
+    @Test
+    public void testDifferentParametersAreDifferentQueries() {
+        liveQueryScheduler.subscribe(service, createParameters("10.0.0.1", "1"), 1);
+        final MultivaluedMap<String, String> otherNode = createParameters("10.0.0.1", "2");
+        otherNode.putSingle("node", "RNC02");
+        liveQueryScheduler.subscribe(service, otherNode, 1);
+        assertThat(liveQueryScheduler.getLiveQueryCount(), is(2));
+    }
+
+    @Test
+    public void testSubscriptionsAboveMaximumAreRejected() {
+        liveQueryScheduler.setMaxSubscriptions(2);
+        final LiveSubscription first = liveQueryScheduler.subscribe(service, createParameters("10.0.0.1", "1"), 1);
+        assertThat(liveQueryScheduler.subscribe(service, createParameters("10.0.0.2", "2"), 1), is(notNullValue()));
+        assertThat(liveQueryScheduler.subscribe(service, createParameters("10.0.0.3", "3"), 1), is(nullValue()));
+        assertThat(liveQueryScheduler.getSubscriptionCount(), is(2));
+        liveQueryScheduler.unsubscribe(first);
+        liveQueryScheduler.unsubscribe(first);
+        assertThat(liveQueryScheduler.getSubscriptionCount(), is(1));
+        assertThat(liveQueryScheduler.subscribe(service, createParameters("10.0.0.3", "3"), 1), is(notNullValue()));
+    }
+
+    private MultivaluedMap<String, String> createParameters(final String ipAddress, final String requestId) {
+        final MultivaluedMap<String, String> parameters = new MultivaluedMapImpl();
+        parameters.putSingle(TIME_QUERY_PARAM, "30");
+        parameters.putSingle("node", "RNC01");
+        parameters.putSingle(IP_ADDRESS_PARAM, ipAddress);
+        parameters.putSingle(REQUEST_ID, requestId);
+        return parameters;
+    }
+
+    private static class CountingService implements Service {
+
+        private final AtomicInteger queries = new AtomicInteger();
+
+        @Override
+        public Response getDataAsCSV(final MultivaluedMap<String, String> serviceProviderParameters, final HttpServletResponse response) {
+            return null;
+        }
+
+        @Override
+        public String getData(final MultivaluedMap<String, String> serviceProviderParameters) {
+            return "result " + queries.incrementAndGet();
+        }
+    }
+}
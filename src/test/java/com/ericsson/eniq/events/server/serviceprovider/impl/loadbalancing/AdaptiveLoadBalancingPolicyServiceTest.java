@@ -0,0 +1,165 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.datasource.loadbalancing.LoadBalancingPolicy;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass;
+import com.ericsson.eniq.events.server.test.common.BaseJMockUnitTest;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class AdaptiveLoadBalancingPolicyServiceTest extends BaseJMockUnitTest {
+
+    private static final long ONE_SECOND_IN_NANOS = 1000L * 1000 * 1000;
+
+    private AdaptiveLoadBalancingPolicyService service;
+
+    private LoadBalancingPolicy fastReader;
+
+    private LoadBalancingPolicy slowReader;
+
+    @Before
+    public void setup() {
+        service = new AdaptiveLoadBalancingPolicyService();
+        fastReader = mockery.mock(LoadBalancingPolicy.class, "fastReader");
+        slowReader = mockery.mock(LoadBalancingPolicy.class, "slowReader");
+        final Map<String, LoadBalancingPolicy> readerPolicies = new LinkedHashMap<String, LoadBalancingPolicy>();
+        readerPolicies.put("reader_1", fastReader);
+        readerPolicies.put("reader_2", slowReader);
+        service.setReaderPolicies(readerPolicies);
+    }
+
+    @Test
+    public void testQueriesAreRoutedAwayFromSlowReader() {
+        recordQuery(fastReader, ONE_SECOND_IN_NANOS / 10);
+        recordQuery(slowReader, 20 * ONE_SECOND_IN_NANOS);
+        for (int i = 0; i < 10; i++) {
+            assertThat(service.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(fastReader));
+        }
+    }
+
+    @Test
+    public void testQueriesAreRoutedAwayFromBusyReader() {
+        recordQuery(fastReader, ONE_SECOND_IN_NANOS);
+        recordQuery(slowReader, ONE_SECOND_IN_NANOS);
+        service.queryStarted(fastReader);
+        service.queryStarted(fastReader);
+        assertThat(service.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(slowReader));
+    }
+
+    @Test
+    public void testFailedQueriesDoNotLowerAverageLatency() {
+        recordQuery(fastReader, ONE_SECOND_IN_NANOS / 10);
+        recordQuery(slowReader, 20 * ONE_SECOND_IN_NANOS);
+        service.queryStarted(slowReader);
+        service.queryFinished(slowReader, 1, -1, true);
+        assertThat(service.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(fastReader));
+    }
+
+    @Test
+    public void testWorkloadClassIsRoutedToItsDedicatedReaderEvenWhenSlower() {
+        recordQuery(fastReader, ONE_SECOND_IN_NANOS / 10);
+        recordQuery(slowReader, 20 * ONE_SECOND_IN_NANOS);
+        service.setWorkloadReaders(Collections.singletonMap(WorkloadClass.EXPORT, Collections.singleton("reader_2")));
+        for (int i = 0; i < 10; i++) {
+            assertThat(service.getLoadBalancingPolicy(new MultivaluedMapImpl(), WorkloadClass.EXPORT), is(slowReader));
+            assertThat(service.getLoadBalancingPolicy(new MultivaluedMapImpl(), WorkloadClass.INTERACTIVE), is(fastReader));
+        }
+    }
+
+    @Test
+    public void testQueriesFailOverFromReaderWithOpenCircuitBreaker() {
+        recordQuery(fastReader, 20 * ONE_SECOND_IN_NANOS);
+        for (int i = 0; i < CircuitBreakerConfiguration.DEFAULT.getMinimumQueries(); i++) {
+            service.queryStarted(slowReader);
+            service.queryFinished(slowReader, ONE_SECOND_IN_NANOS / 10, -1, true);
+        }
+        assertThat(service.getReaderStatistics().get(1).getCircuitBreaker().getState(), is(CircuitState.OPEN));
+        for (int i = 0; i < 10; i++) {
+            assertThat(service.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(fastReader));
+        }
+        assertThat(service.getAlternativeLoadBalancingPolicy(new MultivaluedMapImpl(), null, fastReader), is(nullValue()));
+    }
+
+    @Test
+    public void testAverageLatencyDecaysWhileReaderIsIdle() {
+        final ReaderStatistics reader = new ReaderStatistics("reader_1", fastReader);
+        final long now = System.nanoTime();
+        reader.queryStarted();
+        reader.queryFinished(ONE_SECOND_IN_NANOS, -1, false, now);
+        assertThat(reader.getAverageLatencyInNanos(now), is((double) ONE_SECOND_IN_NANOS));
+        assertThat(reader.getAverageLatencyInNanos(now + ReaderStatistics.IDLE_HALF_LIFE_IN_NANOS), is(ONE_SECOND_IN_NANOS / 2.0));
+    }
+
+    @Test
+    public void testStandardSelectionIsPassedThroughUntilReadersAreConfigured() {
+        final LoadBalancingPolicy firstRequestPolicy = mockery.mock(LoadBalancingPolicy.class, "firstRequestPolicy");
+        final LoadBalancingPolicy secondRequestPolicy = mockery.mock(LoadBalancingPolicy.class, "secondRequestPolicy");
+        final Iterator<LoadBalancingPolicy> standardPolicies = Arrays.asList(firstRequestPolicy, secondRequestPolicy).iterator();
+        final AdaptiveLoadBalancingPolicyService unconfiguredService = new AdaptiveLoadBalancingPolicyService() {
+            @Override
+            LoadBalancingPolicy getStandardLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters) {
+                return standardPolicies.next();
+            }
+        };
+        assertThat(unconfiguredService.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(firstRequestPolicy));
+        assertThat(unconfiguredService.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(secondRequestPolicy));
+        assertThat(unconfiguredService.getReaderStatistics().isEmpty(), is(true));
+        assertThat(unconfiguredService.getAlternativeLoadBalancingPolicy(new MultivaluedMapImpl(), null, firstRequestPolicy), is(nullValue()));
+    }
+
+    @Test
+    public void testReaderConfiguredThroughJMXIsBalancedWithConfiguredReaders() {
+        final LoadBalancingPolicy configuredReader = mockery.mock(LoadBalancingPolicy.class, "configuredReader");
+        final AdaptiveLoadBalancingPolicyService configuredService = new AdaptiveLoadBalancingPolicyService() {
+            @Override
+            LoadBalancingPolicy getStandardLoadBalancingPolicy(final MultivaluedMap<String, String> requestParameters) {
+                return "reader_2".equals(requestParameters.getFirst("reader")) ? configuredReader : null;
+            }
+        };
+        configuredService.setReaderPolicies(Collections.singletonMap("reader_1", slowReader));
+        configuredService.queryStarted(slowReader);
+        configuredService.queryFinished(slowReader, 20 * ONE_SECOND_IN_NANOS, -1, false);
+        configuredService.setReader("reader_2", new String[] { "reader=reader_2" });
+        configuredService.queryStarted(configuredReader);
+        configuredService.queryFinished(configuredReader, ONE_SECOND_IN_NANOS / 10, -1, false);
+        for (int i = 0; i < 10; i++) {
+            assertThat(configuredService.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(configuredReader));
+        }
+        configuredService.removeReader("reader_2");
+        assertThat(configuredService.getLoadBalancingPolicy(new MultivaluedMapImpl()), is(slowReader));
+    }
+
+    @Test
+    public void testWorkloadReadersAndCircuitBreakerAreConfiguredThroughJMX() {
+        service.setWorkloadReaders(WorkloadClass.EXPORT.name(), new String[] { "reader_2" });
+        service.setSlowQueryDurationInMillis(2000);
+        assertThat(Arrays.asList(service.getWorkloadReaders()), is(Arrays.asList("EXPORT: [reader_2]")));
+        assertThat(service.getSlowQueryDurationInMillis(), is(2000L));
+        assertThat(service.getReaders().length, is(2));
+        assertThat(service.getLoadBalancingPolicy(new MultivaluedMapImpl(), WorkloadClass.EXPORT), is(slowReader));
+    }
+
+    private void recordQuery(final LoadBalancingPolicy reader, final long durationInNanos) {
+        service.queryStarted(reader);
+        service.queryFinished(reader, durationInNanos, -1, false);
+    }
+}
@@ -0,0 +1,108 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.loadbalancing;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReaderCircuitBreakerTest {
+
+    private static final long SLOW_QUERY_DURATION = 1000;
+
+    private static final long OPEN_DURATION = 5000;
+
+    private ReaderCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setup() {
+        circuitBreaker = new ReaderCircuitBreaker(new CircuitBreakerConfiguration(10, 4, 50, 50, SLOW_QUERY_DURATION, OPEN_DURATION));
+    }
+
+    @Test
+    public void testBreakerOpensWhenFailureRateIsReached() {
+        recordResults(0, 2, false);
+        recordResults(0, 1, true);
+        assertThat(circuitBreaker.getState(), is(CircuitState.CLOSED));
+        recordResults(0, 1, true);
+        assertThat(circuitBreaker.getState(), is(CircuitState.OPEN));
+        assertThat(circuitBreaker.isAvailable(OPEN_DURATION - 1), is(false));
+    }
+
+    @Test
+    public void testBreakerOpensWhenSlowQueryRateIsReached() {
+        recordResults(0, 2, false);
+        circuitBreaker.recordResult(SLOW_QUERY_DURATION + 1, false, 0);
+        circuitBreaker.recordResult(SLOW_QUERY_DURATION + 1, false, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitState.OPEN));
+    }
+
+    @Test
+    public void testSlowQueriesAreJudgedAgainstTheirOwnKindOfQuery() {
+        recordResults(0, 2, false);
+        circuitBreaker.recordResult(10 * SLOW_QUERY_DURATION, 20 * SLOW_QUERY_DURATION, false, 0);
+        circuitBreaker.recordResult(10 * SLOW_QUERY_DURATION, 20 * SLOW_QUERY_DURATION, false, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitState.CLOSED));
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordResult(SLOW_QUERY_DURATION / 2, SLOW_QUERY_DURATION / 10, false, 0);
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitState.OPEN));
+    }
+
+    @Test
+    public void testSingleProbeIsLetThroughAfterOpenDurationAndClosesBreakerOnSuccess() {
+        recordResults(0, 4, true);
+        assertThat(circuitBreaker.tryAcquire(OPEN_DURATION), is(true));
+        assertThat(circuitBreaker.getState(), is(CircuitState.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquire(OPEN_DURATION + 1), is(false));
+        circuitBreaker.recordResult(1, false, OPEN_DURATION + 2);
+        assertThat(circuitBreaker.getState(), is(CircuitState.CLOSED));
+    }
+
+    @Test
+    public void testFailedProbeReopensBreaker() {
+        recordResults(0, 4, true);
+        assertThat(circuitBreaker.tryAcquire(OPEN_DURATION), is(true));
+        circuitBreaker.recordResult(1, true, OPEN_DURATION + 1);
+        assertThat(circuitBreaker.getState(), is(CircuitState.OPEN));
+        assertThat(circuitBreaker.isAvailable(2 * OPEN_DURATION), is(false));
+        assertThat(circuitBreaker.isAvailable(2 * OPEN_DURATION + 1), is(true));
+    }
+
+    @Test
+    public void testQueryStartedBeforeProbeDoesNotDecideProbe() {
+        recordResults(0, 4, true);
+        assertThat(circuitBreaker.tryAcquire(OPEN_DURATION), is(true));
+        circuitBreaker.recordResult(OPEN_DURATION, true, OPEN_DURATION + 1);
+        circuitBreaker.recordResult(OPEN_DURATION, false, OPEN_DURATION + 1);
+        assertThat(circuitBreaker.getState(), is(CircuitState.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquire(OPEN_DURATION + 2), is(false));
+        circuitBreaker.recordResult(1, false, OPEN_DURATION + 2);
+        assertThat(circuitBreaker.getState(), is(CircuitState.CLOSED));
+    }
+
+    @Test
+    public void testLostProbeIsReplacedAfterOpenDuration() {
+        recordResults(0, 4, true);
+        assertThat(circuitBreaker.tryAcquire(OPEN_DURATION), is(true));
+        assertThat(circuitBreaker.tryAcquire(2 * OPEN_DURATION - 1), is(false));
+        assertThat(circuitBreaker.tryAcquire(2 * OPEN_DURATION), is(true));
+    }
+
+    private void recordResults(final long now, final int count, final boolean failed) {
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.recordResult(1, failed, now);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.pipeline;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelineFlightRecorderTest {
+
+    private static final String TEMPLATE_PATH = "EVENT_ANALYSIS";
+
+    private PipelineFlightRecorder recorder;
+
+    @Before
+    public void setup() {
+        recorder = new PipelineFlightRecorder(4);
+    }
+
+    @Test
+    public void testStageIsRecordedWithRowAndByteCounts() {
+        final PipelineStageTimer timer = recorder.start(PipelineStage.EXECUTION, TEMPLATE_PATH, "1");
+        recorder.stop(timer, 10, 250);
+
+        final List<PipelineStageEvent> events = recorder.recentEvents(10);
+        assertThat(events.size(), is(1));
+        final PipelineStageEvent event = events.get(0);
+        assertThat(event.getStage(), is("EXECUTION"));
+        assertThat(event.getTemplatePath(), is(TEMPLATE_PATH));
+        assertThat(event.getRequestId(), is("1"));
+        assertThat(event.getThreadName(), is(Thread.currentThread().getName()));
+        assertThat(event.getRows(), is(10L));
+        assertThat(event.getBytes(), is(250L));
+        assertTrue(event.getDurationNanos() >= 0);
+        assertTrue(event.getGcMillis() >= 0);
+    }
+
+    @Test
+    public void testOldestStagesAreOverwritten() {
+        for (int i = 0; i < 6; i++) {
+            recorder.stop(recorder.start(PipelineStage.VALIDATION, TEMPLATE_PATH, String.valueOf(i)), 0, 0);
+        }
+        final List<PipelineStageEvent> events = recorder.recentEvents(10);
+        assertThat(events.size(), is(4));
+        assertThat(events.get(0).getRequestId(), is("5"));
+        assertThat(events.get(3).getRequestId(), is("2"));
+        assertThat(recorder.getRecordedEventCount(), is(6L));
+    }
+
+    @Test
+    public void testEventsForRequestAreInStageOrder() {
+        recorder.stop(recorder.start(PipelineStage.VALIDATION, TEMPLATE_PATH, "1"), 0, 0);
+        recorder.stop(recorder.start(PipelineStage.VALIDATION, TEMPLATE_PATH, "2"), 0, 0);
+        recorder.stop(recorder.start(PipelineStage.SQL_GENERATION, TEMPLATE_PATH, "1"), 0, 0);
+
+        final List<PipelineStageEvent> events = recorder.eventsForRequest("1");
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).getStage(), is("VALIDATION"));
+        assertThat(events.get(1).getStage(), is("SQL_GENERATION"));
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenDisabled() {
+        recorder.setEnabled(false);
+        final PipelineStageTimer timer = recorder.start(PipelineStage.VALIDATION, TEMPLATE_PATH, "1");
+        assertThat(timer, is(nullValue()));
+        recorder.stop(timer, 0, 0);
+        assertThat(recorder.getRecordedEventCount(), is(0L));
+    }
+}
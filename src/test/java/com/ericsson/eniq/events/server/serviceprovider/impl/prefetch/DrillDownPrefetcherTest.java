@@ -0,0 +1,106 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.prefetch;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.scheduling.FairQueryScheduler;
+
+public class DrillDownPrefetcherTest {
+
+    private static final String TENANT = "10.0.0.1";
+
+    private DrillDownPrefetcher prefetcher;
+
+    private FairQueryScheduler scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = new FairQueryScheduler();
+        scheduler.setMaxConcurrentQueries(1);
+        prefetcher = new DrillDownPrefetcher();
+        prefetcher.setFairQueryScheduler(scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void testDrillDownIsPrefetchedWhileReadersAreIdle() throws Exception {
+        final CountDownLatch drillDownRun = new CountDownLatch(1);
+        assertThat(prefetcher.schedule(new Runnable() {
+            @Override
+            public void run() {
+                drillDownRun.countDown();
+            }
+        }), is(true));
+        assertThat(drillDownRun.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(prefetcher.getScheduledPrefetches(), is(1L));
+    }
+
+    @Test
+    public void testDrillDownIsSkippedWhileQueriesAreQueued() throws Exception {
+        scheduler.acquire(TENANT);
+        final Thread queuedQuery = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(TENANT);
+                    scheduler.release();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        queuedQuery.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getQueuedQueries() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(prefetcher.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fail("Drill down should not be prefetched under load");
+            }
+        }), is(false));
+        assertThat(prefetcher.getSkippedPrefetches(), is(1L));
+        scheduler.release();
+        queuedQuery.join(5000);
+    }
+
+    @Test
+    public void testPrefetchesAreScheduledAsTheirOwnTenantWithTheLowestWeight() {
+        prefetcher.start();
+        assertThat(scheduler.getTenantWeights().get(DrillDownPrefetcher.TENANT), is(DrillDownPrefetcher.TENANT_WEIGHT));
+    }
+
+    @Test
+    public void testServiceMayHavePrefetchedResultsOnlyUntilTheyExpire() throws Exception {
+        assertThat(prefetcher.mayHavePrefetched("DrillDownService"), is(false));
+        prefetcher.recordPrefetch("DrillDownService", 60);
+        assertThat(prefetcher.mayHavePrefetched("DrillDownService"), is(true));
+        assertThat(prefetcher.mayHavePrefetched("OtherService"), is(false));
+        prefetcher.recordPrefetch("DrillDownService", 0);
+        Thread.sleep(5);
+        assertThat(prefetcher.mayHavePrefetched("DrillDownService"), is(false));
+    }
+}
@@ -0,0 +1,103 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rawtables;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RawTableAvailabilityIndexTest {
+
+    private static final String SGEH = "EVENT_E_SGEH";
+
+    private static final String LTE = "EVENT_E_LTE";
+
+    private static final long HOUR = 3600000L;
+
+    private RawTableAvailabilityIndex index;
+
+    @Before
+    public void setup() {
+        index = new RawTableAvailabilityIndex();
+        index.replacePartitions(SGEH, Arrays.asList(new RawPartition("EVENT_E_SGEH_ERR_RAW_02", 2 * HOUR, 3 * HOUR), new RawPartition(
+                "EVENT_E_SGEH_ERR_RAW_01", HOUR, 2 * HOUR)));
+    }
+
+    @Test
+    public void testWindowOverlappingPartitionHasRawData() {
+        assertThat(index.getRawDataAvailability(list(SGEH), HOUR + 1, HOUR + 2), is(RawDataAvailability.AVAILABLE));
+    }
+
+    @Test
+    public void testWindowBeforeOldestPartitionHasNoRawData() {
+        assertThat(index.getRawDataAvailability(list(SGEH), 0, HOUR), is(RawDataAvailability.NOT_AVAILABLE));
+    }
+
+    @Test
+    public void testLatestPartitionIsOpenEnded() {
+        assertThat(index.getRawDataAvailability(list(SGEH), 5 * HOUR, 6 * HOUR), is(RawDataAvailability.AVAILABLE));
+    }
+
+    @Test
+    public void testTechPackThatIsNotIndexedIsLeftToTableDiscovery() {
+        assertThat(index.getRawDataAvailability(Arrays.asList(SGEH, LTE), 0, HOUR), is(RawDataAvailability.UNKNOWN));
+        index.recordPartition(LTE, "EVENT_E_LTE_ERR_RAW_01", 0, HOUR);
+        assertThat(index.getRawDataAvailability(list(LTE), 0, HOUR), is(RawDataAvailability.UNKNOWN));
+        index.replacePartitions(LTE, Collections.<RawPartition> emptyList());
+        assertThat(index.getRawDataAvailability(Arrays.asList(SGEH, LTE), 0, HOUR), is(RawDataAvailability.NOT_AVAILABLE));
+    }
+
+    @Test
+    public void testRolledPartitionHoldsItsNewWindow() {
+        index.recordPartition(SGEH, "EVENT_E_SGEH_ERR_RAW_01", 3 * HOUR, 0);
+        assertThat(index.getPartitions(SGEH).size(), is(2));
+        assertThat(index.getPartitions(SGEH).get(1).getTable(), is("EVENT_E_SGEH_ERR_RAW_01"));
+        assertThat(index.getRawDataAvailability(list(SGEH), HOUR, 2 * HOUR), is(RawDataAvailability.NOT_AVAILABLE));
+
+        index.removePartition(SGEH, "EVENT_E_SGEH_ERR_RAW_02");
+        assertThat(index.getPartitions(SGEH).size(), is(1));
+    }
+
+    @Test
+    public void testRefreshReplacesTechPacksReadFromRepositoryAndForgetsTheRest() {
+        index.replacePartitions(LTE, Collections.<RawPartition> emptyList());
+        index.update(Collections.singletonMap("EVENT_E_SGEH", Arrays.asList(new RawPartition("EVENT_E_SGEH_ERR_RAW_03", 3 * HOUR, 0))));
+        assertThat(index.getRawDataAvailability(list(SGEH), HOUR, 2 * HOUR), is(RawDataAvailability.NOT_AVAILABLE));
+        assertThat(index.getRawDataAvailability(list(LTE), 0, HOUR), is(RawDataAvailability.UNKNOWN));
+        assertThat(index.getIndexedTechPackCount(), is(1));
+    }
+
+    @Test
+    public void testTechPackIsTakenFromRawPartitionName() {
+        assertThat(RawPartitionTransformer.getTechPack("EVENT_E_SGEH_ERR_RAW_01"), is(SGEH));
+        assertThat(RawPartitionTransformer.getTechPack("event_e_lte_suc_raw_12"), is(LTE));
+        assertThat(RawPartitionTransformer.getTechPack("EVENT_E_RAN_CFA_RAW_01"), is("EVENT_E_RAN_CFA"));
+        assertThat(RawPartitionTransformer.getTechPack("EVENT_E_SGEH_ERR_15MIN"), is(nullValue()));
+    }
+
+    @Test
+    public void testRangeIsParsedAsUTC() {
+        assertThat(RawTableAvailabilityIndex.parseDateTime("1970-01-01 01:00"), is(HOUR));
+        assertThat(RawTableAvailabilityIndex.parseDateTime("01/01/1970"), is(-1L));
+        assertThat(RawTableAvailabilityIndex.parseDateTime(null), is(-1L));
+    }
+
+    private static List<String> list(final String techPack) {
+        return Collections.singletonList(techPack);
+    }
+}
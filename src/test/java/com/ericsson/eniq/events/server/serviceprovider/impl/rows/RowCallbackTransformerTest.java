@@ -0,0 +1,98 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.rows;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.serviceprovider.impl.json.GridJSONBuilder;
+
+public class RowCallbackTransformerTest {
+
+    private static final String[][] ROWS = { { "35123456", "Phone \"A\"" }, { "44556677", null } };
+
+    @Test
+    public void testRowsAreWrittenToOutputStreamAsGridJSON() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final RowCallbackTransformer<Long> transformer = new RowCallbackTransformer<Long>(new GridJSONRowWriter(output));
+        assertThat(transformer.transform(resultSet(ROWS)), is(2L));
+        assertThat(output.toString("UTF-8"), is(new GridJSONBuilder().addRow(ROWS[0]).addRow(ROWS[1]).build()));
+        assertThat(transformer.getRowCount(), is(2L));
+    }
+
+    @Test
+    public void testEmptyResultIsWrittenAsEmptyGridJSON() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new RowCallbackTransformer<Long>(new GridJSONRowWriter(output)).transform(resultSet(new String[0][]));
+        assertThat(output.toString("UTF-8"), is(new GridJSONBuilder().build()));
+    }
+
+    @Test
+    public void testRowsAreCollectedAsTypedObjects() throws Exception {
+        final RowCollector<Integer> tacs = new RowCollector<Integer>(new RowMapper<Integer>() {
+            @Override
+            public Integer mapRow(final ResultSet resultSet) throws SQLException {
+                return Integer.valueOf(resultSet.getString(1));
+            }
+        });
+        final List<Integer> result = new RowCallbackTransformer<List<Integer>>(tacs).transform(resultSet(ROWS));
+        assertThat(result.size(), is(2));
+        assertThat(result.get(0), is(35123456));
+        assertThat(result.get(1), is(44556677));
+    }
+
+    /**
+     * @return a result set over the rows, supporting only what the row callbacks use
+     */
+    private static ResultSet resultSet(final String[][] rows) {
+        final int columnCount = rows.length == 0 ? 2 : rows[0].length;
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(RowCallbackTransformerTest.class.getClassLoader(),
+                new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if (method.getName().equals("getColumnCount")) {
+                            return columnCount;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return (ResultSet) Proxy.newProxyInstance(RowCallbackTransformerTest.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                new InvocationHandler() {
+                    private int row = -1;
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if (method.getName().equals("getMetaData")) {
+                            return metaData;
+                        }
+                        if (method.getName().equals("next")) {
+                            return ++row < rows.length;
+                        }
+                        if (method.getName().equals("getString")) {
+                            return rows[row][(Integer) args[0] - 1];
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
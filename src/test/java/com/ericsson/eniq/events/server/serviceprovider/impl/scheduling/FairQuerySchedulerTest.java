@@ -0,0 +1,219 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.scheduling;
+
+import static com.ericsson.eniq.events.server.common.ApplicationConstants.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+import com.ericsson.eniq.events.server.serviceprovider.impl.workload.WorkloadClass;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+public class FairQuerySchedulerTest {
+
+    private static final String BULK_TENANT = "10.0.0.1";
+
+    private static final String INTERACTIVE_TENANT = "10.0.0.2";
+
+    private FairQueryScheduler scheduler;
+
+    private final List<String> admissionOrder = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setup() {
+        scheduler = new FairQueryScheduler();
+        scheduler.setMaxConcurrentQueries(1);
+    }
+
+    @Test
+    public void testInteractiveTenantIsAdmittedAheadOfQueuedBulkQueries() throws Exception {
+        scheduler.acquire(BULK_TENANT);
+        final List<Thread> threads = new ArrayList<Thread>();
+        threads.add(queueQuery(BULK_TENANT, "bulk1", 1));
+        threads.add(queueQuery(BULK_TENANT, "bulk2", 2));
+        threads.add(queueQuery(INTERACTIVE_TENANT, "interactive", 3));
+        scheduler.release();
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertThat(admissionOrder, is(Arrays.asList("interactive", "bulk1", "bulk2")));
+        assertThat(scheduler.getActiveQueries(), is(0));
+    }
+
+    @Test
+    public void testTenantWithHigherWeightIsAdmittedMoreOften() throws Exception {
+        final Map<String, Double> weights = new HashMap<String, Double>();
+        weights.put(INTERACTIVE_TENANT, 2.0);
+        scheduler.setTenantWeights(weights);
+        scheduler.acquire(BULK_TENANT);
+        final List<Thread> threads = new ArrayList<Thread>();
+        threads.add(queueQuery(BULK_TENANT, "bulk1", 1));
+        threads.add(queueQuery(BULK_TENANT, "bulk2", 2));
+        threads.add(queueQuery(INTERACTIVE_TENANT, "interactive1", 3));
+        threads.add(queueQuery(INTERACTIVE_TENANT, "interactive2", 4));
+        threads.add(queueQuery(INTERACTIVE_TENANT, "interactive3", 5));
+        scheduler.release();
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertThat(admissionOrder, is(Arrays.asList("interactive1", "interactive2", "bulk1", "interactive3", "bulk2")));
+    }
+
+    @Test
+    public void testSlotsReservedForInteractiveQueriesAreNotTakenByOtherClasses() throws Exception {
+        scheduler.setMaxConcurrentQueries(3);
+        scheduler.setReservedQueries(WorkloadClass.INTERACTIVE, 2);
+        scheduler.acquire(BULK_TENANT, WorkloadClass.EXPORT);
+        final Thread trend = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(BULK_TENANT, WorkloadClass.TREND);
+                    admissionOrder.add("trend");
+                    scheduler.release(WorkloadClass.TREND);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        trend.start();
+        while (scheduler.getQueuedQueries() < 1) {
+            Thread.sleep(1);
+        }
+        scheduler.acquire(INTERACTIVE_TENANT, WorkloadClass.INTERACTIVE);
+        scheduler.acquire(INTERACTIVE_TENANT);
+        assertThat(scheduler.getActiveQueries(), is(3));
+        assertThat(admissionOrder.isEmpty(), is(true));
+        scheduler.release(WorkloadClass.EXPORT);
+        trend.join(5000);
+        assertThat(admissionOrder, is(Arrays.asList("trend")));
+        scheduler.release();
+        scheduler.release(WorkloadClass.INTERACTIVE);
+        assertThat(scheduler.getActiveQueries(), is(0));
+        assertThat(scheduler.getReservedQueries().get(WorkloadClass.INTERACTIVE.name()), is(2));
+    }
+
+    @Test
+    public void testQueryNotAdmittedWithinQueueTimeoutIsRejected() throws Exception {
+        scheduler.setQueueTimeoutInMillis(20);
+        scheduler.acquire(BULK_TENANT);
+        try {
+            scheduler.acquire(INTERACTIVE_TENANT);
+            fail("query admitted while the only slot is held");
+        } catch (final ServiceException e) {
+            assertThat(scheduler.getQueuedQueries(), is(0));
+            assertThat(scheduler.getTimedOutQueries(), is(1L));
+        }
+        scheduler.release();
+        scheduler.acquire(INTERACTIVE_TENANT);
+        assertThat(scheduler.getActiveQueries(), is(1));
+    }
+
+    @Test
+    public void testQueriesAreNotLimitedUntilQueryLimitIsConfigured() throws Exception {
+        scheduler = new FairQueryScheduler();
+        for (int i = 0; i < 100; i++) {
+            scheduler.acquire(BULK_TENANT, WorkloadClass.EXPORT);
+        }
+        assertThat(scheduler.getActiveQueries(), is(100));
+        assertThat(scheduler.getQueuedQueries(), is(0));
+        assertThat(scheduler.isSaturated(), is(false));
+    }
+
+    @Test
+    public void testQueueWaitIsRecordedPerTenant() throws Exception {
+        scheduler.acquire(BULK_TENANT);
+        final Thread thread = queueQuery(INTERACTIVE_TENANT, "interactive", 1);
+        Thread.sleep(20);
+        scheduler.release();
+        thread.join(5000);
+        for (final TenantStatistics statistics : scheduler.getTenantStatistics()) {
+            if (statistics.getTenant().equals(INTERACTIVE_TENANT)) {
+                assertThat(statistics.getAdmittedQueries(), is(1L));
+                assertThat(statistics.getMaxQueueWaitMillis() >= 20, is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testTenantIsClientIpAddress() {
+        final MultivaluedMapImpl parameters = new MultivaluedMapImpl();
+        assertThat(FairQueryScheduler.getTenant(parameters), is(FairQueryScheduler.DEFAULT_TENANT));
+        parameters.add(IP_ADDRESS_PARAM, BULK_TENANT);
+        assertThat(FairQueryScheduler.getTenant(parameters), is(BULK_TENANT));
+    }
+
+    @Test
+    public void testTenantIsAuthenticatedUserWhenPresent() {
+        final MultivaluedMapImpl parameters = new MultivaluedMapImpl();
+        parameters.add(IP_ADDRESS_PARAM, BULK_TENANT);
+        parameters.add(USER_NAME_PARAM, BULK_TENANT);
+        parameters.add(FairQueryScheduler.AUTHENTICATED_USER_PARAM, INTERACTIVE_TENANT);
+        assertThat(FairQueryScheduler.getTenant(parameters), is(INTERACTIVE_TENANT));
+    }
+
+    @Test
+    public void testTenantWeightsAndQueryLimitAreConfiguredThroughJMX() {
+        final FairQuerySchedulerMXBean mxBean = scheduler;
+        mxBean.setTenantWeight(BULK_TENANT, 0.5);
+        mxBean.setMaxConcurrentQueries(4);
+        assertThat(mxBean.getTenantWeights().get(BULK_TENANT), is(0.5));
+        assertThat(mxBean.getMaxConcurrentQueries(), is(4));
+        mxBean.setTenantWeight(BULK_TENANT, 0);
+        assertThat(mxBean.getTenantWeights().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testReadersAreSaturatedOnlyWhenQueueReachesThreshold() throws Exception {
+        scheduler.setMaxConcurrentQueries(2);
+        scheduler.setSaturationQueuePercent(100);
+        scheduler.acquire(BULK_TENANT);
+        scheduler.acquire(BULK_TENANT);
+        final List<Thread> threads = new ArrayList<Thread>();
+        threads.add(queueQuery(BULK_TENANT, "bulk1", 1));
+        assertThat(scheduler.isSaturated(), is(false));
+        threads.add(queueQuery(BULK_TENANT, "bulk2", 2));
+        assertThat(scheduler.isSaturated(), is(true));
+        scheduler.release();
+        scheduler.release();
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertThat(scheduler.isSaturated(), is(false));
+    }
+
+    private Thread queueQuery(final String tenant, final String query, final int expectedQueuedQueries) throws InterruptedException {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(tenant);
+                    admissionOrder.add(query);
+                    scheduler.release();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        while (scheduler.getQueuedQueries() < expectedQueuedQueries) {
+            Thread.sleep(1);
+        }
+        return thread;
+    }
+}
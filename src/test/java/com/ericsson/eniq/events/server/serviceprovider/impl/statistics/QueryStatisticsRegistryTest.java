@@ -0,0 +1,114 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.statistics;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+import com.ericsson.eniq.events.server.serviceprovider.impl.aggregation.RowStatistics;
+
+public class QueryStatisticsRegistryTest {
+
+    private static final QueryFingerprint RANKING = new QueryFingerprint("EVENT_ANALYSIS/RANKING", "APN", "DAY");
+
+    private static final QueryFingerprint SUMMARY = new QueryFingerprint("EVENT_ANALYSIS/SUMMARY", null, "RAW");
+
+    private QueryStatisticsRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new QueryStatisticsRegistry();
+    }
+
+    @Test
+    public void testTopByTotalTimeIsOrderedByCumulativeTime() {
+        for (int i = 0; i < 10; i++) {
+            registry.record(RANKING, TimeUnit.MILLISECONDS.toNanos(20), 5, 100, false);
+        }
+        registry.record(SUMMARY, TimeUnit.MILLISECONDS.toNanos(150), 1, 50, true);
+
+        final List<QueryStatisticsSnapshot> top = registry.topByTotalTime(2);
+        assertThat(top.size(), is(2));
+        assertThat(top.get(0).getTemplatePath(), is(RANKING.getTemplatePath()));
+        assertThat(top.get(0).getExecutionCount(), is(10L));
+        assertThat(top.get(0).getTotalTimeMillis(), is(200L));
+        assertThat(top.get(0).getRowsReturned(), is(50L));
+        assertThat(top.get(0).getBytesProduced(), is(1000L));
+        assertThat(top.get(1).getFailureCount(), is(1L));
+
+        final List<QueryStatisticsSnapshot> topByP99 = registry.topByP99(1);
+        assertThat(topByP99.get(0).getTemplatePath(), is(SUMMARY.getTemplatePath()));
+    }
+
+    @Test
+    public void testPercentilesAreWithinBucketResolution() {
+        final QueryStatistics statistics = new QueryStatistics(RANKING);
+        for (int i = 1; i <= 100; i++) {
+            statistics.record(TimeUnit.MILLISECONDS.toNanos(i), 0, 0, false);
+        }
+        final double p50 = statistics.getPercentileMillis(50);
+        final double p99 = statistics.getPercentileMillis(99);
+        assertTrue(p50 >= 50 && p50 <= 50 * 1.25);
+        assertTrue(p99 >= 99 && p99 <= 99 * 1.25);
+        assertThat(statistics.snapshot().getMaxMillis(), is(100.0));
+    }
+
+    @Test
+    public void testSlowQueryDurationIsOnlyKnownOnceTheQueryHasRunOftenEnough() {
+        for (int i = 1; i < QueryStatisticsRegistry.SLOW_QUERY_MIN_EXECUTIONS; i++) {
+            registry.record(RANKING, TimeUnit.MILLISECONDS.toNanos(10), 5, 100, false);
+        }
+        assertThat(registry.getSlowQueryDurationInNanos(RANKING), is(-1L));
+        registry.record(RANKING, TimeUnit.MILLISECONDS.toNanos(10), 5, 100, false);
+        assertThat(registry.getSlowQueryDurationInNanos(RANKING) >= TimeUnit.MILLISECONDS.toNanos(10), is(true));
+    }
+
+    @Test
+    public void testFingerprintsAreEqualByTemplateDrillDownAndAggregation() {
+        registry.record(new QueryFingerprint("EVENT_ANALYSIS/RANKING", "APN", "DAY"), 1000, 0, 0, false);
+        registry.record(new QueryFingerprint("EVENT_ANALYSIS/RANKING", "APN", "DAY"), 1000, 0, 0, false);
+        registry.record(new QueryFingerprint("EVENT_ANALYSIS/RANKING", "APN", "FIFTEEN_MINUTES"), 1000, 0, 0, false);
+        assertThat(registry.getFingerprintCount(), is(2));
+        registry.reset();
+        assertThat(registry.getFingerprintCount(), is(0));
+    }
+
+    @Test
+    public void testRowsPerIntervalAreAveragedPerTemplateTechPackAndAggregation() {
+        final List<String> techPacks = Arrays.asList("EVENT_E_SGEH", "EVENT_E_LTE");
+        registry.recordRows(RANKING.getTemplatePath(), techPacks, EventDataSourceType.AGGREGATED_15MIN, 60, 8000);
+        final RowStatistics rowStatistics = registry.getRowStatistics(RANKING.getTemplatePath());
+        assertThat(rowStatistics.getRowsPerInterval("EVENT_E_SGEH", EventDataSourceType.AGGREGATED_15MIN), is(1000L));
+        registry.recordRows(RANKING.getTemplatePath(), techPacks, EventDataSourceType.AGGREGATED_15MIN, 60, 16000);
+        assertThat(rowStatistics.getRowsPerInterval("EVENT_E_LTE", EventDataSourceType.AGGREGATED_15MIN), is(1125L));
+        assertThat(rowStatistics.getRowsPerInterval("EVENT_E_LTE", EventDataSourceType.AGGREGATED_DAY), is(-1L));
+        assertThat(registry.getRowStatistics(SUMMARY.getTemplatePath()).getRowsPerInterval("EVENT_E_LTE",
+                EventDataSourceType.AGGREGATED_15MIN), is(-1L));
+        assertThat(registry.getRowsPerInterval().size(), is(2));
+    }
+
+    @Test
+    public void testRowsAreCountedFromGridJSON() {
+        assertThat(GridJSONRowCounter.countRows(null), is(0L));
+        assertThat(GridJSONRowCounter.countRows("{\"success\":\"true\",\"errorDescription\":\"\",\"data\":[]}"), is(0L));
+        assertThat(GridJSONRowCounter.countRows("{\"success\":\"true\",\"data\":[{\"1\":\"a\",\"2\":\"1\"},{\"1\":\"b\",\"2\":\"2\"}]}"),
+                is(2L));
+    }
+}
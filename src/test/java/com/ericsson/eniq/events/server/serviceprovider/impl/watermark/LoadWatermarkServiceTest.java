@@ -0,0 +1,86 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.watermark;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.jmock.Expectations;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+import com.ericsson.eniq.events.server.common.TechPackList;
+import com.ericsson.eniq.events.server.common.TechPackRepresentation;
+import com.ericsson.eniq.events.server.test.common.BaseJMockUnitTest;
+
+public class LoadWatermarkServiceTest extends BaseJMockUnitTest {
+
+    private static final String SGEH = "EVENT_E_SGEH";
+
+    private LoadWatermarkService loadWatermarkService;
+
+    private TechPackList techPackList;
+
+    @Before
+    public void setup() {
+        loadWatermarkService = new LoadWatermarkService();
+        final TechPackRepresentation techPack = new TechPackRepresentation(SGEH);
+        techPack.setErrRawTables(Collections.singletonList("EVENT_E_SGEH_ERR_RAW_01"));
+        techPack.setSucRawTables(Collections.singletonList("EVENT_E_SGEH_SUC_RAW_01"));
+        final Collection<TechPackRepresentation> techPacks = Collections.singletonList(techPack);
+        techPackList = mockery.mock(TechPackList.class);
+        mockery.checking(new Expectations() {
+            {
+                allowing(techPackList).getTechPacks();
+                will(returnValue(techPacks));
+            }
+        });
+    }
+
+    @Test
+    public void testRawWatermarkIsLatestLoadOfRawTables() {
+        loadWatermarkService.recordLoad("event_e_sgeh_err_raw_01", 2000);
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_SUC_RAW_01", 1000);
+        assertThat(loadWatermarkService.getLoadWatermark(techPackList, EventDataSourceType.RAW), is(2000L));
+    }
+
+    @Test
+    public void testWatermarkIsUnknownUntilEveryRawTableHasALoad() {
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_SUC_RAW_01", 1000);
+        assertThat(loadWatermarkService.getLoadWatermark(techPackList, EventDataSourceType.RAW), is(LoadWatermarkService.UNKNOWN));
+    }
+
+    @Test
+    public void testAggregationWatermarkComesFromRecordedAggregationLoad() {
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_ERR_RAW_01", 1000);
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_SUC_RAW_01", 1000);
+        assertThat(loadWatermarkService.getLoadWatermark(techPackList, EventDataSourceType.AGGREGATED_15MIN),
+                is(LoadWatermarkService.UNKNOWN));
+        loadWatermarkService.recordAggregationLoad(SGEH, "AGGREGATED_15MIN", 5000);
+        assertThat(loadWatermarkService.getLoadWatermark(techPackList, EventDataSourceType.AGGREGATED_15MIN), is(5000L));
+        assertThat(loadWatermarkService.getLoadWatermark(techPackList, EventDataSourceType.AGGREGATED_DAY),
+                is(LoadWatermarkService.UNKNOWN));
+    }
+
+    @Test
+    public void testRecordedLoadNeverMovesBack() {
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_ERR_RAW_01", 2000);
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_ERR_RAW_01", 1000);
+        loadWatermarkService.recordLoad("EVENT_E_SGEH_SUC_RAW_01", 1000);
+        assertThat(loadWatermarkService.getLoadWatermark(techPackList, EventDataSourceType.RAW), is(2000L));
+        assertThat(loadWatermarkService.getRecordedTableCount(), is(2));
+    }
+}
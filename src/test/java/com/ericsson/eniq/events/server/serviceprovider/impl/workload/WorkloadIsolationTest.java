@@ -0,0 +1,105 @@
+/*------------------------------------------------------------------------------
+ *******************************************************************************
+ * COPYRIGHT Ericsson 2014
+ *
+ * The copyright to the computer program(s) herein is the property of
+ * Ericsson Inc. The programs may be used and/or copied only with written
+ * permission from Ericsson Inc. or in accordance with the terms and
+ * conditions stipulated in the agreement/contract under which the
+ * program(s) have been supplied.
+ *******************************************************************************
+ *----------------------------------------------------------------------------*/
+package com.ericsson.eniq.events.server.serviceprovider.impl.workload;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.eniq.events.server.common.EventDataSourceType;
+import com.ericsson.eniq.events.server.common.exception.ServiceException;
+
+public class WorkloadIsolationTest {
+
+    private WorkloadIsolation workloadIsolation;
+
+    @Before
+    public void setup() {
+        workloadIsolation = new WorkloadIsolation();
+    }
+
+    @Test
+    public void testQueriesAreClassifiedByAggregationAndMediaType() {
+        assertThat(WorkloadClass.classify(EventDataSourceType.AGGREGATED_1MIN, false), is(WorkloadClass.INTERACTIVE));
+        assertThat(WorkloadClass.classify(null, false), is(WorkloadClass.INTERACTIVE));
+        assertThat(WorkloadClass.classify(EventDataSourceType.AGGREGATED_DAY, false), is(WorkloadClass.TREND));
+        assertThat(WorkloadClass.classify(EventDataSourceType.AGGREGATED_1MIN, true), is(WorkloadClass.EXPORT));
+    }
+
+    @Test
+    public void testFullExportPoolDoesNotBlockInteractiveQueries() throws Exception {
+        workloadIsolation.setMaxConcurrentQueries(WorkloadClass.EXPORT, 1);
+        workloadIsolation.acquire(WorkloadClass.EXPORT);
+        final CountDownLatch exportAdmitted = new CountDownLatch(1);
+        final Thread secondExport = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    workloadIsolation.acquire(WorkloadClass.EXPORT);
+                    exportAdmitted.countDown();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        secondExport.start();
+        assertThat(exportAdmitted.await(100, TimeUnit.MILLISECONDS), is(false));
+        workloadIsolation.acquire(WorkloadClass.INTERACTIVE);
+        assertThat(getStatistics(WorkloadClass.EXPORT).getQueuedQueries(), is(1));
+        assertThat(getStatistics(WorkloadClass.INTERACTIVE).getActiveQueries(), is(1));
+
+        workloadIsolation.release(WorkloadClass.EXPORT);
+        assertThat(exportAdmitted.await(5, TimeUnit.SECONDS), is(true));
+        secondExport.join();
+        assertThat(getStatistics(WorkloadClass.EXPORT).getAdmittedQueries(), is(2L));
+    }
+
+    @Test
+    public void testQueryWithoutFreeSlotWithinQueueTimeoutIsRejected() throws Exception {
+        workloadIsolation.setMaxConcurrentQueries(WorkloadClass.TREND, 1);
+        workloadIsolation.setQueueTimeoutInMillis(20);
+        workloadIsolation.acquire(WorkloadClass.TREND);
+        try {
+            workloadIsolation.acquire(WorkloadClass.TREND);
+            fail("trend query admitted while the only trend slot is held");
+        } catch (final ServiceException e) {
+            assertThat(getStatistics(WorkloadClass.TREND).getQueuedQueries(), is(0));
+            assertThat(getStatistics(WorkloadClass.TREND).getTimedOutQueries(), is(1L));
+        }
+        workloadIsolation.release(WorkloadClass.TREND);
+        workloadIsolation.acquire(WorkloadClass.TREND);
+        assertThat(getStatistics(WorkloadClass.TREND).getActiveQueries(), is(1));
+    }
+
+    @Test
+    public void testQueriesAreNotLimitedUntilPoolLimitIsConfigured() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            workloadIsolation.acquire(WorkloadClass.EXPORT);
+        }
+        assertThat(getStatistics(WorkloadClass.EXPORT).getActiveQueries(), is(100));
+        assertThat(getStatistics(WorkloadClass.EXPORT).getMaxConcurrentQueries(), is(WorkloadIsolation.NO_LIMIT));
+    }
+
+    private WorkloadPoolStatistics getStatistics(final WorkloadClass workloadClass) {
+        for (final WorkloadPoolStatistics statistics : workloadIsolation.getPoolStatistics()) {
+            if (statistics.getWorkloadClass().equals(workloadClass.name())) {
+                return statistics;
+            }
+        }
+        return null;
+    }
+}